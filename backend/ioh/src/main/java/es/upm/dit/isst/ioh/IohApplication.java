@@ -2,8 +2,10 @@ package es.upm.dit.isst.ioh;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class IohApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,114 @@
+package es.upm.dit.isst.ioh.config;
+
+import java.net.URI;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+
+/**
+ * Caché de segundo nivel de Hibernate (JCache sobre Caffeine) para los datos de
+ * referencia: cerraduras, propiedades y usuarios, más las consultas de
+ * cerraduras por propiedad y propiedades por propietario.
+ *
+ * Cada región tiene su tamaño máximo y su tiempo de vida. Hibernate actualiza o
+ * invalida las entradas al escribir las entidades, y las consultas cacheadas se
+ * descartan cuando cambia alguna de sus tablas. Cada región publica las
+ * métricas {@code cache.*} de Micrometer y el porcentaje de aciertos en
+ * {@code ioh.cache.aciertos}.
+ */
+@Configuration
+public class CacheSegundoNivelConfig {
+
+    public static final String CERRADURAS = "cerraduras";
+    public static final String PROPIEDADES = "propiedades";
+    public static final String USUARIOS = "usuarios";
+    public static final String CERRADURAS_POR_PROPIEDAD = "cerraduras-por-propiedad";
+    public static final String PROPIEDADES_POR_PROPIETARIO = "propiedades-por-propietario";
+
+    @Bean(destroyMethod = "close")
+    public CacheManager cacheSegundoNivel(
+            MeterRegistry meterRegistry,
+            @Value("${ioh.cache.cerraduras.max:10000}") long maxCerraduras,
+            @Value("${ioh.cache.cerraduras.ttl-segundos:600}") long ttlCerraduras,
+            @Value("${ioh.cache.propiedades.max:10000}") long maxPropiedades,
+            @Value("${ioh.cache.propiedades.ttl-segundos:600}") long ttlPropiedades,
+            @Value("${ioh.cache.usuarios.max:10000}") long maxUsuarios,
+            @Value("${ioh.cache.usuarios.ttl-segundos:600}") long ttlUsuarios,
+            @Value("${ioh.cache.consultas.max:5000}") long maxConsultas,
+            @Value("${ioh.cache.consultas.ttl-segundos:300}") long ttlConsultas) {
+        // Un gestor propio por contexto: los tests levantan varios en la misma JVM
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("ioh-" + UUID.randomUUID()), getClass().getClassLoader());
+
+        crearRegion(cacheManager, meterRegistry, CERRADURAS, maxCerraduras, ttlCerraduras);
+        crearRegion(cacheManager, meterRegistry, PROPIEDADES, maxPropiedades, ttlPropiedades);
+        crearRegion(cacheManager, meterRegistry, USUARIOS, maxUsuarios, ttlUsuarios);
+        crearRegion(cacheManager, meterRegistry, CERRADURAS_POR_PROPIEDAD, maxConsultas, ttlConsultas);
+        crearRegion(cacheManager, meterRegistry, PROPIEDADES_POR_PROPIETARIO, maxConsultas, ttlConsultas);
+        crearRegion(cacheManager, meterRegistry, RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+                maxConsultas, ttlConsultas);
+        // Marcas de última escritura por tabla: no deben caducar antes que las consultas
+        crearRegion(cacheManager, meterRegistry, RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                0, 0);
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer cacheSegundoNivelHibernate(CacheManager cacheSegundoNivel) {
+        return propiedades -> {
+            propiedades.put(ConfigSettings.CACHE_MANAGER, cacheSegundoNivel);
+            // Todas las regiones se declaran aquí; una que falte es un error de configuración
+            propiedades.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+        };
+    }
+
+    /**
+     * @param max        Número máximo de entradas, o 0 para no limitarlo
+     * @param ttlSegundos Tiempo de vida desde la escritura, o 0 para no caducar
+     */
+    private static void crearRegion(CacheManager cacheManager, MeterRegistry meterRegistry, String nombre,
+            long max, long ttlSegundos) {
+        CaffeineConfiguration<Object, Object> configuracion = new CaffeineConfiguration<>();
+        configuracion.setStoreByValue(false);
+        configuracion.setStatisticsEnabled(true);
+        if (max > 0) {
+            configuracion.setMaximumSize(OptionalLong.of(max));
+        }
+        if (ttlSegundos > 0) {
+            configuracion.setExpireAfterWrite(OptionalLong.of(TimeUnit.SECONDS.toNanos(ttlSegundos)));
+        }
+        Cache<Object, Object> cache = cacheManager.createCache(nombre, configuracion);
+
+        JCacheMetrics.monitor(meterRegistry, cache);
+        FunctionCounter aciertos = meterRegistry.get("cache.gets").tag("cache", nombre).tag("result", "hit")
+                .functionCounter();
+        FunctionCounter fallos = meterRegistry.get("cache.gets").tag("cache", nombre).tag("result", "miss")
+                .functionCounter();
+        Gauge.builder("ioh.cache.aciertos", () -> {
+            double total = aciertos.count() + fallos.count();
+            return total == 0 ? 0 : aciertos.count() / total;
+        })
+                .description("Proporción de lecturas servidas por la caché de segundo nivel")
+                .tag("cache", nombre)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,83 @@
+package es.upm.dit.isst.ioh.config;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+import es.upm.dit.isst.ioh.dto.CerraduraDTO;
+import es.upm.dit.isst.ioh.dto.CerraduraInfoDTO;
+import es.upm.dit.isst.ioh.dto.PropiedadDTO;
+
+/**
+ * Conversor JSON de Spring MVC sobre el ObjectMapper compartido.
+ *
+ * Para los DTO más frecuentes (y sus listas) el ObjectWriter y el ObjectReader
+ * se resuelven al arrancar, con el serializador ya localizado, y se reutilizan
+ * en cada petición. El resto de tipos sigue el camino normal del conversor.
+ */
+public class ConversorJson extends MappingJackson2HttpMessageConverter {
+
+    static final List<Class<?>> DTO_FRECUENTES = List.of(
+            CerraduraInfoDTO.class, PropiedadDTO.class, CerraduraDTO.class);
+
+    private final Map<JavaType, ObjectWriter> escritores;
+    private final Map<JavaType, ObjectReader> lectores;
+
+    public ConversorJson(ObjectMapper objectMapper) {
+        super(objectMapper);
+        TypeFactory tipos = objectMapper.getTypeFactory();
+        Map<JavaType, ObjectWriter> escritores = new HashMap<>();
+        Map<JavaType, ObjectReader> lectores = new HashMap<>();
+        for (Class<?> dto : DTO_FRECUENTES) {
+            for (JavaType tipo : List.of(tipos.constructType(dto), tipos.constructCollectionType(List.class, dto))) {
+                escritores.put(tipo, objectMapper.writerFor(tipo));
+                lectores.put(tipo, objectMapper.readerFor(tipo));
+            }
+        }
+        this.escritores = Map.copyOf(escritores);
+        this.lectores = Map.copyOf(lectores);
+    }
+
+    /**
+     * Escritor ya resuelto para el tipo, o null si no es uno de los DTO frecuentes
+     */
+    public ObjectWriter escritor(JavaType tipo) {
+        return escritores.get(tipo);
+    }
+
+    /**
+     * Lector ya resuelto para el tipo, o null si no es uno de los DTO frecuentes
+     */
+    public ObjectReader lector(JavaType tipo) {
+        return lectores.get(tipo);
+    }
+
+    @Override
+    protected ObjectWriter customizeWriter(ObjectWriter writer, JavaType javaType, MediaType contentType) {
+        // Solo si la petición no pide una vista o filtros propios
+        ObjectWriter escritor = javaType != null ? escritores.get(javaType) : null;
+        if (escritor == null || writer.getConfig().getActiveView() != null
+                || writer.getConfig().getFilterProvider() != null) {
+            return writer;
+        }
+        return escritor;
+    }
+
+    @Override
+    protected ObjectReader customizeReader(ObjectReader reader, JavaType javaType) {
+        ObjectReader lector = lectores.get(javaType);
+        if (lector == null || reader.getConfig().getActiveView() != null) {
+            return reader;
+        }
+        return lector;
+    }
+}
@@ -0,0 +1,91 @@
+package es.upm.dit.isst.ioh.config;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import es.upm.dit.isst.ioh.service.LimitadorTasaService;
+import es.upm.dit.isst.ioh.service.LimitadorTasaService.Ruta;
+import es.upm.dit.isst.ioh.service.SesionService.Sesion;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Aplica el límite de tasa a las rutas sensibles antes de llegar al
+ * controlador. Las claves salen de la IP del cliente, de la variable {id} de la
+ * ruta o el parámetro cerraduraId y de la sesión o el parámetro usuarioId; los
+ * datos que van en el cuerpo (usuario al abrir, email en el login) no se leen
+ * aquí.
+ */
+@Component
+public class LimiteTasaInterceptor implements HandlerInterceptor {
+
+    static final String RUTA_ABRIR = "/api/cerraduras/{id}/abrir";
+    static final String RUTA_VALIDAR = "/api/tokens/validar";
+    static final String RUTA_LOGIN = "/api/usuarios/login";
+
+    private static final Map<String, Ruta> RUTAS = Map.of(
+            RUTA_ABRIR, Ruta.ABRIR,
+            RUTA_VALIDAR, Ruta.VALIDAR,
+            RUTA_LOGIN, Ruta.LOGIN);
+
+    private static final byte[] RESPUESTA = "{\"error\":\"Demasiadas peticiones, inténtalo más tarde\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final LimitadorTasaService limitadorTasaService;
+
+    public LimiteTasaInterceptor(LimitadorTasaService limitadorTasaService) {
+        this.limitadorTasaService = limitadorTasaService;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws Exception {
+        if (!"POST".equals(request.getMethod())) {
+            return true;
+        }
+        Ruta ruta = RUTAS.get((String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE));
+        if (ruta == null) {
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables = (Map<String, String>) request
+                .getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        Long cerraduraId = aId(variables != null && variables.containsKey("id")
+                ? variables.get("id")
+                : request.getParameter("cerraduraId"));
+        Sesion sesion = (Sesion) request.getAttribute(SesionFiltro.ATRIBUTO_SESION);
+        Long usuarioId = sesion != null ? sesion.usuarioId() : aId(request.getParameter("usuarioId"));
+
+        long espera = limitadorTasaService.consumir(ruta, request.getRemoteAddr(), usuarioId, cerraduraId);
+        if (espera == 0) {
+            return true;
+        }
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER,
+                String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(espera + 999_999_999))));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(RESPUESTA.length);
+        response.getOutputStream().write(RESPUESTA);
+        return false;
+    }
+
+    private static Long aId(String valor) {
+        if (valor == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(valor);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package es.upm.dit.isst.ioh.config;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.Optional;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import es.upm.dit.isst.ioh.service.SesionService;
+import es.upm.dit.isst.ioh.service.SesionService.Sesion;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Verifica el token de sesión de la cabecera Authorization y deja la sesión en
+ * la petición, como atributo {@value #ATRIBUTO_SESION} y como
+ * {@link HttpServletRequest#getUserPrincipal()}.
+ *
+ * Las peticiones sin token siguen como hasta ahora (el usuario va en la
+ * petición). Un token con el formato de sesión pero firma incorrecta o
+ * caducado se rechaza con 401; otros valores de la cabecera se ignoran.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 10)
+public class SesionFiltro extends OncePerRequestFilter {
+
+    public static final String ATRIBUTO_SESION = "ioh.sesion";
+
+    private static final String PREFIJO = "Bearer ";
+    private static final byte[] RESPUESTA = "{\"error\":\"Sesión no válida o caducada\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final SesionService sesionService;
+
+    public SesionFiltro(SesionService sesionService) {
+        this.sesionService = sesionService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String cabecera = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (cabecera == null || !cabecera.regionMatches(true, 0, PREFIJO, 0, PREFIJO.length())) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String token = cabecera.substring(PREFIJO.length()).trim();
+        if (!sesionService.pareceToken(token)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        Optional<Sesion> sesion = sesionService.verificar(token);
+        if (sesion.isEmpty()) {
+            response.setStatus(HttpStatus.UNAUTHORIZED.value());
+            response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setContentLength(RESPUESTA.length);
+            response.getOutputStream().write(RESPUESTA);
+            return;
+        }
+
+        request.setAttribute(ATRIBUTO_SESION, sesion.get());
+        chain.doFilter(new HttpServletRequestWrapper(request) {
+            @Override
+            public Principal getUserPrincipal() {
+                return sesion.get();
+            }
+        }, response);
+    }
+}
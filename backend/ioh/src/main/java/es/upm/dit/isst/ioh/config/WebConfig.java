@@ -3,27 +3,33 @@ package es.upm.dit.isst.ioh.config;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
-import org.springframework.http.converter.HttpMessageConverter;
-import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
-import java.util.List;
-
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    private final LimiteTasaInterceptor limiteTasaInterceptor;
+
+    public WebConfig(LimiteTasaInterceptor limiteTasaInterceptor) {
+        this.limiteTasaInterceptor = limiteTasaInterceptor;
+    }
+
     @Bean
     @Primary
     public ObjectMapper objectMapper() {
         ObjectMapper objectMapper = new ObjectMapper();
 
         objectMapper.registerModule(new JavaTimeModule());
+        // Accesores generados en lugar de reflexión para leer y escribir propiedades
+        objectMapper.registerModule(new BlackbirdModule());
         
         // Ignorar propiedades nulas y vacías
         objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
@@ -36,17 +42,28 @@ public class WebConfig implements WebMvcConfigurer {
         return objectMapper;
     }
 
-    @Override
-    public void configureMessageConverters(List<HttpMessageConverter<?>> converters) {
-        // Usar el ObjectMapper configurado para la conversión de mensajes
-        converters.add(new MappingJackson2HttpMessageConverter(objectMapper()));
+    // Sustituye al conversor JSON por defecto de Spring Boot: un único conversor
+    // con el ObjectMapper anterior
+    @Bean
+    public ConversorJson conversorJson(ObjectMapper objectMapper) {
+        return new ConversorJson(objectMapper);
     }
     
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // Límite de tasa en apertura, validación de tokens y login
+        registry.addInterceptor(limiteTasaInterceptor).addPathPatterns(
+                LimiteTasaInterceptor.RUTA_ABRIR.replace("{id}", "*"),
+                LimiteTasaInterceptor.RUTA_VALIDAR,
+                LimiteTasaInterceptor.RUTA_LOGIN);
+    }
+
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         registry.addMapping("/**")
                 .allowedOrigins("*")
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
-                .allowedHeaders("*");
+                .allowedHeaders("*")
+                .exposedHeaders("X-Siguiente-Cursor", "Retry-After");
     }
 } 
\ No newline at end of file
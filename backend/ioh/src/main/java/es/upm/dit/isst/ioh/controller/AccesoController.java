@@ -2,27 +2,42 @@ package es.upm.dit.isst.ioh.controller;
 
 import es.upm.dit.isst.ioh.model.Acceso;
 import es.upm.dit.isst.ioh.repository.AccesoRepository;
+import es.upm.dit.isst.ioh.service.IndiceAccesoService;
+import es.upm.dit.isst.ioh.service.ListadoService;
+import es.upm.dit.isst.ioh.service.ListadoService.Listado;
 
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/accesos")
 public class AccesoController {
 
     private final AccesoRepository accesoRepository;
+    private final IndiceAccesoService indiceAccesoService;
+    private final ListadoService listadoService;
 
-    public AccesoController(AccesoRepository accesoRepository) {
+    private static final Listado LISTADO = new Listado("Acceso", Set.of("huesped", "cerradura"),
+            List.of("id", "huesped.id", "huesped.nombre", "huesped.email", "huesped.telefono",
+                    "cerradura.id", "cerradura.modelo", "cerradura.bloqueada", "horario.inicio", "horario.fin"));
+
+    public AccesoController(AccesoRepository accesoRepository, IndiceAccesoService indiceAccesoService,
+            ListadoService listadoService) {
         this.accesoRepository = accesoRepository;
+        this.indiceAccesoService = indiceAccesoService;
+        this.listadoService = listadoService;
     }
 
     // Obtener todos los accesos
     @GetMapping
-    public List<Acceso> getAll() {
-        return (List<Acceso>) accesoRepository.findAll();
+    public ResponseEntity<?> getAll(@RequestParam(required = false) String campos,
+            @RequestParam(required = false) Long despuesDe,
+            @RequestParam(defaultValue = "" + ListadoService.LIMITE_POR_DEFECTO) int limite) {
+        return Paginacion.listar(listadoService, LISTADO, campos, despuesDe, limite);
     }
 
     // Obtener accesos por huésped
@@ -37,7 +52,7 @@ public class AccesoController {
         return accesoRepository.findByCerraduraId(id);
     }
 
-    // Registrar un nuevo acceso
+    // Registrar un nuevo acceso (IndiceAccesoListener lo añade al índice)
     @PostMapping
     public ResponseEntity<Acceso> create(@RequestBody Acceso nuevoAcceso) {
         Acceso result = accesoRepository.save(nuevoAcceso);
@@ -49,13 +64,7 @@ public class AccesoController {
     public ResponseEntity<?> validarAcceso(
             @RequestParam Long huespedId,
             @RequestParam Long cerraduraId) {
-        LocalDateTime ahora = LocalDateTime.now();
-        List<Acceso> accesosValidos = accesoRepository
-                .findByHuespedIdAndHorario_InicioBeforeAndHorario_FinAfter(
-                        huespedId, ahora, ahora);
-
-        boolean tieneAcceso = accesosValidos.stream()
-                .anyMatch(a -> a.getCerradura().getId().equals(cerraduraId));
+        boolean tieneAcceso = indiceAccesoService.tieneAcceso(huespedId, cerraduraId, LocalDateTime.now());
 
         return ResponseEntity.ok(tieneAcceso);
     }
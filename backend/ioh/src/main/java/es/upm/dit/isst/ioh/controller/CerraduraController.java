@@ -1,12 +1,21 @@
 package es.upm.dit.isst.ioh.controller;
 
+import es.upm.dit.isst.ioh.config.SesionFiltro;
 import es.upm.dit.isst.ioh.model.Cerradura;
 import es.upm.dit.isst.ioh.repository.CerraduraRepository;
 import es.upm.dit.isst.ioh.repository.AccesoRepository;
 import es.upm.dit.isst.ioh.service.CerraduraService;
 import es.upm.dit.isst.ioh.service.CerraduraService.AperturaResult;
+import es.upm.dit.isst.ioh.service.DetectorFuerzaBrutaService;
+import es.upm.dit.isst.ioh.service.DetectorFuerzaBrutaService.Bloqueo;
+import es.upm.dit.isst.ioh.service.ListadoService;
+import es.upm.dit.isst.ioh.service.ListadoService.Listado;
+import es.upm.dit.isst.ioh.service.SesionService.Sesion;
 import es.upm.dit.isst.ioh.dto.CerraduraInfoDTO;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -14,6 +23,9 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+
+import jakarta.servlet.http.HttpServletRequest;
 
 @RestController
 @RequestMapping("/api/cerraduras")
@@ -23,19 +35,37 @@ public class CerraduraController {
     private final CerraduraRepository cerraduraRepository;
     private final AccesoRepository accesoRepository;
     private final CerraduraService cerraduraService;
+    private final DetectorFuerzaBrutaService detectorFuerzaBrutaService;
+    private final ListadoService listadoService;
+    // Sin sesión obligatoria se sigue aceptando el usuarioId del cliente, por compatibilidad
+    private final boolean sesionObligatoria;
+
+    private static final int MAX_CERRADURAS_INFO = 500;
+
+    private static final Listado LISTADO = new Listado("Cerradura", Set.of("propiedad"),
+            List.of("id", "modelo", "bloqueada", "propiedad.id", "propiedad.nombre"),
+            List.of("id", "modelo", "bloqueada"));
 
     public CerraduraController(
             CerraduraRepository cerraduraRepository,
             AccesoRepository accesoRepository,
-            CerraduraService cerraduraService) {
+            CerraduraService cerraduraService,
+            DetectorFuerzaBrutaService detectorFuerzaBrutaService,
+            ListadoService listadoService,
+            @Value("${ioh.sesion.obligatoria:false}") boolean sesionObligatoria) {
         this.cerraduraRepository = cerraduraRepository;
         this.accesoRepository = accesoRepository;
         this.cerraduraService = cerraduraService;
+        this.detectorFuerzaBrutaService = detectorFuerzaBrutaService;
+        this.listadoService = listadoService;
+        this.sesionObligatoria = sesionObligatoria;
     }
 
     @GetMapping
-    public List<Cerradura> getAll() {
-        return (List<Cerradura>) cerraduraRepository.findAll();
+    public ResponseEntity<?> getAll(@RequestParam(required = false) String campos,
+            @RequestParam(required = false) Long despuesDe,
+            @RequestParam(defaultValue = "" + ListadoService.LIMITE_POR_DEFECTO) int limite) {
+        return Paginacion.listar(listadoService, LISTADO, campos, despuesDe, limite);
     }
 
     @PostMapping("/create")
@@ -57,20 +87,42 @@ public class CerraduraController {
     }
 
     /**
-     * Endpoint para abrir una puerta verificando que el usuario tenga acceso
+     * Endpoint para abrir una puerta verificando que el usuario tenga acceso.
+     * Tras demasiados intentos fallidos se responde 429 sin consultar la base de
+     * datos.
      * 
-     * @param id    ID de la cerradura
-     * @param datos Datos con el ID del usuario que intenta abrir la puerta
+     * @param id       ID de la cerradura
+     * @param datos    Datos con el ID del usuario que intenta abrir la puerta
+     *                 (opcional si hay sesión)
+     * @param sesion   Sesión de la petición (obligatoria si
+     *                 ioh.sesion.obligatoria=true)
+     * @param peticion Petición HTTP, para conocer la IP del cliente
      * @return Respuesta con el resultado de la operación
      */
     @PostMapping("/{id}/abrir")
-    public ResponseEntity<?> abrirPuerta(@PathVariable Long id, @RequestBody Map<String, Long> datos) {
+    public ResponseEntity<?> abrirPuerta(@PathVariable Long id, @RequestBody Map<String, Long> datos,
+            @RequestAttribute(name = SesionFiltro.ATRIBUTO_SESION, required = false) Sesion sesion,
+            HttpServletRequest peticion) {
+        if (sesion == null && sesionObligatoria) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Se requiere una sesión"));
+        }
+        if (!coincideConSesion(sesion, datos.get("usuarioId"))) {
+            return ResponseEntity.status(403).body(Map.of("error", "El usuario no coincide con la sesión"));
+        }
+        Long usuarioId = sesion != null ? sesion.usuarioId() : datos.get("usuarioId");
+
         // Verificar que se proporcionó un usuario
-        if (!datos.containsKey("usuarioId")) {
+        if (usuarioId == null) {
             return ResponseEntity.badRequest().body(Map.of("error", "Se requiere el ID del usuario"));
         }
+        String ip = peticion.getRemoteAddr();
 
-        Long usuarioId = datos.get("usuarioId");
+        Optional<Bloqueo> bloqueo = detectorFuerzaBrutaService.comprobar(usuarioId, ip);
+        if (bloqueo.isPresent()) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(bloqueo.get().segundosRestantes()))
+                    .body(Map.of("error", "Demasiados intentos fallidos, inténtalo más tarde"));
+        }
 
         // Utilizar el servicio para intentar abrir la puerta
         AperturaResult resultado = cerraduraService.abrirPuerta(usuarioId, id);
@@ -78,6 +130,9 @@ public class CerraduraController {
         if (resultado.isExito()) {
             return ResponseEntity.ok().body(Map.of("mensaje", resultado.getMensaje()));
         } else {
+            // Sin sesión el ID lo pone el cliente y no se cuenta contra ese usuario
+            detectorFuerzaBrutaService.registrarFallo(sesion != null ? usuarioId : null, id, ip,
+                    resultado.getMensaje());
             return ResponseEntity.status(403).body(Map.of("error", resultado.getMensaje()));
         }
     }
@@ -86,17 +141,31 @@ public class CerraduraController {
      * Endpoint para verificar si un usuario tiene acceso a una cerradura
      * 
      * @param cerraduraId ID de la cerradura
-     * @param usuarioId   ID del usuario
+     * @param usuarioId   ID del usuario (opcional si hay sesión)
+     * @param sesion      Sesión de la petición (opcional)
      * @return true si tiene acceso, false de lo contrario
      */
     @GetMapping("/{id}/verificar-acceso")
     public ResponseEntity<Boolean> verificarAcceso(
             @PathVariable("id") Long cerraduraId,
-            @RequestParam Long usuarioId) {
-        boolean tieneAcceso = cerraduraService.verificarAccesoUsuario(usuarioId, cerraduraId);
+            @RequestParam(required = false) Long usuarioId,
+            @RequestAttribute(name = SesionFiltro.ATRIBUTO_SESION, required = false) Sesion sesion) {
+        if (!coincideConSesion(sesion, usuarioId)) {
+            return ResponseEntity.status(403).body(false);
+        }
+        Long usuario = sesion != null ? sesion.usuarioId() : usuarioId;
+        if (usuario == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        boolean tieneAcceso = cerraduraService.verificarAccesoUsuario(usuario, cerraduraId);
         return ResponseEntity.ok(tieneAcceso);
     }
 
+    // Con sesión, el usuario indicado en la petición (si lo hay) debe ser el de la sesión
+    private static boolean coincideConSesion(Sesion sesion, Long usuarioId) {
+        return sesion == null || usuarioId == null || usuarioId.equals(sesion.usuarioId());
+    }
+
     /**
      * Endpoint para cerrar una puerta (cambiar estado de desbloqueada a bloqueada)
      * 
@@ -166,6 +235,27 @@ public class CerraduraController {
         return ResponseEntity.ok(nombreCerradura);
     }
 
+    /**
+     * Obtiene la información de varias cerraduras de una vez, en lugar de llamar
+     * a los endpoints de nombre, propiedad y propietario para cada una
+     * 
+     * @param ids       IDs de las cerraduras (máximo 500)
+     * @param usuarioId ID del usuario para calcular tieneAcceso (opcional)
+     * @return Lista de DTOs en el mismo orden que los IDs
+     */
+    @GetMapping("/info")
+    public ResponseEntity<?> getInformacionCerraduras(
+            @RequestParam List<Long> ids,
+            @RequestParam(required = false) Long usuarioId) {
+        if (ids.isEmpty() || ids.size() > MAX_CERRADURAS_INFO) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Se requieren entre 1 y " + MAX_CERRADURAS_INFO + " cerraduras"));
+        }
+
+        List<CerraduraInfoDTO> info = cerraduraService.obtenerInformacionCerraduras(ids, usuarioId);
+        return ResponseEntity.ok(info);
+    }
+
     /**
      * Obtiene toda la información de una cerradura en un solo objeto
      * 
@@ -5,6 +5,10 @@ import es.upm.dit.isst.ioh.model.Cerradura;
 import es.upm.dit.isst.ioh.model.Acceso;
 import es.upm.dit.isst.ioh.repository.HuespedRepository;
 import es.upm.dit.isst.ioh.repository.AccesoRepository;
+import es.upm.dit.isst.ioh.service.CredencialesService.CredencialesOcupadasException;
+import es.upm.dit.isst.ioh.service.ListadoService;
+import es.upm.dit.isst.ioh.service.ListadoService.Listado;
+import es.upm.dit.isst.ioh.service.UsuarioService;
 
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -16,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @RestController
@@ -25,26 +30,43 @@ public class HuespedController {
 
     private final HuespedRepository huespedRepository;
     private final AccesoRepository accesoRepository;
+    private final UsuarioService usuarioService;
+    private final ListadoService listadoService;
 
-    public HuespedController(HuespedRepository huespedRepository, AccesoRepository accesoRepository) {
+    private static final Listado LISTADO = new Listado("Huesped", Set.of(),
+            List.of("id", "nombre", "email", "telefono"));
+
+    public HuespedController(HuespedRepository huespedRepository, AccesoRepository accesoRepository,
+            UsuarioService usuarioService, ListadoService listadoService) {
         this.huespedRepository = huespedRepository;
         this.accesoRepository = accesoRepository;
+        this.usuarioService = usuarioService;
+        this.listadoService = listadoService;
     }
 
     @PostMapping
-    public ResponseEntity<Huesped> crearHuesped(@RequestBody Huesped huesped) {
-        Optional<Huesped> existente = huespedRepository.findByEmail(huesped.getEmail());
-        if (existente.isPresent()) {
+    public ResponseEntity<?> crearHuesped(@RequestBody Map<String, String> datos) {
+        if (usuarioService.existeUsuarioConEmail(datos.get("email"))) {
             return ResponseEntity.status(409).build(); // 409 Conflict
         }
 
-        Huesped guardado = huespedRepository.save(huesped);
+        // Mismo registro que /api/usuarios/huesped: la contraseña se guarda cifrada
+        Huesped guardado;
+        try {
+            guardado = usuarioService.registrarHuesped(datos);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (CredencialesOcupadasException e) {
+            return UsuarioController.ocupado(e);
+        }
         return ResponseEntity.created(URI.create("/api/huespedes/" + guardado.getId())).body(guardado);
     }
 
     @GetMapping
-    public Iterable<Huesped> getAll() {
-        return huespedRepository.findAll();
+    public ResponseEntity<?> getAll(@RequestParam(required = false) String campos,
+            @RequestParam(required = false) Long despuesDe,
+            @RequestParam(defaultValue = "" + ListadoService.LIMITE_POR_DEFECTO) int limite) {
+        return Paginacion.listar(listadoService, LISTADO, campos, despuesDe, limite);
     }
 
     /**
@@ -0,0 +1,77 @@
+package es.upm.dit.isst.ioh.controller;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.springframework.http.ResponseEntity;
+
+import es.upm.dit.isst.ioh.service.ListadoService;
+import es.upm.dit.isst.ioh.service.ListadoService.Listado;
+import es.upm.dit.isst.ioh.service.ListadoService.Pagina;
+
+/**
+ * Respuesta común de los listados paginados: la página en el cuerpo y, si hay
+ * más resultados, el valor de "despuesDe" para la siguiente en la cabecera
+ * X-Siguiente-Cursor. Un campo desconocido en "campos" responde 400. Las
+ * búsquedas de una sola fila responden 404 si no existe. Todos los listados
+ * comparten el tamaño máximo de página de {@link ListadoService}.
+ */
+final class Paginacion {
+
+    static final String CABECERA_CURSOR = "X-Siguiente-Cursor";
+
+    private Paginacion() {
+    }
+
+    static ResponseEntity<?> listar(ListadoService listadoService, Listado listado, String campos, Long despuesDe,
+            int limite) {
+        Pagina pagina;
+        try {
+            pagina = listadoService.listar(listado, campos, despuesDe, limite);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok();
+        if (pagina.siguiente() != null) {
+            respuesta.header(CABECERA_CURSOR, String.valueOf(pagina.siguiente()));
+        }
+        return respuesta.body(pagina.filas());
+    }
+
+    /**
+     * @param limite Tamaño de página pedido
+     * @return El tamaño acotado entre 1 y {@value ListadoService#LIMITE_MAXIMO}
+     */
+    static int tamano(int limite) {
+        return Math.max(1, Math.min(limite, ListadoService.LIMITE_MAXIMO));
+    }
+
+    /**
+     * Responde con una página ya consultada, añadiendo la cabecera con el cursor
+     * si la página está completa
+     *
+     * @param pagina Filas de la página
+     * @param tamano Tamaño de página consultado
+     * @param cursor Valor de "despuesDe" que sigue a una fila
+     */
+    static <T> ResponseEntity<List<T>> conCursor(List<T> pagina, int tamano, Function<T, Object> cursor) {
+        ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok();
+        if (pagina.size() == tamano) {
+            respuesta.header(CABECERA_CURSOR, String.valueOf(cursor.apply(pagina.get(pagina.size() - 1))));
+        }
+        return respuesta.body(pagina);
+    }
+
+    static ResponseEntity<?> buscar(ListadoService listadoService, Listado listado, String campos, String atributo,
+            Object valor) {
+        Optional<Map<String, Object>> fila;
+        try {
+            fila = listadoService.buscar(listado, campos, atributo, valor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        return fila.<ResponseEntity<?>>map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
@@ -8,6 +8,8 @@ import es.upm.dit.isst.ioh.dto.CerraduraDTO;
 import es.upm.dit.isst.ioh.repository.PropiedadRepository;
 import es.upm.dit.isst.ioh.repository.CerraduraRepository;
 import es.upm.dit.isst.ioh.repository.PropietarioRepository;
+import es.upm.dit.isst.ioh.service.PropiedadService;
+import jakarta.servlet.http.HttpServletResponse;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatus;
@@ -16,6 +18,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.http.MediaType;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.net.URI;
@@ -31,6 +34,8 @@ import java.nio.file.*;
 import java.util.UUID;
 import java.util.Optional;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.io.File;
 import java.io.FileOutputStream;
 
@@ -42,70 +47,49 @@ public class PropiedadController {
     private final PropiedadRepository propiedadRepository;
     private final CerraduraRepository cerraduraRepository;
     private final PropietarioRepository propietarioRepository;
+    private final PropiedadService propiedadService;
+    private final ObjectMapper objectMapper;
 
     public PropiedadController(
             PropiedadRepository propiedadRepository, 
             CerraduraRepository cerraduraRepository,
-            PropietarioRepository propietarioRepository) {
+            PropietarioRepository propietarioRepository,
+            PropiedadService propiedadService,
+            ObjectMapper objectMapper) {
         this.propiedadRepository = propiedadRepository;
         this.cerraduraRepository = cerraduraRepository;
         this.propietarioRepository = propietarioRepository;
+        this.propiedadService = propiedadService;
+        this.objectMapper = objectMapper;
     }
 
-    // Obtener propiedades por ID de propietario - VERSIÓN ULTRA SIMPLIFICADA
+    // Obtener propiedades por ID de propietario con su número de cerraduras.
+    // Se escribe directamente en la respuesta, propiedad a propiedad, con JsonGenerator
     @GetMapping("/propietario/{id}")
-    public String getByPropietario(@PathVariable Long id) {
-        try {
-            // Verificar si el propietario existe
-            if (!propietarioRepository.existsById(id)) {
-                return "[]"; // Devolver array vacío en formato JSON
-            }
-            
-            // Obtener propiedades directamente
-            List<Propiedad> propiedades = propiedadRepository.findByPropietarioId(id);
-            
-            // Construir JSON manualmente
-            StringBuilder jsonBuilder = new StringBuilder();
-            jsonBuilder.append("[");
-            
-            boolean first = true;
-            for (Propiedad p : propiedades) {
-                if (!first) {
-                    jsonBuilder.append(",");
-                }
-                first = false;
-                
-                // Contar cerraduras
-                int numeroCerraduras = 0;
-                List<Cerradura> cerraduras = cerraduraRepository.findByPropiedadId(p.getId());
-                if (cerraduras != null) {
-                    numeroCerraduras = cerraduras.size();
+    public void getByPropietario(@PathVariable Long id, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            json.writeStartArray();
+            propiedadService.recorrerResumenPorPropietario(id, p -> {
+                try {
+                    json.writeStartObject();
+                    json.writeNumberField("id", p.getId());
+                    json.writeStringField("nombre", p.getNombre() != null ? p.getNombre() : "");
+                    json.writeStringField("direccion", p.getDireccion() != null ? p.getDireccion() : "");
+                    json.writeNumberField("propietarioId", id);
+                    json.writeNumberField("numeroCerraduras", p.getNumeroCerraduras());
+                    json.writeEndObject();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
-                
-                // Construir objeto JSON para esta propiedad
-                jsonBuilder.append("{");
-                jsonBuilder.append("\"id\":").append(p.getId()).append(",");
-                jsonBuilder.append("\"nombre\":\"").append(escaparComillas(p.getNombre())).append("\",");
-                jsonBuilder.append("\"direccion\":\"").append(escaparComillas(p.getDireccion())).append("\",");
-                jsonBuilder.append("\"propietarioId\":").append(id).append(",");
-                jsonBuilder.append("\"numeroCerraduras\":").append(numeroCerraduras);
-                jsonBuilder.append("}");
-            }
-            
-            jsonBuilder.append("]");
-            return jsonBuilder.toString();
-            
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "[]"; // En caso de error, devolver array vacío
+            });
+            json.writeEndArray();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
     }
-    
-    // Método auxiliar para escapar comillas en strings
-    private String escaparComillas(String texto) {
-        if (texto == null) return "";
-        return texto.replace("\"", "\\\"");
-    }
 
     // Obtener cerraduras por ID de propiedad - REESCRITO DE FORMA SIMPLE
     @GetMapping("/{id}/cerraduras")
@@ -216,8 +200,7 @@ public class PropiedadController {
         @RequestPart(value = "imagen", required = false) MultipartFile imagenFile
     ) {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            Propiedad propiedad = mapper.readValue(propiedadJson, Propiedad.class);
+            Propiedad propiedad = objectMapper.readValue(propiedadJson, Propiedad.class);
 
             if (imagenFile != null && !imagenFile.isEmpty()) {
                 // Crear el directorio de uploads como ruta absoluta
@@ -267,12 +250,15 @@ class PropiedadConImagenController {
 
     private final PropiedadRepository propiedadRepository;
     private final PropietarioRepository propietarioRepository;
+    private final ObjectMapper objectMapper;
 
     public PropiedadConImagenController(
         PropiedadRepository propiedadRepository,
-        PropietarioRepository propietarioRepository) {
+        PropietarioRepository propietarioRepository,
+        ObjectMapper objectMapper) {
         this.propiedadRepository = propiedadRepository;
         this.propietarioRepository = propietarioRepository;
+        this.objectMapper = objectMapper;
     }
     
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -284,12 +270,8 @@ class PropiedadConImagenController {
             System.out.println("Recibido JSON de propiedad: " + propiedadJson);
             
             // Probar guardando la propiedad primero, sin procesar la imagen
-            ObjectMapper mapper = new ObjectMapper();
-            // Configuración adicional para ObjectMapper
-            mapper.configure(com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-            
-            // Obtener los datos básicos como Map primero
-            Map<String, Object> propiedadMap = mapper.readValue(propiedadJson, Map.class);
+            // Obtener los datos básicos como Map primero (un Map admite cualquier propiedad)
+            Map<String, Object> propiedadMap = objectMapper.readValue(propiedadJson, Map.class);
             
             // Crear una nueva propiedad con esos datos
             Propiedad propiedad = new Propiedad();
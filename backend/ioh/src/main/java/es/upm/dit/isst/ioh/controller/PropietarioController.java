@@ -1,18 +1,27 @@
 package es.upm.dit.isst.ioh.controller;
 
-import es.upm.dit.isst.ioh.model.Acceso;
+import es.upm.dit.isst.ioh.dto.AccesoPropietarioDTO;
+import es.upm.dit.isst.ioh.dto.AlertaFuerzaBrutaDTO;
+import es.upm.dit.isst.ioh.dto.TokenPropietarioDTO;
 import es.upm.dit.isst.ioh.model.Propietario;
-import es.upm.dit.isst.ioh.model.Token;
+import es.upm.dit.isst.ioh.repository.CerraduraRepository;
 import es.upm.dit.isst.ioh.repository.PropietarioRepository;
+import es.upm.dit.isst.ioh.service.DetectorFuerzaBrutaService;
+import es.upm.dit.isst.ioh.service.CredencialesService.CredencialesOcupadasException;
+import es.upm.dit.isst.ioh.service.ListadoService;
+import es.upm.dit.isst.ioh.service.ListadoService.Listado;
 import es.upm.dit.isst.ioh.service.PropietarioService;
+import es.upm.dit.isst.ioh.service.UsuarioService;
 import es.upm.dit.isst.ioh.service.TokenService;
 
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.net.URI;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/propietarios")
@@ -21,55 +30,125 @@ public class PropietarioController {
     private final PropietarioRepository propietarioRepository;
     private final PropietarioService propietarioService;
     private final TokenService tokenService;
+    private final CerraduraRepository cerraduraRepository;
+    private final DetectorFuerzaBrutaService detectorFuerzaBrutaService;
+    private final UsuarioService usuarioService;
+    private final ListadoService listadoService;
+
+    private static final Listado LISTADO = new Listado("Propietario", Set.of(),
+            List.of("id", "nombre", "email", "telefono"));
 
     public PropietarioController(PropietarioRepository propietarioRepository, PropietarioService propietarioService,
-            TokenService tokenService) {
+            TokenService tokenService, CerraduraRepository cerraduraRepository,
+            DetectorFuerzaBrutaService detectorFuerzaBrutaService, UsuarioService usuarioService,
+            ListadoService listadoService) {
         this.propietarioRepository = propietarioRepository;
         this.propietarioService = propietarioService;
         this.tokenService = tokenService;
+        this.cerraduraRepository = cerraduraRepository;
+        this.detectorFuerzaBrutaService = detectorFuerzaBrutaService;
+        this.usuarioService = usuarioService;
+        this.listadoService = listadoService;
     }
 
     @PostMapping
-    public ResponseEntity<Propietario> crearPropietario(@RequestBody Propietario propietario) {
-        Optional<Propietario> existente = propietarioRepository.findByEmail(propietario.getEmail());
-        if (existente.isPresent()) {
+    public ResponseEntity<?> crearPropietario(@RequestBody Map<String, String> datos) {
+        if (usuarioService.existeUsuarioConEmail(datos.get("email"))) {
             return ResponseEntity.status(409).build(); // 409 Conflict
         }
 
-        Propietario guardado = propietarioRepository.save(propietario);
+        // Mismo registro que /api/usuarios/propietario: la contraseña se guarda cifrada
+        Propietario guardado;
+        try {
+            guardado = usuarioService.registrarPropietario(datos);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (CredencialesOcupadasException e) {
+            return UsuarioController.ocupado(e);
+        }
         return ResponseEntity.created(URI.create("/api/propietarios/" + guardado.getId())).body(guardado);
     }
 
     @GetMapping
-    public Iterable<Propietario> getAll() {
-        return propietarioRepository.findAll();
+    public ResponseEntity<?> getAll(@RequestParam(required = false) String campos,
+            @RequestParam(required = false) Long despuesDe,
+            @RequestParam(defaultValue = "" + ListadoService.LIMITE_POR_DEFECTO) int limite) {
+        return Paginacion.listar(listadoService, LISTADO, campos, despuesDe, limite);
     }
 
     /**
-     * Obtiene todos los accesos asociados a las cerraduras de las propiedades de un
-     * propietario
+     * Obtiene los accesos asociados a las cerraduras de las propiedades de un
+     * propietario, paginados por cursor igual que los tokens
      * 
      * @param propietarioId ID del propietario
-     * @return Lista de accesos asociados a las cerraduras de las propiedades del
+     * @param ventana       "actuales", "proximos" o "pasados" (opcional)
+     * @param despuesDe     Cursor de la página anterior (opcional)
+     * @param limite        Tamaño de página (máximo 1000)
+     * @return Página de accesos asociados a las cerraduras de las propiedades del
      *         propietario
      */
     @GetMapping("/{propietarioId}/accesos")
-    public ResponseEntity<List<Acceso>> obtenerAccesosPorPropietario(@PathVariable Long propietarioId) {
-        List<Acceso> accesos = propietarioService.obtenerAccesosPorPropietario(propietarioId);
-        return ResponseEntity.ok(accesos);
+    public ResponseEntity<?> obtenerAccesosPorPropietario(
+            @PathVariable Long propietarioId,
+            @RequestParam(required = false) String ventana,
+            @RequestParam(required = false) Long despuesDe,
+            @RequestParam(defaultValue = "" + ListadoService.LIMITE_POR_DEFECTO) int limite) {
+        int tamano = Paginacion.tamano(limite);
+        try {
+            List<AccesoPropietarioDTO> accesos = propietarioService.obtenerAccesosPorPropietario(
+                    propietarioId, ventana, despuesDe, tamano);
+            return Paginacion.conCursor(accesos, tamano, AccesoPropietarioDTO::getId);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
     /**
-     * Obtiene todos los tokens asociados a las cerraduras de las propiedades de un
-     * propietario
+     * Obtiene los tokens asociados a las cerraduras de las propiedades de un
+     * propietario, paginados por cursor. Si hay más resultados, la cabecera
+     * X-Siguiente-Cursor indica el valor de "despuesDe" para la página siguiente.
      * 
      * @param propietarioId ID del propietario
-     * @return Lista de tokens asociados a las cerraduras de las propiedades del
+     * @param propiedadId   Filtrar por propiedad (opcional)
+     * @param activo        true solo vigentes, false solo caducados o agotados
+     *                      (opcional)
+     * @param despuesDe     Cursor de la página anterior (opcional)
+     * @param limite        Tamaño de página (máximo 1000)
+     * @return Página de tokens asociados a las cerraduras de las propiedades del
      *         propietario
      */
     @GetMapping("/{propietarioId}/tokens")
-    public ResponseEntity<List<Token>> obtenerTokensPorPropietario(@PathVariable Long propietarioId) {
-        List<Token> tokens = tokenService.obtenerTokensPorPropietario(propietarioId);
-        return ResponseEntity.ok(tokens);
+    public ResponseEntity<List<TokenPropietarioDTO>> obtenerTokensPorPropietario(
+            @PathVariable Long propietarioId,
+            @RequestParam(required = false) Long propiedadId,
+            @RequestParam(required = false) Boolean activo,
+            @RequestParam(required = false) Long despuesDe,
+            @RequestParam(defaultValue = "" + ListadoService.LIMITE_POR_DEFECTO) int limite) {
+        int tamano = Paginacion.tamano(limite);
+        List<TokenPropietarioDTO> tokens = tokenService.obtenerTokensPorPropietario(
+                propietarioId, propiedadId, activo, despuesDe, tamano);
+        return Paginacion.conCursor(tokens, tamano, TokenPropietarioDTO::getId);
+    }
+
+    /**
+     * Obtiene las alertas de intentos fallidos repetidos sobre las cerraduras
+     * de un propietario, de la más antigua a la más reciente. Para seguir el
+     * feed se pasa como "despuesDe" el ID de la última alerta recibida.
+     * 
+     * @param propietarioId ID del propietario
+     * @param despuesDe     Cursor de la página anterior (opcional)
+     * @param limite        Tamaño de página (máximo 1000)
+     * @return Página de alertas
+     */
+    @GetMapping("/{propietarioId}/alertas")
+    public ResponseEntity<List<AlertaFuerzaBrutaDTO>> obtenerAlertasPorPropietario(
+            @PathVariable Long propietarioId,
+            @RequestParam(required = false) Long despuesDe,
+            @RequestParam(defaultValue = "" + ListadoService.LIMITE_POR_DEFECTO) int limite) {
+        int tamano = Paginacion.tamano(limite);
+        Set<Long> cerraduraIds = new HashSet<>(cerraduraRepository.findIdsByPropietarioId(propietarioId));
+        List<AlertaFuerzaBrutaDTO> alertas = detectorFuerzaBrutaService.obtenerAlertas(cerraduraIds, despuesDe,
+                tamano);
+        return Paginacion.conCursor(alertas, tamano, AlertaFuerzaBrutaDTO::getId);
     }
 }
@@ -1,48 +1,267 @@
 package es.upm.dit.isst.ioh.controller;
 
+import es.upm.dit.isst.ioh.dto.EstadisticaAperturaDTO;
+import es.upm.dit.isst.ioh.dto.RegistroAperturaDTO;
 import es.upm.dit.isst.ioh.model.RegistroApertura;
-import es.upm.dit.isst.ioh.repository.RegistroAperturaRepository;
+import es.upm.dit.isst.ioh.service.AuditoriaAperturaService;
+import es.upm.dit.isst.ioh.service.EstadisticasAperturaService;
+import es.upm.dit.isst.ioh.service.EstadisticasAperturaService.Dimension;
+import es.upm.dit.isst.ioh.service.EstadisticasAperturaService.Granularidad;
+import es.upm.dit.isst.ioh.service.ListadoService;
+import es.upm.dit.isst.ioh.service.RegistroAperturaService;
+import es.upm.dit.isst.ioh.service.RegistroAperturaService.FormatoExportacion;
+import es.upm.dit.isst.ioh.service.SegmentosAuditoriaService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/registros-apertura")
 @CrossOrigin(origins = "http://localhost:5173")
 public class RegistroAperturaController {
 
-    private final RegistroAperturaRepository registroAperturaRepository;
+    private static final long MAX_INTERVALOS = 10000;
 
-    public RegistroAperturaController(RegistroAperturaRepository registroAperturaRepository) {
-        this.registroAperturaRepository = registroAperturaRepository;
+    private final AuditoriaAperturaService auditoriaAperturaService;
+    private final SegmentosAuditoriaService segmentosAuditoriaService;
+    private final EstadisticasAperturaService estadisticasAperturaService;
+    private final RegistroAperturaService registroAperturaService;
+
+    public RegistroAperturaController(
+            AuditoriaAperturaService auditoriaAperturaService,
+            SegmentosAuditoriaService segmentosAuditoriaService,
+            EstadisticasAperturaService estadisticasAperturaService,
+            RegistroAperturaService registroAperturaService) {
+        this.auditoriaAperturaService = auditoriaAperturaService;
+        this.segmentosAuditoriaService = segmentosAuditoriaService;
+        this.estadisticasAperturaService = estadisticasAperturaService;
+        this.registroAperturaService = registroAperturaService;
     }
 
+    /**
+     * Registra un intento de apertura notificado por el cliente. Pasa por el
+     * mismo escritor asíncrono que el resto de intentos, así acaba en el mismo
+     * almacén y en las estadísticas; por eso se responde 202 sin ID.
+     */
     @PostMapping
     public ResponseEntity<RegistroApertura> registrarIntento(@RequestBody RegistroApertura registro) {
         registro.setTimestamp(LocalDateTime.now());
-        RegistroApertura guardado = registroAperturaRepository.save(registro);
-        return ResponseEntity.ok(guardado);
+        auditoriaAperturaService.registrar(
+                registro.getUsuario() != null ? registro.getUsuario().getId() : null,
+                registro.getCerradura() != null ? registro.getCerradura().getId() : null,
+                registro.isExitoso(), registro.getMotivo());
+        return ResponseEntity.accepted().body(registro);
     }
 
+    /**
+     * Lista los intentos de apertura en orden cronológico, paginados por cursor.
+     * Si hay más resultados, la cabecera X-Siguiente-Cursor indica el valor de
+     * "despuesDe" para la página siguiente.
+     * 
+     * @param desde     Inicio del rango, inclusivo (opcional)
+     * @param hasta     Fin del rango, exclusivo (opcional)
+     * @param despuesDe Cursor: ID del último registro de la página anterior
+     * @param limite    Tamaño de página (por defecto 200, máximo 1000)
+     */
     @GetMapping
-    public List<RegistroApertura> obtenerTodos() {
-        return registroAperturaRepository.findAll();
+    public ResponseEntity<?> obtenerTodos(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime hasta,
+            @RequestParam(required = false) Long despuesDe,
+            @RequestParam(defaultValue = "" + ListadoService.LIMITE_POR_DEFECTO) int limite) {
+        return pagina(null, null, null, desde, hasta, despuesDe, limite);
     }
 
     @GetMapping("/cerradura/{id}")
-    public List<RegistroApertura> porCerradura(@PathVariable Long id) {
-        return registroAperturaRepository.findByCerraduraId(id);
+    public ResponseEntity<?> porCerradura(
+            @PathVariable Long id,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime hasta,
+            @RequestParam(required = false) Long despuesDe,
+            @RequestParam(defaultValue = "" + ListadoService.LIMITE_POR_DEFECTO) int limite) {
+        return pagina(id, null, null, desde, hasta, despuesDe, limite);
     }
 
     @GetMapping("/usuario/{id}")
-    public List<RegistroApertura> porUsuario(@PathVariable Long id) {
-        return registroAperturaRepository.findByUsuarioId(id);
+    public ResponseEntity<?> porUsuario(
+            @PathVariable Long id,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime hasta,
+            @RequestParam(required = false) Long despuesDe,
+            @RequestParam(defaultValue = "" + ListadoService.LIMITE_POR_DEFECTO) int limite) {
+        return pagina(null, id, null, desde, hasta, despuesDe, limite);
     }
 
     @GetMapping("/resultado")
-    public List<RegistroApertura> porResultado(@RequestParam boolean exitoso) {
-        return registroAperturaRepository.findByExitoso(exitoso);
+    public ResponseEntity<?> porResultado(
+            @RequestParam boolean exitoso,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime hasta,
+            @RequestParam(required = false) Long despuesDe,
+            @RequestParam(defaultValue = "" + ListadoService.LIMITE_POR_DEFECTO) int limite) {
+        return pagina(null, null, exitoso, desde, hasta, despuesDe, limite);
+    }
+
+    // Página de registros con la cabecera del cursor si la página está completa
+    private ResponseEntity<?> pagina(Long cerraduraId, Long usuarioId, Boolean exitoso, LocalDateTime desde,
+            LocalDateTime hasta, Long despuesDe, int limite) {
+        int tamano = Paginacion.tamano(limite);
+        try {
+            List<RegistroAperturaDTO> registros = registroAperturaService.obtenerPagina(
+                    cerraduraId, usuarioId, exitoso, desde, hasta, despuesDe, tamano);
+            return Paginacion.conCursor(registros, tamano, RegistroAperturaDTO::getId);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Exporta los intentos de apertura del rango como NDJSON o CSV, escribiendo
+     * las filas a medida que se leen de la base de datos
+     *
+     * @param formato ndjson o csv (por defecto ndjson)
+     * @param desde   Inicio del rango, inclusivo (opcional)
+     * @param hasta   Fin del rango, exclusivo (opcional)
+     * @param gzip    Comprimir la salida con gzip
+     */
+    @GetMapping("/exportar")
+    public ResponseEntity<StreamingResponseBody> exportar(
+            @RequestParam(defaultValue = "ndjson") String formato,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime hasta,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        FormatoExportacion salida;
+        try {
+            salida = FormatoExportacion.valueOf(formato.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            // El tipo de retorno tiene que ser StreamingResponseBody, así que el error se escribe a mano
+            byte[] error = "{\"error\":\"Formato no válido, usa ndjson o csv\"}".getBytes(StandardCharsets.UTF_8);
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(out -> out.write(error));
+        }
+
+        String fichero = "registros-apertura." + salida.name().toLowerCase(Locale.ROOT) + (gzip ? ".gz" : "");
+        MediaType tipo = gzip ? MediaType.parseMediaType("application/gzip")
+                : salida == FormatoExportacion.CSV ? MediaType.parseMediaType("text/csv;charset=UTF-8")
+                : MediaType.parseMediaType("application/x-ndjson");
+
+        StreamingResponseBody cuerpo = out -> {
+            if (gzip) {
+                GZIPOutputStream comprimido = new GZIPOutputStream(out, 1 << 16);
+                registroAperturaService.exportar(salida, desde, hasta, comprimido);
+                comprimido.finish();
+            } else {
+                registroAperturaService.exportar(salida, desde, hasta, out);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(tipo)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fichero + "\"")
+                .body(cuerpo);
+    }
+
+    /**
+     * Consulta el almacén de segmentos de auditoría, del intento más reciente al
+     * más antiguo. Todos los filtros son opcionales.
+     */
+    @GetMapping("/segmentos")
+    public ResponseEntity<?> buscarEnSegmentos(
+            @RequestParam(required = false) Long cerraduraId,
+            @RequestParam(required = false) Long usuarioId,
+            @RequestParam(required = false) Boolean exitoso,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime hasta,
+            @RequestParam(required = false) Integer limite) {
+        if (!segmentosAuditoriaService.isHabilitado()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "El almacén de segmentos de auditoría no está habilitado"));
+        }
+        int tamano = limite == null ? ListadoService.LIMITE_POR_DEFECTO : limite;
+        if (tamano < 1 || tamano > ListadoService.LIMITE_MAXIMO) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "El límite debe estar entre 1 y " + ListadoService.LIMITE_MAXIMO));
+        }
+
+        List<RegistroAperturaDTO> registros = segmentosAuditoriaService.buscar(
+                cerraduraId, usuarioId, exitoso, desde, hasta, tamano);
+        return ResponseEntity.ok(registros);
+    }
+
+    /**
+     * Intentos de apertura agregados por intervalos para una cerradura, un
+     * usuario o una propiedad (hay que indicar exactamente uno)
+     *
+     * @param granularidad minuto, hora o dia (por defecto hora)
+     * @param desde        Inicio del rango (por defecto, 60 minutos, 7 días o 30
+     *                     días antes de hasta, según la granularidad)
+     * @param hasta        Fin del rango (por defecto, ahora)
+     */
+    @GetMapping("/estadisticas")
+    public ResponseEntity<?> estadisticas(
+            @RequestParam(required = false) Long cerraduraId,
+            @RequestParam(required = false) Long usuarioId,
+            @RequestParam(required = false) Long propiedadId,
+            @RequestParam(defaultValue = "hora") String granularidad,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime hasta) {
+        int indicados = (cerraduraId != null ? 1 : 0) + (usuarioId != null ? 1 : 0) + (propiedadId != null ? 1 : 0);
+        if (indicados != 1) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Indica exactamente uno de cerraduraId, usuarioId o propiedadId"));
+        }
+
+        Granularidad intervalo;
+        try {
+            intervalo = Granularidad.valueOf(granularidad.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Granularidad no válida: " + granularidad));
+        }
+
+        LocalDateTime fin = hasta != null ? hasta : LocalDateTime.now();
+        LocalDateTime inicio = desde != null ? desde : switch (intervalo) {
+            case MINUTO -> fin.minusMinutes(60);
+            case HORA -> fin.minusDays(7);
+            case DIA -> fin.minusDays(30);
+        };
+        if (Duration.between(inicio, fin).toSeconds() / intervalo.getSegundos() > MAX_INTERVALOS) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "El rango no puede abarcar más de " + MAX_INTERVALOS + " intervalos"));
+        }
+
+        Dimension dimension = cerraduraId != null ? Dimension.CERRADURA
+                : usuarioId != null ? Dimension.USUARIO : Dimension.PROPIEDAD;
+        long id = cerraduraId != null ? cerraduraId : usuarioId != null ? usuarioId : propiedadId;
+        List<EstadisticaAperturaDTO> intervalos = estadisticasAperturaService.consultar(dimension, id, intervalo,
+                inicio, fin);
+
+        long exitosos = 0;
+        long fallidos = 0;
+        for (EstadisticaAperturaDTO estadistica : intervalos) {
+            exitosos += estadistica.getExitosos();
+            fallidos += estadistica.getFallidos();
+        }
+
+        Map<String, Object> respuesta = new HashMap<>();
+        respuesta.put("granularidad", intervalo.name().toLowerCase(Locale.ROOT));
+        respuesta.put("desde", inicio);
+        respuesta.put("hasta", fin);
+        respuesta.put("exitosos", exitosos);
+        respuesta.put("fallidos", fallidos);
+        respuesta.put("intervalos", intervalos);
+        return ResponseEntity.ok(respuesta);
     }
 }
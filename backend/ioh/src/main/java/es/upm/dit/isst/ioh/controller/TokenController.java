@@ -1,20 +1,36 @@
 package es.upm.dit.isst.ioh.controller;
 
+import es.upm.dit.isst.ioh.config.SesionFiltro;
+import es.upm.dit.isst.ioh.dto.LoteTokensDTO;
 import es.upm.dit.isst.ioh.model.Token;
-import es.upm.dit.isst.ioh.model.Cerradura;
-import es.upm.dit.isst.ioh.model.Usuario;
 import es.upm.dit.isst.ioh.repository.TokenRepository;
 import es.upm.dit.isst.ioh.repository.CerraduraRepository;
-import es.upm.dit.isst.ioh.repository.UsuarioRepository;
+import es.upm.dit.isst.ioh.service.AuditoriaAperturaService;
 import es.upm.dit.isst.ioh.service.CerraduraService;
-
+import es.upm.dit.isst.ioh.service.DetectorFuerzaBrutaService;
+import es.upm.dit.isst.ioh.service.DetectorFuerzaBrutaService.Bloqueo;
+import es.upm.dit.isst.ioh.service.FiltroTokenService;
+import es.upm.dit.isst.ioh.service.ListadoService;
+import es.upm.dit.isst.ioh.service.ListadoService.Listado;
+import es.upm.dit.isst.ioh.service.RolUsuarioService;
+import es.upm.dit.isst.ioh.service.SesionService.Sesion;
+import es.upm.dit.isst.ioh.service.TokenService;
+import es.upm.dit.isst.ioh.service.TokenService.CanjeResult;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+
+import jakarta.servlet.http.HttpServletRequest;
 
 @RestController
 @RequestMapping("/api/tokens")
@@ -23,31 +39,75 @@ public class TokenController {
 
     private final TokenRepository tokenRepository;
     private final CerraduraRepository cerraduraRepository;
-    private final UsuarioRepository usuarioRepository;
+    private final RolUsuarioService rolUsuarioService;
     private final CerraduraService cerraduraService;
+    private final TokenService tokenService;
+    private final FiltroTokenService filtroTokenService;
+    private final AuditoriaAperturaService auditoriaAperturaService;
+    private final DetectorFuerzaBrutaService detectorFuerzaBrutaService;
+    private final ListadoService listadoService;
+    // Sin sesión obligatoria se sigue aceptando el usuarioId del cliente, por compatibilidad
+    private final boolean sesionObligatoria;
+
+    private static final Listado LISTADO = new Listado("Token", Set.of("cerradura"),
+            List.of("id", "codigo", "fechaExpiracion", "usosMaximos", "usosActuales",
+                    "cerradura.id", "cerradura.modelo", "cerradura.bloqueada"));
 
     public TokenController(
             TokenRepository tokenRepository, 
             CerraduraRepository cerraduraRepository,
-            UsuarioRepository usuarioRepository,
-            CerraduraService cerraduraService) {
+            RolUsuarioService rolUsuarioService,
+            CerraduraService cerraduraService,
+            TokenService tokenService,
+            FiltroTokenService filtroTokenService,
+            AuditoriaAperturaService auditoriaAperturaService,
+            DetectorFuerzaBrutaService detectorFuerzaBrutaService,
+            ListadoService listadoService,
+            @Value("${ioh.sesion.obligatoria:false}") boolean sesionObligatoria) {
         this.tokenRepository = tokenRepository;
         this.cerraduraRepository = cerraduraRepository;
-        this.usuarioRepository = usuarioRepository;
+        this.rolUsuarioService = rolUsuarioService;
         this.cerraduraService = cerraduraService;
+        this.tokenService = tokenService;
+        this.filtroTokenService = filtroTokenService;
+        this.auditoriaAperturaService = auditoriaAperturaService;
+        this.detectorFuerzaBrutaService = detectorFuerzaBrutaService;
+        this.listadoService = listadoService;
+        this.sesionObligatoria = sesionObligatoria;
     }
 
     // Crear nuevo token (propietario lo genera)
     @PostMapping
-    public ResponseEntity<Token> create(@RequestBody Token token) {
-        // Verificar si el código ya existe
-        Optional<Token> existingToken = tokenRepository.findByCodigo(token.getCodigo());
-        if (existingToken.isPresent()) {
+    public ResponseEntity<?> create(@RequestBody Token token) {
+        // Con id, save() sobrescribiría ese token y pondría a cero sus usos
+        if (token.getId() != null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Un token nuevo no puede llevar id"));
+        }
+
+        // Si el cliente no envía código, se genera en el servidor
+        if (token.getCodigo() == null || token.getCodigo().isBlank()) {
+            token.setCodigo(tokenService.generarCodigo());
+        }
+
+        // El índice único sobre el código detecta los duplicados sin consulta previa
+        token.setUsosActuales(0);
+        try {
+            // TokenListener lo añade al filtro y a la rueda de expiración
+            return ResponseEntity.ok(tokenRepository.save(token));
+        } catch (DataIntegrityViolationException e) {
             return ResponseEntity.status(462).body(null); // Código ya existe
-        } else {
-            token.setUsosActuales(0);
-            Token creado = tokenRepository.save(token);
-            return ResponseEntity.ok(creado);
+        }
+    }
+
+    // Emitir muchos tokens de una vez para varias cerraduras (limpieza, mantenimiento...)
+    @PostMapping("/lote")
+    public ResponseEntity<?> emitirLote(@RequestBody LoteTokensDTO lote) {
+        try {
+            Map<Long, List<String>> emitidos = tokenService.emitirLote(
+                    lote.getCerraduraIds(), lote.getCantidad(), lote.getFechaExpiracion(), lote.getUsosMaximos());
+            return ResponseEntity.ok(emitidos);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
 
@@ -56,55 +116,84 @@ public class TokenController {
     public ResponseEntity<?> validarToken(
             @RequestParam String codigo, 
             @RequestParam Long cerraduraId,
-            @RequestParam Long usuarioId) {
+            @RequestParam(required = false) Long usuarioId,
+            @RequestAttribute(name = SesionFiltro.ATRIBUTO_SESION, required = false) Sesion sesion,
+            HttpServletRequest peticion) {
+        String ip = peticion.getRemoteAddr();
+
+        // Con sesión el usuario es el de la sesión
+        if (sesion == null && sesionObligatoria) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Se requiere una sesión"));
+        }
+        if (sesion != null) {
+            if (usuarioId != null && !usuarioId.equals(sesion.usuarioId())) {
+                return ResponseEntity.status(403).body(Map.of("error", "El usuario no coincide con la sesión"));
+            }
+            usuarioId = sesion.usuarioId();
+        } else if (usuarioId == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Se requiere el ID del usuario"));
+        }
+
+        // Tras demasiados intentos fallidos se rechaza antes de consultar nada
+        Optional<Bloqueo> bloqueo = detectorFuerzaBrutaService.comprobar(usuarioId, ip);
+        if (bloqueo.isPresent()) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(bloqueo.get().segundosRestantes()))
+                    .body(Map.of("error", "Demasiados intentos fallidos, inténtalo más tarde"));
+        }
+
+        // Descartar códigos inexistentes sin consultar la base de datos
+        if (!filtroTokenService.podriaExistir(codigo)) {
+            return rechazar(usuarioId, sesion, cerraduraId, ip, 404, "Token no encontrado");
+        }
         
-        // Verificar si el usuario existe
-        Optional<Usuario> optUsuario = usuarioRepository.findById(usuarioId);
-        if (optUsuario.isEmpty()) {
-            return ResponseEntity.status(404).body(Map.of("error", "Usuario no encontrado"));
+        // Verificar si el usuario existe (la sesión ya lo garantiza)
+        if (sesion == null && rolUsuarioService.rolDe(usuarioId).isEmpty()) {
+            return rechazar(usuarioId, sesion, cerraduraId, ip, 404, "Usuario no encontrado");
         }
         
         // Verificar si el usuario tiene acceso a la cerradura
         boolean tieneAcceso = cerraduraService.verificarAccesoUsuario(usuarioId, cerraduraId);
         if (!tieneAcceso) {
-            return ResponseEntity.status(403).body(Map.of("error", "No tienes acceso a esta cerradura"));
+            return rechazar(usuarioId, sesion, cerraduraId, ip, 403, "No tienes acceso a esta cerradura");
         }
         
-        // Verificar si el token existe
-        Optional<Token> optToken = tokenRepository.findByCodigo(codigo);
-        if (optToken.isEmpty()) {
-            return ResponseEntity.status(404).body(Map.of("error", "Token no encontrado"));
-        }
-
-        Token token = optToken.get();
-
-        // Verificar si el token es para esta cerradura
-        if (!token.getCerradura().getId().equals(cerraduraId)) {
-            return ResponseEntity.status(403).body(Map.of("error", "Token no válido para esta cerradura"));
+        // Consumir un uso y abrir la cerradura de forma atómica
+        CanjeResult resultado = tokenService.canjearToken(codigo, cerraduraId);
+        if (!resultado.isExito()) {
+            return rechazar(usuarioId, sesion, cerraduraId, ip, resultado.getEstado(), resultado.getMensaje());
         }
+        auditoriaAperturaService.registrar(usuarioId, cerraduraId, true, resultado.getMensaje());
 
-        // Verificar si el token es válido (fecha y usos)
-        LocalDateTime ahora = LocalDateTime.now();
-        if (!token.esValido(ahora)) {
-            return ResponseEntity.status(403).body(Map.of("error", "Token expirado o sin usos disponibles"));
+        Map<String, Object> respuesta = new HashMap<>();
+        respuesta.put("mensaje", resultado.getMensaje());
+        if (resultado.getUsosRestantes() != null) {
+            respuesta.put("usosRestantes", resultado.getUsosRestantes());
         }
+        return ResponseEntity.ok(respuesta);
+    }
 
-        // Actualizar uso del token
-        token.registrarUso();
-        tokenRepository.save(token);
-
-        // Obtener la cerradura y cambiar su estado
-        Cerradura cerradura = token.getCerradura();
-        cerradura.setBloqueada(false);
-        cerraduraRepository.save(cerradura);
-
-        return ResponseEntity.ok(Map.of("mensaje", "Puerta abierta correctamente"));
+    private ResponseEntity<?> rechazar(Long usuarioId, Sesion sesion, Long cerraduraId, String ip, int estado,
+            String mensaje) {
+        auditoriaAperturaService.registrar(usuarioId, cerraduraId, false, mensaje);
+        // Sin sesión el ID lo pone el cliente y no se cuenta contra ese usuario
+        detectorFuerzaBrutaService.registrarFallo(sesion != null ? usuarioId : null, cerraduraId, ip, mensaje);
+        return ResponseEntity.status(estado).body(Map.of("error", mensaje));
     }
 
     // Listar todos los tokens (debug o administración)
     @GetMapping
-    public Iterable<Token> getAll() {
-        return tokenRepository.findAll();
+    public ResponseEntity<?> getAll(@RequestParam(required = false) String campos,
+            @RequestParam(required = false) Long despuesDe,
+            @RequestParam(defaultValue = "" + ListadoService.LIMITE_POR_DEFECTO) int limite) {
+        return Paginacion.listar(listadoService, LISTADO, campos, despuesDe, limite);
+    }
+
+    // Buscar un token por su código, con los mismos campos que el listado
+    @GetMapping("/codigo/{codigo}")
+    public ResponseEntity<?> getByCodigo(@PathVariable String codigo,
+            @RequestParam(required = false) String campos) {
+        return Paginacion.buscar(listadoService, LISTADO, campos, "codigo", codigo);
     }
 
         @PutMapping("/{id}")
@@ -2,18 +2,28 @@ package es.upm.dit.isst.ioh.controller;
 
 import es.upm.dit.isst.ioh.model.Huesped;
 import es.upm.dit.isst.ioh.model.Propietario;
+import es.upm.dit.isst.ioh.model.Rol;
 import es.upm.dit.isst.ioh.model.Usuario;
 import es.upm.dit.isst.ioh.repository.HuespedRepository;
 import es.upm.dit.isst.ioh.repository.PropietarioRepository;
 import es.upm.dit.isst.ioh.repository.UsuarioRepository;
+import es.upm.dit.isst.ioh.service.CredencialesService.CredencialesOcupadasException;
+import es.upm.dit.isst.ioh.service.ListadoService;
+import es.upm.dit.isst.ioh.service.ListadoService.Listado;
+import es.upm.dit.isst.ioh.service.RolUsuarioService;
+import es.upm.dit.isst.ioh.service.SesionService;
+import es.upm.dit.isst.ioh.service.SesionService.Sesion;
 import es.upm.dit.isst.ioh.service.UsuarioService;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/usuarios")
@@ -22,17 +32,31 @@ public class UsuarioController {
 
     private final UsuarioRepository usuarioRepository;
     private final UsuarioService usuarioService;
+    private final SesionService sesionService;
+    private final RolUsuarioService rolUsuarioService;
+    private final ListadoService listadoService;
+
+    private static final Listado LISTADO = new Listado("Usuario", Set.of(),
+            List.of("id", "nombre", "email", "telefono"));
 
     public UsuarioController(UsuarioRepository usuarioRepository,
-            UsuarioService usuarioService) {
+            UsuarioService usuarioService,
+            SesionService sesionService,
+            RolUsuarioService rolUsuarioService,
+            ListadoService listadoService) {
         this.usuarioRepository = usuarioRepository;
         this.usuarioService = usuarioService;
+        this.sesionService = sesionService;
+        this.rolUsuarioService = rolUsuarioService;
+        this.listadoService = listadoService;
     }
 
     // Obtener todos los usuarios
     @GetMapping
-    public List<Usuario> getAll() {
-        return (List<Usuario>) usuarioRepository.findAll();
+    public ResponseEntity<?> getAll(@RequestParam(required = false) String campos,
+            @RequestParam(required = false) Long despuesDe,
+            @RequestParam(defaultValue = "" + ListadoService.LIMITE_POR_DEFECTO) int limite) {
+        return Paginacion.listar(listadoService, LISTADO, campos, despuesDe, limite);
     }
 
     // Registrar un nuevo huésped
@@ -47,6 +71,8 @@ public class UsuarioController {
                     "tipo", "huesped"));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(409).body(Map.of("error", e.getMessage())); // 409 Conflict
+        } catch (CredencialesOcupadasException e) {
+            return ocupado(e);
         }
     }
 
@@ -62,6 +88,8 @@ public class UsuarioController {
                     "tipo", "propietario"));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(409).body(Map.of("error", e.getMessage())); // 409 Conflict
+        } catch (CredencialesOcupadasException e) {
+            return ocupado(e);
         }
     }
 
@@ -73,7 +101,7 @@ public class UsuarioController {
                 .orElse(ResponseEntity.notFound().build());
     }
     
-    // Endpoint para login
+    // Endpoint para login: devuelve también el token de sesión para la cabecera Authorization
     @PostMapping("/login")
     public ResponseEntity<?> login(@RequestBody Map<String, String> credenciales) {
         String email = credenciales.get("email");
@@ -83,15 +111,33 @@ public class UsuarioController {
             return ResponseEntity.badRequest().body(Map.of("error", "Email y contraseña son requeridos"));
         }
         
-        return usuarioService.autenticarUsuario(email, contrasena)
+        Optional<Usuario> autenticado;
+        try {
+            autenticado = usuarioService.autenticarUsuario(email, contrasena);
+        } catch (CredencialesOcupadasException e) {
+            return ocupado(e);
+        }
+        return autenticado
                 .map(usuario -> {
-                    String tipo = usuario instanceof Propietario ? "propietario" : "huesped";
+                    Rol rol = Rol.de(usuario);
+                    rolUsuarioService.recordar(usuario.getId(), rol);
+                    Sesion sesion = sesionService.emitir(usuario.getId(), rol);
+                    String tipo = rol == Rol.PROPIETARIO ? "propietario" : "huesped";
                     return ResponseEntity.ok(Map.of(
                             "id", usuario.getId(),
                             "nombre", usuario.getNombre(),
                             "email", usuario.getEmail(),
-                            "tipo", tipo));
+                            "tipo", tipo,
+                            "token", sesion.token(),
+                            "expira", sesion.expira()));
                 })
                 .orElse(ResponseEntity.status(401).body(Map.of("error", "Credenciales inválidas")));
     }
+
+    // El pool de contraseñas está saturado: el cliente puede reintentar enseguida
+    static ResponseEntity<?> ocupado(CredencialesOcupadasException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", e.getMessage()));
+    }
 }
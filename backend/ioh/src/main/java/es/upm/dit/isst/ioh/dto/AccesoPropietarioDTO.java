@@ -0,0 +1,149 @@
+package es.upm.dit.isst.ioh.dto;
+
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Vista plana de un acceso para el listado de un propietario, con los datos
+ * del huésped, la cerradura y la propiedad obtenidos en la misma consulta.
+ */
+public class AccesoPropietarioDTO {
+    private Long id;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime inicio;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime fin;
+
+    private boolean activo;
+    private Long huespedId;
+    private String huespedNombre;
+    private String huespedEmail;
+    private Long cerraduraId;
+    private String cerraduraModelo;
+    private Long propiedadId;
+    private String propiedadNombre;
+    private String propiedadDireccion;
+
+    // Constructor vacío requerido para Jackson
+    public AccesoPropietarioDTO() {
+    }
+
+    // Constructor usado por la consulta JPQL
+    public AccesoPropietarioDTO(Long id, LocalDateTime inicio, LocalDateTime fin, Long huespedId,
+            String huespedNombre, String huespedEmail, Long cerraduraId, String cerraduraModelo, Long propiedadId,
+            String propiedadNombre, String propiedadDireccion) {
+        this.id = id;
+        this.inicio = inicio;
+        this.fin = fin;
+        this.huespedId = huespedId;
+        this.huespedNombre = huespedNombre;
+        this.huespedEmail = huespedEmail;
+        this.cerraduraId = cerraduraId;
+        this.cerraduraModelo = cerraduraModelo;
+        this.propiedadId = propiedadId;
+        this.propiedadNombre = propiedadNombre;
+        this.propiedadDireccion = propiedadDireccion;
+        LocalDateTime ahora = LocalDateTime.now();
+        this.activo = inicio != null && fin != null && inicio.isBefore(ahora) && fin.isAfter(ahora);
+    }
+
+    // Getters y setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public LocalDateTime getInicio() {
+        return inicio;
+    }
+
+    public void setInicio(LocalDateTime inicio) {
+        this.inicio = inicio;
+    }
+
+    public LocalDateTime getFin() {
+        return fin;
+    }
+
+    public void setFin(LocalDateTime fin) {
+        this.fin = fin;
+    }
+
+    public boolean isActivo() {
+        return activo;
+    }
+
+    public void setActivo(boolean activo) {
+        this.activo = activo;
+    }
+
+    public Long getHuespedId() {
+        return huespedId;
+    }
+
+    public void setHuespedId(Long huespedId) {
+        this.huespedId = huespedId;
+    }
+
+    public String getHuespedNombre() {
+        return huespedNombre;
+    }
+
+    public void setHuespedNombre(String huespedNombre) {
+        this.huespedNombre = huespedNombre;
+    }
+
+    public String getHuespedEmail() {
+        return huespedEmail;
+    }
+
+    public void setHuespedEmail(String huespedEmail) {
+        this.huespedEmail = huespedEmail;
+    }
+
+    public Long getCerraduraId() {
+        return cerraduraId;
+    }
+
+    public void setCerraduraId(Long cerraduraId) {
+        this.cerraduraId = cerraduraId;
+    }
+
+    public String getCerraduraModelo() {
+        return cerraduraModelo;
+    }
+
+    public void setCerraduraModelo(String cerraduraModelo) {
+        this.cerraduraModelo = cerraduraModelo;
+    }
+
+    public Long getPropiedadId() {
+        return propiedadId;
+    }
+
+    public void setPropiedadId(Long propiedadId) {
+        this.propiedadId = propiedadId;
+    }
+
+    public String getPropiedadNombre() {
+        return propiedadNombre;
+    }
+
+    public void setPropiedadNombre(String propiedadNombre) {
+        this.propiedadNombre = propiedadNombre;
+    }
+
+    public String getPropiedadDireccion() {
+        return propiedadDireccion;
+    }
+
+    public void setPropiedadDireccion(String propiedadDireccion) {
+        this.propiedadDireccion = propiedadDireccion;
+    }
+}
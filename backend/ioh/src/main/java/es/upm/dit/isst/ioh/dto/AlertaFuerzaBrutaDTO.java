@@ -0,0 +1,119 @@
+package es.upm.dit.isst.ioh.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Aviso de que una cerradura, un usuario o una dirección IP ha superado el
+ * número de intentos fallidos permitido y ha quedado bloqueado.
+ */
+public class AlertaFuerzaBrutaDTO {
+    private Long id;
+    private LocalDateTime timestamp;
+    private String dimension;
+    private String valor;
+    private int fallos;
+    private LocalDateTime bloqueadoHasta;
+    private String motivo;
+    private Long usuarioId;
+    private Long cerraduraId;
+    private String ip;
+
+    // Constructor vacío requerido para Jackson
+    public AlertaFuerzaBrutaDTO() {
+    }
+
+    public AlertaFuerzaBrutaDTO(Long id, LocalDateTime timestamp, String dimension, String valor, int fallos,
+            LocalDateTime bloqueadoHasta, String motivo, Long usuarioId, Long cerraduraId, String ip) {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.dimension = dimension;
+        this.valor = valor;
+        this.fallos = fallos;
+        this.bloqueadoHasta = bloqueadoHasta;
+        this.motivo = motivo;
+        this.usuarioId = usuarioId;
+        this.cerraduraId = cerraduraId;
+        this.ip = ip;
+    }
+
+    // Getters y setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(LocalDateTime timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getDimension() {
+        return dimension;
+    }
+
+    public void setDimension(String dimension) {
+        this.dimension = dimension;
+    }
+
+    public String getValor() {
+        return valor;
+    }
+
+    public void setValor(String valor) {
+        this.valor = valor;
+    }
+
+    public int getFallos() {
+        return fallos;
+    }
+
+    public void setFallos(int fallos) {
+        this.fallos = fallos;
+    }
+
+    public LocalDateTime getBloqueadoHasta() {
+        return bloqueadoHasta;
+    }
+
+    public void setBloqueadoHasta(LocalDateTime bloqueadoHasta) {
+        this.bloqueadoHasta = bloqueadoHasta;
+    }
+
+    public String getMotivo() {
+        return motivo;
+    }
+
+    public void setMotivo(String motivo) {
+        this.motivo = motivo;
+    }
+
+    public Long getUsuarioId() {
+        return usuarioId;
+    }
+
+    public void setUsuarioId(Long usuarioId) {
+        this.usuarioId = usuarioId;
+    }
+
+    public Long getCerraduraId() {
+        return cerraduraId;
+    }
+
+    public void setCerraduraId(Long cerraduraId) {
+        this.cerraduraId = cerraduraId;
+    }
+
+    public String getIp() {
+        return ip;
+    }
+
+    public void setIp(String ip) {
+        this.ip = ip;
+    }
+}
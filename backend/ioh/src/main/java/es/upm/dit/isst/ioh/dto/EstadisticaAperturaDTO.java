@@ -0,0 +1,58 @@
+package es.upm.dit.isst.ioh.dto;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Intentos de apertura agregados en un intervalo (minuto, hora o día).
+ */
+public class EstadisticaAperturaDTO {
+    private LocalDateTime inicio;
+    private long exitosos;
+    private long fallidos;
+    private Map<String, Long> porMotivo;
+
+    // Constructor vacío requerido para Jackson
+    public EstadisticaAperturaDTO() {
+    }
+
+    public EstadisticaAperturaDTO(LocalDateTime inicio, long exitosos, long fallidos, Map<String, Long> porMotivo) {
+        this.inicio = inicio;
+        this.exitosos = exitosos;
+        this.fallidos = fallidos;
+        this.porMotivo = porMotivo;
+    }
+
+    // Getters y setters
+    public LocalDateTime getInicio() {
+        return inicio;
+    }
+
+    public void setInicio(LocalDateTime inicio) {
+        this.inicio = inicio;
+    }
+
+    public long getExitosos() {
+        return exitosos;
+    }
+
+    public void setExitosos(long exitosos) {
+        this.exitosos = exitosos;
+    }
+
+    public long getFallidos() {
+        return fallidos;
+    }
+
+    public void setFallidos(long fallidos) {
+        this.fallidos = fallidos;
+    }
+
+    public Map<String, Long> getPorMotivo() {
+        return porMotivo;
+    }
+
+    public void setPorMotivo(Map<String, Long> porMotivo) {
+        this.porMotivo = porMotivo;
+    }
+}
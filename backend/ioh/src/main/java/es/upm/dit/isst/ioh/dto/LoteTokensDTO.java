@@ -0,0 +1,64 @@
+package es.upm.dit.isst.ioh.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Petición de emisión masiva de tokens: se generan "cantidad" tokens para cada
+ * una de las cerraduras indicadas.
+ */
+public class LoteTokensDTO {
+    private List<Long> cerraduraIds;
+    private int cantidad;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime fechaExpiracion;
+
+    private int usosMaximos;
+
+    // Constructor vacío requerido para Jackson
+    public LoteTokensDTO() {
+    }
+
+    public LoteTokensDTO(List<Long> cerraduraIds, int cantidad, LocalDateTime fechaExpiracion, int usosMaximos) {
+        this.cerraduraIds = cerraduraIds;
+        this.cantidad = cantidad;
+        this.fechaExpiracion = fechaExpiracion;
+        this.usosMaximos = usosMaximos;
+    }
+
+    // Getters y setters
+    public List<Long> getCerraduraIds() {
+        return cerraduraIds;
+    }
+
+    public void setCerraduraIds(List<Long> cerraduraIds) {
+        this.cerraduraIds = cerraduraIds;
+    }
+
+    public int getCantidad() {
+        return cantidad;
+    }
+
+    public void setCantidad(int cantidad) {
+        this.cantidad = cantidad;
+    }
+
+    public LocalDateTime getFechaExpiracion() {
+        return fechaExpiracion;
+    }
+
+    public void setFechaExpiracion(LocalDateTime fechaExpiracion) {
+        this.fechaExpiracion = fechaExpiracion;
+    }
+
+    public int getUsosMaximos() {
+        return usosMaximos;
+    }
+
+    public void setUsosMaximos(int usosMaximos) {
+        this.usosMaximos = usosMaximos;
+    }
+}
@@ -24,6 +24,11 @@ public class PropiedadDTO {
         this.numeroCerraduras = numeroCerraduras;
     }
 
+    // Constructor usado por la consulta agrupada (COUNT devuelve long)
+    public PropiedadDTO(Long id, String nombre, String direccion, Long propietarioId, long numeroCerraduras) {
+        this(id, nombre, direccion, propietarioId, (int) numeroCerraduras);
+    }
+
     // Getters y setters
     public Long getId() {
         return id;
@@ -0,0 +1,80 @@
+package es.upm.dit.isst.ioh.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Vista plana de un intento de apertura, con los IDs del usuario y la
+ * cerradura en lugar de las entidades completas.
+ */
+public class RegistroAperturaDTO {
+    private Long id;
+    private LocalDateTime timestamp;
+    private boolean exitoso;
+    private String motivo;
+    private Long usuarioId;
+    private Long cerraduraId;
+
+    // Constructor vacío requerido para Jackson
+    public RegistroAperturaDTO() {
+    }
+
+    // Constructor usado por las consultas
+    public RegistroAperturaDTO(Long id, LocalDateTime timestamp, boolean exitoso, String motivo, Long usuarioId,
+            Long cerraduraId) {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.exitoso = exitoso;
+        this.motivo = motivo;
+        this.usuarioId = usuarioId;
+        this.cerraduraId = cerraduraId;
+    }
+
+    // Getters y setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(LocalDateTime timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public boolean isExitoso() {
+        return exitoso;
+    }
+
+    public void setExitoso(boolean exitoso) {
+        this.exitoso = exitoso;
+    }
+
+    public String getMotivo() {
+        return motivo;
+    }
+
+    public void setMotivo(String motivo) {
+        this.motivo = motivo;
+    }
+
+    public Long getUsuarioId() {
+        return usuarioId;
+    }
+
+    public void setUsuarioId(Long usuarioId) {
+        this.usuarioId = usuarioId;
+    }
+
+    public Long getCerraduraId() {
+        return cerraduraId;
+    }
+
+    public void setCerraduraId(Long cerraduraId) {
+        this.cerraduraId = cerraduraId;
+    }
+}
@@ -0,0 +1,137 @@
+package es.upm.dit.isst.ioh.dto;
+
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Vista plana de un token para el listado de un propietario, con los datos de
+ * su cerradura y su propiedad obtenidos en la misma consulta.
+ */
+public class TokenPropietarioDTO {
+    private Long id;
+    private String codigo;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime fechaExpiracion;
+
+    private int usosMaximos;
+    private int usosActuales;
+    private boolean activo;
+    private Long cerraduraId;
+    private String cerraduraModelo;
+    private Long propiedadId;
+    private String propiedadNombre;
+    private String propiedadDireccion;
+
+    // Constructor vacío requerido para Jackson
+    public TokenPropietarioDTO() {
+    }
+
+    // Constructor usado por la consulta JPQL
+    public TokenPropietarioDTO(Long id, String codigo, LocalDateTime fechaExpiracion, int usosMaximos,
+            int usosActuales, Long cerraduraId, String cerraduraModelo, Long propiedadId, String propiedadNombre,
+            String propiedadDireccion) {
+        this.id = id;
+        this.codigo = codigo;
+        this.fechaExpiracion = fechaExpiracion;
+        this.usosMaximos = usosMaximos;
+        this.usosActuales = usosActuales;
+        this.cerraduraId = cerraduraId;
+        this.cerraduraModelo = cerraduraModelo;
+        this.propiedadId = propiedadId;
+        this.propiedadNombre = propiedadNombre;
+        this.propiedadDireccion = propiedadDireccion;
+        this.activo = (fechaExpiracion == null || LocalDateTime.now().isBefore(fechaExpiracion))
+                && (usosMaximos == 0 || usosActuales < usosMaximos);
+    }
+
+    // Getters y setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getCodigo() {
+        return codigo;
+    }
+
+    public void setCodigo(String codigo) {
+        this.codigo = codigo;
+    }
+
+    public LocalDateTime getFechaExpiracion() {
+        return fechaExpiracion;
+    }
+
+    public void setFechaExpiracion(LocalDateTime fechaExpiracion) {
+        this.fechaExpiracion = fechaExpiracion;
+    }
+
+    public int getUsosMaximos() {
+        return usosMaximos;
+    }
+
+    public void setUsosMaximos(int usosMaximos) {
+        this.usosMaximos = usosMaximos;
+    }
+
+    public int getUsosActuales() {
+        return usosActuales;
+    }
+
+    public void setUsosActuales(int usosActuales) {
+        this.usosActuales = usosActuales;
+    }
+
+    public boolean isActivo() {
+        return activo;
+    }
+
+    public void setActivo(boolean activo) {
+        this.activo = activo;
+    }
+
+    public Long getCerraduraId() {
+        return cerraduraId;
+    }
+
+    public void setCerraduraId(Long cerraduraId) {
+        this.cerraduraId = cerraduraId;
+    }
+
+    public String getCerraduraModelo() {
+        return cerraduraModelo;
+    }
+
+    public void setCerraduraModelo(String cerraduraModelo) {
+        this.cerraduraModelo = cerraduraModelo;
+    }
+
+    public Long getPropiedadId() {
+        return propiedadId;
+    }
+
+    public void setPropiedadId(Long propiedadId) {
+        this.propiedadId = propiedadId;
+    }
+
+    public String getPropiedadNombre() {
+        return propiedadNombre;
+    }
+
+    public void setPropiedadNombre(String propiedadNombre) {
+        this.propiedadNombre = propiedadNombre;
+    }
+
+    public String getPropiedadDireccion() {
+        return propiedadDireccion;
+    }
+
+    public void setPropiedadDireccion(String propiedadDireccion) {
+        this.propiedadDireccion = propiedadDireccion;
+    }
+}
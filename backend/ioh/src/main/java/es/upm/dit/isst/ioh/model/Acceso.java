@@ -1,18 +1,27 @@
 package es.upm.dit.isst.ioh.model;
 
+import es.upm.dit.isst.ioh.service.IndiceAccesoListener;
 import jakarta.persistence.*;
 
 @Entity
+@EntityListeners(IndiceAccesoListener.class)
+// Listados de accesos: huésped y cerradura, que es lo que se serializa
+@NamedEntityGraph(name = "Acceso.huespedYCerradura", attributeNodes = {
+        @NamedAttributeNode("huesped"), @NamedAttributeNode("cerradura") })
+// Cerraduras accesibles de un huésped: cerradura y el nombre de su propiedad
+@NamedEntityGraph(name = "Acceso.cerraduraYPropiedad",
+        attributeNodes = @NamedAttributeNode(value = "cerradura", subgraph = "cerradura"),
+        subgraphs = @NamedSubgraph(name = "cerradura", attributeNodes = @NamedAttributeNode("propiedad")))
 public class Acceso {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Huesped huesped;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Cerradura cerradura;
 
     @Embedded
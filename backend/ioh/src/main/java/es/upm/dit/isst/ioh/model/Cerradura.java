@@ -2,13 +2,22 @@ package es.upm.dit.isst.ioh.model;
 
 import java.util.Objects;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotEmpty;
 
+import es.upm.dit.isst.ioh.config.CacheSegundoNivelConfig;
+import es.upm.dit.isst.ioh.service.CerraduraListener;
+
 @Entity
+@EntityListeners(CerraduraListener.class)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheSegundoNivelConfig.CERRADURAS)
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Cerradura {
     @Id
@@ -20,7 +29,7 @@ public class Cerradura {
 
     private boolean bloqueada = true;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JsonBackReference
     @JsonIgnoreProperties("cerraduras")
     private Propiedad propiedad;
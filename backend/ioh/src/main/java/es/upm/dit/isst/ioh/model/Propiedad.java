@@ -2,6 +2,9 @@ package es.upm.dit.isst.ioh.model;
 
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotEmpty;
+import es.upm.dit.isst.ioh.config.CacheSegundoNivelConfig;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
@@ -9,7 +12,11 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import java.util.List;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheSegundoNivelConfig.PROPIEDADES)
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
+// Listado de propiedades: con sus cerraduras, que se serializan
+@NamedEntityGraph(name = "Propiedad.cerraduras", attributeNodes = @NamedAttributeNode("cerraduras"))
 public class Propiedad {
 
     @Id
@@ -22,7 +29,7 @@ public class Propiedad {
     @NotEmpty
     private String nombre;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JsonBackReference
     private Propietario propietario;
 
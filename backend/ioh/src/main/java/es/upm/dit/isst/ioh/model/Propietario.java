@@ -6,10 +6,14 @@ import com.fasterxml.jackson.annotation.JsonManagedReference;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import jakarta.persistence.Entity;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
 import jakarta.persistence.OneToMany;
 
 @Entity
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
+// Listado de propietarios: con sus propiedades; las cerraduras de éstas se cargan por lotes
+@NamedEntityGraph(name = "Propietario.propiedades", attributeNodes = @NamedAttributeNode("propiedades"))
 public class Propietario extends Usuario {
     
     @OneToMany(mappedBy = "propietario")
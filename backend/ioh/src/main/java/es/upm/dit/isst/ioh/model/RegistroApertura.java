@@ -5,6 +5,13 @@ import java.time.LocalDateTime;
 import jakarta.persistence.*;
 
 @Entity
+@Table(indexes = {
+        // Listados por cerradura, usuario o resultado en un rango de fechas, paginados por (timestamp, id)
+        @Index(name = "idx_registro_cerradura_timestamp", columnList = "cerradura_id, timestamp"),
+        @Index(name = "idx_registro_usuario_timestamp", columnList = "usuario_id, timestamp"),
+        @Index(name = "idx_registro_exitoso_timestamp", columnList = "exitoso, timestamp"),
+        @Index(name = "idx_registro_timestamp", columnList = "timestamp")
+})
 public class RegistroApertura {
 
     @Id
@@ -17,10 +24,10 @@ public class RegistroApertura {
 
     private String motivo; // Ej: "Acceso permitido", "Sin permiso", "Fuera de horario", etc.
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Usuario usuario;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Cerradura cerradura;
 
     // Constructor vacío
@@ -0,0 +1,12 @@
+package es.upm.dit.isst.ioh.model;
+
+/**
+ * Tipo de usuario, para autorizar sin cargar la entidad completa
+ */
+public enum Rol {
+    PROPIETARIO, HUESPED;
+
+    public static Rol de(Usuario usuario) {
+        return usuario instanceof Propietario ? PROPIETARIO : HUESPED;
+    }
+}
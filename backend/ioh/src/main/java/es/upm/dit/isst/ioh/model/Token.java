@@ -1,11 +1,15 @@
 package es.upm.dit.isst.ioh.model;
 
+import es.upm.dit.isst.ioh.service.TokenListener;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotEmpty;
 
 import java.time.LocalDateTime;
 
 @Entity
+@EntityListeners(TokenListener.class)
+// Listado de tokens: con su cerradura, sin la propiedad ni el propietario
+@NamedEntityGraph(name = "Token.cerradura", attributeNodes = @NamedAttributeNode("cerradura"))
 public class Token {
 
     @Id
@@ -13,6 +17,7 @@ public class Token {
     private Long id;
 
     @NotEmpty
+    @Column(unique = true)
     private String codigo;
 
     private LocalDateTime fechaExpiracion;
@@ -21,7 +26,10 @@ public class Token {
 
     private int usosActuales;
 
-    @ManyToOne
+    // Cuándo se agotaron los usos, para conservar el token un tiempo antes de borrarlo
+    private LocalDateTime fechaAgotado;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     private Cerradura cerradura;
 
     public Token() {
@@ -90,4 +98,16 @@ public class Token {
     public void registrarUso() {
         this.usosActuales++;
     }
+
+    @PrePersist
+    @PreUpdate
+    void marcarAgotado() {
+        if (usosMaximos > 0 && usosActuales >= usosMaximos) {
+            if (fechaAgotado == null) {
+                fechaAgotado = LocalDateTime.now();
+            }
+        } else {
+            fechaAgotado = null;
+        }
+    }
 }
@@ -3,10 +3,18 @@ package es.upm.dit.isst.ioh.model;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotEmpty;
+import es.upm.dit.isst.ioh.config.CacheSegundoNivelConfig;
+import es.upm.dit.isst.ioh.service.RolUsuarioListener;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 @Entity
+@EntityListeners(RolUsuarioListener.class)
 @Inheritance(strategy = InheritanceType.JOINED)
+// La región es de toda la jerarquía: Hibernate solo admite la caché en la entidad raíz
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheSegundoNivelConfig.USUARIOS)
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler", "password", "contrasena"})
 public class Usuario {
 
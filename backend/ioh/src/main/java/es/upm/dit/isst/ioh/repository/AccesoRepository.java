@@ -1,19 +1,70 @@
 package es.upm.dit.isst.ioh.repository;
 
+import es.upm.dit.isst.ioh.dto.AccesoPropietarioDTO;
 import es.upm.dit.isst.ioh.model.Acceso;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
 import java.util.List;
 
 public interface AccesoRepository extends CrudRepository<Acceso, Long> {
 
+    @Override
+    @EntityGraph("Acceso.huespedYCerradura")
+    Iterable<Acceso> findAll();
+
+    @EntityGraph("Acceso.huespedYCerradura")
     List<Acceso> findByHuespedId(Long huespedId);
 
+    @EntityGraph("Acceso.huespedYCerradura")
     List<Acceso> findByCerraduraId(Long cerraduraId);
 
+    @EntityGraph("Acceso.cerraduraYPropiedad")
     List<Acceso> findByHuespedIdAndHorario_InicioBeforeAndHorario_FinAfter(
             Long huespedId,
             LocalDateTime ahora1,
             LocalDateTime ahora2);
+
+    // Solo los identificadores y el horario, sin cargar huésped ni cerradura
+    @Query("SELECT a.id AS id, a.huesped.id AS huespedId, a.cerradura.id AS cerraduraId, "
+            + "a.horario.inicio AS inicio, a.horario.fin AS fin "
+            + "FROM Acceso a WHERE a.horario.fin > :desde")
+    List<IntervaloAcceso> findIntervalosVigentes(@Param("desde") LocalDateTime desde);
+
+    @Query("SELECT a.id AS id, a.huesped.id AS huespedId, a.cerradura.id AS cerraduraId, "
+            + "a.horario.inicio AS inicio, a.horario.fin AS fin "
+            + "FROM Acceso a WHERE a.huesped.id = :huespedId AND a.cerradura.id = :cerraduraId "
+            + "AND a.horario.fin > :desde")
+    List<IntervaloAcceso> findIntervalosVigentes(@Param("huespedId") Long huespedId,
+            @Param("cerraduraId") Long cerraduraId, @Param("desde") LocalDateTime desde);
+
+    // Accesos a todas las cerraduras de un propietario, paginados por id (keyset)
+    @Query("SELECT new es.upm.dit.isst.ioh.dto.AccesoPropietarioDTO(a.id, a.horario.inicio, a.horario.fin, "
+            + "h.id, h.nombre, h.email, c.id, c.modelo, p.id, p.nombre, p.direccion) "
+            + "FROM Acceso a JOIN a.huesped h JOIN a.cerradura c JOIN c.propiedad p "
+            + "WHERE p.propietario.id = :propietarioId AND a.id > :despuesDe "
+            + "AND (:ventana IS NULL "
+            + "OR (:ventana = 'actuales' AND a.horario.inicio < :ahora AND a.horario.fin > :ahora) "
+            + "OR (:ventana = 'proximos' AND a.horario.inicio >= :ahora) "
+            + "OR (:ventana = 'pasados' AND a.horario.fin <= :ahora)) "
+            + "ORDER BY a.id")
+    List<AccesoPropietarioDTO> findByPropietario(@Param("propietarioId") Long propietarioId,
+            @Param("ventana") String ventana, @Param("ahora") LocalDateTime ahora,
+            @Param("despuesDe") Long despuesDe, Pageable pageable);
+
+    interface IntervaloAcceso {
+        Long getId();
+
+        Long getHuespedId();
+
+        Long getCerraduraId();
+
+        LocalDateTime getInicio();
+
+        LocalDateTime getFin();
+    }
 }
@@ -1,9 +1,67 @@
 package es.upm.dit.isst.ioh.repository;
 
+import es.upm.dit.isst.ioh.config.CacheSegundoNivelConfig;
 import es.upm.dit.isst.ioh.model.Cerradura;
+import jakarta.persistence.QueryHint;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface CerraduraRepository extends CrudRepository<Cerradura, Long> {
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = CacheSegundoNivelConfig.CERRADURAS_POR_PROPIEDAD) })
     List<Cerradura> findByPropiedadId(Long propiedadId);
+
+    @Query("SELECT c.id FROM Cerradura c WHERE c.id IN :ids")
+    List<Long> findIdsExistentes(@Param("ids") Collection<Long> ids);
+
+    // Datos de la cerradura, su propiedad y su propietario en un único join
+    @Query("SELECT c.id AS cerraduraId, c.modelo AS modelo, p.id AS propiedadId, p.nombre AS propiedadNombre, "
+            + "p.direccion AS propiedadDireccion, o.id AS propietarioId, o.nombre AS propietarioNombre "
+            + "FROM Cerradura c LEFT JOIN c.propiedad p LEFT JOIN p.propietario o WHERE c.id = :id")
+    Optional<InfoCerradura> findInfoById(@Param("id") Long id);
+
+    @Query("SELECT c.id AS cerraduraId, c.modelo AS modelo, p.id AS propiedadId, p.nombre AS propiedadNombre, "
+            + "p.direccion AS propiedadDireccion, o.id AS propietarioId, o.nombre AS propietarioNombre "
+            + "FROM Cerradura c LEFT JOIN c.propiedad p LEFT JOIN p.propietario o WHERE c.id IN :ids")
+    List<InfoCerradura> findInfoByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT c.id AS cerraduraId, c.propiedad.id AS propiedadId FROM Cerradura c WHERE c.id IN :ids")
+    List<CerraduraPropiedad> findPropiedadesByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT c.id AS cerraduraId, c.propiedad.id AS propiedadId FROM Cerradura c")
+    List<CerraduraPropiedad> findPropiedades();
+
+    @Query("SELECT c.id FROM Cerradura c WHERE c.propiedad.propietario.id = :propietarioId")
+    List<Long> findIdsByPropietarioId(@Param("propietarioId") Long propietarioId);
+
+    interface CerraduraPropiedad {
+        Long getCerraduraId();
+
+        Long getPropiedadId();
+    }
+
+    interface InfoCerradura {
+        Long getCerraduraId();
+
+        String getModelo();
+
+        Long getPropiedadId();
+
+        String getPropiedadNombre();
+
+        String getPropiedadDireccion();
+
+        Long getPropietarioId();
+
+        String getPropietarioNombre();
+    }
 }
@@ -1,11 +1,16 @@
 package es.upm.dit.isst.ioh.repository;
 
 import es.upm.dit.isst.ioh.model.Huesped;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface HuespedRepository extends CrudRepository<Huesped, Long> {
 
     Optional<Huesped> findByEmail(String email);
+
+    @Query("SELECT h.id FROM Huesped h")
+    List<Long> findAllIds();
 }
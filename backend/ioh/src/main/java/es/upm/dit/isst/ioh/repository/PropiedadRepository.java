@@ -1,11 +1,35 @@
 package es.upm.dit.isst.ioh.repository;
 
+import es.upm.dit.isst.ioh.config.CacheSegundoNivelConfig;
+import es.upm.dit.isst.ioh.dto.PropiedadDTO;
 import es.upm.dit.isst.ioh.model.Propiedad;
+import jakarta.persistence.QueryHint;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface PropiedadRepository extends CrudRepository<Propiedad, Long> {
 
+    @Override
+    @EntityGraph("Propiedad.cerraduras")
+    Iterable<Propiedad> findAll();
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = CacheSegundoNivelConfig.PROPIEDADES_POR_PROPIETARIO) })
     List<Propiedad> findByPropietarioId(Long propietarioId);
+
+    // Propiedades de un propietario con su número de cerraduras, en una sola consulta agrupada
+    @Query("SELECT new es.upm.dit.isst.ioh.dto.PropiedadDTO(p.id, p.nombre, p.direccion, p.propietario.id, COUNT(c.id)) "
+            + "FROM Propiedad p LEFT JOIN p.cerraduras c "
+            + "WHERE p.propietario.id = :propietarioId "
+            + "GROUP BY p.id, p.nombre, p.direccion, p.propietario.id ORDER BY p.id")
+    Stream<PropiedadDTO> streamResumenByPropietarioId(@Param("propietarioId") Long propietarioId);
 }
@@ -1,11 +1,21 @@
 package es.upm.dit.isst.ioh.repository;
 
 import es.upm.dit.isst.ioh.model.Propietario;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface PropietarioRepository extends CrudRepository<Propietario, Long> {
 
     Optional<Propietario> findByEmail(String email);
+
+    @Override
+    @EntityGraph("Propietario.propiedades")
+    Iterable<Propietario> findAll();
+
+    @Query("SELECT p.id FROM Propietario p")
+    List<Long> findAllIds();
 }
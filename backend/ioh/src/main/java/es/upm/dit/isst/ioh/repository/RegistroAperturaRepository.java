@@ -1,15 +1,45 @@
 package es.upm.dit.isst.ioh.repository;
 
+import es.upm.dit.isst.ioh.dto.RegistroAperturaDTO;
 import es.upm.dit.isst.ioh.model.RegistroApertura;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 public interface RegistroAperturaRepository extends JpaRepository<RegistroApertura, Long> {
 
-    List<RegistroApertura> findByCerraduraId(Long cerraduraId);
+    // Proyección plana, sin cargar el usuario ni la cerradura
+    String SELECT_DTO = "SELECT new es.upm.dit.isst.ioh.dto.RegistroAperturaDTO(r.id, r.timestamp, r.exitoso, "
+            + "r.motivo, r.usuario.id, r.cerradura.id) FROM RegistroApertura r ";
 
-    List<RegistroApertura> findByUsuarioId(Long usuarioId);
+    // Keyset sobre (timestamp, id): registros posteriores al cursor y anteriores a :hasta
+    String DESPUES_DEL_CURSOR = "r.timestamp >= :cursorFecha AND r.timestamp < :hasta "
+            + "AND (r.timestamp > :cursorFecha OR r.id > :despuesDe) ORDER BY r.timestamp, r.id";
 
-    List<RegistroApertura> findByExitoso(boolean exitoso);
-}
\ No newline at end of file
+    @Query("SELECT r.timestamp FROM RegistroApertura r WHERE r.id = :id")
+    Optional<LocalDateTime> findTimestampById(@Param("id") Long id);
+
+    @Query(SELECT_DTO + "WHERE " + DESPUES_DEL_CURSOR)
+    List<RegistroAperturaDTO> findPagina(@Param("cursorFecha") LocalDateTime cursorFecha,
+            @Param("despuesDe") Long despuesDe, @Param("hasta") LocalDateTime hasta, Pageable pageable);
+
+    @Query(SELECT_DTO + "WHERE r.cerradura.id = :cerraduraId AND " + DESPUES_DEL_CURSOR)
+    List<RegistroAperturaDTO> findPaginaPorCerradura(@Param("cerraduraId") Long cerraduraId,
+            @Param("cursorFecha") LocalDateTime cursorFecha, @Param("despuesDe") Long despuesDe,
+            @Param("hasta") LocalDateTime hasta, Pageable pageable);
+
+    @Query(SELECT_DTO + "WHERE r.usuario.id = :usuarioId AND " + DESPUES_DEL_CURSOR)
+    List<RegistroAperturaDTO> findPaginaPorUsuario(@Param("usuarioId") Long usuarioId,
+            @Param("cursorFecha") LocalDateTime cursorFecha, @Param("despuesDe") Long despuesDe,
+            @Param("hasta") LocalDateTime hasta, Pageable pageable);
+
+    @Query(SELECT_DTO + "WHERE r.exitoso = :exitoso AND " + DESPUES_DEL_CURSOR)
+    List<RegistroAperturaDTO> findPaginaPorResultado(@Param("exitoso") boolean exitoso,
+            @Param("cursorFecha") LocalDateTime cursorFecha, @Param("despuesDe") Long despuesDe,
+            @Param("hasta") LocalDateTime hasta, Pageable pageable);
+}
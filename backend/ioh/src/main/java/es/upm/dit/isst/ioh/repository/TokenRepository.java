@@ -1,17 +1,87 @@
 package es.upm.dit.isst.ioh.repository;
 
+import es.upm.dit.isst.ioh.dto.TokenPropietarioDTO;
 import es.upm.dit.isst.ioh.model.Token;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface TokenRepository extends CrudRepository<Token, Long> {
 
+    // Validación: solo hace falta el ID de la cerradura, que no carga la asociación
     Optional<Token> findByCodigo(String codigo);
 
+    @Override
+    @EntityGraph("Token.cerradura")
+    Iterable<Token> findAll();
+
+    @EntityGraph("Token.cerradura")
     List<Token> findByCerraduraId(Long cerraduraId);
 
     List<Token> findByFechaExpiracionAfter(LocalDateTime ahora);
+
+    @Query("SELECT t.codigo FROM Token t")
+    List<String> findCodigos();
+
+    // Consume un uso solo si el token sigue siendo válido; devuelve 1 si se consumió
+    @Modifying
+    @Query("UPDATE Token t SET t.usosActuales = t.usosActuales + 1, "
+            + "t.fechaAgotado = CASE WHEN t.usosMaximos > 0 AND t.usosActuales + 1 >= t.usosMaximos "
+            + "THEN :ahora ELSE t.fechaAgotado END "
+            + "WHERE t.codigo = :codigo AND t.cerradura.id = :cerraduraId "
+            + "AND (t.usosMaximos = 0 OR t.usosActuales < t.usosMaximos) "
+            + "AND (t.fechaExpiracion IS NULL OR t.fechaExpiracion > :ahora)")
+    int consumirUso(@Param("codigo") String codigo, @Param("cerraduraId") Long cerraduraId,
+            @Param("ahora") LocalDateTime ahora);
+
+    @Query("SELECT t.usosMaximos - t.usosActuales FROM Token t WHERE t.codigo = :codigo AND t.usosMaximos > 0")
+    Optional<Integer> findUsosRestantes(@Param("codigo") String codigo);
+
+    @Query("SELECT t.codigo AS codigo, t.fechaExpiracion AS fechaExpiracion FROM Token t "
+            + "WHERE t.fechaExpiracion IS NOT NULL")
+    List<ExpiracionToken> findExpiraciones();
+
+    // Vuelve a comprobar la fecha por si el token se ha prorrogado
+    @Modifying
+    @Query("DELETE FROM Token t WHERE t.codigo IN :codigos AND t.fechaExpiracion <= :ahora")
+    int deleteCaducados(@Param("codigos") Collection<String> codigos, @Param("ahora") LocalDateTime ahora);
+
+    @Query("SELECT t.id FROM Token t WHERE t.usosMaximos > 0 AND t.usosActuales >= t.usosMaximos "
+            + "AND t.fechaAgotado <= :limite ORDER BY t.id")
+    List<Long> findIdsAgotados(@Param("limite") LocalDateTime limite, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM Token t WHERE t.id IN :ids AND t.usosMaximos > 0 AND t.usosActuales >= t.usosMaximos "
+            + "AND t.fechaAgotado <= :limite")
+    int deleteAgotados(@Param("ids") Collection<Long> ids, @Param("limite") LocalDateTime limite);
+
+    // Tokens de todas las cerraduras de un propietario, paginados por id (keyset)
+    @Query("SELECT new es.upm.dit.isst.ioh.dto.TokenPropietarioDTO(t.id, t.codigo, t.fechaExpiracion, "
+            + "t.usosMaximos, t.usosActuales, c.id, c.modelo, p.id, p.nombre, p.direccion) "
+            + "FROM Token t JOIN t.cerradura c JOIN c.propiedad p "
+            + "WHERE p.propietario.id = :propietarioId AND t.id > :despuesDe "
+            + "AND (:propiedadId IS NULL OR p.id = :propiedadId) "
+            + "AND (:activo IS NULL "
+            + "OR (:activo = TRUE AND (t.fechaExpiracion IS NULL OR t.fechaExpiracion > :ahora) "
+            + "AND (t.usosMaximos = 0 OR t.usosActuales < t.usosMaximos)) "
+            + "OR (:activo = FALSE AND ((t.fechaExpiracion IS NOT NULL AND t.fechaExpiracion <= :ahora) "
+            + "OR (t.usosMaximos > 0 AND t.usosActuales >= t.usosMaximos)))) "
+            + "ORDER BY t.id")
+    List<TokenPropietarioDTO> findByPropietario(@Param("propietarioId") Long propietarioId,
+            @Param("propiedadId") Long propiedadId, @Param("activo") Boolean activo,
+            @Param("ahora") LocalDateTime ahora, @Param("despuesDe") Long despuesDe, Pageable pageable);
+
+    interface ExpiracionToken {
+        String getCodigo();
+
+        LocalDateTime getFechaExpiracion();
+    }
 }
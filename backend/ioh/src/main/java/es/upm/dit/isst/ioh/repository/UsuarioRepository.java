@@ -1,11 +1,28 @@
 package es.upm.dit.isst.ioh.repository;
 
 import es.upm.dit.isst.ioh.model.Usuario;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
 public interface UsuarioRepository extends CrudRepository<Usuario, Long> {
 
     Optional<Usuario> findByEmail(String email);
+
+    /**
+     * Indica si el usuario es propietario sin cargar la entidad
+     *
+     * @return true si es propietario, false si es huésped, vacío si no existe
+     */
+    @Query("SELECT CASE WHEN TYPE(u) = Propietario THEN true ELSE false END FROM Usuario u WHERE u.id = :id")
+    Optional<Boolean> esPropietario(@Param("id") Long id);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Usuario u SET u.contrasena = :contrasena WHERE u.id = :id")
+    int actualizarContrasena(@Param("id") Long id, @Param("contrasena") String contrasena);
 }
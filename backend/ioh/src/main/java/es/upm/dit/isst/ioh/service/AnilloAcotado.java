@@ -0,0 +1,115 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cola circular acotada sin bloqueos para varios productores y un único
+ * consumidor.
+ *
+ * Cada celda lleva un número de secuencia que indica si está libre para el
+ * productor de la vuelta actual o publicada para el consumidor, así que los
+ * productores solo compiten con un CAS sobre la cola y nunca esperan: si el
+ * anillo está lleno {@link #ofrecer} devuelve false.
+ *
+ * @param <T> Tipo de los elementos
+ */
+public final class AnilloAcotado<T> {
+
+    private final int mascara;
+    private final Object[] elementos;
+    private final AtomicLongArray secuencias;
+    private final AtomicLong cola = new AtomicLong();
+    private final AtomicLong cabeza = new AtomicLong();
+
+    /**
+     * @param capacidad Capacidad mínima; se redondea a la siguiente potencia de dos
+     */
+    public AnilloAcotado(int capacidad) {
+        if (capacidad < 2 || capacidad > (1 << 30)) {
+            throw new IllegalArgumentException("La capacidad debe estar entre 2 y 2^30");
+        }
+        int tamano = Integer.highestOneBit(capacidad - 1) << 1;
+        this.mascara = tamano - 1;
+        this.elementos = new Object[tamano];
+        this.secuencias = new AtomicLongArray(tamano);
+        for (int i = 0; i < tamano; i++) {
+            secuencias.set(i, i);
+        }
+    }
+
+    /**
+     * Añade un elemento sin bloquear. Se puede llamar desde cualquier hilo.
+     *
+     * @return false si el anillo está lleno
+     */
+    public boolean ofrecer(T elemento) {
+        long posicion = cola.get();
+        while (true) {
+            int indice = (int) (posicion & mascara);
+            long diferencia = secuencias.get(indice) - posicion;
+            if (diferencia == 0) {
+                if (cola.compareAndSet(posicion, posicion + 1)) {
+                    elementos[indice] = elemento;
+                    // La escritura volátil de la secuencia publica el elemento
+                    secuencias.set(indice, posicion + 1);
+                    return true;
+                }
+                posicion = cola.get();
+            } else if (diferencia < 0) {
+                return false;
+            } else {
+                posicion = cola.get();
+            }
+        }
+    }
+
+    /**
+     * Saca el siguiente elemento. Solo debe llamarlo el hilo consumidor.
+     *
+     * @return El elemento, o null si no hay ninguno publicado
+     */
+    @SuppressWarnings("unchecked")
+    public T sacar() {
+        long posicion = cabeza.get();
+        int indice = (int) (posicion & mascara);
+        if (secuencias.get(indice) != posicion + 1) {
+            return null;
+        }
+        T elemento = (T) elementos[indice];
+        elementos[indice] = null;
+        // Libera la celda para la siguiente vuelta de los productores
+        secuencias.set(indice, posicion + mascara + 1);
+        cabeza.set(posicion + 1);
+        return elemento;
+    }
+
+    /**
+     * Mueve hasta {@code maximo} elementos a la colección destino. Solo debe
+     * llamarlo el hilo consumidor.
+     *
+     * @return Número de elementos movidos
+     */
+    public int drenar(Collection<? super T> destino, int maximo) {
+        int movidos = 0;
+        T elemento;
+        while (movidos < maximo && (elemento = sacar()) != null) {
+            destino.add(elemento);
+            movidos++;
+        }
+        return movidos;
+    }
+
+    /**
+     * Número aproximado de elementos pendientes
+     */
+    public int tamano() {
+        long pendientes = cola.get() - cabeza.get();
+        return (int) Math.max(0, Math.min(pendientes, mascara + 1L));
+    }
+
+    public int capacidad() {
+        return mascara + 1;
+    }
+}
@@ -0,0 +1,653 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import es.upm.dit.isst.ioh.dto.RegistroAperturaDTO;
+import es.upm.dit.isst.ioh.repository.RegistroAperturaRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Retención de la tabla registro_apertura con archivo mensual comprimido.
+ *
+ * Periódicamente los intentos de apertura más antiguos que la retención se
+ * añaden al fichero de su mes y después se borran de la tabla, en lotes
+ * acotados. Cada lote se escribe, ordenado por (timestamp, id), como un miembro
+ * gzip independiente al final del fichero, así el archivo crece sin
+ * reescribirse. Un índice junto al fichero guarda la posición de cada miembro y
+ * sus primeros y últimos timestamp e ID. Las lecturas solo descomprimen los
+ * miembros que pueden tener registros después del cursor y los mezclan en
+ * orden, abriendo cada uno cuando la mezcla llega a su primer registro, así la
+ * memoria no depende del tamaño del mes.
+ *
+ * Si el proceso se interrumpe entre la escritura y el borrado, el lote se
+ * vuelve a archivar; la mezcla descarta los IDs repetidos. Un miembro que quedó
+ * sin entrada en el índice se descarta al arrancar, porque sus registros siguen
+ * en la tabla.
+ *
+ * Las consultas por rango que abarcan meses archivados leen también esos
+ * ficheros (ver {@link RegistroAperturaService}).
+ */
+@Service
+public class ArchivoAuditoriaService {
+
+    private static final Logger log = LoggerFactory.getLogger(ArchivoAuditoriaService.class);
+    private static final String PREFIJO = "registros-";
+    private static final String EXTENSION = ".gz";
+    private static final String EXTENSION_INDICE = ".idx";
+    private static final DateTimeFormatter FORMATO_MES = DateTimeFormatter.ofPattern("yyyy-MM");
+    // inicio, longitud, registros, primer y último (timestamp, id), ID mínimo y máximo
+    private static final int TAMANO_ENTRADA = 8 + 8 + 4 + 2 * (8 + 4 + 8) + 8 + 8;
+    // Varios miembros pueden estar abiertos a la vez durante una mezcla
+    private static final int TAMANO_BUFFER = 1 << 13;
+
+    private static final String MAS_ANTIGUOS = "SELECT id, timestamp, exitoso, motivo, usuario_id, cerradura_id "
+            + "FROM registro_apertura WHERE timestamp < ? ORDER BY timestamp, id FETCH FIRST ? ROWS ONLY";
+
+    private static final Comparator<RegistroAperturaDTO> CRONOLOGICO = Comparator
+            .comparing(RegistroAperturaDTO::getTimestamp)
+            .thenComparing(RegistroAperturaDTO::getId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RegistroAperturaRepository registroAperturaRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean habilitado;
+    private final long retencionDias;
+    private final int tamanoLote;
+    private final Path directorio;
+
+    // Mes archivado -> sus miembros, en orden de escritura. Cada lista se
+    // sustituye entera al añadir un miembro, así los lectores no necesitan
+    // cerrojo: solo leen miembros completos que ya están en el índice.
+    private final NavigableMap<YearMonth, List<Miembro>> indice = new ConcurrentSkipListMap<>();
+    private final Lock escritura = new ReentrantLock();
+    private final Counter archivados;
+
+    public ArchivoAuditoriaService(
+            JdbcTemplate jdbcTemplate,
+            RegistroAperturaRepository registroAperturaRepository,
+            TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${ioh.auditoria.retencion.habilitada:true}") boolean habilitado,
+            @Value("${ioh.auditoria.retencion.dias:90}") long retencionDias,
+            @Value("${ioh.auditoria.retencion.lote:5000}") int tamanoLote,
+            @Value("${ioh.auditoria.archivo.directorio:auditoria-archivo}") String directorio) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.registroAperturaRepository = registroAperturaRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.habilitado = habilitado;
+        this.retencionDias = retencionDias;
+        this.tamanoLote = tamanoLote;
+        this.directorio = Paths.get(directorio);
+
+        this.archivados = Counter.builder("ioh.auditoria.archivados")
+                .description("Intentos de apertura movidos de la tabla al archivo mensual")
+                .register(meterRegistry);
+
+        if (Files.isDirectory(this.directorio)) {
+            try (Stream<Path> ficheros = Files.list(this.directorio)) {
+                List<YearMonth> meses = ficheros.map(f -> f.getFileName().toString())
+                        .filter(n -> n.startsWith(PREFIJO) && n.endsWith(EXTENSION))
+                        .map(n -> YearMonth.parse(n.substring(PREFIJO.length(), n.length() - EXTENSION.length()),
+                                FORMATO_MES))
+                        .toList();
+                for (YearMonth mes : meses) {
+                    indice.put(mes, cargarIndice(mes));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo leer el archivo de auditoría", e);
+            }
+        }
+    }
+
+    /**
+     * Mueve al archivo los intentos de apertura anteriores a la retención
+     *
+     * @return Número de registros archivados
+     */
+    @Scheduled(fixedDelayString = "${ioh.auditoria.retencion.intervalo-ms:3600000}",
+            initialDelayString = "${ioh.auditoria.retencion.intervalo-ms:3600000}")
+    public long archivar() {
+        if (!habilitado) {
+            return 0;
+        }
+        LocalDateTime limite = LocalDateTime.now().minusDays(retencionDias);
+        long total = 0;
+        List<RegistroAperturaDTO> lote;
+        do {
+            lote = jdbcTemplate.query(MAS_ANTIGUOS, (rs, i) -> new RegistroAperturaDTO(
+                    rs.getLong(1),
+                    rs.getTimestamp(2).toLocalDateTime(),
+                    rs.getBoolean(3),
+                    rs.getString(4),
+                    rs.getObject(5, Long.class),
+                    rs.getObject(6, Long.class)), Timestamp.valueOf(limite), tamanoLote);
+            if (lote.isEmpty()) {
+                break;
+            }
+
+            // Primero se guarda en disco y después se borra de la tabla
+            Map<YearMonth, List<RegistroAperturaDTO>> porMes = new TreeMap<>();
+            List<Long> ids = new ArrayList<>(lote.size());
+            for (RegistroAperturaDTO registro : lote) {
+                porMes.computeIfAbsent(YearMonth.from(registro.getTimestamp()), m -> new ArrayList<>()).add(registro);
+                ids.add(registro.getId());
+            }
+            try {
+                for (Map.Entry<YearMonth, List<RegistroAperturaDTO>> mes : porMes.entrySet()) {
+                    anadir(mes.getKey(), mes.getValue());
+                }
+            } catch (IOException e) {
+                log.error("No se pudo escribir el archivo de auditoría; se reintentará en el siguiente ciclo", e);
+                break;
+            }
+            transactionTemplate.executeWithoutResult(status -> registroAperturaRepository.deleteAllByIdInBatch(ids));
+
+            total += lote.size();
+            archivados.increment(lote.size());
+        } while (lote.size() == tamanoLote);
+
+        if (total > 0) {
+            log.info("Archivados {} intentos de apertura anteriores a {}", total, limite);
+        }
+        return total;
+    }
+
+    private void anadir(YearMonth mes, List<RegistroAperturaDTO> registros) throws IOException {
+        List<RegistroAperturaDTO> ordenados = new ArrayList<>(registros);
+        ordenados.sort(CRONOLOGICO);
+        escritura.lock();
+        try {
+            Files.createDirectories(directorio);
+            Miembro miembro;
+            try (FileChannel datos = FileChannel.open(ruta(mes), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    FileChannel entradas = FileChannel.open(rutaIndice(mes), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE)) {
+                long longitud = datos.size();
+                long longitudIndice = entradas.size();
+                try {
+                    miembro = escribirMiembro(datos, longitud, ordenados);
+                    datos.force(true);
+                    escribirEntrada(entradas, longitudIndice, miembro);
+                    entradas.force(true);
+                } catch (IOException | RuntimeException e) {
+                    // Un miembro a medias haría ilegibles los que se añadan después
+                    try {
+                        datos.truncate(longitud);
+                        datos.force(true);
+                        entradas.truncate(longitudIndice);
+                        entradas.force(true);
+                    } catch (IOException truncado) {
+                        e.addSuppressed(truncado);
+                    }
+                    throw e;
+                }
+            }
+            indice.merge(mes, List.of(miembro), (anteriores, nuevo) -> {
+                List<Miembro> miembros = new ArrayList<>(anteriores.size() + 1);
+                miembros.addAll(anteriores);
+                miembros.addAll(nuevo);
+                return List.copyOf(miembros);
+            });
+        } finally {
+            escritura.unlock();
+        }
+    }
+
+    /**
+     * Indica si algún mes archivado puede tener registros en el rango
+     */
+    public boolean abarca(LocalDateTime desde, LocalDateTime hasta) {
+        return !mesesEnRango(desde, hasta).isEmpty();
+    }
+
+    /**
+     * Devuelve los registros archivados que cumplen el filtro y van después del
+     * cursor (timestamp, id), en orden cronológico
+     *
+     * @param filtro      Condición adicional sobre cada registro
+     * @param cursorFecha Timestamp del cursor (o inicio del rango)
+     * @param cursorId    ID del cursor (0 para empezar en cursorFecha)
+     * @param hasta       Fin del rango, exclusivo
+     * @param limite      Número máximo de registros
+     */
+    public List<RegistroAperturaDTO> buscar(Predicate<RegistroAperturaDTO> filtro, LocalDateTime cursorFecha,
+            long cursorId, LocalDateTime hasta, int limite) {
+        List<RegistroAperturaDTO> resultado = new ArrayList<>();
+        if (limite <= 0) {
+            return resultado;
+        }
+        mezclar(cursorFecha, cursorId, hasta, registro -> {
+            if (filtro.test(registro)) {
+                resultado.add(registro);
+            }
+            return resultado.size() < limite;
+        });
+        return resultado;
+    }
+
+    /**
+     * Busca el timestamp de un registro archivado, para usarlo como cursor. Solo
+     * se leen los miembros cuyo rango de IDs incluye el buscado.
+     */
+    public Optional<LocalDateTime> buscarFecha(long id, LocalDateTime desde, LocalDateTime hasta) {
+        for (Map.Entry<YearMonth, List<Miembro>> mes : mesesEnRango(desde, hasta).entrySet()) {
+            for (Miembro miembro : mes.getValue()) {
+                if (id < miembro.minId() || id > miembro.maxId()) {
+                    continue;
+                }
+                try (FileChannel datos = FileChannel.open(ruta(mes.getKey()), StandardOpenOption.READ);
+                        LectorMiembro lector = new LectorMiembro(datos, miembro)) {
+                    RegistroAperturaDTO registro = lector.actual();
+                    while (registro != null && registro.getId() != id) {
+                        registro = lector.avanzar();
+                    }
+                    if (registro != null) {
+                        return Optional.of(registro.getTimestamp());
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("No se pudo leer el archivo de auditoría de " + mes.getKey(), e);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Entrega los registros archivados del rango en orden cronológico, sin
+     * cargar en memoria más que los miembros abiertos por la mezcla
+     */
+    public void recorrer(LocalDateTime desde, LocalDateTime hasta, Consumer<RegistroAperturaDTO> visitante) {
+        mezclar(desde, 0L, hasta, registro -> {
+            visitante.accept(registro);
+            return true;
+        });
+    }
+
+    /**
+     * Mezcla en orden (timestamp, id) los registros posteriores al cursor y
+     * anteriores a hasta, sin repetir IDs. Los meses no se solapan en el tiempo,
+     * así que se recorren uno tras otro.
+     *
+     * @param visitante Recibe cada registro; devuelve false para terminar
+     */
+    private void mezclar(LocalDateTime cursorFecha, long cursorId, LocalDateTime hasta,
+            Predicate<RegistroAperturaDTO> visitante) {
+        for (Map.Entry<YearMonth, List<Miembro>> mes : mesesEnRango(cursorFecha, hasta).entrySet()) {
+            try {
+                if (!mezclarMes(mes.getKey(), mes.getValue(), cursorFecha, cursorId, hasta, visitante)) {
+                    return;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo leer el archivo de auditoría de " + mes.getKey(), e);
+            }
+        }
+    }
+
+    private boolean mezclarMes(YearMonth mes, List<Miembro> miembros, LocalDateTime cursorFecha, long cursorId,
+            LocalDateTime hasta, Predicate<RegistroAperturaDTO> visitante) throws IOException {
+        // Miembros con algún registro en el rango, por su primer registro
+        List<Miembro> pendientes = miembros.stream()
+                .filter(m -> m.terminaDespuesDe(cursorFecha, cursorId) && m.primeraFecha().isBefore(hasta))
+                .sorted(Miembro.POR_INICIO)
+                .toList();
+        if (pendientes.isEmpty()) {
+            return true;
+        }
+
+        PriorityQueue<LectorMiembro> abiertos = new PriorityQueue<>(
+                Comparator.comparing(LectorMiembro::actual, CRONOLOGICO));
+        int siguiente = 0;
+        long ultimoId = 0;
+        try (FileChannel datos = FileChannel.open(ruta(mes), StandardOpenOption.READ)) {
+            try {
+                while (true) {
+                    // Un miembro solo se abre cuando la mezcla llega a su primer registro
+                    while (siguiente < pendientes.size() && (abiertos.isEmpty()
+                            || !pendientes.get(siguiente).empiezaDespuesDe(abiertos.peek().actual()))) {
+                        LectorMiembro lector = new LectorMiembro(datos, pendientes.get(siguiente++));
+                        if (lector.saltarHasta(cursorFecha, cursorId) != null) {
+                            abiertos.add(lector);
+                        } else {
+                            lector.close();
+                        }
+                    }
+                    LectorMiembro menor = abiertos.poll();
+                    if (menor == null) {
+                        return true;
+                    }
+                    RegistroAperturaDTO registro = menor.actual();
+                    if (!registro.getTimestamp().isBefore(hasta)) {
+                        menor.close();
+                        return false;
+                    }
+                    // Un lote archivado dos veces deja el mismo registro en dos miembros seguidos en la mezcla
+                    boolean repetido = registro.getId() == ultimoId;
+                    ultimoId = registro.getId();
+                    if (menor.avanzar() != null) {
+                        abiertos.add(menor);
+                    } else {
+                        menor.close();
+                    }
+                    if (!repetido && !visitante.test(registro)) {
+                        return false;
+                    }
+                }
+            } finally {
+                for (LectorMiembro lector : abiertos) {
+                    lector.close();
+                }
+            }
+        }
+    }
+
+    private NavigableMap<YearMonth, List<Miembro>> mesesEnRango(LocalDateTime desde, LocalDateTime hasta) {
+        if (indice.isEmpty() || !hasta.isAfter(desde)) {
+            return new TreeMap<>();
+        }
+        // hasta es exclusivo: el último instante del rango está justo antes
+        return indice.subMap(YearMonth.from(desde), true, YearMonth.from(hasta.minusNanos(1)), true);
+    }
+
+    /**
+     * Lee el índice de un mes. Descarta una entrada incompleta o un miembro sin
+     * entrada, que quedan si el proceso se interrumpe al escribir. Un fichero
+     * sin índice, del formato anterior, se reescribe ordenado.
+     */
+    private List<Miembro> cargarIndice(YearMonth mes) throws IOException {
+        if (!Files.exists(rutaIndice(mes))) {
+            return convertir(mes);
+        }
+        List<Miembro> miembros = new ArrayList<>();
+        try (FileChannel datos = FileChannel.open(ruta(mes), StandardOpenOption.WRITE);
+                FileChannel entradas = FileChannel.open(rutaIndice(mes), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)) {
+            long longitudDatos = datos.size();
+            long fin = 0;
+            DataInputStream entrada = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(entradas.position(0)), TAMANO_BUFFER));
+            for (long i = 0; i < entradas.size() / TAMANO_ENTRADA; i++) {
+                Miembro miembro = leerEntrada(entrada);
+                if (miembro.inicio() != fin || miembro.inicio() + miembro.longitud() > longitudDatos) {
+                    break;
+                }
+                miembros.add(miembro);
+                fin = miembro.inicio() + miembro.longitud();
+            }
+            if (entradas.size() != (long) miembros.size() * TAMANO_ENTRADA || longitudDatos != fin) {
+                log.warn("Archivo de auditoría de {} incompleto; se descartan {} bytes sin indexar", mes,
+                        longitudDatos - fin);
+                entradas.truncate((long) miembros.size() * TAMANO_ENTRADA);
+                datos.truncate(fin);
+                entradas.force(true);
+                datos.force(true);
+            }
+        }
+        return List.copyOf(miembros);
+    }
+
+    // Reescribe un mes del formato anterior (miembros sin índice ni orden) en
+    // miembros ordenados con su índice. Se hace una vez, al arrancar.
+    private List<Miembro> convertir(YearMonth mes) throws IOException {
+        Map<Long, RegistroAperturaDTO> porId = new HashMap<>();
+        try (InputStream fichero = Files.newInputStream(ruta(mes));
+                DataInputStream entrada = new DataInputStream(
+                        new BufferedInputStream(new GZIPInputStream(fichero, 1 << 16), 1 << 16))) {
+            while (true) {
+                RegistroAperturaDTO registro;
+                try {
+                    registro = leer(entrada);
+                } catch (EOFException e) {
+                    break;
+                }
+                porId.putIfAbsent(registro.getId(), registro);
+            }
+        }
+        List<RegistroAperturaDTO> registros = new ArrayList<>(porId.values());
+        registros.sort(CRONOLOGICO);
+
+        Path temporal = directorio.resolve(ruta(mes).getFileName() + ".tmp");
+        Path temporalIndice = directorio.resolve(rutaIndice(mes).getFileName() + ".tmp");
+        List<Miembro> miembros = new ArrayList<>();
+        try (FileChannel datos = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                FileChannel entradas = FileChannel.open(temporalIndice, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < registros.size(); i += tamanoLote) {
+                Miembro miembro = escribirMiembro(datos, datos.size(),
+                        registros.subList(i, Math.min(i + tamanoLote, registros.size())));
+                escribirEntrada(entradas, entradas.size(), miembro);
+                miembros.add(miembro);
+            }
+            datos.force(true);
+            entradas.force(true);
+        }
+        // El fichero de datos va primero: si falta el índice se vuelve a convertir
+        Files.move(temporal, ruta(mes), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(temporalIndice, rutaIndice(mes), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        log.info("Archivo de auditoría de {} convertido a miembros ordenados con índice ({} registros)", mes,
+                registros.size());
+        return List.copyOf(miembros);
+    }
+
+    private Path ruta(YearMonth mes) {
+        return directorio.resolve(PREFIJO + FORMATO_MES.format(mes) + EXTENSION);
+    }
+
+    private Path rutaIndice(YearMonth mes) {
+        return directorio.resolve(PREFIJO + FORMATO_MES.format(mes) + EXTENSION_INDICE);
+    }
+
+    // Escribe los registros, ya ordenados, como un miembro gzip a partir de inicio
+    private static Miembro escribirMiembro(FileChannel datos, long inicio, List<RegistroAperturaDTO> registros)
+            throws IOException {
+        datos.position(inicio);
+        GZIPOutputStream gzip = new GZIPOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(datos), 1 << 16), 1 << 16);
+        DataOutputStream salida = new DataOutputStream(gzip);
+        long minId = Long.MAX_VALUE;
+        long maxId = Long.MIN_VALUE;
+        for (RegistroAperturaDTO registro : registros) {
+            escribir(salida, registro);
+            minId = Math.min(minId, registro.getId());
+            maxId = Math.max(maxId, registro.getId());
+        }
+        salida.flush();
+        gzip.finish();
+        gzip.flush();
+        RegistroAperturaDTO primero = registros.get(0);
+        RegistroAperturaDTO ultimo = registros.get(registros.size() - 1);
+        return new Miembro(inicio, datos.position() - inicio, registros.size(), primero.getTimestamp(),
+                primero.getId(), ultimo.getTimestamp(), ultimo.getId(), minId, maxId);
+    }
+
+    private static void escribirEntrada(FileChannel entradas, long posicion, Miembro miembro) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(TAMANO_ENTRADA);
+        buffer.putLong(miembro.inicio());
+        buffer.putLong(miembro.longitud());
+        buffer.putInt(miembro.registros());
+        buffer.putLong(miembro.primeraFecha().toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(miembro.primeraFecha().getNano());
+        buffer.putLong(miembro.primerId());
+        buffer.putLong(miembro.ultimaFecha().toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(miembro.ultimaFecha().getNano());
+        buffer.putLong(miembro.ultimoId());
+        buffer.putLong(miembro.minId());
+        buffer.putLong(miembro.maxId());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            posicion += entradas.write(buffer, posicion);
+        }
+    }
+
+    private static Miembro leerEntrada(DataInputStream entrada) throws IOException {
+        long inicio = entrada.readLong();
+        long longitud = entrada.readLong();
+        int registros = entrada.readInt();
+        LocalDateTime primeraFecha = LocalDateTime.ofEpochSecond(entrada.readLong(), entrada.readInt(),
+                ZoneOffset.UTC);
+        long primerId = entrada.readLong();
+        LocalDateTime ultimaFecha = LocalDateTime.ofEpochSecond(entrada.readLong(), entrada.readInt(),
+                ZoneOffset.UTC);
+        long ultimoId = entrada.readLong();
+        return new Miembro(inicio, longitud, registros, primeraFecha, primerId, ultimaFecha, ultimoId,
+                entrada.readLong(), entrada.readLong());
+    }
+
+    private static void escribir(DataOutputStream salida, RegistroAperturaDTO registro) throws IOException {
+        salida.writeLong(registro.getId());
+        salida.writeLong(registro.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+        salida.writeInt(registro.getTimestamp().getNano());
+        salida.writeBoolean(registro.isExitoso());
+        salida.writeLong(registro.getUsuarioId() != null ? registro.getUsuarioId() : 0);
+        salida.writeLong(registro.getCerraduraId() != null ? registro.getCerraduraId() : 0);
+        salida.writeBoolean(registro.getMotivo() != null);
+        if (registro.getMotivo() != null) {
+            salida.writeUTF(registro.getMotivo());
+        }
+    }
+
+    private static RegistroAperturaDTO leer(DataInputStream entrada) throws IOException {
+        long id = entrada.readLong();
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(entrada.readLong(), entrada.readInt(), ZoneOffset.UTC);
+        boolean exitoso = entrada.readBoolean();
+        long usuarioId = entrada.readLong();
+        long cerraduraId = entrada.readLong();
+        String motivo = entrada.readBoolean() ? entrada.readUTF() : null;
+        return new RegistroAperturaDTO(id, timestamp, exitoso, motivo, usuarioId != 0 ? usuarioId : null,
+                cerraduraId != 0 ? cerraduraId : null);
+    }
+
+    /**
+     * Entrada del índice: un miembro gzip del fichero del mes, con sus registros
+     * ordenados por (timestamp, id)
+     */
+    private record Miembro(long inicio, long longitud, int registros, LocalDateTime primeraFecha, long primerId,
+            LocalDateTime ultimaFecha, long ultimoId, long minId, long maxId) {
+
+        static final Comparator<Miembro> POR_INICIO = Comparator.comparing(Miembro::primeraFecha)
+                .thenComparingLong(Miembro::primerId);
+
+        // Su último registro va después del cursor (timestamp, id)
+        boolean terminaDespuesDe(LocalDateTime fecha, long id) {
+            return ultimaFecha.isAfter(fecha) || (ultimaFecha.isEqual(fecha) && ultimoId > id);
+        }
+
+        // Su primer registro va después del indicado
+        boolean empiezaDespuesDe(RegistroAperturaDTO registro) {
+            return primeraFecha.isAfter(registro.getTimestamp())
+                    || (primeraFecha.isEqual(registro.getTimestamp()) && primerId > registro.getId());
+        }
+    }
+
+    /**
+     * Lectura secuencial de un miembro. Lee con posición explícita sobre el
+     * canal, así varios lectores comparten el mismo fichero abierto.
+     */
+    private static final class LectorMiembro implements Closeable {
+
+        private final DataInputStream entrada;
+        private int restantes;
+        private RegistroAperturaDTO actual;
+
+        LectorMiembro(FileChannel datos, Miembro miembro) throws IOException {
+            InputStream trozo = new InputStream() {
+                private long posicion = miembro.inicio();
+                private final long fin = miembro.inicio() + miembro.longitud();
+
+                @Override
+                public int read() throws IOException {
+                    byte[] b = new byte[1];
+                    return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+                }
+
+                @Override
+                public int read(byte[] b, int desde, int cantidad) throws IOException {
+                    if (posicion >= fin) {
+                        return -1;
+                    }
+                    int leidos = datos.read(ByteBuffer.wrap(b, desde, (int) Math.min(cantidad, fin - posicion)),
+                            posicion);
+                    if (leidos > 0) {
+                        posicion += leidos;
+                    }
+                    return leidos;
+                }
+            };
+            this.entrada = new DataInputStream(
+                    new BufferedInputStream(new GZIPInputStream(trozo, TAMANO_BUFFER), TAMANO_BUFFER));
+            this.restantes = miembro.registros();
+            avanzar();
+        }
+
+        RegistroAperturaDTO actual() {
+            return actual;
+        }
+
+        RegistroAperturaDTO avanzar() throws IOException {
+            actual = restantes-- > 0 ? leer(entrada) : null;
+            return actual;
+        }
+
+        // Avanza hasta el primer registro posterior al cursor (timestamp, id)
+        RegistroAperturaDTO saltarHasta(LocalDateTime fecha, long id) throws IOException {
+            while (actual != null && (actual.getTimestamp().isBefore(fecha)
+                    || (actual.getTimestamp().isEqual(fecha) && actual.getId() <= id))) {
+                avanzar();
+            }
+            return actual;
+        }
+
+        @Override
+        public void close() throws IOException {
+            entrada.close();
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Registro asíncrono de los intentos de apertura.
+ *
+ * Los caminos de apertura solo dejan el evento en un anillo acotado sin
+ * bloqueos y siguen; un hilo escritor lo vacía en lotes con inserciones JDBC
+ * por lotes, cuando se llena un lote o cuando pasa el intervalo de vaciado.
+ * Si el anillo está lleno el evento se añade a un fichero de respaldo, que el
+ * escritor vuelve a cargar en la tabla cuando hay hueco (y al arrancar). La
+ * recuperación guarda tras cada lote cuántas líneas lleva, para continuar donde
+ * se quedó si falla, y aparta las líneas ilegibles en un fichero aparte.
+ * Mientras el almacén no responde, los lotes van directos al respaldo y la
+ * recuperación se reintenta con una espera que se dobla en cada fallo; la caída
+ * se avisa una sola vez y su final también.
+ *
+ * Con {@code ioh.auditoria.segmentos.habilitado=true} los lotes van al almacén
+ * de segmentos ({@link SegmentosAuditoriaService}) en vez de a la tabla.
+ */
+@Service
+public class AuditoriaAperturaService {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditoriaAperturaService.class);
+    private static final long ESPERA_MAXIMA_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    // Los IDs inexistentes se guardan como null en vez de hacer fallar el lote
+    private static final String INSERTAR = "INSERT INTO registro_apertura (timestamp, exitoso, motivo, usuario_id, cerradura_id) "
+            + "VALUES (?, ?, ?, (SELECT id FROM usuario WHERE id = ?), (SELECT id FROM cerradura WHERE id = ?))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SegmentosAuditoriaService segmentosAuditoriaService;
+    private final EstadisticasAperturaService estadisticasAperturaService;
+    private final AnilloAcotado<EventoApertura> anillo;
+    private final int tamanoLote;
+    private final long intervaloNanos;
+    private final Path ficheroRespaldo;
+    private final Path ficheroRecuperando;
+    private final Path ficheroProgreso;
+    private final Path ficheroDescartadas;
+
+    private final Object cerrojoRespaldo = new Object();
+    private BufferedWriter respaldo;
+    private final AtomicLong pendientesRespaldo = new AtomicLong();
+
+    private final Counter escritos;
+    private final Counter respaldados;
+
+    private volatile Thread escritor;
+    private volatile boolean activo;
+    private volatile boolean esperando;
+
+    // Estado de la caída del almacén; solo lo usa el hilo escritor
+    private boolean caido;
+    private long esperaReintentoNanos;
+    private long proximoReintento;
+
+    public AuditoriaAperturaService(
+            JdbcTemplate jdbcTemplate,
+            SegmentosAuditoriaService segmentosAuditoriaService,
+            EstadisticasAperturaService estadisticasAperturaService,
+            MeterRegistry meterRegistry,
+            @Value("${ioh.auditoria.capacidad:65536}") int capacidad,
+            @Value("${ioh.auditoria.lote:1000}") int tamanoLote,
+            @Value("${ioh.auditoria.intervalo-ms:200}") long intervaloMs,
+            @Value("${ioh.auditoria.respaldo:auditoria-respaldo.log}") String ficheroRespaldo) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.segmentosAuditoriaService = segmentosAuditoriaService;
+        this.estadisticasAperturaService = estadisticasAperturaService;
+        this.anillo = new AnilloAcotado<>(capacidad);
+        this.tamanoLote = tamanoLote;
+        this.intervaloNanos = TimeUnit.MILLISECONDS.toNanos(intervaloMs);
+        this.ficheroRespaldo = Paths.get(ficheroRespaldo);
+        this.ficheroRecuperando = Paths.get(ficheroRespaldo + ".recuperando");
+        this.ficheroProgreso = Paths.get(ficheroRespaldo + ".recuperando.progreso");
+        this.ficheroDescartadas = Paths.get(ficheroRespaldo + ".descartadas");
+
+        this.escritos = Counter.builder("ioh.auditoria.escritos")
+                .description("Intentos de apertura guardados en el almacén de auditoría")
+                .register(meterRegistry);
+        this.respaldados = Counter.builder("ioh.auditoria.respaldados")
+                .description("Intentos de apertura enviados al fichero de respaldo con el anillo lleno")
+                .register(meterRegistry);
+        Gauge.builder("ioh.auditoria.pendientes", anillo, AnilloAcotado::tamano)
+                .description("Intentos de apertura pendientes de escribir")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Registra un intento de apertura sin esperar a la base de datos
+     *
+     * @param usuarioId   ID del usuario (puede ser null)
+     * @param cerraduraId ID de la cerradura (puede ser null)
+     * @param exitoso     Si la puerta se abrió
+     * @param motivo      Motivo del resultado
+     */
+    public void registrar(Long usuarioId, Long cerraduraId, boolean exitoso, String motivo) {
+        EventoApertura evento = new EventoApertura(LocalDateTime.now(), exitoso, motivo, usuarioId, cerraduraId);
+        if (!anillo.ofrecer(evento)) {
+            respaldar(evento);
+            return;
+        }
+        if (esperando && anillo.tamano() >= tamanoLote) {
+            esperando = false;
+            LockSupport.unpark(escritor);
+        }
+    }
+
+    /**
+     * Reconstruye las estadísticas y arranca el hilo escritor. Las estadísticas
+     * se calculan antes de escribir nada para no contar dos veces ningún lote.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void iniciar() {
+        if (escritor != null) {
+            return;
+        }
+        try {
+            estadisticasAperturaService.reconstruir();
+        } catch (RuntimeException e) {
+            log.error("No se pudieron reconstruir las estadísticas de apertura", e);
+        }
+        activo = true;
+        Thread hilo = new Thread(this::escribirEnBucle, "auditoria-apertura");
+        hilo.setDaemon(true);
+        escritor = hilo;
+        hilo.start();
+    }
+
+    /**
+     * Para el escritor y vuelca lo que quede pendiente
+     */
+    @PreDestroy
+    public synchronized void detener() {
+        activo = false;
+        Thread hilo = escritor;
+        if (hilo != null) {
+            LockSupport.unpark(hilo);
+            try {
+                hilo.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        cerrarRespaldo();
+    }
+
+    private void escribirEnBucle() {
+        List<EventoApertura> lote = new ArrayList<>(tamanoLote);
+        long ultimoVaciado = System.nanoTime();
+        recuperarRespaldo();
+
+        while (activo || anillo.tamano() > 0) {
+            anillo.drenar(lote, tamanoLote - lote.size());
+            long ahora = System.nanoTime();
+            boolean vencido = ahora - ultimoVaciado >= intervaloNanos;
+
+            if (lote.size() >= tamanoLote || (!lote.isEmpty() && (vencido || !activo))) {
+                escribir(lote);
+                lote.clear();
+                ultimoVaciado = ahora;
+                continue;
+            }
+            if (lote.isEmpty() && pendientesRespaldo.get() > 0 && puedeReintentar(ahora)) {
+                recuperarRespaldo();
+            }
+            if (activo) {
+                esperando = true;
+                LockSupport.parkNanos(this, lote.isEmpty() ? intervaloNanos : intervaloNanos - (ahora - ultimoVaciado));
+                esperando = false;
+            }
+        }
+        if (!lote.isEmpty()) {
+            escribir(lote);
+        }
+    }
+
+    private void escribir(List<EventoApertura> lote) {
+        // Durante una caída no se insiste hasta que toque reintentar
+        if (puedeReintentar(System.nanoTime())) {
+            try {
+                insertar(lote);
+                return;
+            } catch (RuntimeException e) {
+                log.atLevel(nivelDeFallo()).setCause(e)
+                        .log("No se pudo guardar un lote de {} intentos de apertura, se envían al respaldo", lote.size());
+            }
+        }
+        // No se pierden: quedan en el respaldo para el siguiente intento
+        for (EventoApertura evento : lote) {
+            respaldar(evento);
+        }
+    }
+
+    private boolean puedeReintentar(long ahora) {
+        return !caido || ahora - proximoReintento >= 0;
+    }
+
+    /**
+     * Anota un fallo del almacén y aplaza el siguiente intento
+     *
+     * @return WARN en el primer fallo de una caída, DEBUG en los siguientes
+     */
+    private Level nivelDeFallo() {
+        boolean primero = !caido;
+        caido = true;
+        esperaReintentoNanos = primero ? intervaloNanos : Math.min(esperaReintentoNanos * 2, ESPERA_MAXIMA_NANOS);
+        proximoReintento = System.nanoTime() + esperaReintentoNanos;
+        return primero ? Level.WARN : Level.DEBUG;
+    }
+
+    private void insertar(List<EventoApertura> lote) {
+        if (segmentosAuditoriaService.isHabilitado()) {
+            segmentosAuditoriaService.anadir(lote);
+        } else {
+            insertarEnTabla(lote);
+        }
+        escritos.increment(lote.size());
+        if (caido) {
+            caido = false;
+            log.info("El almacén de auditoría vuelve a responder");
+        }
+
+        // Un fallo aquí no debe devolver al respaldo un lote ya guardado
+        try {
+            estadisticasAperturaService.acumular(lote);
+        } catch (RuntimeException e) {
+            log.warn("No se pudieron actualizar las estadísticas con un lote de {} intentos de apertura", lote.size(), e);
+        }
+    }
+
+    private void insertarEnTabla(List<EventoApertura> lote) {
+        jdbcTemplate.batchUpdate(INSERTAR, lote, lote.size(), (ps, evento) -> {
+            ps.setTimestamp(1, Timestamp.valueOf(evento.timestamp()));
+            ps.setBoolean(2, evento.exitoso());
+            ps.setString(3, evento.motivo());
+            if (evento.usuarioId() != null) {
+                ps.setLong(4, evento.usuarioId());
+            } else {
+                ps.setNull(4, Types.BIGINT);
+            }
+            if (evento.cerraduraId() != null) {
+                ps.setLong(5, evento.cerraduraId());
+            } else {
+                ps.setNull(5, Types.BIGINT);
+            }
+        });
+    }
+
+    /**
+     * Añade el evento al fichero de respaldo. Cada línea se entrega al sistema
+     * operativo antes de volver, así sobrevive a una caída de la JVM.
+     */
+    private void respaldar(EventoApertura evento) {
+        synchronized (cerrojoRespaldo) {
+            try {
+                if (respaldo == null) {
+                    respaldo = Files.newBufferedWriter(ficheroRespaldo, StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                respaldo.write(evento.aLinea());
+                respaldo.newLine();
+                respaldo.flush();
+                pendientesRespaldo.incrementAndGet();
+                respaldados.increment();
+            } catch (IOException e) {
+                log.error("No se pudo escribir el intento de apertura en el respaldo: {}", evento, e);
+            }
+        }
+    }
+
+    /**
+     * Vuelve a cargar en la tabla los eventos del fichero de respaldo. Primero
+     * se renombra el fichero para que los productores empiecen uno nuevo.
+     *
+     * Tras cada lote insertado se guarda el número de líneas ya tratadas, así
+     * un reintento continúa después del último lote en vez de repetirlo. Las
+     * líneas ilegibles (o la última, si quedó a medias por una caída) se
+     * apartan en el fichero de descartadas.
+     */
+    private void recuperarRespaldo() {
+        synchronized (cerrojoRespaldo) {
+            try {
+                if (Files.notExists(ficheroRecuperando) && Files.exists(ficheroRespaldo)) {
+                    cerrarRespaldo();
+                    // Un progreso sin su fichero es de una recuperación ya terminada
+                    Files.deleteIfExists(ficheroProgreso);
+                    Files.move(ficheroRespaldo, ficheroRecuperando, StandardCopyOption.ATOMIC_MOVE);
+                }
+                pendientesRespaldo.set(0);
+            } catch (IOException e) {
+                log.warn("No se pudo preparar el fichero de respaldo de auditoría", e);
+                return;
+            }
+        }
+        if (Files.notExists(ficheroRecuperando)) {
+            return;
+        }
+
+        try (BufferedReader lector = Files.newBufferedReader(ficheroRecuperando, StandardCharsets.UTF_8)) {
+            boolean ultimaCompleta = terminaEnSaltoDeLinea(ficheroRecuperando);
+            long tratadas = leerProgreso();
+            List<EventoApertura> lote = new ArrayList<>(tamanoLote);
+            long recuperados = 0;
+            long numero = 0;
+            String linea = lector.readLine();
+            while (linea != null) {
+                String siguiente = lector.readLine();
+                numero++;
+                if (numero > tratadas && !linea.isBlank()) {
+                    if (siguiente == null && !ultimaCompleta) {
+                        descartar(linea, "línea incompleta");
+                    } else {
+                        try {
+                            lote.add(EventoApertura.deLinea(linea));
+                        } catch (IllegalArgumentException e) {
+                            descartar(linea, e.getMessage());
+                        }
+                    }
+                    if (lote.size() == tamanoLote) {
+                        insertar(lote);
+                        recuperados += lote.size();
+                        lote.clear();
+                        guardarProgreso(numero);
+                    } else if (lote.isEmpty()) {
+                        // Solo había una línea descartada: que un reintento no la vuelva a apartar
+                        guardarProgreso(numero);
+                    }
+                }
+                linea = siguiente;
+            }
+            if (!lote.isEmpty()) {
+                insertar(lote);
+                recuperados += lote.size();
+            }
+            Files.delete(ficheroRecuperando);
+            Files.deleteIfExists(ficheroProgreso);
+            log.info("Recuperados {} intentos de apertura del fichero de respaldo", recuperados);
+        } catch (IOException | RuntimeException e) {
+            // Se reintenta más tarde desde el último lote guardado
+            pendientesRespaldo.incrementAndGet();
+            log.atLevel(nivelDeFallo()).setCause(e).log("No se pudo recuperar el fichero de respaldo de auditoría");
+        }
+    }
+
+    private static boolean terminaEnSaltoDeLinea(Path fichero) throws IOException {
+        try (SeekableByteChannel canal = Files.newByteChannel(fichero)) {
+            if (canal.size() == 0) {
+                return true;
+            }
+            ByteBuffer ultimo = ByteBuffer.allocate(1);
+            canal.position(canal.size() - 1).read(ultimo);
+            return ultimo.get(0) == '\n';
+        }
+    }
+
+    private long leerProgreso() {
+        try {
+            return Files.exists(ficheroProgreso) ? Long.parseLong(Files.readString(ficheroProgreso).trim()) : 0;
+        } catch (IOException | NumberFormatException e) {
+            log.warn("No se pudo leer el progreso de la recuperación de auditoría, se empieza desde el principio", e);
+            return 0;
+        }
+    }
+
+    private void guardarProgreso(long lineas) throws IOException {
+        Path temporal = Paths.get(ficheroProgreso + ".tmp");
+        Files.writeString(temporal, Long.toString(lineas));
+        Files.move(temporal, ficheroProgreso, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void descartar(String linea, String motivo) throws IOException {
+        log.warn("Se descarta una línea del respaldo de auditoría ({}): {}", motivo, linea);
+        Files.writeString(ficheroDescartadas, linea + System.lineSeparator(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void cerrarRespaldo() {
+        synchronized (cerrojoRespaldo) {
+            if (respaldo != null) {
+                try {
+                    respaldo.close();
+                } catch (IOException e) {
+                    log.warn("No se pudo cerrar el fichero de respaldo de auditoría", e);
+                }
+                respaldo = null;
+            }
+        }
+    }
+
+    /**
+     * Intento de apertura pendiente de guardar
+     */
+    public record EventoApertura(LocalDateTime timestamp, boolean exitoso, String motivo, Long usuarioId,
+            Long cerraduraId) {
+
+        private static final char SEPARADOR = '\t';
+
+        String aLinea() {
+            String motivoPlano = motivo == null ? "" : motivo.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+            return timestamp.toString() + SEPARADOR + exitoso + SEPARADOR + (usuarioId == null ? "" : usuarioId)
+                    + SEPARADOR + (cerraduraId == null ? "" : cerraduraId) + SEPARADOR + motivoPlano;
+        }
+
+        /**
+         * @throws IllegalArgumentException si la línea no tiene el formato de
+         *                                  {@link #aLinea()}
+         */
+        static EventoApertura deLinea(String linea) {
+            String[] campos = linea.split("\t", 5);
+            if (campos.length < 5 || !(campos[1].equals("true") || campos[1].equals("false"))) {
+                throw new IllegalArgumentException("formato no válido");
+            }
+            try {
+                return new EventoApertura(
+                        LocalDateTime.parse(campos[0]),
+                        Boolean.parseBoolean(campos[1]),
+                        campos[4].isEmpty() ? null : campos[4],
+                        campos[2].isEmpty() ? null : Long.valueOf(campos[2]),
+                        campos[3].isEmpty() ? null : Long.valueOf(campos[3]));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("fecha no válida", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package es.upm.dit.isst.ioh.service;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import es.upm.dit.isst.ioh.model.Cerradura;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Avisa a {@link EstadisticasAperturaService} de los cambios de cerraduras,
+ * vengan de {@code /api/cerraduras} o del repositorio exportado en
+ * {@code /cerraduras}, para que no siga contando una cerradura movida bajo su
+ * propiedad anterior. Se aplica al confirmar la transacción.
+ */
+@Component
+public class CerraduraListener {
+
+    // Hibernate crea el listener mientras arranca JPA, antes de que exista el servicio
+    private final ObjectProvider<EstadisticasAperturaService> estadisticasAperturaService;
+
+    public CerraduraListener(ObjectProvider<EstadisticasAperturaService> estadisticasAperturaService) {
+        this.estadisticasAperturaService = estadisticasAperturaService;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void guardada(Cerradura cerradura) {
+        Long id = cerradura.getId();
+        Long propiedadId = cerradura.getPropiedad() != null ? cerradura.getPropiedad().getId() : null;
+        alConfirmar(() -> estadisticasAperturaService.getObject().actualizarCerradura(id, propiedadId));
+    }
+
+    @PostRemove
+    public void borrada(Cerradura cerradura) {
+        Long id = cerradura.getId();
+        alConfirmar(() -> estadisticasAperturaService.getObject().olvidarCerradura(id));
+    }
+
+    private static void alConfirmar(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    accion.run();
+                }
+            });
+        } else {
+            accion.run();
+        }
+    }
+}
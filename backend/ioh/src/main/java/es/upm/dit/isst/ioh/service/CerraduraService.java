@@ -1,44 +1,60 @@
 package es.upm.dit.isst.ioh.service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import es.upm.dit.isst.ioh.dto.CerraduraInfoDTO;
 import es.upm.dit.isst.ioh.model.Acceso;
 import es.upm.dit.isst.ioh.model.Cerradura;
-import es.upm.dit.isst.ioh.model.Huesped;
 import es.upm.dit.isst.ioh.model.Propiedad;
 import es.upm.dit.isst.ioh.model.Propietario;
-import es.upm.dit.isst.ioh.model.Usuario;
+import es.upm.dit.isst.ioh.model.Rol;
 import es.upm.dit.isst.ioh.repository.AccesoRepository;
 import es.upm.dit.isst.ioh.repository.CerraduraRepository;
+import es.upm.dit.isst.ioh.repository.CerraduraRepository.InfoCerradura;
 import es.upm.dit.isst.ioh.repository.HuespedRepository;
 import es.upm.dit.isst.ioh.repository.PropietarioRepository;
-import es.upm.dit.isst.ioh.repository.UsuarioRepository;
 
 @Service
 public class CerraduraService {
 
+    private static final Logger log = LoggerFactory.getLogger(CerraduraService.class);
+
     private final CerraduraRepository cerraduraRepository;
     private final AccesoRepository accesoRepository;
     private final PropietarioRepository propietarioRepository;
     private final HuespedRepository huespedRepository;
-    private final UsuarioRepository usuarioRepository;
+    private final IndiceAccesoService indiceAccesoService;
+    private final AuditoriaAperturaService auditoriaAperturaService;
+    private final RolUsuarioService rolUsuarioService;
 
     public CerraduraService(
             CerraduraRepository cerraduraRepository,
             AccesoRepository accesoRepository,
             PropietarioRepository propietarioRepository,
             HuespedRepository huespedRepository,
-            UsuarioRepository usuarioRepository) {
+            IndiceAccesoService indiceAccesoService,
+            AuditoriaAperturaService auditoriaAperturaService,
+            RolUsuarioService rolUsuarioService) {
         this.cerraduraRepository = cerraduraRepository;
         this.accesoRepository = accesoRepository;
         this.propietarioRepository = propietarioRepository;
         this.huespedRepository = huespedRepository;
-        this.usuarioRepository = usuarioRepository;
+        this.indiceAccesoService = indiceAccesoService;
+        this.auditoriaAperturaService = auditoriaAperturaService;
+        this.rolUsuarioService = rolUsuarioService;
     }
 
     /**
@@ -48,6 +64,7 @@ public class CerraduraService {
      * @param cerraduraId ID de la cerradura
      * @return true si tiene acceso, false de lo contrario
      */
+    @Transactional(readOnly = true)
     public boolean verificarAccesoUsuario(Long usuarioId, Long cerraduraId) {
         // Obtener la cerradura
         Optional<Cerradura> optCerradura = cerraduraRepository.findById(cerraduraId);
@@ -56,37 +73,37 @@ public class CerraduraService {
         }
 
         Cerradura cerradura = optCerradura.get();
-        Optional<Usuario> optUsuario = usuarioRepository.findById(usuarioId);
+        // El rol sale de la caché de roles, sin cargar el usuario
+        Optional<Rol> rol = rolUsuarioService.rolDe(usuarioId);
 
-        if (optUsuario.isEmpty()) {
+        if (rol.isEmpty()) {
             return false;
         }
 
-        Usuario usuario = optUsuario.get();
-
         // Si el usuario es propietario
-        if (usuario instanceof Propietario) {
+        if (rol.get() == Rol.PROPIETARIO) {
             // Verificar si la propiedad pertenece al propietario
             Propiedad propiedad = cerradura.getPropiedad();
-            return propiedad.getPropietario().getId().equals(usuario.getId());
+            return propiedad.getPropietario().getId().equals(usuarioId);
         }
 
-        // Si el usuario es huésped
-        if (usuario instanceof Huesped) {
-            // Verificar si tiene un acceso activo a esta cerradura
-            LocalDateTime ahora = LocalDateTime.now();
-            return accesoRepository
-                    .findByHuespedIdAndHorario_InicioBeforeAndHorario_FinAfter(
-                            usuario.getId(), ahora, ahora)
-                    .stream()
-                    .anyMatch(a -> a.getCerradura().getId().equals(cerraduraId));
-        }
+        // Si el usuario es huésped: verificar si tiene un acceso activo a esta cerradura (índice en memoria)
+        return indiceAccesoService.tieneAcceso(usuarioId, cerraduraId, LocalDateTime.now());
+    }
 
-        return false;
+    /**
+     * Comprueba el acceso cuando ya se conoce el propietario de la cerradura: el
+     * propietario siempre tiene acceso y los huéspedes se consultan en el índice
+     * en memoria (los propietarios nunca tienen accesos de huésped)
+     */
+    private boolean tieneAcceso(Long usuarioId, Long cerraduraId, Long propietarioId, LocalDateTime ahora) {
+        return usuarioId.equals(propietarioId)
+                || indiceAccesoService.tieneAcceso(usuarioId, cerraduraId, ahora);
     }
 
     /**
-     * Intenta abrir una cerradura verificando que el usuario tenga acceso
+     * Intenta abrir una cerradura verificando que el usuario tenga acceso. El
+     * intento se audita al terminar la transacción: si se deshace, como fallido.
      * 
      * @param usuarioId   ID del usuario que intenta abrir
      * @param cerraduraId ID de la cerradura a abrir
@@ -94,6 +111,29 @@ public class CerraduraService {
      */
     @Transactional
     public AperturaResult abrirPuerta(Long usuarioId, Long cerraduraId) {
+        AperturaResult resultado = intentarAbrir(usuarioId, cerraduraId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int estado) {
+                    if (estado == STATUS_COMMITTED) {
+                        auditar(usuarioId, cerraduraId, resultado);
+                    } else {
+                        auditoriaAperturaService.registrar(usuarioId, cerraduraId, false, "Apertura deshecha");
+                    }
+                }
+            });
+        } else {
+            auditar(usuarioId, cerraduraId, resultado);
+        }
+        return resultado;
+    }
+
+    private void auditar(Long usuarioId, Long cerraduraId, AperturaResult resultado) {
+        auditoriaAperturaService.registrar(usuarioId, cerraduraId, resultado.isExito(), resultado.getMensaje());
+    }
+
+    private AperturaResult intentarAbrir(Long usuarioId, Long cerraduraId) {
         // Verificar si la cerradura existe
         Optional<Cerradura> optCerradura = cerraduraRepository.findById(cerraduraId);
         if (optCerradura.isEmpty()) {
@@ -149,6 +189,7 @@ public class CerraduraService {
 
     // return "Propiedad no encontrada";
     // }
+    @Transactional(readOnly = true)
     public String obtenerNombrePropiedadPorCerradura(Long cerraduraId) {
         System.out.println("Buscando cerradura con ID: " + cerraduraId); // Debug
         Optional<Cerradura> optCerradura = cerraduraRepository.findById(cerraduraId);
@@ -170,6 +211,7 @@ public class CerraduraService {
         return propiedad.getNombre() != null ? propiedad.getNombre() : "Propiedad sin nombre";
     }
 
+    @Transactional(readOnly = true)
     public String obtenerDireccionPropiedadPorCerradura(Long cerraduraId) {
         System.out.println("Buscando dirección para cerradura con ID: " + cerraduraId);
         Optional<Cerradura> optCerradura = cerraduraRepository.findById(cerraduraId);
@@ -191,6 +233,7 @@ public class CerraduraService {
         return propiedad.getDireccion() != null ? propiedad.getDireccion() : "Dirección no disponible";
     }
 
+    @Transactional(readOnly = true)
     public String obtenerNombrePropietarioPorCerradura(Long cerraduraId) {
         System.out.println("Buscando propietario para cerradura ID: " + cerraduraId);
         Optional<Cerradura> optCerradura = cerraduraRepository.findById(cerraduraId);
@@ -241,8 +284,38 @@ public class CerraduraService {
      * @return DTO con toda la información de la cerradura, propiedad y propietario
      */
     public CerraduraInfoDTO obtenerInformacionCerradura(Long cerraduraId, Long usuarioId) {
-        System.out.println("Obteniendo información completa para cerradura ID: " + cerraduraId);
+        // Cerradura, propiedad y propietario en una sola consulta
+        InfoCerradura info = cerraduraRepository.findInfoById(cerraduraId).orElse(null);
+        if (info == null) {
+            log.debug("Cerradura {} no encontrada", cerraduraId);
+        }
+        return construirInformacion(cerraduraId, info, usuarioId, LocalDateTime.now());
+    }
 
+    /**
+     * Obtiene la información de varias cerraduras con una única consulta IN
+     * 
+     * @param cerraduraIds IDs de las cerraduras
+     * @param usuarioId    ID del usuario para calcular tieneAcceso (opcional)
+     * @return Un DTO por cada ID pedido, en el mismo orden; las cerraduras que no
+     *         existen se devuelven con los valores por defecto
+     */
+    public List<CerraduraInfoDTO> obtenerInformacionCerraduras(List<Long> cerraduraIds, Long usuarioId) {
+        Map<Long, InfoCerradura> encontradas = new HashMap<>();
+        for (InfoCerradura info : cerraduraRepository.findInfoByIdIn(new HashSet<>(cerraduraIds))) {
+            encontradas.put(info.getCerraduraId(), info);
+        }
+
+        LocalDateTime ahora = LocalDateTime.now();
+        List<CerraduraInfoDTO> resultado = new ArrayList<>(cerraduraIds.size());
+        for (Long cerraduraId : cerraduraIds) {
+            resultado.add(construirInformacion(cerraduraId, encontradas.get(cerraduraId), usuarioId, ahora));
+        }
+        return resultado;
+    }
+
+    private CerraduraInfoDTO construirInformacion(Long cerraduraId, InfoCerradura info, Long usuarioId,
+            LocalDateTime ahora) {
         // Inicializar DTO con valores por defecto
         CerraduraInfoDTO dto = new CerraduraInfoDTO();
         dto.setCerraduraId(cerraduraId);
@@ -253,41 +326,34 @@ public class CerraduraService {
         dto.setPropietarioNombre("Propietario desconocido");
         dto.setTieneAcceso(false);
 
-        // Buscar la cerradura
-        Optional<Cerradura> optCerradura = cerraduraRepository.findById(cerraduraId);
-        if (optCerradura.isEmpty()) {
-            System.out.println("Cerradura no encontrada");
+        if (info == null) {
             return dto;
         }
 
-        Cerradura cerradura = optCerradura.get();
-
         // Información de la cerradura
-        dto.setCerraduraNombre(cerradura.getModelo());
-        dto.setCerraduraModelo(cerradura.getModelo() != null ? cerradura.getModelo() : "Modelo desconocido");
+        dto.setCerraduraNombre(info.getModelo());
+        dto.setCerraduraModelo(info.getModelo() != null ? info.getModelo() : "Modelo desconocido");
 
         // Información de la propiedad
-        Propiedad propiedad = cerradura.getPropiedad();
-        if (propiedad != null) {
-            dto.setPropiedadId(propiedad.getId());
-            dto.setPropiedadNombre(propiedad.getNombre() != null ? propiedad.getNombre() : "Propiedad sin nombre");
+        if (info.getPropiedadId() != null) {
+            dto.setPropiedadId(info.getPropiedadId());
+            dto.setPropiedadNombre(info.getPropiedadNombre() != null ? info.getPropiedadNombre() : "Propiedad sin nombre");
             dto.setPropiedadDireccion(
-                    propiedad.getDireccion() != null ? propiedad.getDireccion() : "Dirección no disponible");
+                    info.getPropiedadDireccion() != null ? info.getPropiedadDireccion() : "Dirección no disponible");
 
             // Información del propietario
-            Propietario propietario = propiedad.getPropietario();
-            if (propietario != null) {
-                dto.setPropietarioId(propietario.getId());
+            if (info.getPropietarioId() != null) {
+                dto.setPropietarioId(info.getPropietarioId());
                 dto.setPropietarioNombre(
-                        propietario.getNombre() != null ? propietario.getNombre() : "Propietario desconocido");
+                        info.getPropietarioNombre() != null ? info.getPropietarioNombre() : "Propietario desconocido");
             }
         }
 
-        // Verificar si el usuario tiene acceso a esta cerradura
+        // Verificar el acceso con los datos ya cargados, sin volver a consultar
         if (usuarioId != null) {
-            dto.setTieneAcceso(verificarAccesoUsuario(usuarioId, cerraduraId));
+            dto.setTieneAcceso(tieneAcceso(usuarioId, cerraduraId, info.getPropietarioId(), ahora));
         }
 
         return dto;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,182 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Cifrado y verificación de contraseñas con bcrypt.
+ *
+ * bcrypt es deliberadamente caro, así que se calcula en un pool propio con un
+ * número fijo de hilos y una cola acotada, en lugar de en los hilos de Tomcat.
+ * Si la cola está llena o la respuesta tarda más del tiempo máximo se lanza
+ * {@link CredencialesOcupadasException}: una ráfaga de logins se rechaza rápido
+ * en vez de dejar sin hilos a la apertura de puertas.
+ *
+ * Las contraseñas guardadas en claro (anteriores al cifrado) o con un coste
+ * menor que el configurado se marcan para volver a cifrarlas tras un login
+ * correcto.
+ */
+@Service
+public class CredencialesService {
+
+    // $2a$, $2b$ o $2y$, coste de dos dígitos y 53 caracteres de sal y hash
+    private static final Pattern BCRYPT = Pattern.compile("\\A\\$2[aby]?\\$\\d\\d\\$[./0-9A-Za-z]{53}");
+
+    private final BCryptPasswordEncoder encoder;
+    // Para que un email inexistente tarde lo mismo que una contraseña incorrecta
+    private final String hashFicticio;
+    private final ThreadPoolExecutor pool;
+    private final long timeoutMs;
+
+    private final Counter rechazadas;
+    private final Timer tiempo;
+
+    public CredencialesService(
+            MeterRegistry meterRegistry,
+            @Value("${ioh.credenciales.bcrypt-coste:10}") int coste,
+            @Value("${ioh.credenciales.hilos:0}") int hilos,
+            @Value("${ioh.credenciales.cola:64}") int cola,
+            @Value("${ioh.credenciales.timeout-ms:3000}") long timeoutMs) {
+        this.encoder = new BCryptPasswordEncoder(coste);
+        this.hashFicticio = encoder.encode("");
+        this.timeoutMs = timeoutMs;
+
+        // Por defecto la mitad de los núcleos, para dejar CPU al resto de peticiones
+        int numHilos = hilos > 0 ? hilos : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger contador = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(numHilos, numHilos, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(cola), tarea -> {
+                    Thread hilo = new Thread(tarea, "credenciales-" + contador.incrementAndGet());
+                    hilo.setDaemon(true);
+                    return hilo;
+                }, new ThreadPoolExecutor.AbortPolicy());
+
+        this.rechazadas = Counter.builder("ioh.credenciales.rechazadas")
+                .description("Operaciones de contraseña rechazadas por cola llena o tiempo agotado")
+                .register(meterRegistry);
+        this.tiempo = Timer.builder("ioh.credenciales.tiempo")
+                .description("Tiempo de cálculo de bcrypt en el pool de credenciales")
+                .register(meterRegistry);
+        Gauge.builder("ioh.credenciales.cola", pool, p -> p.getQueue().size())
+                .description("Operaciones de contraseña esperando en el pool")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Cifra una contraseña nueva
+     *
+     * @param contrasena Contraseña en claro
+     * @return Hash bcrypt
+     * @throws CredencialesOcupadasException si el pool está saturado
+     */
+    public String cifrar(String contrasena) {
+        if (contrasena == null || contrasena.isEmpty()) {
+            throw new IllegalArgumentException("La contraseña es obligatoria");
+        }
+        return ejecutar(() -> encoder.encode(contrasena));
+    }
+
+    /**
+     * Comprueba una contraseña contra la guardada
+     *
+     * @param contrasena Contraseña proporcionada
+     * @param guardada   Hash bcrypt guardado, la contraseña en claro de los
+     *                   usuarios antiguos o null si el usuario no existe
+     * @return Resultado de la verificación, con el hash nuevo si hay que
+     *         actualizar el guardado
+     * @throws CredencialesOcupadasException si el pool está saturado
+     */
+    public Verificacion verificar(String contrasena, String guardada) {
+        if (contrasena == null) {
+            return Verificacion.INVALIDA;
+        }
+        if (guardada == null) {
+            return ejecutar(() -> {
+                encoder.matches(contrasena, hashFicticio);
+                return Verificacion.INVALIDA;
+            });
+        }
+        if (!BCRYPT.matcher(guardada).lookingAt()) {
+            // Contraseña antigua en claro: se compara en tiempo constante y se cifra
+            boolean valida = MessageDigest.isEqual(contrasena.getBytes(StandardCharsets.UTF_8),
+                    guardada.getBytes(StandardCharsets.UTF_8));
+            return valida ? new Verificacion(true, cifrar(contrasena)) : Verificacion.INVALIDA;
+        }
+        return ejecutar(() -> {
+            if (!encoder.matches(contrasena, guardada)) {
+                return Verificacion.INVALIDA;
+            }
+            // El coste ha subido desde que se guardó: se aprovecha para recalcularlo
+            return new Verificacion(true, encoder.upgradeEncoding(guardada) ? encoder.encode(contrasena) : null);
+        });
+    }
+
+    private <T> T ejecutar(Callable<T> tarea) {
+        Future<T> futuro;
+        try {
+            futuro = pool.submit(() -> tiempo.recordCallable(tarea));
+        } catch (RejectedExecutionException e) {
+            rechazadas.increment();
+            throw new CredencialesOcupadasException();
+        }
+        try {
+            return futuro.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Si aún estaba en la cola ya no se ejecuta
+            futuro.cancel(false);
+            rechazadas.increment();
+            throw new CredencialesOcupadasException();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futuro.cancel(false);
+            throw new CredencialesOcupadasException();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error al procesar la contraseña", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Resultado de verificar una contraseña
+     *
+     * @param valida    Si la contraseña es correcta
+     * @param nuevoHash Hash con el que sustituir el guardado, o null si no hace
+     *                  falta
+     */
+    public record Verificacion(boolean valida, String nuevoHash) {
+        static final Verificacion INVALIDA = new Verificacion(false, null);
+    }
+
+    /**
+     * El pool de credenciales no puede atender la operación a tiempo
+     */
+    public static class CredencialesOcupadasException extends RuntimeException {
+        public CredencialesOcupadasException() {
+            super("El servicio de autenticación está ocupado, inténtalo de nuevo en unos segundos");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Cubetas de tokens por clave para limitar la tasa de peticiones, repartidas en
+ * franjas con su propio cerrojo.
+ *
+ * Cada cubeta admite ráfagas de hasta {@code capacidad} peticiones y se rellena
+ * a {@code porSegundo} tokens por segundo. El relleno se calcula al consumir a
+ * partir del tiempo transcurrido, así que no hay ningún hilo que recorra las
+ * cubetas; las que han vuelto a llenarse se pueden descartar sin cambiar el
+ * comportamiento, y eso hace {@link #purgar}.
+ *
+ * @param <K> Tipo de las claves
+ */
+public final class CubetasTokens<K> {
+
+    private final Franja<K>[] franjas;
+    private final int mascara;
+    private final double capacidad;
+    private final double porNano;
+    private final long nanosHastaLlenar;
+    private final int maxPorFranja;
+
+    /**
+     * @param numFranjas Número mínimo de franjas; se redondea a potencia de dos
+     * @param capacidad  Tamaño máximo de ráfaga
+     * @param porSegundo Tokens que se reponen por segundo
+     * @param maxClaves  Número máximo de cubetas a la vez
+     */
+    @SuppressWarnings("unchecked")
+    public CubetasTokens(int numFranjas, double capacidad, double porSegundo, int maxClaves) {
+        if (numFranjas < 1 || numFranjas > (1 << 16)) {
+            throw new IllegalArgumentException("El número de franjas debe estar entre 1 y 65536");
+        }
+        if (capacidad < 1 || porSegundo <= 0) {
+            throw new IllegalArgumentException("La capacidad debe ser al menos 1 y la reposición positiva");
+        }
+        int tamano = numFranjas == 1 ? 1 : Integer.highestOneBit(numFranjas - 1) << 1;
+        this.franjas = new Franja[tamano];
+        for (int i = 0; i < tamano; i++) {
+            franjas[i] = new Franja<>();
+        }
+        this.mascara = tamano - 1;
+        this.capacidad = capacidad;
+        this.porNano = porSegundo / 1e9;
+        this.nanosHastaLlenar = (long) Math.ceil(capacidad / porNano);
+        this.maxPorFranja = Math.max(1, maxClaves / tamano);
+    }
+
+    /**
+     * Intenta consumir un token de la cubeta de la clave
+     *
+     * @param ahoraNanos Instante actual según {@link System#nanoTime()}
+     * @return 0 si se ha consumido, o los nanosegundos que faltan para que haya
+     *         un token disponible
+     */
+    public long consumir(K clave, long ahoraNanos) {
+        Franja<K> franja = franja(clave);
+        synchronized (franja) {
+            Cubeta cubeta = franja.cubetas.get(clave);
+            if (cubeta == null) {
+                if (franja.cubetas.size() >= maxPorFranja) {
+                    purgar(franja, ahoraNanos);
+                    if (franja.cubetas.size() >= maxPorFranja) {
+                        // Sin hueco se deja pasar: una cubeta nueva estaría llena
+                        return 0;
+                    }
+                }
+                cubeta = new Cubeta(capacidad, ahoraNanos);
+                franja.cubetas.put(clave, cubeta);
+            }
+
+            double tokens = Math.min(capacidad, cubeta.tokens + (ahoraNanos - cubeta.actualizada) * porNano);
+            cubeta.actualizada = ahoraNanos;
+            if (tokens >= 1) {
+                cubeta.tokens = tokens - 1;
+                return 0;
+            }
+            cubeta.tokens = tokens;
+            return (long) Math.ceil((1 - tokens) / porNano);
+        }
+    }
+
+    /**
+     * Elimina las cubetas que ya se han vuelto a llenar
+     */
+    public void purgar(long ahoraNanos) {
+        for (Franja<K> franja : franjas) {
+            synchronized (franja) {
+                purgar(franja, ahoraNanos);
+            }
+        }
+    }
+
+    private void purgar(Franja<K> franja, long ahoraNanos) {
+        Iterator<Cubeta> it = franja.cubetas.values().iterator();
+        while (it.hasNext()) {
+            if (ahoraNanos - it.next().actualizada >= nanosHastaLlenar) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return Número de cubetas en memoria
+     */
+    public int tamano() {
+        int total = 0;
+        for (Franja<K> franja : franjas) {
+            synchronized (franja) {
+                total += franja.cubetas.size();
+            }
+        }
+        return total;
+    }
+
+    private Franja<K> franja(K clave) {
+        int h = clave.hashCode() * 0x9E3779B9;
+        return franjas[(h ^ (h >>> 16)) & mascara];
+    }
+
+    private static final class Franja<K> {
+        private final Map<K, Cubeta> cubetas = new HashMap<>();
+    }
+
+    // Solo se usa con el cerrojo de su franja
+    private static final class Cubeta {
+        private double tokens;
+        private long actualizada;
+
+        private Cubeta(double tokens, long actualizada) {
+            this.tokens = tokens;
+            this.actualizada = actualizada;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import es.upm.dit.isst.ioh.dto.AlertaFuerzaBrutaDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Detector de ataques de fuerza bruta sobre la apertura de puertas y la
+ * validación de tokens.
+ *
+ * Cuenta los intentos fallidos por cerradura, por usuario y por dirección IP en
+ * ventanas deslizantes en memoria ({@link VentanasDeslizantes}). Cuando un
+ * usuario o una IP supera su umbral queda bloqueado un tiempo y se genera una
+ * alerta para el propietario de la cerradura. Los controladores consultan el
+ * bloqueo antes de tocar la base de datos, así un ataque no añade carga a los
+ * repositorios.
+ *
+ * Una cerradura que supera su umbral solo genera la alerta: bloquearla dejaría
+ * fuera también a su propietario y a los huéspedes con acceso. Por la misma
+ * razón solo se cuentan los fallos de usuarios identificados con sesión, ya que
+ * cualquiera puede enviar el ID de otro.
+ */
+@Service
+public class DetectorFuerzaBrutaService {
+
+    private static final Logger log = LoggerFactory.getLogger(DetectorFuerzaBrutaService.class);
+
+    private final boolean habilitado;
+    private final int umbralCerradura;
+    private final int umbralUsuario;
+    private final int umbralIp;
+    private final long bloqueoMs;
+
+    private final VentanasDeslizantes<Long> cerraduras;
+    private final VentanasDeslizantes<Long> usuarios;
+    private final VentanasDeslizantes<String> ips;
+
+    // Últimas alertas, en un anillo de tamaño fijo
+    private final AlertaFuerzaBrutaDTO[] alertas;
+    private long siguienteAlerta = 1;
+
+    private final Counter rechazados;
+    private final Counter bloqueos;
+
+    public DetectorFuerzaBrutaService(
+            MeterRegistry meterRegistry,
+            @Value("${ioh.seguridad.fuerza-bruta.habilitado:true}") boolean habilitado,
+            @Value("${ioh.seguridad.fuerza-bruta.ventana-segundos:300}") long ventanaSegundos,
+            @Value("${ioh.seguridad.fuerza-bruta.umbral-cerradura:50}") int umbralCerradura,
+            @Value("${ioh.seguridad.fuerza-bruta.umbral-usuario:10}") int umbralUsuario,
+            @Value("${ioh.seguridad.fuerza-bruta.umbral-ip:20}") int umbralIp,
+            @Value("${ioh.seguridad.fuerza-bruta.bloqueo-segundos:900}") long bloqueoSegundos,
+            @Value("${ioh.seguridad.fuerza-bruta.franjas:64}") int franjas,
+            @Value("${ioh.seguridad.fuerza-bruta.max-claves:100000}") int maxClaves,
+            @Value("${ioh.seguridad.fuerza-bruta.alertas:1000}") int maxAlertas) {
+        this.habilitado = habilitado;
+        this.umbralCerradura = umbralCerradura;
+        this.umbralUsuario = umbralUsuario;
+        this.umbralIp = umbralIp;
+        this.bloqueoMs = TimeUnit.SECONDS.toMillis(bloqueoSegundos);
+
+        long ventanaMs = TimeUnit.SECONDS.toMillis(ventanaSegundos);
+        this.cerraduras = new VentanasDeslizantes<>(franjas, ventanaMs, maxClaves);
+        this.usuarios = new VentanasDeslizantes<>(franjas, ventanaMs, maxClaves);
+        this.ips = new VentanasDeslizantes<>(franjas, ventanaMs, maxClaves);
+        this.alertas = new AlertaFuerzaBrutaDTO[maxAlertas];
+
+        this.rechazados = Counter.builder("ioh.seguridad.fuerza-bruta.rechazados")
+                .description("Intentos rechazados por estar bloqueados tras demasiados fallos")
+                .register(meterRegistry);
+        this.bloqueos = Counter.builder("ioh.seguridad.fuerza-bruta.bloqueos")
+                .description("Bloqueos por superar el umbral de intentos fallidos")
+                .register(meterRegistry);
+        Gauge.builder("ioh.seguridad.fuerza-bruta.vigilados", this,
+                d -> d.cerraduras.tamano() + d.usuarios.tamano() + d.ips.tamano())
+                .description("Cerraduras, usuarios e IPs con intentos fallidos recientes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Comprueba si el intento debe rechazarse sin procesarlo. Las cerraduras
+     * nunca se bloquean.
+     *
+     * @param usuarioId ID del usuario (opcional)
+     * @param ip        Dirección IP del cliente (opcional)
+     * @return El bloqueo vigente, si lo hay
+     */
+    public Optional<Bloqueo> comprobar(Long usuarioId, String ip) {
+        if (!habilitado) {
+            return Optional.empty();
+        }
+        long ahora = System.currentTimeMillis();
+        long hasta = 0;
+        Dimension dimension = null;
+        if (usuarioId != null && (hasta = usuarios.bloqueadoHasta(usuarioId, ahora)) > 0) {
+            dimension = Dimension.USUARIO;
+        } else if (ip != null && (hasta = ips.bloqueadoHasta(ip, ahora)) > 0) {
+            dimension = Dimension.IP;
+        }
+        if (dimension == null) {
+            return Optional.empty();
+        }
+        rechazados.increment();
+        return Optional.of(new Bloqueo(dimension, TimeUnit.MILLISECONDS.toSeconds(hasta - ahora + 999)));
+    }
+
+    /**
+     * Cuenta un intento fallido, bloquea el usuario o la IP que haya superado su
+     * umbral y avisa si lo ha superado la cerradura
+     *
+     * @param usuarioId   ID del usuario de la sesión (null si la petición no
+     *                    tiene sesión: ese ID no se cuenta)
+     * @param cerraduraId ID de la cerradura (opcional)
+     * @param ip          Dirección IP del cliente (opcional)
+     * @param motivo      Motivo del fallo
+     */
+    public void registrarFallo(Long usuarioId, Long cerraduraId, String ip, String motivo) {
+        if (!habilitado) {
+            return;
+        }
+        long ahora = System.currentTimeMillis();
+        if (usuarioId != null) {
+            contar(usuarios, usuarioId, umbralUsuario, Dimension.USUARIO, ahora, usuarioId, cerraduraId, ip, motivo);
+        }
+        if (ip != null) {
+            contar(ips, ip, umbralIp, Dimension.IP, ahora, usuarioId, cerraduraId, ip, motivo);
+        }
+        if (cerraduraId != null) {
+            contar(cerraduras, cerraduraId, umbralCerradura, Dimension.CERRADURA, ahora, usuarioId, cerraduraId, ip,
+                    motivo);
+        }
+    }
+
+    // En las cerraduras el bloqueo solo evita repetir la alerta, comprobar() no lo mira
+    private <K> void contar(VentanasDeslizantes<K> ventanas, K clave, int umbral, Dimension dimension, long ahora,
+            Long usuarioId, Long cerraduraId, String ip, String motivo) {
+        int fallos = ventanas.sumar(clave, ahora);
+        if (fallos >= umbral && ventanas.bloquear(clave, ahora + bloqueoMs, ahora)) {
+            if (dimension == Dimension.CERRADURA) {
+                log.warn("Alerta en {} {} tras {} intentos fallidos (último: {})", dimension, clave, fallos, motivo);
+            } else {
+                bloqueos.increment();
+                log.warn("Bloqueado {} {} tras {} intentos fallidos (último: {})", dimension, clave, fallos, motivo);
+            }
+            LocalDateTime fecha = LocalDateTime.now();
+            alertar(fecha, dimension, String.valueOf(clave), fallos, fecha.plus(Duration.ofMillis(bloqueoMs)), motivo,
+                    usuarioId, cerraduraId, ip);
+        }
+    }
+
+    private synchronized void alertar(LocalDateTime fecha, Dimension dimension, String valor, int fallos,
+            LocalDateTime hasta, String motivo, Long usuarioId, Long cerraduraId, String ip) {
+        if (alertas.length == 0) {
+            return;
+        }
+        long id = siguienteAlerta++;
+        alertas[(int) (id % alertas.length)] = new AlertaFuerzaBrutaDTO(id, fecha, dimension.name(), valor, fallos,
+                hasta, motivo, usuarioId, cerraduraId, ip);
+    }
+
+    /**
+     * Devuelve las alertas que afectan a alguna de las cerraduras indicadas, de
+     * la más antigua a la más reciente. Solo se conservan las últimas alertas.
+     *
+     * @param cerraduraIds IDs de las cerraduras
+     * @param despuesDe    Cursor: ID de la última alerta ya vista (opcional)
+     * @param limite       Número máximo de alertas
+     */
+    public synchronized List<AlertaFuerzaBrutaDTO> obtenerAlertas(Collection<Long> cerraduraIds, Long despuesDe,
+            int limite) {
+        List<AlertaFuerzaBrutaDTO> resultado = new ArrayList<>();
+        long primera = Math.max(1, siguienteAlerta - alertas.length);
+        if (despuesDe != null) {
+            primera = Math.max(primera, despuesDe + 1);
+        }
+        for (long id = primera; id < siguienteAlerta && resultado.size() < limite; id++) {
+            AlertaFuerzaBrutaDTO alerta = alertas[(int) (id % alertas.length)];
+            if (alerta.getCerraduraId() != null && cerraduraIds.contains(alerta.getCerraduraId())) {
+                resultado.add(alerta);
+            }
+        }
+        return resultado;
+    }
+
+    @Scheduled(fixedDelayString = "${ioh.seguridad.fuerza-bruta.purga-ms:60000}")
+    public void purgar() {
+        long ahora = System.currentTimeMillis();
+        cerraduras.purgar(ahora);
+        usuarios.purgar(ahora);
+        ips.purgar(ahora);
+    }
+
+    public enum Dimension {
+        CERRADURA, USUARIO, IP
+    }
+
+    /**
+     * Bloqueo vigente que impide el intento
+     *
+     * @param dimension         Qué está bloqueado
+     * @param segundosRestantes Segundos hasta que se levante el bloqueo
+     */
+    public record Bloqueo(Dimension dimension, long segundosRestantes) {
+    }
+}
@@ -0,0 +1,376 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import es.upm.dit.isst.ioh.dto.EstadisticaAperturaDTO;
+import es.upm.dit.isst.ioh.repository.CerraduraRepository;
+import es.upm.dit.isst.ioh.repository.CerraduraRepository.CerraduraPropiedad;
+import es.upm.dit.isst.ioh.service.AuditoriaAperturaService.EventoApertura;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Contadores agregados de intentos de apertura por cerradura, usuario y
+ * propiedad, con intervalos de minuto, hora y día.
+ *
+ * Se actualizan de forma incremental con cada lote que guarda el escritor de
+ * auditoría, así una consulta de estadísticas lee tantos intervalos como pida y
+ * nunca recorre los registros individuales. Al arrancar se reconstruyen desde
+ * el almacén de auditoría. Cada granularidad se conserva el tiempo configurado.
+ *
+ * Las sumas y la poda comparten un cerrojo de lectura y la reconstrucción
+ * toma el de escritura, así ninguna suma cae en mitad del vaciado. La
+ * propiedad de cada cerradura se guarda en caché y {@link CerraduraListener}
+ * la actualiza cuando la cerradura cambia.
+ */
+@Service
+public class EstadisticasAperturaService {
+
+    private static final Logger log = LoggerFactory.getLogger(EstadisticasAperturaService.class);
+    private static final long SIN_PROPIEDAD = 0L;
+
+    private static final String REGISTROS_DESDE = "SELECT r.timestamp, r.exitoso, r.motivo, r.usuario_id, r.cerradura_id, c.propiedad_id "
+            + "FROM registro_apertura r LEFT JOIN cerradura c ON c.id = r.cerradura_id WHERE r.timestamp >= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CerraduraRepository cerraduraRepository;
+    private final SegmentosAuditoriaService segmentosAuditoriaService;
+    private final ArchivoAuditoriaService archivoAuditoriaService;
+    private final Map<Granularidad, Long> retencionSegundos;
+
+    // (dimensión, id, granularidad) -> inicio del intervalo en segundos UTC -> contadores
+    private final Map<Serie, ConcurrentSkipListMap<Long, Contador>> series = new ConcurrentHashMap<>();
+    // cerraduraId -> propiedadId (SIN_PROPIEDAD si no tiene)
+    private final Map<Long, Long> propiedadPorCerradura = new ConcurrentHashMap<>();
+    private final AtomicLong intervalos = new AtomicLong();
+    private final ReadWriteLock cerrojo = new ReentrantReadWriteLock();
+
+    public EstadisticasAperturaService(
+            JdbcTemplate jdbcTemplate,
+            CerraduraRepository cerraduraRepository,
+            SegmentosAuditoriaService segmentosAuditoriaService,
+            ArchivoAuditoriaService archivoAuditoriaService,
+            MeterRegistry meterRegistry,
+            @Value("${ioh.auditoria.estadisticas.retencion.minuto-horas:48}") long retencionMinutoHoras,
+            @Value("${ioh.auditoria.estadisticas.retencion.hora-dias:90}") long retencionHoraDias,
+            @Value("${ioh.auditoria.estadisticas.retencion.dia-dias:3650}") long retencionDiaDias) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cerraduraRepository = cerraduraRepository;
+        this.segmentosAuditoriaService = segmentosAuditoriaService;
+        this.archivoAuditoriaService = archivoAuditoriaService;
+        this.retencionSegundos = Map.of(
+                Granularidad.MINUTO, TimeUnit.HOURS.toSeconds(retencionMinutoHoras),
+                Granularidad.HORA, TimeUnit.DAYS.toSeconds(retencionHoraDias),
+                Granularidad.DIA, TimeUnit.DAYS.toSeconds(retencionDiaDias));
+
+        Gauge.builder("ioh.auditoria.estadisticas.intervalos", intervalos, AtomicLong::get)
+                .description("Intervalos agregados de intentos de apertura en memoria")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Vuelve a calcular los contadores desde el almacén de auditoría. Lo llama
+     * el escritor de auditoría antes de empezar a escribir, para no contar dos
+     * veces los lotes nuevos.
+     */
+    public void reconstruir() {
+        cerrojo.writeLock().lock();
+        try {
+            reconstruirContadores();
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+    }
+
+    private void reconstruirContadores() {
+        series.clear();
+        intervalos.set(0);
+        propiedadPorCerradura.clear();
+        for (CerraduraPropiedad cerradura : cerraduraRepository.findPropiedades()) {
+            propiedadPorCerradura.put(cerradura.getCerraduraId(),
+                    cerradura.getPropiedadId() != null ? cerradura.getPropiedadId() : SIN_PROPIEDAD);
+        }
+
+        long retencionMaxima = retencionSegundos.values().stream().mapToLong(Long::longValue).max().orElse(0);
+        LocalDateTime desde = LocalDateTime.now().minusSeconds(retencionMaxima);
+        AtomicLong leidos = new AtomicLong();
+
+        if (segmentosAuditoriaService.isHabilitado()) {
+            segmentosAuditoriaService.recorrer(desde, registro -> {
+                acumular(registro.getTimestamp(), registro.isExitoso(), registro.getMotivo(), registro.getUsuarioId(),
+                        registro.getCerraduraId(), propiedadDe(registro.getCerraduraId()));
+                leidos.incrementAndGet();
+            });
+        } else {
+            // Los meses ya archivados no están en la tabla
+            archivoAuditoriaService.recorrer(desde, LocalDateTime.now(), registro -> {
+                acumular(registro.getTimestamp(), registro.isExitoso(), registro.getMotivo(), registro.getUsuarioId(),
+                        registro.getCerraduraId(), propiedadDe(registro.getCerraduraId()));
+                leidos.incrementAndGet();
+            });
+            jdbcTemplate.query(con -> {
+                var ps = con.prepareStatement(REGISTROS_DESDE);
+                ps.setFetchSize(1000);
+                ps.setTimestamp(1, Timestamp.valueOf(desde));
+                return ps;
+            }, rs -> {
+                Timestamp timestamp = rs.getTimestamp(1);
+                acumular(timestamp != null ? timestamp.toLocalDateTime() : null, rs.getBoolean(2), rs.getString(3),
+                        rs.getObject(4, Long.class), rs.getObject(5, Long.class), rs.getObject(6, Long.class));
+                leidos.incrementAndGet();
+            });
+        }
+        log.info("Estadísticas de apertura reconstruidas con {} registros en {} intervalos", leidos.get(),
+                intervalos.get());
+    }
+
+    /**
+     * Suma un lote de intentos de apertura recién guardado
+     */
+    public void acumular(List<EventoApertura> lote) {
+        cerrojo.readLock().lock();
+        try {
+            acumularLote(lote);
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    private void acumularLote(List<EventoApertura> lote) {
+        Set<Long> desconocidas = new HashSet<>();
+        for (EventoApertura evento : lote) {
+            if (evento.cerraduraId() != null && !propiedadPorCerradura.containsKey(evento.cerraduraId())) {
+                desconocidas.add(evento.cerraduraId());
+            }
+        }
+        if (!desconocidas.isEmpty()) {
+            for (CerraduraPropiedad cerradura : cerraduraRepository.findPropiedadesByIdIn(desconocidas)) {
+                propiedadPorCerradura.put(cerradura.getCerraduraId(),
+                        cerradura.getPropiedadId() != null ? cerradura.getPropiedadId() : SIN_PROPIEDAD);
+            }
+            // Cerraduras que no existen: no se vuelven a consultar en cada lote
+            for (Long cerraduraId : desconocidas) {
+                propiedadPorCerradura.putIfAbsent(cerraduraId, SIN_PROPIEDAD);
+            }
+        }
+
+        for (EventoApertura evento : lote) {
+            Long propiedad = evento.cerraduraId() != null ? propiedadPorCerradura.get(evento.cerraduraId()) : null;
+            acumular(evento.timestamp(), evento.exitoso(), evento.motivo(), evento.usuarioId(), evento.cerraduraId(),
+                    propiedad != null && propiedad != SIN_PROPIEDAD ? propiedad : null);
+        }
+    }
+
+    /**
+     * Actualiza la propiedad guardada de una cerradura creada o modificada
+     *
+     * @param cerraduraId ID de la cerradura
+     * @param propiedadId ID de su propiedad actual (puede ser null)
+     */
+    public void actualizarCerradura(Long cerraduraId, Long propiedadId) {
+        if (cerraduraId != null) {
+            propiedadPorCerradura.put(cerraduraId, propiedadId != null ? propiedadId : SIN_PROPIEDAD);
+        }
+    }
+
+    /**
+     * Olvida la propiedad guardada de una cerradura borrada
+     *
+     * @param cerraduraId ID de la cerradura
+     */
+    public void olvidarCerradura(Long cerraduraId) {
+        if (cerraduraId != null) {
+            propiedadPorCerradura.remove(cerraduraId);
+        }
+    }
+
+    private void acumular(LocalDateTime timestamp, boolean exitoso, String motivo, Long usuarioId, Long cerraduraId,
+            Long propiedadId) {
+        if (timestamp == null) {
+            return;
+        }
+        long segundos = timestamp.toEpochSecond(ZoneOffset.UTC);
+        long ahora = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
+        for (Granularidad granularidad : Granularidad.values()) {
+            if (segundos < ahora - retencionSegundos.get(granularidad)) {
+                continue;
+            }
+            long inicio = granularidad.inicio(segundos);
+            sumar(Dimension.CERRADURA, cerraduraId, granularidad, inicio, exitoso, motivo);
+            sumar(Dimension.USUARIO, usuarioId, granularidad, inicio, exitoso, motivo);
+            sumar(Dimension.PROPIEDAD, propiedadId, granularidad, inicio, exitoso, motivo);
+        }
+    }
+
+    private void sumar(Dimension dimension, Long id, Granularidad granularidad, long inicio, boolean exitoso,
+            String motivo) {
+        if (id == null) {
+            return;
+        }
+        Serie clave = new Serie(dimension, id, granularidad);
+        while (true) {
+            ConcurrentSkipListMap<Long, Contador> serie = series.computeIfAbsent(clave,
+                    s -> new ConcurrentSkipListMap<>());
+            Contador contador = serie.get(inicio);
+            boolean creado = false;
+            if (contador == null) {
+                Contador nuevo = new Contador();
+                contador = serie.putIfAbsent(inicio, nuevo);
+                if (contador == null) {
+                    contador = nuevo;
+                    creado = true;
+                    intervalos.incrementAndGet();
+                }
+            }
+            contador.sumar(exitoso, motivo);
+            // La poda quita las series vacías: si quitó esta antes de que llegara
+            // el contador, la suma quedó en una serie suelta y se repite
+            if (series.get(clave) == serie) {
+                return;
+            }
+            if (creado) {
+                intervalos.decrementAndGet();
+            }
+        }
+    }
+
+    private Long propiedadDe(Long cerraduraId) {
+        if (cerraduraId == null) {
+            return null;
+        }
+        Long propiedad = propiedadPorCerradura.get(cerraduraId);
+        if (propiedad == null) {
+            // Consulta fuera del mapa: computeIfAbsent bloquearía su nodo durante la consulta
+            Long consultada = cerraduraRepository.findPropiedadesByIdIn(List.of(cerraduraId)).stream()
+                    .map(CerraduraPropiedad::getPropiedadId)
+                    .filter(p -> p != null)
+                    .findFirst()
+                    .orElse(SIN_PROPIEDAD);
+            propiedad = propiedadPorCerradura.putIfAbsent(cerraduraId, consultada);
+            if (propiedad == null) {
+                propiedad = consultada;
+            }
+        }
+        return propiedad != SIN_PROPIEDAD ? propiedad : null;
+    }
+
+    /**
+     * Devuelve los intervalos con intentos de apertura en el rango, en orden
+     * cronológico. Los intervalos sin intentos no se incluyen.
+     *
+     * @param dimension    Cerradura, usuario o propiedad
+     * @param id           ID de la cerradura, usuario o propiedad
+     * @param granularidad Tamaño de los intervalos
+     * @param desde        Inicio del rango (se redondea al inicio de su intervalo)
+     * @param hasta        Fin del rango, inclusivo
+     */
+    public List<EstadisticaAperturaDTO> consultar(Dimension dimension, long id, Granularidad granularidad,
+            LocalDateTime desde, LocalDateTime hasta) {
+        ConcurrentSkipListMap<Long, Contador> serie = series.get(new Serie(dimension, id, granularidad));
+        if (serie == null) {
+            return List.of();
+        }
+        long inicio = granularidad.inicio(desde.toEpochSecond(ZoneOffset.UTC));
+        long fin = hasta.toEpochSecond(ZoneOffset.UTC);
+        if (fin < inicio) {
+            return List.of();
+        }
+
+        ConcurrentNavigableMap<Long, Contador> rango = serie.subMap(inicio, true, fin, true);
+        List<EstadisticaAperturaDTO> resultado = new ArrayList<>(rango.size());
+        for (Map.Entry<Long, Contador> entrada : rango.entrySet()) {
+            Contador contador = entrada.getValue();
+            Map<String, Long> porMotivo = new LinkedHashMap<>();
+            contador.porMotivo.forEach((motivo, total) -> porMotivo.put(motivo, total.sum()));
+            resultado.add(new EstadisticaAperturaDTO(
+                    LocalDateTime.ofEpochSecond(entrada.getKey(), 0, ZoneOffset.UTC),
+                    contador.exitosos.sum(),
+                    contador.fallidos.sum(),
+                    porMotivo));
+        }
+        return resultado;
+    }
+
+    /**
+     * Elimina los intervalos que han superado la retención de su granularidad
+     */
+    @Scheduled(fixedDelayString = "${ioh.auditoria.estadisticas.poda-ms:3600000}",
+            initialDelayString = "${ioh.auditoria.estadisticas.poda-ms:3600000}")
+    public void podar() {
+        cerrojo.readLock().lock();
+        try {
+            long ahora = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
+            for (Map.Entry<Serie, ConcurrentSkipListMap<Long, Contador>> entrada : series.entrySet()) {
+                Granularidad granularidad = entrada.getKey().granularidad();
+                ConcurrentNavigableMap<Long, Contador> caducados = entrada.getValue()
+                        .headMap(granularidad.inicio(ahora - retencionSegundos.get(granularidad)));
+                int eliminados = caducados.size();
+                caducados.clear();
+                intervalos.addAndGet(-eliminados);
+                // Se comprueba y se quita de forma atómica respecto a computeIfAbsent en sumar
+                series.computeIfPresent(entrada.getKey(), (s, serie) -> serie.isEmpty() ? null : serie);
+            }
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    public enum Dimension {
+        CERRADURA, USUARIO, PROPIEDAD
+    }
+
+    public enum Granularidad {
+        MINUTO(60), HORA(3600), DIA(86400);
+
+        private final long segundos;
+
+        Granularidad(long segundos) {
+            this.segundos = segundos;
+        }
+
+        public long getSegundos() {
+            return segundos;
+        }
+
+        long inicio(long segundosUtc) {
+            return Math.floorDiv(segundosUtc, segundos) * segundos;
+        }
+    }
+
+    private record Serie(Dimension dimension, long id, Granularidad granularidad) {
+    }
+
+    private static final class Contador {
+        private final LongAdder exitosos = new LongAdder();
+        private final LongAdder fallidos = new LongAdder();
+        private final Map<String, LongAdder> porMotivo = new ConcurrentHashMap<>();
+
+        void sumar(boolean exitoso, String motivo) {
+            (exitoso ? exitosos : fallidos).increment();
+            porMotivo.computeIfAbsent(motivo != null ? motivo : "", m -> new LongAdder()).increment();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import es.upm.dit.isst.ioh.repository.TokenRepository;
+import es.upm.dit.isst.ioh.repository.TokenRepository.ExpiracionToken;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Barrido periódico de tokens caducados o sin usos.
+ *
+ * Los instantes de expiración se guardan en una rueda de tiempo en memoria con
+ * un cubo por minuto, así cada barrido solo mira los cubos ya vencidos en vez
+ * de recorrer la tabla. Los borrados se hacen en lotes acotados, cada uno en su
+ * propia transacción corta. La rueda se carga antes de que el servidor web
+ * acepte peticiones y {@link TokenListener} programa cada token que se guarda.
+ * Un token caducado o agotado se conserva durante un periodo de gracia para que
+ * siga apareciendo en el historial del propietario.
+ */
+@Service
+public class ExpiracionTokenService implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(ExpiracionTokenService.class);
+    private static final long SEGUNDOS_CUBO = 60;
+
+    private final TokenRepository tokenRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int tamanoLote;
+    private final Duration gracia;
+
+    // minuto de expiración -> códigos que caducan en ese minuto
+    private final ConcurrentNavigableMap<Long, Queue<String>> rueda = new ConcurrentSkipListMap<>();
+    private final AtomicLong ultimoBarrido = new AtomicLong();
+    private final Counter barridos;
+
+    public ExpiracionTokenService(
+            TokenRepository tokenRepository,
+            TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${ioh.tokens.barrido.lote:500}") int tamanoLote,
+            @Value("${ioh.tokens.barrido.gracia-horas:168}") long graciaHoras) {
+        this.tokenRepository = tokenRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.tamanoLote = tamanoLote;
+        this.gracia = Duration.ofHours(graciaHoras);
+
+        this.barridos = Counter.builder("ioh.tokens.barridos")
+                .description("Tokens caducados o agotados eliminados")
+                .register(meterRegistry);
+        Gauge.builder("ioh.tokens.barridos.ultimo", ultimoBarrido, AtomicLong::get)
+                .description("Tokens eliminados en el último barrido")
+                .register(meterRegistry);
+        Gauge.builder("ioh.tokens.rueda.cubos", rueda, Map::size)
+                .description("Cubos pendientes en la rueda de expiración")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        cargar();
+    }
+
+    /**
+     * Carga en la rueda todos los tokens que tienen fecha de expiración
+     */
+    public void cargar() {
+        rueda.clear();
+        for (ExpiracionToken token : tokenRepository.findExpiraciones()) {
+            programar(token.getCodigo(), token.getFechaExpiracion());
+        }
+    }
+
+    /**
+     * Programa la expiración de un token. Si la fecha cambia basta con volver a
+     * programarlo: el borrado comprueba la fecha real en base de datos.
+     *
+     * @param codigo          Código del token
+     * @param fechaExpiracion Fecha de expiración (null = no caduca)
+     */
+    public void programar(String codigo, LocalDateTime fechaExpiracion) {
+        if (codigo == null || fechaExpiracion == null) {
+            return;
+        }
+        rueda.computeIfAbsent(cubo(fechaExpiracion), c -> new ConcurrentLinkedQueue<>()).add(codigo);
+    }
+
+    public void programar(Collection<String> codigos, LocalDateTime fechaExpiracion) {
+        if (fechaExpiracion == null || codigos.isEmpty()) {
+            return;
+        }
+        rueda.computeIfAbsent(cubo(fechaExpiracion), c -> new ConcurrentLinkedQueue<>()).addAll(codigos);
+    }
+
+    /**
+     * Elimina los tokens que caducaron o se agotaron hace más del periodo de
+     * gracia. Un cubo sale de la rueda solo cuando todos sus lotes se han
+     * borrado; si un lote falla, sus códigos vuelven al cubo para el siguiente
+     * barrido.
+     *
+     * @return Número de tokens eliminados
+     */
+    @Scheduled(fixedDelayString = "${ioh.tokens.barrido.intervalo-ms:60000}",
+            initialDelayString = "${ioh.tokens.barrido.intervalo-ms:60000}")
+    public long barrer() {
+        LocalDateTime limite = LocalDateTime.now().minus(gracia);
+        long eliminados = 0;
+
+        try {
+            // Cubos cuyo minuto terminó antes del límite
+            ConcurrentNavigableMap<Long, Queue<String>> vencidos = rueda.headMap(cubo(limite));
+            for (Map.Entry<Long, Queue<String>> entrada : vencidos.entrySet()) {
+                Queue<String> codigos = entrada.getValue();
+                List<String> lote = new ArrayList<>(tamanoLote);
+                String codigo;
+                while ((codigo = codigos.poll()) != null) {
+                    lote.add(codigo);
+                    if (lote.size() == tamanoLote) {
+                        eliminados += borrarCaducados(codigos, lote, limite);
+                    }
+                }
+                if (!lote.isEmpty()) {
+                    eliminados += borrarCaducados(codigos, lote, limite);
+                }
+                rueda.remove(entrada.getKey(), codigos);
+                // Códigos programados en el cubo mientras se retiraba
+                if (!codigos.isEmpty()) {
+                    rueda.computeIfAbsent(entrada.getKey(), c -> new ConcurrentLinkedQueue<>()).addAll(codigos);
+                }
+            }
+
+            // Tokens sin usos restantes, también en lotes acotados
+            List<Long> agotados;
+            do {
+                agotados = tokenRepository.findIdsAgotados(limite, PageRequest.of(0, tamanoLote));
+                if (!agotados.isEmpty()) {
+                    List<Long> ids = agotados;
+                    eliminados += transactionTemplate.execute(status -> tokenRepository.deleteAgotados(ids, limite));
+                }
+            } while (agotados.size() == tamanoLote);
+        } finally {
+            ultimoBarrido.set(eliminados);
+            barridos.increment(eliminados);
+            if (eliminados > 0) {
+                log.info("Barrido de tokens: {} tokens eliminados", eliminados);
+            }
+        }
+        return eliminados;
+    }
+
+    // Borra el lote y lo vacía; si falla, devuelve sus códigos al cubo
+    private int borrarCaducados(Queue<String> cubo, List<String> lote, LocalDateTime limite) {
+        List<String> codigos = List.copyOf(lote);
+        lote.clear();
+        try {
+            return transactionTemplate.execute(status -> tokenRepository.deleteCaducados(codigos, limite));
+        } catch (RuntimeException e) {
+            cubo.addAll(codigos);
+            throw e;
+        }
+    }
+
+    private static long cubo(LocalDateTime fecha) {
+        return Math.floorDiv(fecha.toEpochSecond(ZoneOffset.UTC), SEGUNDOS_CUBO);
+    }
+}
@@ -0,0 +1,109 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtro de Bloom sobre cadenas, seguro para escrituras concurrentes.
+ * Puede dar falsos positivos pero nunca falsos negativos.
+ */
+public final class FiltroBloom {
+
+    private final AtomicLongArray bits;
+    private final long numBits;
+    private final int numHashes;
+    private final AtomicLong elementos = new AtomicLong();
+
+    /**
+     * @param capacidad Número de elementos esperado
+     * @param fpp       Probabilidad de falso positivo objetivo para esa capacidad
+     */
+    public FiltroBloom(long capacidad, double fpp) {
+        if (capacidad <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("Capacidad o probabilidad de falso positivo no válidas");
+        }
+        long m = (long) Math.ceil(-capacidad * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        m = Math.max(64, (m + 63) / 64 * 64);
+        this.numBits = m;
+        this.numHashes = Math.max(1, (int) Math.round((double) m / capacidad * Math.log(2)));
+        this.bits = new AtomicLongArray(Math.toIntExact(m / 64));
+    }
+
+    public void anadir(String valor) {
+        long hash = hash64(valor);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        boolean nuevo = false;
+        for (int i = 1; i <= numHashes; i++) {
+            nuevo |= marcar(indice(h1 + i * h2));
+        }
+        if (nuevo) {
+            elementos.incrementAndGet();
+        }
+    }
+
+    public boolean podriaContener(String valor) {
+        long hash = hash64(valor);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            long bit = indice(h1 + i * h2);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getNumBits() {
+        return numBits;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    public long getElementos() {
+        return elementos.get();
+    }
+
+    /**
+     * Probabilidad de falso positivo estimada con el número actual de elementos
+     */
+    public double getFppEstimada() {
+        return Math.pow(1 - Math.exp(-(double) numHashes * elementos.get() / numBits), numHashes);
+    }
+
+    private long indice(int hashCombinado) {
+        return (hashCombinado & Long.MAX_VALUE) % numBits;
+    }
+
+    private boolean marcar(long bit) {
+        int palabra = (int) (bit >>> 6);
+        long mascara = 1L << bit;
+        long actual;
+        do {
+            actual = bits.get(palabra);
+            if ((actual & mascara) != 0) {
+                return false;
+            }
+        } while (!bits.compareAndSet(palabra, actual, actual | mascara));
+        return true;
+    }
+
+    // FNV-1a de 64 bits con un mezclado final para repartir bien los bits altos
+    private static long hash64(String valor) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : valor.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
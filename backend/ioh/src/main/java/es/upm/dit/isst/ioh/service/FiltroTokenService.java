@@ -0,0 +1,137 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import es.upm.dit.isst.ioh.repository.TokenRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Filtro de Bloom con los códigos de todos los tokens guardados. Permite
+ * rechazar códigos inventados sin consultar la base de datos; los tokens
+ * caducados o agotados siguen en el filtro para que se rechacen como tales.
+ *
+ * Se carga antes de que el servidor web acepte peticiones y
+ * {@link TokenListener} le añade cada token que se guarda. Un filtro de Bloom no
+ * admite borrados, así que los tokens eliminados se descartan reconstruyéndolo
+ * periódicamente desde la base de datos.
+ */
+@Service
+public class FiltroTokenService implements SmartInitializingSingleton {
+
+    private final TokenRepository tokenRepository;
+    private final long capacidad;
+    private final double fpp;
+
+    private volatile FiltroBloom filtro;
+    // Filtro que se está reconstruyendo; recibe también las altas concurrentes
+    private volatile FiltroBloom enConstruccion;
+
+    public FiltroTokenService(
+            TokenRepository tokenRepository,
+            MeterRegistry meterRegistry,
+            @Value("${ioh.tokens.filtro.capacidad:1000000}") long capacidad,
+            @Value("${ioh.tokens.filtro.fpp:0.01}") double fpp) {
+        this.tokenRepository = tokenRepository;
+        this.capacidad = capacidad;
+        this.fpp = fpp;
+        this.filtro = new FiltroBloom(capacidad, fpp);
+
+        Gauge.builder("ioh.tokens.filtro.elementos", this, s -> s.filtro.getElementos())
+                .description("Códigos de token cargados en el filtro de Bloom")
+                .register(meterRegistry);
+        Gauge.builder("ioh.tokens.filtro.bits", this, s -> s.filtro.getNumBits())
+                .description("Tamaño del filtro de Bloom en bits")
+                .register(meterRegistry);
+        Gauge.builder("ioh.tokens.filtro.fpp", this, s -> s.filtro.getFppEstimada())
+                .description("Probabilidad de falso positivo estimada del filtro de Bloom")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        reconstruir();
+    }
+
+    /**
+     * Vuelve a cargar el filtro con los tokens guardados, descartando los
+     * códigos de los que ya se han borrado
+     */
+    @Scheduled(fixedDelayString = "${ioh.tokens.filtro.reconstruccion-ms:3600000}",
+            initialDelayString = "${ioh.tokens.filtro.reconstruccion-ms:3600000}")
+    public synchronized void reconstruir() {
+        FiltroBloom nuevo = new FiltroBloom(capacidad, fpp);
+        enConstruccion = nuevo;
+        try {
+            for (String codigo : tokenRepository.findCodigos()) {
+                nuevo.anadir(codigo);
+            }
+            filtro = nuevo;
+        } finally {
+            enConstruccion = null;
+        }
+    }
+
+    /**
+     * Añade el código de un token recién guardado. Dentro de una transacción se
+     * añade al confirmarla, para que una reconstrucción que cargue antes de la
+     * confirmación no lo pierda.
+     *
+     * @param codigo Código del token
+     */
+    public void registrar(String codigo) {
+        if (codigo != null) {
+            registrar(List.of(codigo));
+        }
+    }
+
+    /**
+     * Añade los códigos de varios tokens recién creados
+     *
+     * @param codigos Códigos de los tokens
+     */
+    public void registrar(Collection<String> codigos) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    anadir(codigos);
+                }
+            });
+        } else {
+            anadir(codigos);
+        }
+    }
+
+    private void anadir(Collection<String> codigos) {
+        // Primero el filtro en construcción y después el activo. Si la
+        // reconstrucción termina entre las dos lecturas, la segunda ya ve el
+        // filtro nuevo; en el orden inverso el código podía quedar solo en el
+        // filtro descartado. Si la reconstrucción empieza después de leer
+        // enConstruccion, su carga ya ve los tokens confirmados.
+        FiltroBloom pendiente = enConstruccion;
+        FiltroBloom activo = filtro;
+        for (String codigo : codigos) {
+            if (pendiente != null) {
+                pendiente.anadir(codigo);
+            }
+            activo.anadir(codigo);
+        }
+    }
+
+    /**
+     * @param codigo Código a comprobar
+     * @return false si el código seguro que no pertenece a ningún token
+     */
+    public boolean podriaExistir(String codigo) {
+        return codigo != null && filtro.podriaContener(codigo);
+    }
+}
@@ -0,0 +1,106 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Generador de códigos de token únicos e impredecibles.
+ *
+ * Cada código sale de un contador de 64 bits repartido en varios shards (para
+ * que los hilos no compitan por la misma variable) y se cifra con una
+ * permutación con clave: una red de Feistel de 4 rondas cuya función de ronda
+ * es AES. Al ser una permutación, contadores distintos dan siempre códigos
+ * distintos, y sin la clave no se puede deducir el siguiente código.
+ */
+public final class GeneradorCodigos {
+
+    private static final String ALFABETO = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    // 62^11 > 2^64, así que todos los códigos tienen 11 caracteres
+    private static final int LONGITUD = 11;
+    private static final int RONDAS = 4;
+    private static final int SHARDS = 16;
+    // Separación entre contadores para que no compartan línea de caché
+    private static final int STRIDE = 16;
+
+    private final SecretKeySpec clave;
+    private final ThreadLocal<Cipher> cifradores;
+    private final AtomicLongArray contadores = new AtomicLongArray(SHARDS * STRIDE);
+    // Los contadores parten del instante de arranque para no repetir valores tras reiniciar
+    private final long base = System.currentTimeMillis() << 20;
+
+    /**
+     * @param secreto Secreto de la permutación; si está vacío se genera uno
+     *                aleatorio (los códigos siguen siendo únicos dentro de la
+     *                ejecución y el índice único cubre el resto)
+     */
+    public GeneradorCodigos(String secreto) {
+        byte[] material;
+        if (secreto == null || secreto.isBlank()) {
+            material = new byte[32];
+            new SecureRandom().nextBytes(material);
+        } else {
+            material = secreto.getBytes(StandardCharsets.UTF_8);
+        }
+        try {
+            byte[] resumen = MessageDigest.getInstance("SHA-256").digest(material);
+            this.clave = new SecretKeySpec(Arrays.copyOf(resumen, 16), "AES");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo inicializar el generador de códigos", e);
+        }
+        this.cifradores = ThreadLocal.withInitial(this::nuevoCifrador);
+    }
+
+    public String siguiente() {
+        int shard = (int) (Thread.currentThread().getId() & (SHARDS - 1));
+        long n = contadores.getAndIncrement(shard * STRIDE);
+        return codificar(permutar(base + n * SHARDS + shard));
+    }
+
+    private long permutar(long valor) {
+        int izquierda = (int) (valor >>> 32);
+        int derecha = (int) valor;
+        Cipher cifrador = cifradores.get();
+        for (int ronda = 0; ronda < RONDAS; ronda++) {
+            int siguiente = izquierda ^ funcionRonda(cifrador, ronda, derecha);
+            izquierda = derecha;
+            derecha = siguiente;
+        }
+        return ((long) izquierda << 32) | (derecha & 0xffffffffL);
+    }
+
+    private static int funcionRonda(Cipher cifrador, int ronda, int mitad) {
+        byte[] bloque = ByteBuffer.allocate(16).putInt(ronda).putInt(mitad).array();
+        try {
+            return ByteBuffer.wrap(cifrador.doFinal(bloque)).getInt();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Error al generar código de token", e);
+        }
+    }
+
+    private Cipher nuevoCifrador() {
+        try {
+            Cipher cifrador = Cipher.getInstance("AES/ECB/NoPadding");
+            cifrador.init(Cipher.ENCRYPT_MODE, clave);
+            return cifrador;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES no disponible", e);
+        }
+    }
+
+    private static String codificar(long valor) {
+        char[] resultado = new char[LONGITUD];
+        for (int i = LONGITUD - 1; i >= 0; i--) {
+            resultado[i] = ALFABETO.charAt((int) Long.remainderUnsigned(valor, 62));
+            valor = Long.divideUnsigned(valor, 62);
+        }
+        return new String(resultado);
+    }
+}
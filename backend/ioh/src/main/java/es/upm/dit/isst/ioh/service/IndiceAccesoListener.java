@@ -0,0 +1,52 @@
+package es.upm.dit.isst.ioh.service;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import es.upm.dit.isst.ioh.model.Acceso;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Lleva a {@link IndiceAccesoService} las altas, cambios y borrados de accesos,
+ * vengan de {@code /api/accesos} o del repositorio exportado en
+ * {@code /accesoes}. Se aplican al confirmar la transacción, así un cambio
+ * deshecho no llega al índice.
+ */
+@Component
+public class IndiceAccesoListener {
+
+    // Hibernate crea el listener mientras arranca JPA, antes de que exista el servicio
+    private final ObjectProvider<IndiceAccesoService> indiceAccesoService;
+
+    public IndiceAccesoListener(ObjectProvider<IndiceAccesoService> indiceAccesoService) {
+        this.indiceAccesoService = indiceAccesoService;
+    }
+
+    @PostPersist
+    public void creado(Acceso acceso) {
+        alConfirmar(() -> indiceAccesoService.getObject().registrar(acceso));
+    }
+
+    @PostUpdate
+    @PostRemove
+    public void modificado(Acceso acceso) {
+        alConfirmar(() -> indiceAccesoService.getObject().recargar(acceso));
+    }
+
+    private static void alConfirmar(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    accion.run();
+                }
+            });
+        } else {
+            accion.run();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import es.upm.dit.isst.ioh.model.Acceso;
+import es.upm.dit.isst.ioh.model.Horario;
+import es.upm.dit.isst.ioh.repository.AccesoRepository;
+import es.upm.dit.isst.ioh.repository.AccesoRepository.IntervaloAcceso;
+
+/**
+ * Índice en memoria de los horarios de acceso de cada huésped a cada cerradura.
+ *
+ * Por cada par (huésped, cerradura) se guarda un árbol de intervalos disjuntos
+ * ordenados por inicio, de forma que comprobar si un huésped puede abrir una
+ * cerradura en un instante es una búsqueda O(log n) sin ir a base de datos.
+ * Se construye desde la base de datos antes de que el servidor web acepte
+ * peticiones, {@link IndiceAccesoListener} lo actualiza con cada alta, cambio o
+ * borrado de un acceso, y los intervalos terminados se podan periódicamente.
+ *
+ * El árbol de cada par no se modifica una vez publicado: al añadir un acceso se
+ * fusiona sobre una copia y se sustituye entero, así un lector concurrente ve
+ * los intervalos de antes o los de después, nunca un estado intermedio. Las
+ * escrituras, poco frecuentes, se serializan entre sí.
+ */
+@Service
+public class IndiceAccesoService implements SmartInitializingSingleton {
+
+    private final AccesoRepository accesoRepository;
+
+    // (huespedId, cerraduraId) -> inicio -> fin
+    private final Map<Clave, NavigableMap<LocalDateTime, LocalDateTime>> indice = new ConcurrentHashMap<>();
+    // Par y fin de cada acceso indexado, para saber qué par recargar si cambia o se borra
+    private final Map<Long, Vigencia> accesos = new ConcurrentHashMap<>();
+
+    public IndiceAccesoService(AccesoRepository accesoRepository) {
+        this.accesoRepository = accesoRepository;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        reconstruir();
+    }
+
+    /**
+     * Carga en el índice todos los accesos que todavía no han terminado
+     */
+    public synchronized void reconstruir() {
+        indice.clear();
+        accesos.clear();
+        for (IntervaloAcceso intervalo : accesoRepository.findIntervalosVigentes(LocalDateTime.now())) {
+            anadir(intervalo.getId(), intervalo.getHuespedId(), intervalo.getCerraduraId(), intervalo.getInicio(),
+                    intervalo.getFin());
+        }
+    }
+
+    /**
+     * Registra en el índice un acceso recién guardado
+     *
+     * @param acceso Acceso persistido
+     */
+    public synchronized void registrar(Acceso acceso) {
+        Horario horario = acceso.getHorario();
+        if (horario == null || acceso.getHuesped() == null || acceso.getCerradura() == null) {
+            return;
+        }
+        anadir(acceso.getId(), acceso.getHuesped().getId(), acceso.getCerradura().getId(), horario.getInicio(),
+                horario.getFin());
+    }
+
+    /**
+     * Vuelve a cargar desde la base de datos los pares afectados por un acceso
+     * modificado o borrado: el que tenía en el índice y el que tiene ahora. Los
+     * intervalos fusionados no se pueden separar, así que se recalcula el par
+     * entero.
+     *
+     * @param acceso Acceso modificado o borrado
+     */
+    public synchronized void recargar(Acceso acceso) {
+        Vigencia anterior = accesos.remove(acceso.getId());
+        if (anterior != null) {
+            recargar(anterior.clave());
+        }
+        if (acceso.getHuesped() != null && acceso.getCerradura() != null) {
+            Clave actual = new Clave(acceso.getHuesped().getId(), acceso.getCerradura().getId());
+            if (anterior == null || !actual.equals(anterior.clave())) {
+                recargar(actual);
+            }
+        }
+    }
+
+    /**
+     * Elimina del índice los intervalos que ya han terminado
+     */
+    @Scheduled(fixedDelayString = "${ioh.accesos.indice.poda-ms:3600000}",
+            initialDelayString = "${ioh.accesos.indice.poda-ms:3600000}")
+    public synchronized void podar() {
+        LocalDateTime ahora = LocalDateTime.now();
+        accesos.values().removeIf(v -> !v.fin().isAfter(ahora));
+        for (Clave clave : indice.keySet()) {
+            indice.computeIfPresent(clave, (c, intervalos) -> {
+                // Disjuntos y ordenados por inicio: el primero es también el que antes termina
+                if (intervalos.firstEntry().getValue().isAfter(ahora)) {
+                    return intervalos;
+                }
+                TreeMap<LocalDateTime, LocalDateTime> copia = new TreeMap<>(intervalos);
+                podarCaducados(copia, ahora);
+                return copia.isEmpty() ? null : Collections.unmodifiableNavigableMap(copia);
+            });
+        }
+    }
+
+    /**
+     * Comprueba si el huésped tiene un acceso activo a la cerradura en el instante
+     * dado. Equivale a la consulta inicio &lt; momento &lt; fin de
+     * {@link AccesoRepository#findByHuespedIdAndHorario_InicioBeforeAndHorario_FinAfter}.
+     *
+     * @param huespedId   ID del huésped
+     * @param cerraduraId ID de la cerradura
+     * @param momento     Instante a comprobar
+     * @return true si algún horario contiene el instante
+     */
+    public boolean tieneAcceso(Long huespedId, Long cerraduraId, LocalDateTime momento) {
+        if (huespedId == null || cerraduraId == null) {
+            return false;
+        }
+        NavigableMap<LocalDateTime, LocalDateTime> intervalos = indice.get(new Clave(huespedId, cerraduraId));
+        if (intervalos == null) {
+            return false;
+        }
+        Map.Entry<LocalDateTime, LocalDateTime> candidato = intervalos.lowerEntry(momento);
+        return candidato != null && candidato.getValue().isAfter(momento);
+    }
+
+    private void recargar(Clave clave) {
+        LocalDateTime ahora = LocalDateTime.now();
+        List<IntervaloAcceso> vigentes = accesoRepository.findIntervalosVigentes(clave.huespedId(),
+                clave.cerraduraId(), ahora);
+        TreeMap<LocalDateTime, LocalDateTime> intervalos = new TreeMap<>();
+        for (IntervaloAcceso intervalo : vigentes) {
+            if (valido(intervalo.getInicio(), intervalo.getFin())) {
+                fusionar(intervalos, intervalo.getInicio(), intervalo.getFin());
+                accesos.put(intervalo.getId(), new Vigencia(clave, intervalo.getFin()));
+            }
+        }
+        if (intervalos.isEmpty()) {
+            indice.remove(clave);
+        } else {
+            indice.put(clave, Collections.unmodifiableNavigableMap(intervalos));
+        }
+    }
+
+    private void anadir(Long accesoId, Long huespedId, Long cerraduraId, LocalDateTime inicio, LocalDateTime fin) {
+        if (huespedId == null || cerraduraId == null || !valido(inicio, fin)) {
+            return;
+        }
+        LocalDateTime ahora = LocalDateTime.now();
+        if (!fin.isAfter(ahora)) {
+            return;
+        }
+        Clave clave = new Clave(huespedId, cerraduraId);
+        if (accesoId != null) {
+            accesos.put(accesoId, new Vigencia(clave, fin));
+        }
+        indice.compute(clave, (c, intervalos) -> {
+            TreeMap<LocalDateTime, LocalDateTime> copia = intervalos == null ? new TreeMap<>() : new TreeMap<>(intervalos);
+            fusionar(copia, inicio, fin);
+            podarCaducados(copia, ahora);
+            return copia.isEmpty() ? null : Collections.unmodifiableNavigableMap(copia);
+        });
+    }
+
+    private static boolean valido(LocalDateTime inicio, LocalDateTime fin) {
+        return inicio != null && fin != null && fin.isAfter(inicio);
+    }
+
+    /**
+     * Inserta el intervalo fusionándolo con los que se solapan
+     */
+    private static void fusionar(NavigableMap<LocalDateTime, LocalDateTime> intervalos,
+            LocalDateTime inicio, LocalDateTime fin) {
+        LocalDateTime nuevoInicio = inicio;
+        LocalDateTime nuevoFin = fin;
+
+        Map.Entry<LocalDateTime, LocalDateTime> anterior = intervalos.lowerEntry(inicio);
+        if (anterior != null && anterior.getValue().isAfter(inicio)) {
+            nuevoInicio = anterior.getKey();
+            if (anterior.getValue().isAfter(nuevoFin)) {
+                nuevoFin = anterior.getValue();
+            }
+        }
+
+        NavigableMap<LocalDateTime, LocalDateTime> solapados = intervalos.subMap(nuevoInicio, true, nuevoFin, false);
+        for (LocalDateTime finSolapado : solapados.values()) {
+            if (finSolapado.isAfter(nuevoFin)) {
+                nuevoFin = finSolapado;
+            }
+        }
+
+        intervalos.put(nuevoInicio, nuevoFin);
+        intervalos.subMap(nuevoInicio, false, nuevoFin, false).clear();
+    }
+
+    private static void podarCaducados(NavigableMap<LocalDateTime, LocalDateTime> intervalos,
+            LocalDateTime ahora) {
+        intervalos.entrySet().removeIf(e -> !e.getValue().isAfter(ahora));
+    }
+
+    private record Clave(long huespedId, long cerraduraId) {
+    }
+
+    private record Vigencia(Clave clave, LocalDateTime fin) {
+    }
+}
@@ -0,0 +1,134 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Limitación de tasa de las rutas sensibles: apertura de puertas, validación de
+ * tokens y login.
+ *
+ * Cada ruta tiene su política (ráfaga y reposición por segundo) y cubetas de
+ * tokens independientes por IP, usuario y cerradura ({@link CubetasTokens}).
+ * Una petición pasa si hay token en todas las cubetas que le aplican. Lo usa
+ * {@code LimiteTasaInterceptor} antes de llegar a los controladores.
+ */
+@Service
+public class LimitadorTasaService {
+
+    private final boolean habilitado;
+    private final Map<Ruta, Politica> politicas = new EnumMap<>(Ruta.class);
+
+    public LimitadorTasaService(
+            MeterRegistry meterRegistry,
+            @Value("${ioh.limite.habilitado:true}") boolean habilitado,
+            @Value("${ioh.limite.franjas:64}") int franjas,
+            @Value("${ioh.limite.max-claves:100000}") int maxClaves,
+            @Value("${ioh.limite.abrir.capacidad:20}") double capacidadAbrir,
+            @Value("${ioh.limite.abrir.por-segundo:2}") double porSegundoAbrir,
+            @Value("${ioh.limite.validar.capacidad:10}") double capacidadValidar,
+            @Value("${ioh.limite.validar.por-segundo:1}") double porSegundoValidar,
+            @Value("${ioh.limite.login.capacidad:10}") double capacidadLogin,
+            @Value("${ioh.limite.login.por-segundo:0.5}") double porSegundoLogin) {
+        this.habilitado = habilitado;
+        politicas.put(Ruta.ABRIR, new Politica(Ruta.ABRIR, capacidadAbrir, porSegundoAbrir, franjas, maxClaves,
+                meterRegistry));
+        politicas.put(Ruta.VALIDAR, new Politica(Ruta.VALIDAR, capacidadValidar, porSegundoValidar, franjas,
+                maxClaves, meterRegistry));
+        politicas.put(Ruta.LOGIN, new Politica(Ruta.LOGIN, capacidadLogin, porSegundoLogin, franjas, maxClaves,
+                meterRegistry));
+
+        Gauge.builder("ioh.limite.cubetas", politicas, p -> p.values().stream().mapToInt(Politica::tamano).sum())
+                .description("Cubetas de limitación de tasa en memoria")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Consume un token de cada cubeta que aplica a la petición
+     *
+     * @param ruta        Ruta limitada
+     * @param ip          Dirección IP del cliente
+     * @param usuarioId   ID del usuario (opcional)
+     * @param cerraduraId ID de la cerradura (opcional)
+     * @return 0 si la petición puede seguir, o los nanosegundos que debe esperar
+     */
+    public long consumir(Ruta ruta, String ip, Long usuarioId, Long cerraduraId) {
+        if (!habilitado) {
+            return 0;
+        }
+        return politicas.get(ruta).consumir(ip, usuarioId, cerraduraId, System.nanoTime());
+    }
+
+    @Scheduled(fixedDelayString = "${ioh.limite.purga-ms:60000}")
+    public void purgar() {
+        long ahora = System.nanoTime();
+        for (Politica politica : politicas.values()) {
+            politica.purgar(ahora);
+        }
+    }
+
+    public enum Ruta {
+        ABRIR, VALIDAR, LOGIN
+    }
+
+    private static final class Politica {
+        private final CubetasTokens<String> ips;
+        private final CubetasTokens<Long> usuarios;
+        private final CubetasTokens<Long> cerraduras;
+        private final Counter rechazadosIp;
+        private final Counter rechazadosUsuario;
+        private final Counter rechazadosCerradura;
+
+        private Politica(Ruta ruta, double capacidad, double porSegundo, int franjas, int maxClaves,
+                MeterRegistry meterRegistry) {
+            this.ips = new CubetasTokens<>(franjas, capacidad, porSegundo, maxClaves);
+            this.usuarios = new CubetasTokens<>(franjas, capacidad, porSegundo, maxClaves);
+            this.cerraduras = new CubetasTokens<>(franjas, capacidad, porSegundo, maxClaves);
+            this.rechazadosIp = rechazados(meterRegistry, ruta, "ip");
+            this.rechazadosUsuario = rechazados(meterRegistry, ruta, "usuario");
+            this.rechazadosCerradura = rechazados(meterRegistry, ruta, "cerradura");
+        }
+
+        private static Counter rechazados(MeterRegistry meterRegistry, Ruta ruta, String clave) {
+            return Counter.builder("ioh.limite.rechazados")
+                    .description("Peticiones rechazadas por superar el límite de tasa")
+                    .tag("ruta", ruta.name().toLowerCase())
+                    .tag("clave", clave)
+                    .register(meterRegistry);
+        }
+
+        private long consumir(String ip, Long usuarioId, Long cerraduraId, long ahora) {
+            long espera;
+            if (ip != null && (espera = ips.consumir(ip, ahora)) > 0) {
+                rechazadosIp.increment();
+                return espera;
+            }
+            if (usuarioId != null && (espera = usuarios.consumir(usuarioId, ahora)) > 0) {
+                rechazadosUsuario.increment();
+                return espera;
+            }
+            if (cerraduraId != null && (espera = cerraduras.consumir(cerraduraId, ahora)) > 0) {
+                rechazadosCerradura.increment();
+                return espera;
+            }
+            return 0;
+        }
+
+        private void purgar(long ahora) {
+            ips.purgar(ahora);
+            usuarios.purgar(ahora);
+            cerraduras.purgar(ahora);
+        }
+
+        private int tamano() {
+            return ips.tamano() + usuarios.tamano() + cerraduras.tamano();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+
+/**
+ * Listados paginados por cursor (keyset sobre el ID) con selección de campos.
+ *
+ * Cada listado declara los campos que se pueden pedir. Solo se seleccionan en
+ * la consulta los campos pedidos, sin cargar entidades, y las asociaciones se
+ * unen solo si algún campo las necesita. Un campo con punto ("cerradura.id",
+ * "horario.inicio") sale anidado en la respuesta, con la misma forma que tenía
+ * la entidad serializada. Los valores nulos se omiten.
+ */
+@Service
+public class ListadoService {
+
+    public static final int LIMITE_POR_DEFECTO = 200;
+    public static final int LIMITE_MAXIMO = 1000;
+
+    private final EntityManager entityManager;
+
+    public ListadoService(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Obtiene una página del listado
+     *
+     * @param listado   Definición del listado
+     * @param campos    Campos separados por comas (opcional; por defecto los del
+     *                  listado)
+     * @param despuesDe Cursor: ID de la última fila de la página anterior
+     *                  (opcional)
+     * @param limite    Tamaño de página (máximo {@value #LIMITE_MAXIMO})
+     * @return Filas de la página y cursor de la siguiente
+     * @throws IllegalArgumentException si se pide un campo que no existe
+     */
+    @Transactional(readOnly = true)
+    public Pagina listar(Listado listado, String campos, Long despuesDe, int limite) {
+        List<String> seleccion = seleccion(listado, campos);
+        int tamano = Math.max(1, Math.min(limite, LIMITE_MAXIMO));
+
+        List<Tuple> tuplas = consulta(listado, seleccion, "e.id > :valor ORDER BY e.id")
+                .setParameter("valor", despuesDe != null ? despuesDe : 0L)
+                .setMaxResults(tamano)
+                .getResultList();
+
+        List<Map<String, Object>> filas = new ArrayList<>(tuplas.size());
+        for (Tuple tupla : tuplas) {
+            filas.add(fila(seleccion, tupla));
+        }
+        Long siguiente = tuplas.size() == tamano ? tuplas.get(tuplas.size() - 1).get(0, Long.class) : null;
+        return new Pagina(filas, siguiente);
+    }
+
+    /**
+     * Busca una fila del listado por un atributo único de la entidad
+     *
+     * @param listado  Definición del listado
+     * @param campos   Campos separados por comas (opcional; por defecto los del
+     *                 listado)
+     * @param atributo Atributo único de la entidad (fijado por el llamante, no
+     *                 por el cliente)
+     * @param valor    Valor buscado
+     * @return La fila con los campos pedidos, o vacío si no existe
+     * @throws IllegalArgumentException si se pide un campo que no existe
+     */
+    @Transactional(readOnly = true)
+    public Optional<Map<String, Object>> buscar(Listado listado, String campos, String atributo, Object valor) {
+        List<String> seleccion = seleccion(listado, campos);
+        return consulta(listado, seleccion, "e." + atributo + " = :valor")
+                .setParameter("valor", valor)
+                .setMaxResults(1)
+                .getResultStream()
+                .findFirst()
+                .map(tupla -> fila(seleccion, tupla));
+    }
+
+    // El ID va siempre primero: es el cursor aunque no se haya pedido
+    private TypedQuery<Tuple> consulta(Listado listado, List<String> seleccion, String condicion) {
+        StringBuilder jpql = new StringBuilder("SELECT e.id");
+        Map<String, String> alias = new LinkedHashMap<>();
+        for (String campo : seleccion) {
+            jpql.append(", ").append(ruta(listado, campo, alias));
+        }
+        jpql.append(" FROM ").append(listado.entidad()).append(" e");
+        alias.forEach((asociacion, a) -> jpql.append(" LEFT JOIN e.").append(asociacion).append(' ').append(a));
+        jpql.append(" WHERE ").append(condicion);
+        return entityManager.createQuery(jpql.toString(), Tuple.class);
+    }
+
+    private static List<String> seleccion(Listado listado, String campos) {
+        if (campos == null || campos.isBlank()) {
+            return listado.porDefecto();
+        }
+        Set<String> seleccion = new LinkedHashSet<>();
+        for (String campo : campos.split(",")) {
+            String nombre = campo.trim();
+            if (nombre.isEmpty()) {
+                continue;
+            }
+            if (!listado.campos().contains(nombre)) {
+                throw new IllegalArgumentException("Campo no válido: " + nombre);
+            }
+            seleccion.add(nombre);
+        }
+        return seleccion.isEmpty() ? listado.porDefecto() : List.copyOf(seleccion);
+    }
+
+    // Expresión JPQL del campo; las asociaciones se unen con LEFT JOIN para no perder filas
+    private static String ruta(Listado listado, String campo, Map<String, String> alias) {
+        int punto = campo.indexOf('.');
+        if (punto < 0) {
+            return "e." + campo;
+        }
+        String prefijo = campo.substring(0, punto);
+        if (!listado.asociaciones().contains(prefijo)) {
+            // Objeto embebido, como el horario de un acceso
+            return "e." + campo;
+        }
+        String a = alias.computeIfAbsent(prefijo, p -> "a" + alias.size());
+        return a + campo.substring(punto);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> fila(List<String> seleccion, Tuple tupla) {
+        Map<String, Object> fila = new LinkedHashMap<>();
+        for (int i = 0; i < seleccion.size(); i++) {
+            Object valor = tupla.get(i + 1);
+            if (valor == null) {
+                continue;
+            }
+            String campo = seleccion.get(i);
+            int punto = campo.indexOf('.');
+            if (punto < 0) {
+                fila.put(campo, valor);
+            } else {
+                ((Map<String, Object>) fila.computeIfAbsent(campo.substring(0, punto), c -> new LinkedHashMap<>()))
+                        .put(campo.substring(punto + 1), valor);
+            }
+        }
+        return fila;
+    }
+
+    /**
+     * Definición de un listado
+     *
+     * @param entidad      Nombre de la entidad JPA
+     * @param asociaciones Asociaciones que se pueden unir (prefijo de los campos
+     *                     con punto)
+     * @param campos       Campos que se pueden pedir, con un punto como máximo
+     * @param porDefecto   Campos cuando no se indica ninguno
+     */
+    public record Listado(String entidad, Set<String> asociaciones, List<String> campos, List<String> porDefecto) {
+
+        public Listado {
+            for (String campo : campos) {
+                if (campo.indexOf('.') != campo.lastIndexOf('.')) {
+                    throw new IllegalArgumentException("Solo se admite un nivel de anidamiento: " + campo);
+                }
+            }
+            if (!campos.containsAll(porDefecto)) {
+                throw new IllegalArgumentException("Los campos por defecto deben estar entre los campos del listado");
+            }
+        }
+
+        public Listado(String entidad, Set<String> asociaciones, List<String> campos) {
+            this(entidad, asociaciones, campos, campos);
+        }
+    }
+
+    /**
+     * Página de un listado
+     *
+     * @param filas     Filas con los campos pedidos
+     * @param siguiente Valor de "despuesDe" para la página siguiente, o null si
+     *                  es la última
+     */
+    public record Pagina(List<Map<String, Object>> filas, Long siguiente) {
+    }
+}
@@ -0,0 +1,129 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+import es.upm.dit.isst.ioh.model.Rol;
+
+/**
+ * Mapa compacto de ID de usuario a rol, con direccionamiento abierto sobre un
+ * único {@code long[]} y sin objetos por entrada.
+ *
+ * Cada celda guarda {@code (id << 2) | rol}, con el rol codificado en los dos
+ * bits bajos (0 = celda vacía). Así la clave y el valor se escriben a la vez y
+ * un lector nunca ve uno sin el otro. Las lecturas no toman cerrojo; las
+ * escrituras se serializan y, al crecer, se publica una tabla nueva. El rol de
+ * un usuario no cambia, pero un usuario se puede borrar: como los borrados son
+ * raros, también publican una tabla nueva sin la entrada, así ningún lector ve
+ * una cadena de sondeo a medio reordenar.
+ */
+public final class MapaRoles {
+
+    private static final VarHandle CELDAS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final Rol[] ROLES = Rol.values();
+    private static final long MAX_ID = Long.MAX_VALUE >>> 2;
+
+    private volatile long[] tabla;
+    private int tamano;
+
+    /**
+     * @param capacidad Número de usuarios previsto; la tabla crece si se supera
+     */
+    public MapaRoles(int capacidad) {
+        this.tabla = new long[tamanoTabla(capacidad)];
+    }
+
+    /**
+     * @return El rol del usuario, o null si no está en el mapa
+     */
+    public Rol obtener(long id) {
+        long[] t = tabla;
+        int mascara = t.length - 1;
+        for (int i = indice(id, mascara);; i = (i + 1) & mascara) {
+            long celda = (long) CELDAS.getAcquire(t, i);
+            if (celda == 0) {
+                return null;
+            }
+            if (celda >>> 2 == id) {
+                return ROLES[(int) (celda & 3) - 1];
+            }
+        }
+    }
+
+    /**
+     * Guarda el rol de un usuario. Si ya estaba, se sustituye.
+     */
+    public synchronized void poner(long id, Rol rol) {
+        if (id < 0 || id > MAX_ID) {
+            throw new IllegalArgumentException("ID de usuario fuera de rango: " + id);
+        }
+        // Factor de carga máximo 0,5: las búsquedas fallidas terminan pronto
+        if ((tamano + 1) * 2L > tabla.length) {
+            crecer();
+        }
+        if (insertar(tabla, (id << 2) | (rol.ordinal() + 1))) {
+            tamano++;
+        }
+    }
+
+    /**
+     * Quita un usuario del mapa
+     */
+    public synchronized void quitar(long id) {
+        if (obtener(id) == null) {
+            return;
+        }
+        long[] nueva = new long[tabla.length];
+        for (long celda : tabla) {
+            if (celda != 0 && celda >>> 2 != id) {
+                insertar(nueva, celda);
+            }
+        }
+        tabla = nueva;
+        tamano--;
+    }
+
+    /**
+     * @return Número de usuarios en el mapa
+     */
+    public synchronized int tamano() {
+        return tamano;
+    }
+
+    // Solo con el cerrojo del mapa
+    private static boolean insertar(long[] t, long celdaNueva) {
+        long id = celdaNueva >>> 2;
+        int mascara = t.length - 1;
+        for (int i = indice(id, mascara);; i = (i + 1) & mascara) {
+            long celda = t[i];
+            if (celda == 0 || celda >>> 2 == id) {
+                CELDAS.setRelease(t, i, celdaNueva);
+                return celda == 0;
+            }
+        }
+    }
+
+    private void crecer() {
+        long[] vieja = tabla;
+        long[] nueva = new long[vieja.length * 2];
+        for (long celda : vieja) {
+            if (celda != 0) {
+                insertar(nueva, celda);
+            }
+        }
+        tabla = nueva;
+    }
+
+    private static int indice(long id, int mascara) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mascara;
+    }
+
+    private static int tamanoTabla(int capacidad) {
+        long minimo = Math.max(16L, capacidad * 2L);
+        if (minimo > (1 << 30)) {
+            throw new IllegalArgumentException("Capacidad demasiado grande: " + capacidad);
+        }
+        return Integer.highestOneBit((int) minimo - 1) << 1;
+    }
+}
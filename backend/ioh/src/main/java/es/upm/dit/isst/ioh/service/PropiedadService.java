@@ -0,0 +1,35 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import es.upm.dit.isst.ioh.dto.PropiedadDTO;
+import es.upm.dit.isst.ioh.repository.PropiedadRepository;
+
+@Service
+public class PropiedadService {
+
+    private final PropiedadRepository propiedadRepository;
+
+    public PropiedadService(PropiedadRepository propiedadRepository) {
+        this.propiedadRepository = propiedadRepository;
+    }
+
+    /**
+     * Recorre las propiedades de un propietario con su número de cerraduras sin
+     * cargarlas todas en memoria. La consulta se mantiene abierta mientras dura
+     * el recorrido.
+     * 
+     * @param propietarioId ID del propietario
+     * @param consumidor    Acción a aplicar a cada propiedad
+     */
+    @Transactional(readOnly = true)
+    public void recorrerResumenPorPropietario(Long propietarioId, Consumer<PropiedadDTO> consumidor) {
+        try (Stream<PropiedadDTO> propiedades = propiedadRepository.streamResumenByPropietarioId(propietarioId)) {
+            propiedades.forEach(consumidor);
+        }
+    }
+}
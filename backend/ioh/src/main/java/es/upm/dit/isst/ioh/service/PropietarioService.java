@@ -1,82 +1,44 @@
 package es.upm.dit.isst.ioh.service;
 
-import java.util.ArrayList;
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
 
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
-import es.upm.dit.isst.ioh.model.Acceso;
-import es.upm.dit.isst.ioh.model.Cerradura;
-import es.upm.dit.isst.ioh.model.Propiedad;
-import es.upm.dit.isst.ioh.model.Propietario;
+import es.upm.dit.isst.ioh.dto.AccesoPropietarioDTO;
 import es.upm.dit.isst.ioh.repository.AccesoRepository;
-import es.upm.dit.isst.ioh.repository.CerraduraRepository;
-import es.upm.dit.isst.ioh.repository.PropiedadRepository;
-import es.upm.dit.isst.ioh.repository.PropietarioRepository;
 
 @Service
 public class PropietarioService {
 
-    private final PropietarioRepository propietarioRepository;
-    private final PropiedadRepository propiedadRepository;
-    private final CerraduraRepository cerraduraRepository;
+    // Ventanas temporales admitidas en el listado de accesos
+    public static final Set<String> VENTANAS = Set.of("actuales", "proximos", "pasados");
+
     private final AccesoRepository accesoRepository;
 
-    public PropietarioService(
-            PropietarioRepository propietarioRepository,
-            PropiedadRepository propiedadRepository,
-            CerraduraRepository cerraduraRepository,
-            AccesoRepository accesoRepository) {
-        this.propietarioRepository = propietarioRepository;
-        this.propiedadRepository = propiedadRepository;
-        this.cerraduraRepository = cerraduraRepository;
+    public PropietarioService(AccesoRepository accesoRepository) {
         this.accesoRepository = accesoRepository;
     }
 
     /**
-     * Obtiene todos los accesos asociados a las cerraduras de las propiedades de un
-     * propietario
+     * Obtiene una página de los accesos asociados a las cerraduras de las
+     * propiedades de un propietario, con una única consulta
      * 
      * @param propietarioId ID del propietario
-     * @return Lista de accesos asociados a las cerraduras de las propiedades del
-     *         propietario
+     * @param ventana       "actuales", "proximos", "pasados" o null para todos
+     * @param despuesDe     Cursor: ID del último acceso de la página anterior
+     *                      (opcional)
+     * @param limite        Tamaño máximo de la página
+     * @return Accesos ordenados por ID
      */
-    public List<Acceso> obtenerAccesosPorPropietario(Long propietarioId) {
-        // Verificar si el propietario existe
-        Optional<Propietario> optPropietario = propietarioRepository.findById(propietarioId);
-        if (optPropietario.isEmpty()) {
-            return new ArrayList<>(); // Retornar lista vacía si el propietario no existe
-        }
-
-        // Obtener todas las propiedades del propietario
-        List<Propiedad> propiedades = propiedadRepository.findByPropietarioId(propietarioId);
-        if (propiedades.isEmpty()) {
-            return new ArrayList<>(); // Retornar lista vacía si no hay propiedades
+    public List<AccesoPropietarioDTO> obtenerAccesosPorPropietario(Long propietarioId, String ventana,
+            Long despuesDe, int limite) {
+        if (ventana != null && !VENTANAS.contains(ventana)) {
+            throw new IllegalArgumentException("Ventana no válida: " + ventana);
         }
-
-        // Obtener todas las cerraduras de las propiedades
-        List<Cerradura> cerraduras = new ArrayList<>();
-        for (Propiedad propiedad : propiedades) {
-            cerraduras.addAll(propiedad.getCerraduras());
-        }
-
-        if (cerraduras.isEmpty()) {
-            return new ArrayList<>(); // Retornar lista vacía si no hay cerraduras
-        }
-
-        // Obtener todos los IDs de las cerraduras
-        List<Long> cerraduraIds = cerraduras.stream()
-                .map(Cerradura::getId)
-                .collect(Collectors.toList());
-
-        // Obtener todos los accesos asociados a las cerraduras
-        List<Acceso> accesos = new ArrayList<>();
-        for (Long cerraduraId : cerraduraIds) {
-            accesos.addAll(accesoRepository.findByCerraduraId(cerraduraId));
-        }
-
-        return accesos;
+        return accesoRepository.findByPropietario(propietarioId, ventana, LocalDateTime.now(),
+                despuesDe != null ? despuesDe : 0L, PageRequest.of(0, limite));
     }
-}
\ No newline at end of file
+}
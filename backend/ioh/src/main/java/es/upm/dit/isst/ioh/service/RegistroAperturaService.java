@@ -0,0 +1,284 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import es.upm.dit.isst.ioh.dto.RegistroAperturaDTO;
+import es.upm.dit.isst.ioh.repository.RegistroAperturaRepository;
+
+@Service
+public class RegistroAperturaService {
+
+    // Límites del rango cuando no se indican desde o hasta
+    private static final LocalDateTime FECHA_MINIMA = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime FECHA_MAXIMA = LocalDateTime.of(9999, 12, 31, 0, 0);
+
+    private static final String EXPORTAR = "SELECT id, timestamp, exitoso, motivo, usuario_id, cerradura_id "
+            + "FROM registro_apertura WHERE timestamp >= ? AND timestamp < ? ORDER BY timestamp, id";
+
+    private final RegistroAperturaRepository registroAperturaRepository;
+    private final ArchivoAuditoriaService archivoAuditoriaService;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final int tamanoFetch;
+
+    public RegistroAperturaService(
+            RegistroAperturaRepository registroAperturaRepository,
+            ArchivoAuditoriaService archivoAuditoriaService,
+            JdbcTemplate jdbcTemplate,
+            ObjectMapper objectMapper,
+            @Value("${ioh.auditoria.exportacion.fetch-size:1000}") int tamanoFetch) {
+        this.registroAperturaRepository = registroAperturaRepository;
+        this.archivoAuditoriaService = archivoAuditoriaService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.tamanoFetch = tamanoFetch;
+    }
+
+    /**
+     * Obtiene una página de intentos de apertura en orden cronológico, filtrando
+     * como mucho por uno de cerradura, usuario o resultado. Cada filtro usa su
+     * índice compuesto con el timestamp, así la página se lee en orden del
+     * índice sin ordenar el rango completo. Si el rango incluye meses ya
+     * archivados, sus registros se mezclan con los de la tabla.
+     *
+     * @param cerraduraId ID de la cerradura (opcional)
+     * @param usuarioId   ID del usuario (opcional)
+     * @param exitoso     Resultado (opcional)
+     * @param desde       Inicio del rango, inclusivo (opcional)
+     * @param hasta       Fin del rango, exclusivo (opcional)
+     * @param despuesDe   Cursor: ID del último registro de la página anterior
+     *                    (opcional)
+     * @param limite      Tamaño máximo de la página
+     * @return Registros ordenados por timestamp e ID
+     */
+    public List<RegistroAperturaDTO> obtenerPagina(Long cerraduraId, Long usuarioId, Boolean exitoso,
+            LocalDateTime desde, LocalDateTime hasta, Long despuesDe, int limite) {
+        int filtros = (cerraduraId != null ? 1 : 0) + (usuarioId != null ? 1 : 0) + (exitoso != null ? 1 : 0);
+        if (filtros > 1) {
+            throw new IllegalArgumentException("Solo se puede filtrar por uno de cerraduraId, usuarioId o exitoso");
+        }
+
+        LocalDateTime inicio = desde != null ? desde : FECHA_MINIMA;
+        LocalDateTime fin = hasta != null ? hasta : FECHA_MAXIMA;
+
+        // El cursor es un ID; su timestamp marca dónde continuar en el índice
+        LocalDateTime cursorFecha = inicio;
+        long cursorId = 0L;
+        if (despuesDe != null && despuesDe > 0) {
+            LocalDateTime fechaCursor = registroAperturaRepository.findTimestampById(despuesDe)
+                    .or(() -> archivoAuditoriaService.buscarFecha(despuesDe, inicio, fin))
+                    .orElseThrow(() -> new IllegalArgumentException("Cursor no válido: " + despuesDe));
+            if (!fechaCursor.isBefore(inicio)) {
+                cursorFecha = fechaCursor;
+                cursorId = despuesDe;
+            }
+        }
+
+        Pageable pagina = PageRequest.of(0, limite);
+        List<RegistroAperturaDTO> recientes;
+        if (cerraduraId != null) {
+            recientes = registroAperturaRepository.findPaginaPorCerradura(cerraduraId, cursorFecha, cursorId, fin,
+                    pagina);
+        } else if (usuarioId != null) {
+            recientes = registroAperturaRepository.findPaginaPorUsuario(usuarioId, cursorFecha, cursorId, fin, pagina);
+        } else if (exitoso != null) {
+            recientes = registroAperturaRepository.findPaginaPorResultado(exitoso, cursorFecha, cursorId, fin, pagina);
+        } else {
+            recientes = registroAperturaRepository.findPagina(cursorFecha, cursorId, fin, pagina);
+        }
+
+        if (!archivoAuditoriaService.abarca(cursorFecha, fin)) {
+            return recientes;
+        }
+        Predicate<RegistroAperturaDTO> filtro = r -> (cerraduraId == null || cerraduraId.equals(r.getCerraduraId()))
+                && (usuarioId == null || usuarioId.equals(r.getUsuarioId()))
+                && (exitoso == null || exitoso == r.isExitoso());
+        List<RegistroAperturaDTO> archivados = archivoAuditoriaService.buscar(filtro, cursorFecha, cursorId, fin,
+                limite);
+        return mezclar(archivados, recientes, limite);
+    }
+
+    // Mezcla dos listas ordenadas por (timestamp, id). Un registro puede estar
+    // en las dos si el archivado se interrumpió antes de borrarlo de la tabla.
+    private static List<RegistroAperturaDTO> mezclar(List<RegistroAperturaDTO> a, List<RegistroAperturaDTO> b,
+            int limite) {
+        List<RegistroAperturaDTO> resultado = new ArrayList<>(Math.min(limite, a.size() + b.size()));
+        Set<Long> ids = new HashSet<>();
+        int i = 0;
+        int j = 0;
+        while (resultado.size() < limite && (i < a.size() || j < b.size())) {
+            RegistroAperturaDTO siguiente;
+            if (j >= b.size() || (i < a.size() && anterior(a.get(i), b.get(j)))) {
+                siguiente = a.get(i++);
+            } else {
+                siguiente = b.get(j++);
+            }
+            if (ids.add(siguiente.getId())) {
+                resultado.add(siguiente);
+            }
+        }
+        return resultado;
+    }
+
+    private static boolean anterior(RegistroAperturaDTO x, RegistroAperturaDTO y) {
+        int comparacion = x.getTimestamp().compareTo(y.getTimestamp());
+        return comparacion < 0 || (comparacion == 0 && x.getId() < y.getId());
+    }
+
+    /**
+     * Escribe los intentos de apertura del rango en la salida, fila a fila, con
+     * un cursor JDBC de solo avance. Si el rango incluye meses archivados, sus
+     * registros se escriben antes que los de la tabla; de ellos se tiene en
+     * memoria un mes cada vez.
+     *
+     * @param formato Formato de salida
+     * @param desde   Inicio del rango, inclusivo (opcional)
+     * @param hasta   Fin del rango, exclusivo (opcional)
+     * @param salida  Flujo de salida; no se cierra
+     * @return Número de filas escritas
+     */
+    public long exportar(FormatoExportacion formato, LocalDateTime desde, LocalDateTime hasta, OutputStream salida)
+            throws IOException {
+        LocalDateTime inicio = desde != null ? desde : FECHA_MINIMA;
+        LocalDateTime fin = hasta != null ? hasta : FECHA_MAXIMA;
+        try {
+            return formato == FormatoExportacion.CSV
+                    ? exportarCsv(inicio, fin, salida)
+                    : exportarNdjson(inicio, fin, salida);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private long exportarNdjson(LocalDateTime desde, LocalDateTime hasta, OutputStream salida) throws IOException {
+        JsonGenerator json = objectMapper.getFactory().createGenerator(salida);
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        json.setRootValueSeparator(new SerializedString("\n"));
+        long filas = recorrer(desde, hasta, registro -> {
+            json.writeStartObject();
+            json.writeNumberField("id", registro.getId());
+            json.writeStringField("timestamp", registro.getTimestamp().toString());
+            json.writeBooleanField("exitoso", registro.isExitoso());
+            json.writeStringField("motivo", registro.getMotivo());
+            escribirId(json, "usuarioId", registro.getUsuarioId());
+            escribirId(json, "cerraduraId", registro.getCerraduraId());
+            json.writeEndObject();
+        });
+        if (filas > 0) {
+            json.writeRaw('\n');
+        }
+        json.close();
+        return filas;
+    }
+
+    private static void escribirId(JsonGenerator json, String campo, Long id) throws IOException {
+        if (id == null) {
+            json.writeNullField(campo);
+        } else {
+            json.writeNumberField(campo, id);
+        }
+    }
+
+    private long exportarCsv(LocalDateTime desde, LocalDateTime hasta, OutputStream salida) throws IOException {
+        Writer csv = new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8), 1 << 16);
+        csv.write("id,timestamp,exitoso,motivo,usuario_id,cerradura_id\n");
+        long filas = recorrer(desde, hasta, registro -> {
+            csv.write(Long.toString(registro.getId()));
+            csv.write(',');
+            csv.write(registro.getTimestamp().toString());
+            csv.write(',');
+            csv.write(registro.isExitoso() ? "true" : "false");
+            csv.write(',');
+            escribirCampoCsv(csv, registro.getMotivo());
+            csv.write(',');
+            csv.write(registro.getUsuarioId() != null ? registro.getUsuarioId().toString() : "");
+            csv.write(',');
+            csv.write(registro.getCerraduraId() != null ? registro.getCerraduraId().toString() : "");
+            csv.write('\n');
+        });
+        csv.flush();
+        return filas;
+    }
+
+    // Entre comillas solo si hace falta, duplicando las comillas internas
+    private static void escribirCampoCsv(Writer csv, String valor) throws IOException {
+        if (valor == null) {
+            return;
+        }
+        if (valor.indexOf(',') < 0 && valor.indexOf('"') < 0 && valor.indexOf('\n') < 0 && valor.indexOf('\r') < 0) {
+            csv.write(valor);
+            return;
+        }
+        csv.write('"');
+        csv.write(valor.replace("\"", "\"\""));
+        csv.write('"');
+    }
+
+    private long recorrer(LocalDateTime desde, LocalDateTime hasta, Fila fila) {
+        long[] filas = { 0 };
+        archivoAuditoriaService.recorrer(desde, hasta, registro -> {
+            try {
+                fila.escribir(registro);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            filas[0]++;
+        });
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(EXPORTAR, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(tamanoFetch);
+            ps.setTimestamp(1, Timestamp.valueOf(desde));
+            ps.setTimestamp(2, Timestamp.valueOf(hasta));
+            return ps;
+        }, rs -> {
+            try {
+                fila.escribir(new RegistroAperturaDTO(
+                        rs.getLong(1),
+                        rs.getTimestamp(2).toLocalDateTime(),
+                        rs.getBoolean(3),
+                        rs.getString(4),
+                        rs.getObject(5, Long.class),
+                        rs.getObject(6, Long.class)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            filas[0]++;
+        });
+        return filas[0];
+    }
+
+    @FunctionalInterface
+    private interface Fila {
+        void escribir(RegistroAperturaDTO registro) throws IOException;
+    }
+
+    public enum FormatoExportacion {
+        NDJSON, CSV
+    }
+}
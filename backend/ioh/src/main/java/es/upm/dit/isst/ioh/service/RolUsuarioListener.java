@@ -0,0 +1,44 @@
+package es.upm.dit.isst.ioh.service;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import es.upm.dit.isst.ioh.model.Usuario;
+import jakarta.persistence.PostRemove;
+
+/**
+ * Quita de {@link RolUsuarioService} los usuarios borrados, también por los
+ * repositorios exportados en {@code /usuarios}, {@code /propietarios} y
+ * {@code /huespeds}. Se aplica al confirmar la transacción.
+ */
+@Component
+public class RolUsuarioListener {
+
+    // Hibernate crea el listener mientras arranca JPA, antes de que exista el servicio
+    private final ObjectProvider<RolUsuarioService> rolUsuarioService;
+
+    public RolUsuarioListener(ObjectProvider<RolUsuarioService> rolUsuarioService) {
+        this.rolUsuarioService = rolUsuarioService;
+    }
+
+    @PostRemove
+    public void borrado(Usuario usuario) {
+        Long id = usuario.getId();
+        alConfirmar(() -> rolUsuarioService.getObject().olvidar(id));
+    }
+
+    private static void alConfirmar(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    accion.run();
+                }
+            });
+        } else {
+            accion.run();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import es.upm.dit.isst.ioh.model.Rol;
+import es.upm.dit.isst.ioh.repository.HuespedRepository;
+import es.upm.dit.isst.ioh.repository.PropietarioRepository;
+import es.upm.dit.isst.ioh.repository.UsuarioRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Rol de cada usuario sin cargar la entidad {@code Usuario}.
+ *
+ * Con la herencia JOINED, cargar un usuario solo para saber si es propietario o
+ * huésped cruza las tablas de las dos subclases. Aquí los roles se guardan en
+ * un {@link MapaRoles} que se carga al arrancar con los IDs de cada subclase y
+ * se completa al registrar o autenticar usuarios; {@link RolUsuarioListener}
+ * quita los usuarios borrados. Si un ID no está en el mapa
+ * (usuario inexistente o creado mientras se cargaba) se consulta solo su tipo.
+ */
+@Service
+public class RolUsuarioService {
+
+    private final UsuarioRepository usuarioRepository;
+    private final PropietarioRepository propietarioRepository;
+    private final HuespedRepository huespedRepository;
+
+    private final MapaRoles roles;
+
+    private final Counter enMemoria;
+    private final Counter enBaseDatos;
+
+    public RolUsuarioService(
+            UsuarioRepository usuarioRepository,
+            PropietarioRepository propietarioRepository,
+            HuespedRepository huespedRepository,
+            MeterRegistry meterRegistry,
+            @Value("${ioh.roles.capacidad-inicial:1024}") int capacidadInicial) {
+        this.usuarioRepository = usuarioRepository;
+        this.propietarioRepository = propietarioRepository;
+        this.huespedRepository = huespedRepository;
+        this.roles = new MapaRoles(capacidadInicial);
+
+        this.enMemoria = Counter.builder("ioh.roles.consultas")
+                .description("Consultas de rol de usuario por origen de la respuesta")
+                .tag("origen", "memoria")
+                .register(meterRegistry);
+        this.enBaseDatos = Counter.builder("ioh.roles.consultas")
+                .description("Consultas de rol de usuario por origen de la respuesta")
+                .tag("origen", "base-datos")
+                .register(meterRegistry);
+        Gauge.builder("ioh.roles.usuarios", roles, MapaRoles::tamano)
+                .description("Usuarios con el rol cargado en memoria")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Carga los roles de todos los usuarios
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconstruir() {
+        for (Long id : propietarioRepository.findAllIds()) {
+            roles.poner(id, Rol.PROPIETARIO);
+        }
+        for (Long id : huespedRepository.findAllIds()) {
+            roles.poner(id, Rol.HUESPED);
+        }
+    }
+
+    /**
+     * Devuelve el rol del usuario
+     *
+     * @param usuarioId ID del usuario
+     * @return El rol, o vacío si el usuario no existe
+     */
+    public Optional<Rol> rolDe(Long usuarioId) {
+        if (usuarioId == null) {
+            return Optional.empty();
+        }
+        Rol rol = roles.obtener(usuarioId);
+        if (rol != null) {
+            enMemoria.increment();
+            return Optional.of(rol);
+        }
+        enBaseDatos.increment();
+
+        Optional<Rol> cargado = usuarioRepository.esPropietario(usuarioId)
+                .map(propietario -> propietario ? Rol.PROPIETARIO : Rol.HUESPED);
+        cargado.ifPresent(r -> roles.poner(usuarioId, r));
+        return cargado;
+    }
+
+    /**
+     * Guarda el rol ya conocido de un usuario (al registrarse o hacer login)
+     */
+    public void recordar(Long usuarioId, Rol rol) {
+        roles.poner(usuarioId, rol);
+    }
+
+    /**
+     * Olvida el rol de un usuario borrado
+     */
+    public void olvidar(Long usuarioId) {
+        if (usuarioId != null) {
+            roles.quitar(usuarioId);
+        }
+    }
+}
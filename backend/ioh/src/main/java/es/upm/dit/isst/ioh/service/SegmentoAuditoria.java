@@ -0,0 +1,289 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+import es.upm.dit.isst.ioh.dto.RegistroAperturaDTO;
+
+/**
+ * Segmento de tamaño fijo del almacén de auditoría, proyectado en memoria y de
+ * solo añadir.
+ *
+ * Formato: una cabecera de 32 bytes (mágico, versión, número de registros) y
+ * registros de 32 bytes: instante en milisegundos UTC, ID de usuario, ID de
+ * cerradura (0 = sin valor), ID del motivo en el diccionario y resultado. El
+ * número de registros de la cabecera se escribe después de cada registro, así
+ * tras una caída solo se puede perder el último registro a medio escribir.
+ *
+ * Por cada bloque de {@value #REGISTROS_BLOQUE} registros se guarda en memoria
+ * un índice disperso con el rango de instantes y una máscara de 64 bits de las
+ * cerraduras y usuarios que aparecen, de forma que las consultas se saltan los
+ * bloques que no pueden contener resultados y leen el resto directamente del
+ * buffer, sin crear objetos para los registros que no encajan.
+ */
+public final class SegmentoAuditoria implements Closeable {
+
+    static final int MAGICO = 0x494F4841; // "IOHA"
+    static final int VERSION = 1;
+    static final int CABECERA = 32;
+    static final int TAMANO_REGISTRO = 32;
+    static final int REGISTROS_BLOQUE = 256;
+
+    private static final int POS_REGISTROS = 8;
+    private static final int DESP_USUARIO = 8;
+    private static final int DESP_CERRADURA = 16;
+    private static final int DESP_MOTIVO = 24;
+    private static final int DESP_EXITOSO = 28;
+
+    private final long numero;
+    private final Path ruta;
+    private final FileChannel canal;
+    private final MappedByteBuffer buffer;
+    private final int capacidad;
+
+    // Índice disperso por bloque
+    private final long[] minInstante;
+    private final long[] maxInstante;
+    private final long[] mascaraCerraduras;
+    private final long[] mascaraUsuarios;
+
+    // La escritura volátil publica los registros y el índice a los lectores
+    private volatile int registros;
+
+    private SegmentoAuditoria(long numero, Path ruta, FileChannel canal, MappedByteBuffer buffer) {
+        this.numero = numero;
+        this.ruta = ruta;
+        this.canal = canal;
+        this.buffer = buffer;
+        this.capacidad = (buffer.capacity() - CABECERA) / TAMANO_REGISTRO;
+        int bloques = (capacidad + REGISTROS_BLOQUE - 1) / REGISTROS_BLOQUE;
+        this.minInstante = new long[bloques];
+        this.maxInstante = new long[bloques];
+        this.mascaraCerraduras = new long[bloques];
+        this.mascaraUsuarios = new long[bloques];
+    }
+
+    /**
+     * Abre un segmento existente o crea uno nuevo del tamaño indicado
+     *
+     * @param ruta        Fichero del segmento
+     * @param numero      Número de secuencia del segmento
+     * @param tamanoBytes Tamaño de los segmentos nuevos
+     */
+    public static SegmentoAuditoria abrir(Path ruta, long numero, int tamanoBytes) throws IOException {
+        FileChannel canal = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            boolean nuevo = canal.size() == 0;
+            long tamano = nuevo ? tamanoBytes : canal.size();
+            MappedByteBuffer buffer = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamano);
+            SegmentoAuditoria segmento = new SegmentoAuditoria(numero, ruta, canal, buffer);
+            if (nuevo) {
+                buffer.putInt(0, MAGICO);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(POS_REGISTROS, 0);
+            } else {
+                segmento.cargar();
+            }
+            return segmento;
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    private void cargar() throws IOException {
+        if (buffer.getInt(0) != MAGICO || buffer.getInt(4) != VERSION) {
+            throw new IOException("Segmento de auditoría no válido: " + ruta);
+        }
+        int guardados = Math.min(buffer.getInt(POS_REGISTROS), capacidad);
+        for (int i = 0; i < guardados; i++) {
+            int pos = posicion(i);
+            indexar(i, buffer.getLong(pos), buffer.getLong(pos + DESP_USUARIO), buffer.getLong(pos + DESP_CERRADURA));
+        }
+        registros = guardados;
+    }
+
+    /**
+     * Añade un registro. Solo debe llamarlo un hilo escritor.
+     *
+     * @return false si el segmento está lleno
+     */
+    public boolean anadir(LocalDateTime timestamp, boolean exitoso, int motivoId, Long usuarioId, Long cerraduraId) {
+        int indice = registros;
+        if (indice >= capacidad) {
+            return false;
+        }
+        long instante = aMilis(timestamp);
+        long usuario = usuarioId == null ? 0 : usuarioId;
+        long cerradura = cerraduraId == null ? 0 : cerraduraId;
+
+        int pos = posicion(indice);
+        buffer.putLong(pos, instante);
+        buffer.putLong(pos + DESP_USUARIO, usuario);
+        buffer.putLong(pos + DESP_CERRADURA, cerradura);
+        buffer.putInt(pos + DESP_MOTIVO, motivoId);
+        buffer.put(pos + DESP_EXITOSO, (byte) (exitoso ? 1 : 0));
+        indexar(indice, instante, usuario, cerradura);
+
+        buffer.putInt(POS_REGISTROS, indice + 1);
+        registros = indice + 1;
+        return true;
+    }
+
+    private void indexar(int indice, long instante, long usuario, long cerradura) {
+        int bloque = indice / REGISTROS_BLOQUE;
+        if (indice % REGISTROS_BLOQUE == 0) {
+            minInstante[bloque] = instante;
+            maxInstante[bloque] = instante;
+        } else {
+            minInstante[bloque] = Math.min(minInstante[bloque], instante);
+            maxInstante[bloque] = Math.max(maxInstante[bloque], instante);
+        }
+        mascaraCerraduras[bloque] |= bit(cerradura);
+        mascaraUsuarios[bloque] |= bit(usuario);
+    }
+
+    /**
+     * Añade a {@code destino} los registros que cumplen el criterio, del más
+     * reciente al más antiguo, hasta tener {@code limite} resultados
+     *
+     * @param motivos Traduce el ID del motivo a su texto
+     */
+    public void buscar(Criterio criterio, int limite, IntFunction<String> motivos, List<RegistroAperturaDTO> destino) {
+        if (destino.size() >= limite) {
+            return;
+        }
+        recorrer(criterio, motivos, registro -> {
+            destino.add(registro);
+            return destino.size() < limite;
+        });
+    }
+
+    /**
+     * Entrega al visitante los registros que cumplen el criterio, del más
+     * reciente al más antiguo, mientras devuelva true
+     *
+     * @param motivos Traduce el ID del motivo a su texto
+     * @return false si el visitante pidió parar
+     */
+    public boolean recorrer(Criterio criterio, IntFunction<String> motivos, Predicate<RegistroAperturaDTO> visitante) {
+        int total = registros;
+        if (total == 0) {
+            return true;
+        }
+        long bitCerradura = criterio.cerraduraId() != null ? bit(criterio.cerraduraId()) : 0;
+        long bitUsuario = criterio.usuarioId() != null ? bit(criterio.usuarioId()) : 0;
+
+        for (int bloque = (total - 1) / REGISTROS_BLOQUE; bloque >= 0; bloque--) {
+            if (maxInstante[bloque] < criterio.desde() || minInstante[bloque] > criterio.hasta()
+                    || (mascaraCerraduras[bloque] & bitCerradura) != bitCerradura
+                    || (mascaraUsuarios[bloque] & bitUsuario) != bitUsuario) {
+                continue;
+            }
+            int inicio = bloque * REGISTROS_BLOQUE;
+            int fin = Math.min(total, inicio + REGISTROS_BLOQUE);
+            for (int i = fin - 1; i >= inicio; i--) {
+                int pos = posicion(i);
+                long instante = buffer.getLong(pos);
+                if (instante < criterio.desde() || instante > criterio.hasta()) {
+                    continue;
+                }
+                long usuario = buffer.getLong(pos + DESP_USUARIO);
+                if (criterio.usuarioId() != null && usuario != criterio.usuarioId()) {
+                    continue;
+                }
+                long cerradura = buffer.getLong(pos + DESP_CERRADURA);
+                if (criterio.cerraduraId() != null && cerradura != criterio.cerraduraId()) {
+                    continue;
+                }
+                boolean exitoso = buffer.get(pos + DESP_EXITOSO) == 1;
+                if (criterio.exitoso() != null && exitoso != criterio.exitoso()) {
+                    continue;
+                }
+                boolean seguir = visitante.test(new RegistroAperturaDTO(
+                        (numero << 32) | i,
+                        LocalDateTime.ofEpochSecond(Math.floorDiv(instante, 1000),
+                                (int) Math.floorMod(instante, 1000) * 1_000_000, ZoneOffset.UTC),
+                        exitoso,
+                        motivos.apply(buffer.getInt(pos + DESP_MOTIVO)),
+                        usuario == 0 ? null : usuario,
+                        cerradura == 0 ? null : cerradura));
+                if (!seguir) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Comprueba si algún registro del segmento puede caer en el rango de instantes
+     */
+    public boolean solapa(long desde, long hasta) {
+        int total = registros;
+        if (total == 0) {
+            return false;
+        }
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int bloque = 0; bloque <= (total - 1) / REGISTROS_BLOQUE; bloque++) {
+            min = Math.min(min, minInstante[bloque]);
+            max = Math.max(max, maxInstante[bloque]);
+        }
+        return max >= desde && min <= hasta;
+    }
+
+    /**
+     * Pide al sistema operativo que escriba en disco las páginas modificadas
+     */
+    public void forzar() {
+        buffer.force();
+    }
+
+    public long getNumero() {
+        return numero;
+    }
+
+    public int getRegistros() {
+        return registros;
+    }
+
+    public boolean estaLleno() {
+        return registros >= capacidad;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        canal.close();
+    }
+
+    public static long aMilis(LocalDateTime fecha) {
+        return fecha.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static int posicion(int indice) {
+        return CABECERA + indice * TAMANO_REGISTRO;
+    }
+
+    private static long bit(long id) {
+        return 1L << ((id * 0x9E3779B97F4A7C15L) >>> 58);
+    }
+
+    /**
+     * Criterio de búsqueda; los campos null no filtran. El rango de instantes
+     * está en milisegundos UTC y es inclusivo.
+     */
+    public record Criterio(Long cerraduraId, Long usuarioId, Boolean exitoso, long desde, long hasta) {
+    }
+}
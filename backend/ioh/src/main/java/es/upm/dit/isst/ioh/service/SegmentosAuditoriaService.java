@@ -0,0 +1,326 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import es.upm.dit.isst.ioh.dto.RegistroAperturaDTO;
+import es.upm.dit.isst.ioh.service.AuditoriaAperturaService.EventoApertura;
+import es.upm.dit.isst.ioh.service.SegmentoAuditoria.Criterio;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Almacén de auditoría alternativo a la tabla registro_apertura, fuera de la
+ * base de datos transaccional.
+ *
+ * Los intentos de apertura se añaden a segmentos de tamaño fijo proyectados en
+ * memoria ({@link SegmentoAuditoria}); cuando uno se llena se abre el
+ * siguiente. Los motivos se guardan una sola vez en un diccionario de texto y
+ * los registros solo llevan su ID. El diccionario está acotado: lleno, cada
+ * motivo nuevo se añade a un fichero de desbordados y el registro lleva su
+ * posición, así los textos libres no hacen crecer la memoria. Se activa con
+ * {@code ioh.auditoria.segmentos.habilitado=true}.
+ */
+@Service
+public class SegmentosAuditoriaService {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentosAuditoriaService.class);
+    private static final String PREFIJO = "segmento-";
+    private static final String EXTENSION = ".dat";
+    private static final String FICHERO_MOTIVOS = "motivos.txt";
+    private static final String FICHERO_DESBORDADOS = "motivos-desbordados.dat";
+    private static final int MOTIVO_NULO = -1;
+    // Los motivos desbordados tienen ID -2 - posición de su texto en el fichero
+    private static final int PRIMER_DESBORDADO = -2;
+
+    private final boolean habilitado;
+    private final Path directorio;
+    private final int tamanoSegmento;
+    private final int maxMotivos;
+
+    // Del más antiguo al más reciente; el último es el activo
+    private final List<SegmentoAuditoria> segmentos = new CopyOnWriteArrayList<>();
+
+    // Diccionario de motivos
+    private final Map<String, Integer> idsMotivos = new ConcurrentHashMap<>();
+    private final List<String> motivos = new CopyOnWriteArrayList<>();
+    private BufferedWriter ficheroMotivos;
+    private FileChannel desbordados;
+    private boolean desbordadosLlenos;
+
+    public SegmentosAuditoriaService(
+            MeterRegistry meterRegistry,
+            @Value("${ioh.auditoria.segmentos.habilitado:false}") boolean habilitado,
+            @Value("${ioh.auditoria.segmentos.directorio:auditoria-segmentos}") String directorio,
+            @Value("${ioh.auditoria.segmentos.tamano-mb:64}") int tamanoMb,
+            @Value("${ioh.auditoria.segmentos.motivos-max:10000}") int maxMotivos) {
+        this.habilitado = habilitado;
+        this.directorio = Paths.get(directorio);
+        this.tamanoSegmento = tamanoMb * 1024 * 1024;
+        this.maxMotivos = maxMotivos;
+
+        if (habilitado) {
+            try {
+                abrir();
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo abrir el almacén de segmentos de auditoría", e);
+            }
+        }
+
+        Gauge.builder("ioh.auditoria.segmentos", segmentos, List::size)
+                .description("Segmentos del almacén de auditoría")
+                .register(meterRegistry);
+        Gauge.builder("ioh.auditoria.segmentos.registros", this, SegmentosAuditoriaService::contarRegistros)
+                .description("Intentos de apertura guardados en los segmentos")
+                .register(meterRegistry);
+    }
+
+    private void abrir() throws IOException {
+        Files.createDirectories(directorio);
+
+        Path rutaMotivos = directorio.resolve(FICHERO_MOTIVOS);
+        if (Files.exists(rutaMotivos)) {
+            for (String motivo : Files.readAllLines(rutaMotivos, StandardCharsets.UTF_8)) {
+                idsMotivos.putIfAbsent(motivo, motivos.size());
+                motivos.add(motivo);
+            }
+        }
+        ficheroMotivos = Files.newBufferedWriter(rutaMotivos, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        desbordados = FileChannel.open(directorio.resolve(FICHERO_DESBORDADOS), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        List<Path> existentes;
+        try (Stream<Path> ficheros = Files.list(directorio)) {
+            existentes = ficheros
+                    .filter(f -> f.getFileName().toString().startsWith(PREFIJO)
+                            && f.getFileName().toString().endsWith(EXTENSION))
+                    .sorted()
+                    .toList();
+        }
+        for (Path fichero : existentes) {
+            segmentos.add(SegmentoAuditoria.abrir(fichero, numeroDe(fichero), tamanoSegmento));
+        }
+        if (segmentos.isEmpty()) {
+            segmentos.add(nuevoSegmento(0));
+        }
+        log.info("Almacén de auditoría abierto en {} con {} segmentos y {} registros", directorio.toAbsolutePath(),
+                segmentos.size(), contarRegistros());
+    }
+
+    public boolean isHabilitado() {
+        return habilitado;
+    }
+
+    /**
+     * Añade un lote de intentos de apertura al segmento activo, abriendo
+     * segmentos nuevos cuando se llena. Lo llama el hilo escritor de auditoría.
+     */
+    public synchronized void anadir(List<EventoApertura> lote) {
+        if (!habilitado) {
+            throw new IllegalStateException("El almacén de segmentos de auditoría no está habilitado");
+        }
+        try {
+            SegmentoAuditoria activo = segmentos.get(segmentos.size() - 1);
+            for (EventoApertura evento : lote) {
+                int motivoId = idMotivo(evento.motivo());
+                if (!activo.anadir(evento.timestamp(), evento.exitoso(), motivoId, evento.usuarioId(),
+                        evento.cerraduraId())) {
+                    activo.forzar();
+                    activo = nuevoSegmento(activo.getNumero() + 1);
+                    segmentos.add(activo);
+                    activo.anadir(evento.timestamp(), evento.exitoso(), motivoId, evento.usuarioId(),
+                            evento.cerraduraId());
+                }
+            }
+            activo.forzar();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo escribir en el almacén de segmentos de auditoría", e);
+        }
+    }
+
+    /**
+     * Busca intentos de apertura, del más reciente al más antiguo
+     *
+     * @param cerraduraId ID de la cerradura (opcional)
+     * @param usuarioId   ID del usuario (opcional)
+     * @param exitoso     Resultado (opcional)
+     * @param desde       Inicio del rango, inclusivo (opcional)
+     * @param hasta       Fin del rango, inclusivo (opcional)
+     * @param limite      Número máximo de resultados
+     */
+    public List<RegistroAperturaDTO> buscar(Long cerraduraId, Long usuarioId, Boolean exitoso, LocalDateTime desde,
+            LocalDateTime hasta, int limite) {
+        Criterio criterio = new Criterio(cerraduraId, usuarioId, exitoso,
+                desde != null ? SegmentoAuditoria.aMilis(desde) : Long.MIN_VALUE,
+                hasta != null ? SegmentoAuditoria.aMilis(hasta) : Long.MAX_VALUE);
+
+        List<RegistroAperturaDTO> resultado = new ArrayList<>(Math.min(limite, 1024));
+        List<SegmentoAuditoria> copia = List.copyOf(segmentos);
+        for (int i = copia.size() - 1; i >= 0 && resultado.size() < limite; i--) {
+            SegmentoAuditoria segmento = copia.get(i);
+            if (segmento.solapa(criterio.desde(), criterio.hasta())) {
+                segmento.buscar(criterio, limite, this::textoMotivo, resultado);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Recorre todos los intentos de apertura desde el instante indicado
+     *
+     * @param desde     Inicio del rango, inclusivo
+     * @param visitante Recibe cada registro
+     */
+    public void recorrer(LocalDateTime desde, Consumer<RegistroAperturaDTO> visitante) {
+        Criterio criterio = new Criterio(null, null, null, SegmentoAuditoria.aMilis(desde), Long.MAX_VALUE);
+        for (SegmentoAuditoria segmento : List.copyOf(segmentos)) {
+            if (segmento.solapa(criterio.desde(), criterio.hasta())) {
+                segmento.recorrer(criterio, this::textoMotivo, registro -> {
+                    visitante.accept(registro);
+                    return true;
+                });
+            }
+        }
+    }
+
+    @PreDestroy
+    public synchronized void cerrar() {
+        for (SegmentoAuditoria segmento : segmentos) {
+            try {
+                segmento.close();
+            } catch (IOException e) {
+                log.warn("No se pudo cerrar el segmento de auditoría {}", segmento.getNumero(), e);
+            }
+        }
+        if (ficheroMotivos != null) {
+            try {
+                ficheroMotivos.close();
+            } catch (IOException e) {
+                log.warn("No se pudo cerrar el diccionario de motivos de auditoría", e);
+            }
+        }
+        if (desbordados != null) {
+            try {
+                desbordados.close();
+            } catch (IOException e) {
+                log.warn("No se pudo cerrar el fichero de motivos desbordados de auditoría", e);
+            }
+        }
+    }
+
+    private int idMotivo(String motivo) throws IOException {
+        if (motivo == null) {
+            return MOTIVO_NULO;
+        }
+        // Una línea por motivo; los saltos de línea romperían el diccionario
+        String plano = motivo.replace('\n', ' ').replace('\r', ' ');
+        Integer id = idsMotivos.get(plano);
+        if (id != null) {
+            return id;
+        }
+        if (motivos.size() >= maxMotivos) {
+            return desbordar(plano);
+        }
+        ficheroMotivos.write(plano);
+        ficheroMotivos.newLine();
+        ficheroMotivos.flush();
+        id = motivos.size();
+        motivos.add(plano);
+        idsMotivos.put(plano, id);
+        return id;
+    }
+
+    /**
+     * Añade el texto al fichero de desbordados, con su longitud delante, sin
+     * guardarlo en memoria
+     */
+    private int desbordar(String motivo) throws IOException {
+        long posicion = desbordados.size();
+        if (posicion >= Integer.MAX_VALUE) {
+            // La posición ya no cabe en el ID del registro
+            if (!desbordadosLlenos) {
+                desbordadosLlenos = true;
+                log.warn("El fichero de motivos desbordados de auditoría está lleno, los motivos nuevos no se guardan");
+            }
+            return MOTIVO_NULO;
+        }
+        byte[] texto = motivo.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + texto.length).putInt(texto.length).put(texto).flip();
+        while (buffer.hasRemaining()) {
+            desbordados.write(buffer, posicion + buffer.position());
+        }
+        return (int) (PRIMER_DESBORDADO - posicion);
+    }
+
+    private String textoMotivo(int id) {
+        if (id <= PRIMER_DESBORDADO) {
+            return textoDesbordado(PRIMER_DESBORDADO - (long) id);
+        }
+        return id >= 0 && id < motivos.size() ? motivos.get(id) : null;
+    }
+
+    private String textoDesbordado(long posicion) {
+        try {
+            ByteBuffer longitud = ByteBuffer.allocate(Integer.BYTES);
+            leer(longitud, posicion);
+            int bytes = longitud.getInt(0);
+            if (bytes < 0 || bytes > desbordados.size() - posicion - Integer.BYTES) {
+                return null;
+            }
+            ByteBuffer texto = ByteBuffer.allocate(bytes);
+            leer(texto, posicion + Integer.BYTES);
+            return new String(texto.array(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo leer un motivo desbordado de auditoría", e);
+        }
+    }
+
+    private void leer(ByteBuffer destino, long posicion) throws IOException {
+        while (destino.hasRemaining()) {
+            if (desbordados.read(destino, posicion + destino.position()) < 0) {
+                throw new IOException("Fin de fichero en la posición " + (posicion + destino.position()));
+            }
+        }
+    }
+
+    private SegmentoAuditoria nuevoSegmento(long numero) throws IOException {
+        Path fichero = directorio.resolve(String.format("%s%010d%s", PREFIJO, numero, EXTENSION));
+        return SegmentoAuditoria.abrir(fichero, numero, tamanoSegmento);
+    }
+
+    private long contarRegistros() {
+        long total = 0;
+        for (SegmentoAuditoria segmento : segmentos) {
+            total += segmento.getRegistros();
+        }
+        return total;
+    }
+
+    private static long numeroDe(Path fichero) {
+        String nombre = fichero.getFileName().toString();
+        return Long.parseLong(nombre.substring(PREFIJO.length(), nombre.length() - EXTENSION.length()));
+    }
+}
@@ -0,0 +1,159 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.Principal;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import es.upm.dit.isst.ioh.model.Rol;
+
+/**
+ * Tokens de sesión firmados con HMAC-SHA256, sin estado en el servidor.
+ *
+ * Formato: {@code <usuarioId>.<rol>.<caducidad en segundos UTC>.<firma>}, con
+ * la firma en Base64 URL sin relleno sobre los tres primeros campos. Como el
+ * token lleva el usuario y su rol, verificarlo no necesita la base de datos.
+ *
+ * La clave se configura en {@code ioh.sesion.secreto} (Base64, al menos 32
+ * bytes). Si no se configura se genera una al arrancar y las sesiones dejan de
+ * valer al reiniciar.
+ */
+@Service
+public class SesionService {
+
+    private static final Logger log = LoggerFactory.getLogger(SesionService.class);
+    private static final String ALGORITMO = "HmacSHA256";
+    private static final Base64.Encoder BASE64 = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder BASE64_DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec clave;
+    private final long duracionSegundos;
+
+    // Mac no es seguro entre hilos; cada hilo reutiliza el suyo
+    private final ThreadLocal<Mac> macs;
+
+    public SesionService(
+            @Value("${ioh.sesion.secreto:}") String secreto,
+            @Value("${ioh.sesion.duracion-minutos:720}") long duracionMinutos) {
+        byte[] bytes;
+        if (secreto == null || secreto.isBlank()) {
+            log.warn("ioh.sesion.secreto no configurado: se usa una clave aleatoria y las sesiones no sobreviven a un reinicio");
+            bytes = new byte[32];
+            new SecureRandom().nextBytes(bytes);
+        } else {
+            bytes = Base64.getDecoder().decode(secreto.trim());
+            if (bytes.length < 32) {
+                throw new IllegalStateException("ioh.sesion.secreto debe tener al menos 32 bytes");
+            }
+        }
+        this.clave = new SecretKeySpec(bytes, ALGORITMO);
+        this.duracionSegundos = TimeUnit.MINUTES.toSeconds(duracionMinutos);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITMO);
+                mac.init(clave);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HMAC-SHA256 no disponible", e);
+            }
+        });
+    }
+
+    /**
+     * Emite un token de sesión para el usuario
+     *
+     * @return Token y su caducidad
+     */
+    public Sesion emitir(Long usuarioId, Rol rol) {
+        long expira = Instant.now().getEpochSecond() + duracionSegundos;
+        String datos = usuarioId + "." + rol.name() + "." + expira;
+        String token = datos + "." + BASE64.encodeToString(firmar(datos));
+        return new Sesion(usuarioId, rol, expira, token);
+    }
+
+    /**
+     * Indica si el texto tiene la forma de un token de sesión, sin comprobar la
+     * firma. Sirve para distinguir un token manipulado o caducado de una
+     * cabecera que no es un token.
+     */
+    public boolean pareceToken(String token) {
+        if (token == null) {
+            return false;
+        }
+        int puntos = 0;
+        for (int i = 0; i < token.length(); i++) {
+            if (token.charAt(i) == '.') {
+                puntos++;
+            }
+        }
+        return puntos == 3;
+    }
+
+    /**
+     * Comprueba la firma y la caducidad de un token
+     *
+     * @return La sesión, o vacío si el token no es válido o ha caducado
+     */
+    public Optional<Sesion> verificar(String token) {
+        if (!pareceToken(token)) {
+            return Optional.empty();
+        }
+        int ultimoPunto = token.lastIndexOf('.');
+        String datos = token.substring(0, ultimoPunto);
+        byte[] firma;
+        try {
+            firma = BASE64_DECODER.decode(token.substring(ultimoPunto + 1));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if (!MessageDigest.isEqual(firma, firmar(datos))) {
+            return Optional.empty();
+        }
+
+        // La firma es nuestra, así que el contenido está bien formado
+        String[] campos = datos.split("\\.");
+        long expira = Long.parseLong(campos[2]);
+        if (expira <= Instant.now().getEpochSecond()) {
+            return Optional.empty();
+        }
+        return Optional.of(new Sesion(Long.valueOf(campos[0]), Rol.valueOf(campos[1]), expira, token));
+    }
+
+    private byte[] firmar(String datos) {
+        return macs.get().doFinal(datos.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Usuario autenticado de una petición
+     *
+     * @param usuarioId ID del usuario
+     * @param rol       Rol del usuario
+     * @param expira    Caducidad en segundos UTC
+     * @param token     Token firmado
+     */
+    public record Sesion(Long usuarioId, Rol rol, long expira, String token) implements Principal {
+        @Override
+        public String getName() {
+            return String.valueOf(usuarioId);
+        }
+
+        // Sin el token, para que no acabe en los logs
+        @Override
+        public String toString() {
+            return "Sesion[usuarioId=" + usuarioId + ", rol=" + rol + "]";
+        }
+    }
+}
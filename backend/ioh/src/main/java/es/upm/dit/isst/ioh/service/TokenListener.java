@@ -0,0 +1,37 @@
+package es.upm.dit.isst.ioh.service;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import es.upm.dit.isst.ioh.model.Token;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Lleva a {@link FiltroTokenService} y a {@link ExpiracionTokenService} cada
+ * token que se guarda, venga de {@code /api/tokens} o del repositorio exportado
+ * en {@code /tokens}. Los lotes se insertan por JDBC sin pasar por JPA y los
+ * registra {@link TokenService}.
+ */
+@Component
+public class TokenListener {
+
+    // Hibernate crea el listener mientras arranca JPA, antes de que existan los servicios
+    private final ObjectProvider<FiltroTokenService> filtroTokenService;
+    private final ObjectProvider<ExpiracionTokenService> expiracionTokenService;
+
+    public TokenListener(ObjectProvider<FiltroTokenService> filtroTokenService,
+            ObjectProvider<ExpiracionTokenService> expiracionTokenService) {
+        this.filtroTokenService = filtroTokenService;
+        this.expiracionTokenService = expiracionTokenService;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void guardado(Token token) {
+        // El filtro espera a la confirmación; la rueda no lo necesita porque el
+        // barrido comprueba la fecha real en base de datos
+        filtroTokenService.getObject().registrar(token.getCodigo());
+        expiracionTokenService.getObject().programar(token.getCodigo(), token.getFechaExpiracion());
+    }
+}
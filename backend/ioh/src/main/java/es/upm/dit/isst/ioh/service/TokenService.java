@@ -1,76 +1,204 @@
 package es.upm.dit.isst.ioh.service;
 
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import es.upm.dit.isst.ioh.model.Cerradura;
-import es.upm.dit.isst.ioh.model.Propiedad;
-import es.upm.dit.isst.ioh.model.Propietario;
+import es.upm.dit.isst.ioh.dto.TokenPropietarioDTO;
 import es.upm.dit.isst.ioh.model.Token;
 import es.upm.dit.isst.ioh.repository.CerraduraRepository;
-import es.upm.dit.isst.ioh.repository.PropiedadRepository;
-import es.upm.dit.isst.ioh.repository.PropietarioRepository;
 import es.upm.dit.isst.ioh.repository.TokenRepository;
 
 @Service
 public class TokenService {
 
     private final TokenRepository tokenRepository;
-    private final PropietarioRepository propietarioRepository;
-    private final PropiedadRepository propiedadRepository;
     private final CerraduraRepository cerraduraRepository;
+    private final FiltroTokenService filtroTokenService;
+    private final ExpiracionTokenService expiracionTokenService;
+    private final JdbcTemplate jdbcTemplate;
+    private final GeneradorCodigos generadorCodigos;
+    private final int maxTokensLote;
+
+    private static final int TAMANO_BATCH = 500;
+    private static final String INSERTAR_TOKEN = "INSERT INTO token "
+            + "(codigo, fecha_expiracion, usos_maximos, usos_actuales, cerradura_id) VALUES (?, ?, ?, 0, ?)";
 
     public TokenService(
             TokenRepository tokenRepository,
-            PropietarioRepository propietarioRepository,
-            PropiedadRepository propiedadRepository,
-            CerraduraRepository cerraduraRepository) {
+            CerraduraRepository cerraduraRepository,
+            FiltroTokenService filtroTokenService,
+            ExpiracionTokenService expiracionTokenService,
+            JdbcTemplate jdbcTemplate,
+            @Value("${ioh.tokens.codigos.secreto:}") String secretoCodigos,
+            @Value("${ioh.tokens.lote.max-tokens:100000}") int maxTokensLote) {
         this.tokenRepository = tokenRepository;
-        this.propietarioRepository = propietarioRepository;
-        this.propiedadRepository = propiedadRepository;
         this.cerraduraRepository = cerraduraRepository;
+        this.filtroTokenService = filtroTokenService;
+        this.expiracionTokenService = expiracionTokenService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.generadorCodigos = new GeneradorCodigos(secretoCodigos);
+        this.maxTokensLote = maxTokensLote;
+    }
+
+    /**
+     * Genera un código de token nuevo en el servidor, sin colisiones y no
+     * predecible
+     *
+     * @return Código de 11 caracteres alfanuméricos
+     */
+    public String generarCodigo() {
+        return generadorCodigos.siguiente();
+    }
+
+    /**
+     * Emite "cantidad" tokens para cada cerradura indicada, insertándolos con
+     * JDBC en batch
+     *
+     * @param cerraduraIds    IDs de las cerraduras
+     * @param cantidad        Número de tokens por cerradura
+     * @param fechaExpiracion Fecha de expiración de todos los tokens (puede ser
+     *                        null)
+     * @param usosMaximos     Usos máximos de cada token (0 = ilimitados)
+     * @return Códigos emitidos agrupados por ID de cerradura
+     */
+    @Transactional
+    public Map<Long, List<String>> emitirLote(List<Long> cerraduraIds, int cantidad,
+            LocalDateTime fechaExpiracion, int usosMaximos) {
+        if (cerraduraIds == null || cerraduraIds.isEmpty() || cantidad <= 0) {
+            throw new IllegalArgumentException("Se requieren cerraduras y una cantidad positiva");
+        }
+        Set<Long> ids = new LinkedHashSet<>(cerraduraIds);
+        if ((long) ids.size() * cantidad > maxTokensLote) {
+            throw new IllegalArgumentException("El lote supera el máximo de " + maxTokensLote + " tokens");
+        }
+        Set<Long> existentes = new HashSet<>(cerraduraRepository.findIdsExistentes(ids));
+        if (existentes.size() != ids.size()) {
+            ids.removeAll(existentes);
+            throw new IllegalArgumentException("Cerraduras no encontradas: " + ids);
+        }
+
+        Map<Long, List<String>> emitidos = new LinkedHashMap<>();
+        List<Object[]> filas = new ArrayList<>(ids.size() * cantidad);
+        Timestamp expiracion = fechaExpiracion != null ? Timestamp.valueOf(fechaExpiracion) : null;
+        for (Long cerraduraId : ids) {
+            List<String> codigos = new ArrayList<>(cantidad);
+            for (int i = 0; i < cantidad; i++) {
+                String codigo = generadorCodigos.siguiente();
+                codigos.add(codigo);
+                filas.add(new Object[] { codigo, expiracion, usosMaximos, cerraduraId });
+            }
+            emitidos.put(cerraduraId, codigos);
+        }
+
+        jdbcTemplate.batchUpdate(INSERTAR_TOKEN, filas, TAMANO_BATCH, (ps, fila) -> {
+            ps.setString(1, (String) fila[0]);
+            ps.setTimestamp(2, (Timestamp) fila[1]);
+            ps.setInt(3, (Integer) fila[2]);
+            ps.setLong(4, (Long) fila[3]);
+        });
+
+        for (List<String> codigos : emitidos.values()) {
+            filtroTokenService.registrar(codigos);
+            expiracionTokenService.programar(codigos, fechaExpiracion);
+        }
+        return emitidos;
     }
 
     /**
-     * Obtiene todos los tokens asociados a las cerraduras de las propiedades de un
-     * propietario
+     * Obtiene una página de los tokens asociados a las cerraduras de las
+     * propiedades de un propietario, con una única consulta
      * 
      * @param propietarioId ID del propietario
-     * @return Lista de tokens asociados a las cerraduras de las propiedades del
-     *         propietario
+     * @param propiedadId   Filtrar por propiedad (opcional)
+     * @param activo        true solo vigentes, false solo caducados o agotados,
+     *                      null todos
+     * @param despuesDe     Cursor: ID del último token de la página anterior
+     *                      (opcional)
+     * @param limite        Tamaño máximo de la página
+     * @return Tokens ordenados por ID
+     */
+    public List<TokenPropietarioDTO> obtenerTokensPorPropietario(Long propietarioId, Long propiedadId,
+            Boolean activo, Long despuesDe, int limite) {
+        return tokenRepository.findByPropietario(propietarioId, propiedadId, activo, LocalDateTime.now(),
+                despuesDe != null ? despuesDe : 0L, PageRequest.of(0, limite));
+    }
+
+    /**
+     * Canjea un uso del token y desbloquea su cerradura en una sola transacción.
+     * El uso se consume con un UPDATE condicional, de modo que dos canjes
+     * simultáneos nunca pueden superar usosMaximos.
+     *
+     * @param codigo      Código del token
+     * @param cerraduraId ID de la cerradura que se quiere abrir
+     * @return Resultado del canje con los usos restantes
      */
-    public List<Token> obtenerTokensPorPropietario(Long propietarioId) {
-        // Verificar si el propietario existe
-        Optional<Propietario> optPropietario = propietarioRepository.findById(propietarioId);
-        if (optPropietario.isEmpty()) {
-            return new ArrayList<>(); // Retornar lista vacía si el propietario no existe
+    @Transactional
+    public CanjeResult canjearToken(String codigo, Long cerraduraId) {
+        LocalDateTime ahora = LocalDateTime.now();
+
+        if (tokenRepository.consumirUso(codigo, cerraduraId, ahora) == 1) {
+            // Por la entidad y no con un UPDATE masivo, que vaciaría la región de cerraduras de la caché
+            cerraduraRepository.findById(cerraduraId).ifPresent(c -> c.setBloqueada(false));
+            Integer usosRestantes = tokenRepository.findUsosRestantes(codigo).orElse(null);
+            return new CanjeResult(true, 200, "Puerta abierta correctamente", usosRestantes);
         }
 
-        // Obtener todas las propiedades del propietario
-        List<Propiedad> propiedades = propiedadRepository.findByPropietarioId(propietarioId);
-        if (propiedades.isEmpty()) {
-            return new ArrayList<>(); // Retornar lista vacía si no hay propiedades
+        // Solo en el camino de error se carga el token para explicar el motivo
+        Optional<Token> optToken = tokenRepository.findByCodigo(codigo);
+        if (optToken.isEmpty()) {
+            return new CanjeResult(false, 404, "Token no encontrado", null);
+        }
+        if (!optToken.get().getCerradura().getId().equals(cerraduraId)) {
+            return new CanjeResult(false, 403, "Token no válido para esta cerradura", null);
         }
+        return new CanjeResult(false, 403, "Token expirado o sin usos disponibles", null);
+    }
+
+    /**
+     * Clase para representar el resultado de canjear un token
+     */
+    public static class CanjeResult {
+        private final boolean exito;
+        private final int estado;
+        private final String mensaje;
+        private final Integer usosRestantes;
 
-        // Obtener todas las cerraduras de esas propiedades
-        List<Cerradura> cerraduras = new ArrayList<>();
-        for (Propiedad propiedad : propiedades) {
-            cerraduras.addAll(cerraduraRepository.findByPropiedadId(propiedad.getId()));
+        public CanjeResult(boolean exito, int estado, String mensaje, Integer usosRestantes) {
+            this.exito = exito;
+            this.estado = estado;
+            this.mensaje = mensaje;
+            this.usosRestantes = usosRestantes;
         }
 
-        if (cerraduras.isEmpty()) {
-            return new ArrayList<>(); // Retornar lista vacía si no hay cerraduras
+        public boolean isExito() {
+            return exito;
         }
 
-        // Obtener todos los tokens de esas cerraduras
-        List<Token> tokens = new ArrayList<>();
-        for (Cerradura cerradura : cerraduras) {
-            tokens.addAll(tokenRepository.findByCerraduraId(cerradura.getId()));
+        public int getEstado() {
+            return estado;
         }
 
-        return tokens;
+        public String getMensaje() {
+            return mensaje;
+        }
+
+        // null si el token tiene usos ilimitados
+        public Integer getUsosRestantes() {
+            return usosRestantes;
+        }
     }
-}
\ No newline at end of file
+}
@@ -5,13 +5,14 @@ package es.upm.dit.isst.ioh.service;
 
 import es.upm.dit.isst.ioh.model.Huesped;
 import es.upm.dit.isst.ioh.model.Propietario;
+import es.upm.dit.isst.ioh.model.Rol;
 import es.upm.dit.isst.ioh.model.Usuario;
 import es.upm.dit.isst.ioh.repository.HuespedRepository;
 import es.upm.dit.isst.ioh.repository.PropietarioRepository;
 import es.upm.dit.isst.ioh.repository.UsuarioRepository;
+import es.upm.dit.isst.ioh.service.CredencialesService.Verificacion;
 
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Map;
 import java.util.Optional;
@@ -22,13 +23,19 @@ public class UsuarioService {
     private final UsuarioRepository usuarioRepository;
     private final HuespedRepository huespedRepository;
     private final PropietarioRepository propietarioRepository;
+    private final CredencialesService credencialesService;
+    private final RolUsuarioService rolUsuarioService;
 
     public UsuarioService(UsuarioRepository usuarioRepository,
             HuespedRepository huespedRepository,
-            PropietarioRepository propietarioRepository) {
+            PropietarioRepository propietarioRepository,
+            CredencialesService credencialesService,
+            RolUsuarioService rolUsuarioService) {
         this.usuarioRepository = usuarioRepository;
         this.huespedRepository = huespedRepository;
         this.propietarioRepository = propietarioRepository;
+        this.credencialesService = credencialesService;
+        this.rolUsuarioService = rolUsuarioService;
     }
 
     /**
@@ -47,21 +54,22 @@ public class UsuarioService {
      * @param datos Datos del huésped a registrar
      * @return El huésped registrado
      */
-    @Transactional
     public Huesped registrarHuesped(Map<String, String> datos) {
         // Verificar si ya existe un usuario con ese email
         if (existeUsuarioConEmail(datos.get("email"))) {
             throw new IllegalArgumentException("Ya existe un usuario con ese email");
         }
 
-        // Crear nuevo huésped
+        // Crear nuevo huésped con la contraseña cifrada (fuera de transacción: bcrypt es lento)
         Huesped nuevoHuesped = new Huesped(
                 datos.get("nombre"),
                 datos.get("email"),
                 datos.get("telefono"),
-                datos.get("contrasena"));
+                credencialesService.cifrar(datos.get("contrasena")));
 
-        return huespedRepository.save(nuevoHuesped);
+        Huesped guardado = huespedRepository.save(nuevoHuesped);
+        rolUsuarioService.recordar(guardado.getId(), Rol.HUESPED);
+        return guardado;
     }
 
     /**
@@ -70,21 +78,22 @@ public class UsuarioService {
      * @param datos Datos del propietario a registrar
      * @return El propietario registrado
      */
-    @Transactional
     public Propietario registrarPropietario(Map<String, String> datos) {
         // Verificar si ya existe un usuario con ese email
         if (existeUsuarioConEmail(datos.get("email"))) {
             throw new IllegalArgumentException("Ya existe un usuario con ese email");
         }
 
-        // Crear nuevo propietario
+        // Crear nuevo propietario con la contraseña cifrada (fuera de transacción: bcrypt es lento)
         Propietario nuevoPropietario = new Propietario(
                 datos.get("nombre"),
                 datos.get("email"),
                 datos.get("telefono"),
-                datos.get("contrasena"));
+                credencialesService.cifrar(datos.get("contrasena")));
 
-        return propietarioRepository.save(nuevoPropietario);
+        Propietario guardado = propietarioRepository.save(nuevoPropietario);
+        rolUsuarioService.recordar(guardado.getId(), Rol.PROPIETARIO);
+        return guardado;
     }
 
     /**
@@ -98,23 +107,30 @@ public class UsuarioService {
     }
     
     /**
-     * Autentica a un usuario verificando sus credenciales
+     * Autentica a un usuario verificando sus credenciales. Si la contraseña
+     * guardada estaba en claro o con un coste antiguo se vuelve a cifrar.
      * 
      * @param email Email del usuario
      * @param contrasena Contraseña proporcionada
      * @return Optional con el usuario autenticado si las credenciales son válidas
+     * @throws CredencialesService.CredencialesOcupadasException si no se puede
+     *         verificar a tiempo
      */
     public Optional<Usuario> autenticarUsuario(String email, String contrasena) {
         Optional<Usuario> usuarioOpt = usuarioRepository.findByEmail(email);
-        
-        if (usuarioOpt.isPresent()) {
-            Usuario usuario = usuarioOpt.get();
-            // Comprobación directa de contraseña (en un caso real se usaría bcrypt o similar)
-            if (usuario.getContrasena().equals(contrasena)) {
-                return Optional.of(usuario);
-            }
+
+        // Sin usuario también se calcula un hash, para no revelar qué emails existen
+        Verificacion verificacion = credencialesService.verificar(contrasena,
+                usuarioOpt.map(Usuario::getContrasena).orElse(null));
+        if (!verificacion.valida()) {
+            return Optional.empty();
+        }
+
+        Usuario usuario = usuarioOpt.get();
+        if (verificacion.nuevoHash() != null) {
+            usuarioRepository.actualizarContrasena(usuario.getId(), verificacion.nuevoHash());
+            usuario.setContrasena(verificacion.nuevoHash());
         }
-        
-        return Optional.empty();
+        return Optional.of(usuario);
     }
 }
\ No newline at end of file
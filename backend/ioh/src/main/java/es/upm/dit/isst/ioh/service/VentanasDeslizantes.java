@@ -0,0 +1,174 @@
+package es.upm.dit.isst.ioh.service;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Contadores de eventos en una ventana deslizante por clave, repartidos en
+ * franjas con su propio cerrojo para que los hilos que cuentan claves distintas
+ * casi nunca compitan.
+ *
+ * Cada clave tiene un anillo de {@value #TRAMOS} tramos de igual duración; un
+ * evento suma en el tramo del instante actual y la cuenta es la suma de los
+ * tramos que siguen dentro de la ventana. Los tramos caducados se reutilizan en
+ * el sitio, así que contar no crea objetos salvo la primera vez que aparece una
+ * clave. La ventana se desliza con la resolución de un tramo.
+ *
+ * @param <K> Tipo de las claves
+ */
+public final class VentanasDeslizantes<K> {
+
+    static final int TRAMOS = 10;
+
+    private final Franja<K>[] franjas;
+    private final int mascara;
+    private final long anchoTramoMs;
+    private final int maxPorFranja;
+
+    /**
+     * @param numFranjas Número mínimo de franjas; se redondea a potencia de dos
+     * @param ventanaMs  Duración de la ventana en milisegundos
+     * @param maxClaves  Número máximo de claves vigiladas a la vez
+     */
+    @SuppressWarnings("unchecked")
+    public VentanasDeslizantes(int numFranjas, long ventanaMs, int maxClaves) {
+        if (numFranjas < 1 || numFranjas > (1 << 16)) {
+            throw new IllegalArgumentException("El número de franjas debe estar entre 1 y 65536");
+        }
+        if (ventanaMs < TRAMOS) {
+            throw new IllegalArgumentException("La ventana debe durar al menos " + TRAMOS + " ms");
+        }
+        int tamano = numFranjas == 1 ? 1 : Integer.highestOneBit(numFranjas - 1) << 1;
+        this.franjas = new Franja[tamano];
+        for (int i = 0; i < tamano; i++) {
+            franjas[i] = new Franja<>();
+        }
+        this.mascara = tamano - 1;
+        this.anchoTramoMs = ventanaMs / TRAMOS;
+        this.maxPorFranja = Math.max(1, maxClaves / tamano);
+    }
+
+    /**
+     * Suma un evento a la clave
+     *
+     * @return Eventos de la clave dentro de la ventana, incluido este, o -1 si
+     *         no se pudo vigilar la clave porque su franja está llena
+     */
+    public int sumar(K clave, long ahoraMs) {
+        long tramo = ahoraMs / anchoTramoMs;
+        Franja<K> franja = franja(clave);
+        synchronized (franja) {
+            Ventana ventana = franja.ventanas.get(clave);
+            if (ventana == null) {
+                if (franja.ventanas.size() >= maxPorFranja) {
+                    purgar(franja, ahoraMs);
+                    if (franja.ventanas.size() >= maxPorFranja) {
+                        return -1;
+                    }
+                }
+                ventana = new Ventana();
+                franja.ventanas.put(clave, ventana);
+            }
+            return ventana.sumar(tramo);
+        }
+    }
+
+    /**
+     * Bloquea la clave hasta el instante indicado
+     *
+     * @return false si ya estaba bloqueada o la clave no se está vigilando
+     */
+    public boolean bloquear(K clave, long hastaMs, long ahoraMs) {
+        Franja<K> franja = franja(clave);
+        synchronized (franja) {
+            Ventana ventana = franja.ventanas.get(clave);
+            if (ventana == null || ventana.bloqueadoHasta > ahoraMs) {
+                return false;
+            }
+            ventana.bloqueadoHasta = hastaMs;
+            return true;
+        }
+    }
+
+    /**
+     * @return Instante hasta el que está bloqueada la clave, o 0 si no lo está
+     */
+    public long bloqueadoHasta(K clave, long ahoraMs) {
+        Franja<K> franja = franja(clave);
+        synchronized (franja) {
+            Ventana ventana = franja.ventanas.get(clave);
+            return ventana != null && ventana.bloqueadoHasta > ahoraMs ? ventana.bloqueadoHasta : 0;
+        }
+    }
+
+    /**
+     * Elimina las claves sin eventos en la ventana y sin bloqueo vigente
+     */
+    public void purgar(long ahoraMs) {
+        for (Franja<K> franja : franjas) {
+            synchronized (franja) {
+                purgar(franja, ahoraMs);
+            }
+        }
+    }
+
+    private void purgar(Franja<K> franja, long ahoraMs) {
+        long tramo = ahoraMs / anchoTramoMs;
+        Iterator<Ventana> it = franja.ventanas.values().iterator();
+        while (it.hasNext()) {
+            Ventana ventana = it.next();
+            if (ventana.bloqueadoHasta <= ahoraMs && tramo - ventana.ultimoTramo >= TRAMOS) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return Número de claves vigiladas
+     */
+    public int tamano() {
+        int total = 0;
+        for (Franja<K> franja : franjas) {
+            synchronized (franja) {
+                total += franja.ventanas.size();
+            }
+        }
+        return total;
+    }
+
+    private Franja<K> franja(K clave) {
+        int h = clave.hashCode() * 0x9E3779B9;
+        return franjas[(h ^ (h >>> 16)) & mascara];
+    }
+
+    private static final class Franja<K> {
+        private final Map<K, Ventana> ventanas = new HashMap<>();
+    }
+
+    // Anillo de tramos de una clave; solo se usa con el cerrojo de su franja
+    private static final class Ventana {
+        private final long[] tramos = new long[TRAMOS];
+        private final int[] cuentas = new int[TRAMOS];
+        private long ultimoTramo;
+        private long bloqueadoHasta;
+
+        private int sumar(long tramo) {
+            int i = (int) Math.floorMod(tramo, TRAMOS);
+            if (tramos[i] != tramo) {
+                tramos[i] = tramo;
+                cuentas[i] = 0;
+            }
+            cuentas[i]++;
+            ultimoTramo = tramo;
+
+            int total = 0;
+            for (int j = 0; j < TRAMOS; j++) {
+                if (tramo - tramos[j] < TRAMOS) {
+                    total += cuentas[j];
+                }
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package es.upm.dit.isst.ioh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import es.upm.dit.isst.ioh.dto.RegistroAperturaDTO;
+import es.upm.dit.isst.ioh.repository.RegistroAperturaRepository;
+import es.upm.dit.isst.ioh.service.ArchivoAuditoriaService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Mezcla de miembros y formato del fichero de {@link ArchivoAuditoriaService},
+ * con lotes de 2 registros
+ */
+class ArchivoAuditoriaServiceTests {
+
+	private static final LocalDateTime INICIO = LocalDateTime.of(2025, 1, 10, 10, 0);
+	private static final LocalDateTime FIN = LocalDateTime.of(2025, 2, 1, 0, 0);
+
+	@TempDir
+	private Path directorio;
+
+	private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+	@Test
+	void mezclaLosMiembrosSolapadosSinRepetir() {
+		// El segundo lote trae uno insertado tarde y repite otro, como tras un archivado interrumpido
+		ArchivoAuditoriaService archivo = archivar(
+				List.of(registro(1, 0), registro(3, 2)),
+				List.of(registro(2, 1), registro(3, 2)),
+				List.of(registro(4, 3)));
+
+		assertEquals(List.of(1L, 2L, 3L, 4L), recorrer(archivo));
+		assertEquals(List.of(1L, 2L), ids(archivo.buscar(r -> true, INICIO, 0, FIN, 2)));
+		assertEquals(List.of(3L, 4L), ids(archivo.buscar(r -> true, INICIO.plusMinutes(1), 2, FIN, 10)));
+		assertEquals(List.of(2L, 4L), ids(archivo.buscar(r -> r.getId() % 2 == 0, INICIO, 0, FIN, 10)));
+		assertEquals(List.of(1L, 2L), ids(archivo.buscar(r -> true, INICIO, 0, INICIO.plusMinutes(2), 10)));
+
+		assertEquals(Optional.of(INICIO.plusMinutes(2)), archivo.buscarFecha(3, INICIO, FIN));
+		assertEquals(Optional.empty(), archivo.buscarFecha(99, INICIO, FIN));
+	}
+
+	@Test
+	void unMiembroSinEntradaEnElIndiceSeDescartaAlArrancar() throws Exception {
+		archivar(List.of(registro(1, 0), registro(2, 1)), List.of());
+		Path fichero = directorio.resolve("registros-2025-01.gz");
+		long longitud = Files.size(fichero);
+		// La caída llegó después de escribir el miembro y antes de su entrada
+		Files.write(fichero, new byte[] { 0x1f, (byte) 0x8b, 8, 0 }, StandardOpenOption.APPEND);
+
+		ArchivoAuditoriaService archivo = nuevo();
+
+		assertEquals(List.of(1L, 2L), recorrer(archivo));
+		assertEquals(longitud, Files.size(fichero));
+	}
+
+	@Test
+	void elFormatoAnteriorSeConvierteAlArrancar() throws Exception {
+		// Miembros sin índice ni orden, con un registro repetido
+		Path fichero = directorio.resolve("registros-2025-01.gz");
+		try (OutputStream salida = Files.newOutputStream(fichero)) {
+			escribirMiembro(salida, registro(3, 2), registro(1, 0));
+			escribirMiembro(salida, registro(2, 1), registro(3, 2), registro(4, 3));
+		}
+
+		ArchivoAuditoriaService archivo = nuevo();
+
+		assertTrue(Files.exists(directorio.resolve("registros-2025-01.idx")));
+		assertEquals(List.of(1L, 2L, 3L, 4L), recorrer(archivo));
+		assertEquals(List.of(1L, 2L, 3L, 4L), recorrer(nuevo()));
+	}
+
+	@SafeVarargs
+	private ArchivoAuditoriaService archivar(List<RegistroAperturaDTO>... lotes) {
+		doReturn(lotes[0], (Object[]) Arrays.copyOfRange(lotes, 1, lotes.length)).when(jdbcTemplate)
+				.query(anyString(), ArgumentMatchers.<RowMapper<RegistroAperturaDTO>>any(), any(), any());
+		ArchivoAuditoriaService archivo = nuevo();
+		archivo.archivar();
+		return archivo;
+	}
+
+	private ArchivoAuditoriaService nuevo() {
+		return new ArchivoAuditoriaService(jdbcTemplate, mock(RegistroAperturaRepository.class),
+				mock(TransactionTemplate.class), new SimpleMeterRegistry(), true, 90, 2, directorio.toString());
+	}
+
+	private static List<Long> recorrer(ArchivoAuditoriaService archivo) {
+		List<RegistroAperturaDTO> registros = new ArrayList<>();
+		archivo.recorrer(INICIO, FIN, registros::add);
+		return ids(registros);
+	}
+
+	private static List<Long> ids(List<RegistroAperturaDTO> registros) {
+		return registros.stream().map(RegistroAperturaDTO::getId).toList();
+	}
+
+	private static RegistroAperturaDTO registro(long id, int minuto) {
+		return new RegistroAperturaDTO(id, INICIO.plusMinutes(minuto), id % 2 == 0, "Motivo " + id, 7L, 10L);
+	}
+
+	// Mismo formato de registro que el servicio
+	private static void escribirMiembro(OutputStream fichero, RegistroAperturaDTO... registros) throws IOException {
+		GZIPOutputStream gzip = new GZIPOutputStream(fichero);
+		DataOutputStream salida = new DataOutputStream(gzip);
+		for (RegistroAperturaDTO registro : registros) {
+			salida.writeLong(registro.getId());
+			salida.writeLong(registro.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+			salida.writeInt(registro.getTimestamp().getNano());
+			salida.writeBoolean(registro.isExitoso());
+			salida.writeLong(registro.getUsuarioId());
+			salida.writeLong(registro.getCerraduraId());
+			salida.writeBoolean(true);
+			salida.writeUTF(registro.getMotivo());
+		}
+		salida.flush();
+		gzip.finish();
+	}
+}
@@ -0,0 +1,154 @@
+package es.upm.dit.isst.ioh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import es.upm.dit.isst.ioh.service.AuditoriaAperturaService;
+import es.upm.dit.isst.ioh.service.AuditoriaAperturaService.EventoApertura;
+import es.upm.dit.isst.ioh.service.EstadisticasAperturaService;
+import es.upm.dit.isst.ioh.service.SegmentosAuditoriaService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Recuperación del fichero de respaldo de {@link AuditoriaAperturaService}
+ */
+class AuditoriaAperturaServiceTests {
+
+	private static final LocalDateTime INICIO = LocalDateTime.of(2025, 3, 31, 10, 0);
+
+	@TempDir
+	private Path directorio;
+
+	private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+	private final List<EventoApertura> insertados = new CopyOnWriteArrayList<>();
+	private AuditoriaAperturaService servicio;
+
+	@AfterEach
+	void detener() {
+		if (servicio != null) {
+			servicio.detener();
+		}
+	}
+
+	@Test
+	void ultimaLineaIncompletaSeDescartaYElRestoSeRecupera() throws Exception {
+		Path respaldo = directorio.resolve("respaldo.log");
+		// La caída cortó la última línea en el motivo: se leería bien, pero no está completa
+		String cortada = linea(3).substring(0, linea(3).length() - 2);
+		Files.writeString(respaldo, lineas(0, 3) + cortada, StandardCharsets.UTF_8);
+		insertarSinFallos();
+
+		iniciar(respaldo, 2);
+		esperarInsertados(3);
+		servicio.detener();
+
+		assertEquals(List.of(evento(0), evento(1), evento(2)), insertados);
+		assertFalse(Files.exists(Path.of(respaldo + ".recuperando")));
+		assertFalse(Files.exists(Path.of(respaldo + ".recuperando.progreso")));
+		assertEquals(cortada + System.lineSeparator(),
+				Files.readString(Path.of(respaldo + ".descartadas")));
+	}
+
+	@Test
+	void unLoteFallidoSeReintentaSinRepetirLosAnteriores() throws Exception {
+		Path respaldo = directorio.resolve("respaldo.log");
+		Files.writeString(respaldo, lineas(0, 2) + "basura\n" + lineas(2, 5), StandardCharsets.UTF_8);
+		// El segundo lote falla una vez, como un error pasajero de la base de datos
+		AtomicInteger llamadas = new AtomicInteger();
+		doAnswer(invocacion -> {
+			if (llamadas.incrementAndGet() == 2) {
+				throw new IllegalStateException("Base de datos no disponible");
+			}
+			insertados.addAll(new ArrayList<>(invocacion.<Collection<EventoApertura>>getArgument(1)));
+			return new int[0][];
+		}).when(jdbcTemplate).batchUpdate(anyString(), anyCollection(), anyInt(), ArgumentMatchers.<ParameterizedPreparedStatementSetter<EventoApertura>>any());
+
+		iniciar(respaldo, 2);
+		esperarInsertados(5);
+		servicio.detener();
+
+		assertEquals(List.of(evento(0), evento(1), evento(2), evento(3), evento(4)), insertados);
+		assertFalse(Files.exists(Path.of(respaldo + ".recuperando")));
+		assertEquals("basura" + System.lineSeparator(), Files.readString(Path.of(respaldo + ".descartadas")));
+	}
+
+	@Test
+	void sinBaseDeDatosLosReintentosSeEspacian() throws Exception {
+		Path respaldo = directorio.resolve("respaldo.log");
+		Files.writeString(respaldo, lineas(0, 2), StandardCharsets.UTF_8);
+		AtomicInteger llamadas = new AtomicInteger();
+		doAnswer(invocacion -> {
+			llamadas.incrementAndGet();
+			throw new IllegalStateException("Base de datos no disponible");
+		}).when(jdbcTemplate).batchUpdate(anyString(), anyCollection(), anyInt(), ArgumentMatchers.<ParameterizedPreparedStatementSetter<EventoApertura>>any());
+
+		// Con un intervalo de 10 ms, sin espera creciente serían unos 60 intentos
+		iniciar(respaldo, 2);
+		Thread.sleep(600);
+		servicio.detener();
+
+		assertTrue(llamadas.get() <= 10, "intentos: " + llamadas.get());
+		assertTrue(Files.exists(Path.of(respaldo + ".recuperando")));
+	}
+
+	private void insertarSinFallos() {
+		doAnswer(invocacion -> {
+			insertados.addAll(new ArrayList<>(invocacion.<Collection<EventoApertura>>getArgument(1)));
+			return new int[0][];
+		}).when(jdbcTemplate).batchUpdate(anyString(), anyCollection(), anyInt(), ArgumentMatchers.<ParameterizedPreparedStatementSetter<EventoApertura>>any());
+	}
+
+	private void iniciar(Path respaldo, int lote) {
+		servicio = new AuditoriaAperturaService(jdbcTemplate, mock(SegmentosAuditoriaService.class),
+				mock(EstadisticasAperturaService.class), new SimpleMeterRegistry(), 16, lote, 10, respaldo.toString());
+		servicio.iniciar();
+	}
+
+	private void esperarInsertados(int esperados) throws InterruptedException {
+		long limite = System.currentTimeMillis() + 5000;
+		while (insertados.size() < esperados && System.currentTimeMillis() < limite) {
+			Thread.sleep(10);
+		}
+		// Margen para que un reintento erróneo llegara a repetir lotes
+		Thread.sleep(100);
+	}
+
+	private static EventoApertura evento(int i) {
+		return new EventoApertura(INICIO.plusSeconds(i), i % 2 == 0, "Motivo " + i, (long) i, 100L + i);
+	}
+
+	private static String linea(int i) {
+		return "%s\t%s\t%d\t%d\tMotivo %d".formatted(INICIO.plusSeconds(i), i % 2 == 0, i, 100 + i, i);
+	}
+
+	private static String lineas(int desde, int hasta) {
+		StringBuilder texto = new StringBuilder();
+		for (int i = desde; i < hasta; i++) {
+			texto.append(linea(i)).append('\n');
+		}
+		return texto.toString();
+	}
+}
@@ -0,0 +1,86 @@
+package es.upm.dit.isst.ioh;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.LocalDateTime;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import es.upm.dit.isst.ioh.model.Acceso;
+import es.upm.dit.isst.ioh.model.Cerradura;
+import es.upm.dit.isst.ioh.model.Horario;
+import es.upm.dit.isst.ioh.model.Huesped;
+import es.upm.dit.isst.ioh.model.Propiedad;
+import es.upm.dit.isst.ioh.model.Propietario;
+import es.upm.dit.isst.ioh.repository.AccesoRepository;
+import es.upm.dit.isst.ioh.repository.CerraduraRepository;
+import es.upm.dit.isst.ioh.repository.HuespedRepository;
+import es.upm.dit.isst.ioh.repository.PropiedadRepository;
+import es.upm.dit.isst.ioh.repository.PropietarioRepository;
+import jakarta.persistence.EntityManagerFactory;
+
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:consultas",
+		"spring.jpa.properties.hibernate.generate_statistics=true" })
+@AutoConfigureMockMvc
+class CerraduraControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private PropietarioRepository propietarioRepository;
+
+	@Autowired
+	private PropiedadRepository propiedadRepository;
+
+	@Autowired
+	private CerraduraRepository cerraduraRepository;
+
+	@Autowired
+	private HuespedRepository huespedRepository;
+
+	@Autowired
+	private AccesoRepository accesoRepository;
+
+	@Test
+	void infoCerraduraUsaComoMaximoDosConsultas() throws Exception {
+		Propietario propietario = propietarioRepository.save(new Propietario("Carlos", "carlos@test.com", "600", "x"));
+		Propiedad propiedad = propiedadRepository.save(new Propiedad("Calle Sol 1", propietario, "Casa", null));
+		Cerradura cerradura = cerraduraRepository.save(new Cerradura("X1000", true, propiedad));
+		Huesped huesped = huespedRepository.save(new Huesped("Ana", "ana@test.com", "601", "y"));
+		LocalDateTime ahora = LocalDateTime.now();
+		accesoRepository.save(new Acceso(huesped, cerradura,
+				new Horario(ahora.minusDays(1), ahora.plusDays(1))));
+
+		Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+		estadisticas.clear();
+		mockMvc.perform(get("/api/cerraduras/{id}/info", cerradura.getId()).param("usuarioId", huesped.getId().toString()))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.propiedadNombre").value("Casa"))
+				.andExpect(jsonPath("$.propietarioNombre").value("Carlos"))
+				.andExpect(jsonPath("$.tieneAcceso").value(true));
+		long consultas = estadisticas.getPrepareStatementCount();
+		assertTrue(consultas <= 2, "Consultas ejecutadas: " + consultas);
+
+		estadisticas.clear();
+		mockMvc.perform(get("/api/cerraduras/{id}/info", cerradura.getId()).param("usuarioId", propietario.getId().toString()))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.tieneAcceso").value(true));
+		consultas = estadisticas.getPrepareStatementCount();
+		assertTrue(consultas <= 2, "Consultas ejecutadas: " + consultas);
+	}
+}
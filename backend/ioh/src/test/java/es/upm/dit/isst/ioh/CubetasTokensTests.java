@@ -0,0 +1,92 @@
+package es.upm.dit.isst.ioh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import es.upm.dit.isst.ioh.service.CubetasTokens;
+
+/**
+ * Ráfaga, relleno y purga de {@link CubetasTokens}, con ráfagas de 3 y
+ * reposición de 2 tokens por segundo (uno cada 500 ms)
+ */
+class CubetasTokensTests {
+
+	private static final long T0 = 1_000_000_000_000L;
+	private static final long MS = 1_000_000L;
+
+	private final CubetasTokens<String> cubetas = new CubetasTokens<>(4, 3, 2, 1000);
+
+	@Test
+	void admiteLaRafagaYDespuesIndicaLaEspera() {
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, cubetas.consumir("a", T0));
+		}
+		assertEquals(500 * MS, cubetas.consumir("a", T0));
+		// Otra clave tiene su propia cubeta
+		assertEquals(0, cubetas.consumir("b", T0));
+	}
+
+	@Test
+	void seRellenaSegunElTiempoTranscurrido() {
+		for (int i = 0; i < 3; i++) {
+			cubetas.consumir("a", T0);
+		}
+
+		// A mitad de reposición falta medio token
+		assertEquals(250 * MS, cubetas.consumir("a", T0 + 250 * MS));
+		// Un rechazo no consume: a los 500 ms hay un token entero
+		assertEquals(0, cubetas.consumir("a", T0 + 500 * MS));
+		assertEquals(500 * MS, cubetas.consumir("a", T0 + 500 * MS));
+		// Tres tokens repuestos en 1,5 s
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, cubetas.consumir("a", T0 + 2000 * MS));
+		}
+		assertEquals(500 * MS, cubetas.consumir("a", T0 + 2000 * MS));
+	}
+
+	@Test
+	void elRellenoNoSuperaLaCapacidad() {
+		cubetas.consumir("a", T0);
+
+		// Una hora después sigue habiendo solo una ráfaga de 3
+		long despues = T0 + 3_600_000 * MS;
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, cubetas.consumir("a", despues));
+		}
+		assertEquals(500 * MS, cubetas.consumir("a", despues));
+	}
+
+	@Test
+	void purgarSoloEliminaLasCubetasLlenas() {
+		cubetas.consumir("a", T0);
+		cubetas.consumir("b", T0 + 1000 * MS);
+
+		// "a" se llena a los 1,5 s de su último consumo; "b" todavía no
+		cubetas.purgar(T0 + 1500 * MS);
+		assertEquals(1, cubetas.tamano());
+
+		cubetas.purgar(T0 + 2500 * MS);
+		assertEquals(0, cubetas.tamano());
+	}
+
+	@Test
+	void sinHuecoSeDejaPasar() {
+		CubetasTokens<String> unaClave = new CubetasTokens<>(1, 1, 1, 1);
+
+		assertEquals(0, unaClave.consumir("a", T0));
+		assertEquals(1000 * MS, unaClave.consumir("a", T0));
+		// "b" no tiene hueco mientras "a" no se llene, y pasa sin límite
+		assertEquals(0, unaClave.consumir("b", T0));
+		assertEquals(0, unaClave.consumir("b", T0));
+		assertEquals(1, unaClave.tamano());
+	}
+
+	@Test
+	void parametrosNoValidos() {
+		assertThrows(IllegalArgumentException.class, () -> new CubetasTokens<String>(0, 3, 2, 10));
+		assertThrows(IllegalArgumentException.class, () -> new CubetasTokens<String>(4, 0.5, 2, 10));
+		assertThrows(IllegalArgumentException.class, () -> new CubetasTokens<String>(4, 3, 0, 10));
+	}
+}
@@ -0,0 +1,70 @@
+package es.upm.dit.isst.ioh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import es.upm.dit.isst.ioh.dto.AlertaFuerzaBrutaDTO;
+import es.upm.dit.isst.ioh.service.DetectorFuerzaBrutaService;
+import es.upm.dit.isst.ioh.service.DetectorFuerzaBrutaService.Bloqueo;
+import es.upm.dit.isst.ioh.service.DetectorFuerzaBrutaService.Dimension;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Umbrales de {@link DetectorFuerzaBrutaService}: 3 fallos por usuario, 5 por
+ * IP y 10 por cerradura en 5 minutos
+ */
+class DetectorFuerzaBrutaServiceTests {
+
+	private final DetectorFuerzaBrutaService detector = new DetectorFuerzaBrutaService(new SimpleMeterRegistry(),
+			true, 300, 10, 3, 5, 900, 4, 1000, 100);
+
+	@Test
+	void seBloqueaAlAlcanzarElUmbral() {
+		detector.registrarFallo(1L, 10L, "10.0.0.1", "Token no válido");
+		detector.registrarFallo(1L, 10L, "10.0.0.1", "Token no válido");
+		assertTrue(detector.comprobar(1L, "10.0.0.1").isEmpty(), "Dos fallos no llegan al umbral");
+
+		detector.registrarFallo(1L, 10L, "10.0.0.1", "Token no válido");
+		Bloqueo bloqueo = detector.comprobar(1L, "10.0.0.1").orElseThrow();
+		assertEquals(Dimension.USUARIO, bloqueo.dimension());
+		assertTrue(bloqueo.segundosRestantes() > 890 && bloqueo.segundosRestantes() <= 900);
+
+		// El bloqueo es del usuario: otro usuario desde otra IP sigue pudiendo intentarlo
+		assertTrue(detector.comprobar(2L, "10.0.0.2").isEmpty());
+
+		List<AlertaFuerzaBrutaDTO> alertas = detector.obtenerAlertas(List.of(10L), null, 10);
+		assertEquals(1, alertas.size());
+		assertEquals(3, alertas.get(0).getFallos());
+	}
+
+	@Test
+	void cadaDimensionTieneSuUmbral() {
+		// Cinco usuarios distintos desde la misma IP: ninguno llega a 3, la IP llega a 5
+		for (long usuario = 1; usuario <= 5; usuario++) {
+			detector.registrarFallo(usuario, 10L, "10.0.0.1", "Token no válido");
+		}
+		assertEquals(Dimension.IP, detector.comprobar(6L, "10.0.0.1").orElseThrow().dimension());
+		assertTrue(detector.comprobar(6L, "10.0.0.2").isEmpty());
+	}
+
+	@Test
+	void laCerraduraSoloGeneraUnaAlerta() {
+		for (long usuario = 1; usuario <= 10; usuario++) {
+			detector.registrarFallo(usuario, 10L, "10.0.1." + usuario, "Token no válido");
+		}
+
+		// Con 10 fallos la cerradura avisa, pero su propietario y sus huéspedes pueden seguir abriendo
+		assertTrue(detector.comprobar(11L, "10.0.0.2").isEmpty());
+		List<AlertaFuerzaBrutaDTO> alertas = detector.obtenerAlertas(List.of(10L), null, 10);
+		assertEquals(1, alertas.size());
+		assertEquals(Dimension.CERRADURA.name(), alertas.get(0).getDimension());
+
+		// Mientras dure el aviso no se repite
+		detector.registrarFallo(11L, 10L, "10.0.1.11", "Token no válido");
+		assertEquals(1, detector.obtenerAlertas(List.of(10L), null, 10).size());
+	}
+}
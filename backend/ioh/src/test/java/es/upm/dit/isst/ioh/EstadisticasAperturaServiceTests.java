@@ -0,0 +1,70 @@
+package es.upm.dit.isst.ioh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import es.upm.dit.isst.ioh.dto.EstadisticaAperturaDTO;
+import es.upm.dit.isst.ioh.model.Cerradura;
+import es.upm.dit.isst.ioh.model.Propiedad;
+import es.upm.dit.isst.ioh.model.Propietario;
+import es.upm.dit.isst.ioh.repository.CerraduraRepository;
+import es.upm.dit.isst.ioh.repository.PropiedadRepository;
+import es.upm.dit.isst.ioh.repository.PropietarioRepository;
+import es.upm.dit.isst.ioh.service.AuditoriaAperturaService.EventoApertura;
+import es.upm.dit.isst.ioh.service.EstadisticasAperturaService;
+import es.upm.dit.isst.ioh.service.EstadisticasAperturaService.Dimension;
+import es.upm.dit.isst.ioh.service.EstadisticasAperturaService.Granularidad;
+
+/**
+ * {@link EstadisticasAperturaService} cuenta cada intento bajo la propiedad
+ * actual de la cerradura
+ */
+@SpringBootTest
+class EstadisticasAperturaServiceTests {
+
+	@Autowired
+	private EstadisticasAperturaService estadisticasAperturaService;
+
+	@Autowired
+	private PropietarioRepository propietarioRepository;
+
+	@Autowired
+	private PropiedadRepository propiedadRepository;
+
+	@Autowired
+	private CerraduraRepository cerraduraRepository;
+
+	@Test
+	void unaCerraduraMovidaCuentaEnSuNuevaPropiedad() {
+		Propietario propietario = propietarioRepository.save(new Propietario("Luis", "luis@estadisticas.com", "603", "x"));
+		Propiedad origen = propiedadRepository.save(new Propiedad("Calle Mar 3", propietario, "Origen", null));
+		Propiedad destino = propiedadRepository.save(new Propiedad("Calle Mar 4", propietario, "Destino", null));
+		Cerradura cerradura = cerraduraRepository.save(new Cerradura("Estadisticas", false, origen));
+		LocalDateTime ahora = LocalDateTime.now();
+
+		estadisticasAperturaService.acumular(List.of(evento(ahora, cerradura)));
+		cerradura.setPropiedad(destino);
+		cerraduraRepository.save(cerradura);
+		estadisticasAperturaService.acumular(List.of(evento(ahora, cerradura)));
+
+		assertEquals(1, total(origen.getId(), ahora));
+		assertEquals(1, total(destino.getId(), ahora));
+	}
+
+	private long total(Long propiedadId, LocalDateTime ahora) {
+		return estadisticasAperturaService.consultar(Dimension.PROPIEDAD, propiedadId, Granularidad.DIA,
+				ahora.minusDays(1), ahora.plusDays(1)).stream()
+				.mapToLong(EstadisticaAperturaDTO::getExitosos)
+				.sum();
+	}
+
+	private static EventoApertura evento(LocalDateTime momento, Cerradura cerradura) {
+		return new EventoApertura(momento, true, "Puerta abierta", null, cerradura.getId());
+	}
+}
@@ -0,0 +1,81 @@
+package es.upm.dit.isst.ioh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import es.upm.dit.isst.ioh.repository.TokenRepository;
+import es.upm.dit.isst.ioh.service.ExpiracionTokenService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Periodo de gracia y reintento de lotes en {@link ExpiracionTokenService}, con
+ * lotes de 2 códigos y una hora de gracia
+ */
+class ExpiracionTokenServiceTests {
+
+	private final TokenRepository tokenRepository = mock(TokenRepository.class);
+	private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+	private final List<List<String>> borrados = new ArrayList<>();
+	private final ExpiracionTokenService servicio = new ExpiracionTokenService(tokenRepository, transactionTemplate,
+			new SimpleMeterRegistry(), 2, 1);
+
+	ExpiracionTokenServiceTests() {
+		when(transactionTemplate.execute(any())).thenAnswer(
+				invocacion -> invocacion.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+		when(tokenRepository.findIdsAgotados(any(), any())).thenReturn(List.of());
+	}
+
+	@Test
+	void seConservanDuranteElPeriodoDeGracia() {
+		registrarBorrados();
+		servicio.programar("RECIENTE", LocalDateTime.now().minusMinutes(30));
+
+		assertEquals(0, servicio.barrer());
+		verify(tokenRepository, never()).deleteCaducados(anyCollection(), any());
+
+		servicio.programar("ANTIGUO", LocalDateTime.now().minusHours(2));
+		assertEquals(1, servicio.barrer());
+		assertEquals(List.of(List.of("ANTIGUO")), borrados);
+	}
+
+	@Test
+	void unLoteFallidoVuelveALaRueda() {
+		LocalDateTime antes = LocalDateTime.now().minusHours(2);
+		servicio.programar(List.of("A", "B", "C"), antes);
+		when(tokenRepository.deleteCaducados(anyCollection(), any()))
+				.thenThrow(new DataAccessResourceFailureException("Base de datos caída"));
+
+		assertThrows(DataAccessResourceFailureException.class, servicio::barrer);
+
+		// En el siguiente barrido se borran todos, también los del lote que falló
+		registrarBorrados();
+		assertEquals(3, servicio.barrer());
+		assertEquals(List.of("A", "B", "C"), borrados.stream().flatMap(List::stream).sorted().toList());
+		assertEquals(0, servicio.barrer());
+	}
+
+	private void registrarBorrados() {
+		doAnswer(invocacion -> {
+			Collection<String> codigos = invocacion.getArgument(0);
+			borrados.add(List.copyOf(codigos));
+			return codigos.size();
+		}).when(tokenRepository).deleteCaducados(anyCollection(), any());
+	}
+}
@@ -0,0 +1,75 @@
+package es.upm.dit.isst.ioh;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import es.upm.dit.isst.ioh.model.Acceso;
+import es.upm.dit.isst.ioh.model.Cerradura;
+import es.upm.dit.isst.ioh.model.Horario;
+import es.upm.dit.isst.ioh.model.Huesped;
+import es.upm.dit.isst.ioh.repository.AccesoRepository;
+import es.upm.dit.isst.ioh.repository.CerraduraRepository;
+import es.upm.dit.isst.ioh.repository.HuespedRepository;
+import es.upm.dit.isst.ioh.service.IndiceAccesoService;
+
+/**
+ * {@link IndiceAccesoService} sigue los cambios de accesos hechos fuera de
+ * /api/accesos, por el repositorio exportado en /accesoes
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class IndiceAccesoServiceTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private IndiceAccesoService indiceAccesoService;
+
+	@Autowired
+	private AccesoRepository accesoRepository;
+
+	@Autowired
+	private HuespedRepository huespedRepository;
+
+	@Autowired
+	private CerraduraRepository cerraduraRepository;
+
+	@Test
+	void cambiosYBorradosPorElRepositorioExportado() throws Exception {
+		Huesped huesped = huespedRepository.save(new Huesped("Eva", "eva@indice.com", "602", "z"));
+		Cerradura cerradura = cerraduraRepository.save(new Cerradura("Indice", true, null));
+		LocalDateTime ahora = LocalDateTime.now();
+		Acceso acceso = accesoRepository.save(new Acceso(huesped, cerradura,
+				new Horario(ahora.minusDays(1), ahora.plusDays(1))));
+		assertTrue(indiceAccesoService.tieneAcceso(huesped.getId(), cerradura.getId(), ahora));
+
+		// Se acorta el horario: termina antes de ahora
+		mockMvc.perform(patch("/accesoes/{id}", acceso.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"horario\": {\"inicio\": \"%s\", \"fin\": \"%s\"}}".formatted(
+						ahora.minusDays(2).withNano(0), ahora.minusDays(1).withNano(0))))
+				.andExpect(status().is2xxSuccessful());
+		assertFalse(indiceAccesoService.tieneAcceso(huesped.getId(), cerradura.getId(), ahora));
+
+		Acceso otro = accesoRepository.save(new Acceso(huesped, cerradura,
+				new Horario(ahora.minusHours(1), ahora.plusHours(1))));
+		assertTrue(indiceAccesoService.tieneAcceso(huesped.getId(), cerradura.getId(), ahora));
+
+		mockMvc.perform(delete("/accesoes/{id}", otro.getId()))
+				.andExpect(status().is2xxSuccessful());
+		assertFalse(indiceAccesoService.tieneAcceso(huesped.getId(), cerradura.getId(), ahora));
+	}
+}
@@ -0,0 +1,105 @@
+package es.upm.dit.isst.ioh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import es.upm.dit.isst.ioh.config.LimiteTasaInterceptor;
+import es.upm.dit.isst.ioh.service.LimitadorTasaService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Coste por petición de {@link LimiteTasaInterceptor} en la ruta de apertura,
+ * con 1024 franjas y 2048 IP de cliente, en un hilo y con varios hilos
+ * compitiendo. Solo se ejecuta con el perfil benchmark:
+ * {@code mvn test -Pbenchmark -Dtest=LimiteTasaInterceptorTests -Dioh.benchmark.iteraciones=20000000}
+ */
+class LimiteTasaInterceptorTests {
+
+	private static final Logger log = LoggerFactory.getLogger(LimiteTasaInterceptorTests.class);
+
+	private static final int ITERACIONES = Integer.getInteger("ioh.benchmark.iteraciones", 2_000_000);
+	private static final int FRANJAS = 1024;
+	private static final int IPS = 2048;
+	private static final int CERRADURAS = 256;
+	private static final int HILOS = 8;
+
+	@Test
+	@Tag("benchmark")
+	void rendimientoPreHandle() throws Exception {
+		// Ráfaga y reposición tan altas que ninguna petición se rechaza: se mide el camino que deja pasar
+		LimitadorTasaService limitador = new LimitadorTasaService(new SimpleMeterRegistry(), true, FRANJAS, 100_000,
+				1e12, 1e12, 1e12, 1e12, 1e12, 1e12);
+		LimiteTasaInterceptor interceptor = new LimiteTasaInterceptor(limitador);
+		List<MockHttpServletRequest> peticiones = new ArrayList<>();
+		for (int i = 0; i < IPS; i++) {
+			peticiones.add(peticion("10.0." + (i >> 8) + "." + (i & 0xff), i % CERRADURAS));
+		}
+
+		// Calentamiento antes de medir
+		pasar(interceptor, peticiones, ITERACIONES / 2, 0);
+		long inicio = System.nanoTime();
+		pasar(interceptor, peticiones, ITERACIONES, 0);
+		long unHilo = System.nanoTime() - inicio;
+
+		ExecutorService executor = Executors.newFixedThreadPool(HILOS);
+		try {
+			CyclicBarrier salida = new CyclicBarrier(HILOS);
+			List<Future<Long>> hilos = new ArrayList<>();
+			for (int h = 0; h < HILOS; h++) {
+				int desplazamiento = h * (IPS / HILOS);
+				Callable<Long> tarea = () -> {
+					salida.await();
+					long desde = System.nanoTime();
+					pasar(interceptor, peticiones, ITERACIONES / HILOS, desplazamiento);
+					return System.nanoTime() - desde;
+				};
+				hilos.add(executor.submit(tarea));
+			}
+			long maximo = 0;
+			for (Future<Long> hilo : hilos) {
+				maximo = Math.max(maximo, hilo.get());
+			}
+
+			log.info("preHandle con {} franjas y {} IP: {} ns/petición en un hilo, {} ns/petición por hilo con {} hilos",
+					FRANJAS, IPS, unHilo / ITERACIONES, maximo / (ITERACIONES / HILOS), HILOS);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void pasar(LimiteTasaInterceptor interceptor, List<MockHttpServletRequest> peticiones,
+			int iteraciones, int desplazamiento) throws Exception {
+		MockHttpServletResponse respuesta = new MockHttpServletResponse();
+		int pasan = 0;
+		for (int i = 0; i < iteraciones; i++) {
+			if (interceptor.preHandle(peticiones.get((i + desplazamiento) & (IPS - 1)), respuesta, null)) {
+				pasan++;
+			}
+		}
+		assertEquals(iteraciones, pasan);
+	}
+
+	private static MockHttpServletRequest peticion(String ip, long cerraduraId) {
+		MockHttpServletRequest peticion = new MockHttpServletRequest("POST", "/api/cerraduras/" + cerraduraId + "/abrir");
+		peticion.setRemoteAddr(ip);
+		peticion.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/cerraduras/{id}/abrir");
+		peticion.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, Map.of("id", String.valueOf(cerraduraId)));
+		return peticion;
+	}
+}
@@ -0,0 +1,151 @@
+package es.upm.dit.isst.ioh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.function.LongFunction;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import es.upm.dit.isst.ioh.model.Huesped;
+import es.upm.dit.isst.ioh.model.Rol;
+import es.upm.dit.isst.ioh.repository.HuespedRepository;
+import es.upm.dit.isst.ioh.repository.UsuarioRepository;
+import es.upm.dit.isst.ioh.service.RolUsuarioService;
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Compara la resolución de rol cargando el usuario (JOINED + instanceof) con
+ * {@link RolUsuarioService}. La medida de rendimiento solo se ejecuta con el
+ * perfil benchmark; para la medida completa:
+ * {@code mvn test -Pbenchmark -Dtest=RolUsuarioServiceTests -Dioh.benchmark.usuarios=1000000}
+ */
+@SpringBootTest
+class RolUsuarioServiceTests {
+
+	private static final Logger log = LoggerFactory.getLogger(RolUsuarioServiceTests.class);
+
+	// Lejos de los IDs que genera la base de datos en el resto de tests
+	private static final long ID_BASE = 1_000_000_000L;
+	private static final int USUARIOS_PRUEBA = 500;
+	private static final int USUARIOS = Integer.getInteger("ioh.benchmark.usuarios", 20_000);
+	private static final int CONSULTAS_ENTIDAD = Math.min(USUARIOS, 20_000);
+	private static final int CONSULTAS_MAPA = 1_000_000;
+	private static final int LOTE = 10_000;
+
+	@Autowired
+	private RolUsuarioService rolUsuarioService;
+
+	@Autowired
+	private UsuarioRepository usuarioRepository;
+
+	@Autowired
+	private HuespedRepository huespedRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Test
+	void unUsuarioBorradoDejaDeTenerRol() {
+		Huesped huesped = huespedRepository.save(new Huesped("Rosa", "rosa@roles.com", "604", "x"));
+		assertEquals(Optional.of(Rol.HUESPED), rolUsuarioService.rolDe(huesped.getId()));
+
+		usuarioRepository.deleteById(huesped.getId());
+
+		assertEquals(Optional.empty(), rolUsuarioService.rolDe(huesped.getId()));
+	}
+
+	@Test
+	void rolSinCargarUsuarioCoincideConInstanceof() {
+		insertarUsuarios(USUARIOS_PRUEBA);
+		rolUsuarioService.reconstruir();
+
+		for (long id = ID_BASE; id < ID_BASE + USUARIOS_PRUEBA; id++) {
+			Optional<Rol> rol = rolUsuarioService.rolDe(id);
+			assertEquals(usuarioRepository.findById(id).map(Rol::de), rol);
+			assertEquals(Optional.of(esperado(id)), rol);
+		}
+		assertEquals(Optional.empty(), rolUsuarioService.rolDe(ID_BASE + USUARIOS_PRUEBA));
+	}
+
+	@Test
+	@Tag("benchmark")
+	void rendimientoRolEnMemoria() {
+		insertarUsuarios(USUARIOS);
+
+		long inicio = System.nanoTime();
+		rolUsuarioService.reconstruir();
+		long cargaNanos = System.nanoTime() - inicio;
+
+		LongFunction<Optional<Rol>> entidad = id -> usuarioRepository.findById(id).map(Rol::de);
+		LongFunction<Optional<Rol>> mapa = id -> rolUsuarioService.rolDe(id);
+
+		// Calentamiento de ambos caminos antes de medir
+		medir(entidad, CONSULTAS_ENTIDAD / 10, 1);
+		medir(mapa, CONSULTAS_MAPA / 10, 1);
+
+		long entidadNanos = medir(entidad, CONSULTAS_ENTIDAD, 2);
+		long mapaNanos = medir(mapa, CONSULTAS_MAPA, 2);
+
+		log.info("{} usuarios: carga {} ms, rol por entidad {} ns/consulta, rol en memoria {} ns/consulta",
+				USUARIOS, cargaNanos / 1_000_000, entidadNanos / CONSULTAS_ENTIDAD, mapaNanos / CONSULTAS_MAPA);
+	}
+
+	@AfterEach
+	void borrarUsuarios() {
+		jdbcTemplate.update("DELETE FROM propietario WHERE id >= ?", ID_BASE);
+		jdbcTemplate.update("DELETE FROM huesped WHERE id >= ?", ID_BASE);
+		jdbcTemplate.update("DELETE FROM usuario WHERE id >= ?", ID_BASE);
+		// Los borrados por JDBC no pasan por la caché de segundo nivel
+		entityManagerFactory.getCache().evictAll();
+	}
+
+	// Uno de cada diez usuarios es propietario
+	private static Rol esperado(long id) {
+		return (id - ID_BASE) % 10 == 0 ? Rol.PROPIETARIO : Rol.HUESPED;
+	}
+
+	private void insertarUsuarios(int total) {
+		for (int desde = 0; desde < total; desde += LOTE) {
+			List<Object[]> usuarios = new ArrayList<>();
+			List<Object[]> propietarios = new ArrayList<>();
+			List<Object[]> huespedes = new ArrayList<>();
+			for (int i = desde; i < Math.min(total, desde + LOTE); i++) {
+				long id = ID_BASE + i;
+				usuarios.add(new Object[] { id, "Usuario " + i, "bench" + i + "@e.com", "600000000", "x" });
+				(esperado(id) == Rol.PROPIETARIO ? propietarios : huespedes).add(new Object[] { id });
+			}
+			jdbcTemplate.batchUpdate(
+					"INSERT INTO usuario (id, nombre, email, telefono, contrasena) VALUES (?, ?, ?, ?, ?)", usuarios);
+			jdbcTemplate.batchUpdate("INSERT INTO propietario (id) VALUES (?)", propietarios);
+			jdbcTemplate.batchUpdate("INSERT INTO huesped (id) VALUES (?)", huespedes);
+		}
+	}
+
+	private long medir(LongFunction<Optional<Rol>> resolver, int consultas, long semilla) {
+		SplittableRandom aleatorio = new SplittableRandom(semilla);
+		int encontrados = 0;
+		long inicio = System.nanoTime();
+		for (int i = 0; i < consultas; i++) {
+			if (resolver.apply(ID_BASE + aleatorio.nextInt(USUARIOS)).isPresent()) {
+				encontrados++;
+			}
+		}
+		long nanos = System.nanoTime() - inicio;
+		assertEquals(consultas, encontrados);
+		return nanos;
+	}
+}
@@ -0,0 +1,69 @@
+package es.upm.dit.isst.ioh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import es.upm.dit.isst.ioh.dto.RegistroAperturaDTO;
+import es.upm.dit.isst.ioh.service.AuditoriaAperturaService.EventoApertura;
+import es.upm.dit.isst.ioh.service.SegmentosAuditoriaService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Diccionario de motivos acotado de {@link SegmentosAuditoriaService}, con
+ * sitio para 2 motivos
+ */
+class SegmentosAuditoriaServiceTests {
+
+	private static final LocalDateTime INICIO = LocalDateTime.of(2025, 4, 1, 10, 0);
+
+	@TempDir
+	private Path directorio;
+
+	@Test
+	void losMotivosQueNoCabenSeGuardanFueraDelDiccionario() throws Exception {
+		List<String> motivos = List.of("Puerta abierta", "Sin acceso", "Texto libre 1", "Texto\nlibre 2",
+				"Puerta abierta", "Texto libre 1");
+		SegmentosAuditoriaService servicio = nuevo();
+		List<EventoApertura> lote = new ArrayList<>();
+		for (int i = 0; i < motivos.size(); i++) {
+			lote.add(new EventoApertura(INICIO.plusSeconds(i), true, motivos.get(i), 7L, 10L));
+		}
+		servicio.anadir(lote);
+
+		List<String> esperados = List.of("Puerta abierta", "Sin acceso", "Texto libre 1", "Texto libre 2",
+				"Puerta abierta", "Texto libre 1");
+		assertEquals(esperados, leer(servicio));
+		assertEquals(List.of("Puerta abierta", "Sin acceso"),
+				Files.readAllLines(directorio.resolve("motivos.txt"), StandardCharsets.UTF_8));
+		servicio.cerrar();
+
+		// Tras reabrir se siguen leyendo los de ambos ficheros
+		SegmentosAuditoriaService reabierto = nuevo();
+		assertEquals(esperados, leer(reabierto));
+		reabierto.cerrar();
+	}
+
+	private SegmentosAuditoriaService nuevo() {
+		return new SegmentosAuditoriaService(new SimpleMeterRegistry(), true, directorio.toString(), 1, 2);
+	}
+
+	// El recorrido no sigue el orden de inserción
+	private static List<String> leer(SegmentosAuditoriaService servicio) {
+		List<RegistroAperturaDTO> registros = new ArrayList<>();
+		servicio.recorrer(INICIO, registros::add);
+		return registros.stream()
+				.sorted(Comparator.comparing(RegistroAperturaDTO::getTimestamp))
+				.map(RegistroAperturaDTO::getMotivo)
+				.toList();
+	}
+}
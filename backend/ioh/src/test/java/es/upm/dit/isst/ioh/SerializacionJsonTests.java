@@ -0,0 +1,147 @@
+package es.upm.dit.isst.ioh;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import es.upm.dit.isst.ioh.config.ConversorJson;
+import es.upm.dit.isst.ioh.dto.CerraduraDTO;
+import es.upm.dit.isst.ioh.dto.CerraduraInfoDTO;
+import es.upm.dit.isst.ioh.dto.PropiedadDTO;
+
+/**
+ * Serialización de los DTO más frecuentes con {@link ConversorJson}. La medida
+ * de rendimiento (ObjectMapper nuevo en cada petición, como hacían las subidas
+ * de propiedades, ObjectMapper compartido sin Blackbird y escritores y lectores
+ * preparados) solo se ejecuta con el perfil benchmark; para una medida más larga:
+ * {@code mvn test -Pbenchmark -Dtest=SerializacionJsonTests -Dioh.benchmark.iteraciones=2000000}
+ */
+@SpringBootTest
+class SerializacionJsonTests {
+
+	private static final Logger log = LoggerFactory.getLogger(SerializacionJsonTests.class);
+
+	private static final int ITERACIONES = Integer.getInteger("ioh.benchmark.iteraciones", 200_000);
+	// Crear un ObjectMapper es varios órdenes de magnitud más caro
+	private static final int ITERACIONES_MAPPER_NUEVO = Math.max(1, ITERACIONES / 100);
+
+	private static final List<Object> DTO_FRECUENTES = List.of(
+			new CerraduraInfoDTO(1L, "Puerta principal", "X1000", 2L, "Casa de Madrid",
+					"Calle del Sol 12, Madrid", 3L, "Carlos Ruiz", true),
+			new PropiedadDTO(2L, "Casa de Madrid", "Calle del Sol 12, Madrid", 3L, 4),
+			new CerraduraDTO(1L, "X1000", true, 2L, "Casa de Madrid"));
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private ConversorJson conversorJson;
+
+	@Autowired
+	@Qualifier("requestMappingHandlerAdapter")
+	private RequestMappingHandlerAdapter handlerAdapter;
+
+	@Test
+	void unSoloConversorJson() {
+		List<HttpMessageConverter<?>> escriben = handlerAdapter.getMessageConverters().stream()
+				.filter(c -> c.canWrite(CerraduraInfoDTO.class, MediaType.APPLICATION_JSON))
+				.toList();
+		// Responde el conversor con el ObjectMapper compartido y no hay otro con el mismo mapper detrás
+		assertSame(conversorJson, escriben.get(0));
+		assertSame(objectMapper, conversorJson.getObjectMapper());
+		assertEquals(1, escriben.stream()
+				.filter(c -> c instanceof MappingJackson2HttpMessageConverter m && m.getObjectMapper() == objectMapper)
+				.count());
+	}
+
+	@Test
+	void escritoresPreparadosProducenElMismoJson() throws Exception {
+		ObjectMapper sinBlackbird = sinBlackbird();
+		for (Object dto : DTO_FRECUENTES) {
+			JavaType tipo = objectMapper.constructType(dto.getClass());
+			ObjectWriter escritor = conversorJson.escritor(tipo);
+			ObjectReader lector = conversorJson.lector(tipo);
+
+			byte[] json = escritor.writeValueAsBytes(dto);
+			assertArrayEquals(sinBlackbird.writeValueAsBytes(dto), json);
+			assertArrayEquals(json, escritor.writeValueAsBytes(lector.readValue(json)));
+		}
+	}
+
+	@Test
+	@Tag("benchmark")
+	void rendimientoSerializacionDtoFrecuentes() throws Exception {
+		ObjectMapper sinBlackbird = sinBlackbird();
+		ObjectWriter escritorSinBlackbird = sinBlackbird.writer();
+
+		for (Object dto : DTO_FRECUENTES) {
+			Class<?> clase = dto.getClass();
+			JavaType tipo = objectMapper.constructType(clase);
+			ObjectWriter escritor = conversorJson.escritor(tipo);
+			ObjectReader lector = conversorJson.lector(tipo);
+			byte[] json = escritor.writeValueAsBytes(dto);
+
+			// Calentamiento de todos los caminos antes de medir
+			for (int vuelta = 0; vuelta < 2; vuelta++) {
+				long mapperNuevo = medir(ITERACIONES_MAPPER_NUEVO, () -> new ObjectMapper().writeValueAsBytes(dto));
+				long antes = medir(ITERACIONES, () -> escritorSinBlackbird.writeValueAsBytes(dto));
+				long ahora = medir(ITERACIONES, () -> escritor.writeValueAsBytes(dto));
+				long leerAntes = medir(ITERACIONES, () -> sinBlackbird.readValue(json, clase));
+				long leerAhora = medir(ITERACIONES, () -> lector.readValue(json));
+				if (vuelta == 1) {
+					log.info("{} (ns/op): mapper nuevo {}, sin Blackbird {}, preparado {}, leer antes {}, leer ahora {}",
+							clase.getSimpleName(), mapperNuevo / ITERACIONES_MAPPER_NUEVO, antes / ITERACIONES,
+							ahora / ITERACIONES, leerAntes / ITERACIONES, leerAhora / ITERACIONES);
+				}
+			}
+		}
+	}
+
+	// Misma configuración que el ObjectMapper de la aplicación, sin Blackbird
+	private static ObjectMapper sinBlackbird() {
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.registerModule(new JavaTimeModule());
+		mapper.setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+		mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+		mapper.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+		return mapper;
+	}
+
+	private static long medir(int iteraciones, Operacion operacion) throws Exception {
+		int total = 0;
+		long inicio = System.nanoTime();
+		for (int i = 0; i < iteraciones; i++) {
+			total += operacion.ejecutar() != null ? 1 : 0;
+		}
+		long nanos = System.nanoTime() - inicio;
+		assertEquals(iteraciones, total);
+		return nanos;
+	}
+
+	@FunctionalInterface
+	private interface Operacion {
+		Object ejecutar() throws Exception;
+	}
+}
@@ -0,0 +1,90 @@
+package es.upm.dit.isst.ioh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import es.upm.dit.isst.ioh.config.SesionFiltro;
+import es.upm.dit.isst.ioh.model.Rol;
+import es.upm.dit.isst.ioh.service.SesionService;
+import es.upm.dit.isst.ioh.service.SesionService.Sesion;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Cabecera Authorization en {@link SesionFiltro}
+ */
+class SesionFiltroTests {
+
+	private static final String SECRETO = Base64.getEncoder().encodeToString(new byte[32]);
+
+	private final SesionService sesionService = new SesionService(SECRETO, 60);
+	private final SesionFiltro filtro = new SesionFiltro(sesionService);
+
+	@Test
+	void tokenValidoDejaLaSesionEnLaPeticion() throws Exception {
+		Sesion sesion = sesionService.emitir(7L, Rol.HUESPED);
+		MockHttpServletRequest peticion = peticion("Bearer " + sesion.token());
+		MockFilterChain cadena = new MockFilterChain();
+
+		filtro.doFilter(peticion, new MockHttpServletResponse(), cadena);
+
+		Sesion enPeticion = (Sesion) peticion.getAttribute(SesionFiltro.ATRIBUTO_SESION);
+		assertEquals(7L, enPeticion.usuarioId());
+		assertEquals(Rol.HUESPED, enPeticion.rol());
+		assertSame(enPeticion, ((HttpServletRequest) cadena.getRequest()).getUserPrincipal());
+	}
+
+	@Test
+	void tokenManipuladoOCaducadoDevuelve401() throws Exception {
+		String token = sesionService.emitir(7L, Rol.HUESPED).token();
+		String caducado = new SesionService(SECRETO, 0).emitir(7L, Rol.HUESPED).token();
+
+		for (String manipulado : new String[] { "8" + token.substring(1), token.replace("HUESPED", "PROPIETARIO"),
+				token.substring(0, token.length() - 4) + "AAAA", caducado }) {
+			MockHttpServletRequest peticion = peticion("Bearer " + manipulado);
+			MockHttpServletResponse respuesta = new MockHttpServletResponse();
+			MockFilterChain cadena = new MockFilterChain();
+
+			filtro.doFilter(peticion, respuesta, cadena);
+
+			assertEquals(401, respuesta.getStatus(), manipulado);
+			assertEquals("Bearer", respuesta.getHeader(HttpHeaders.WWW_AUTHENTICATE));
+			assertTrue(respuesta.getContentAsString().contains("error"));
+			assertNull(cadena.getRequest(), "La petición no debe llegar al controlador");
+			assertNull(peticion.getAttribute(SesionFiltro.ATRIBUTO_SESION));
+		}
+	}
+
+	@Test
+	void cabeceraQueNoEsDeSesionPasaSinCambios() throws Exception {
+		for (String cabecera : new String[] { null, "Basic dXNlcjpwYXNz", "Bearer eyJhbGciOiJIUzI1NiJ9.e30.firma",
+				"Bearer abc" }) {
+			MockHttpServletRequest peticion = peticion(cabecera);
+			MockHttpServletResponse respuesta = new MockHttpServletResponse();
+			MockFilterChain cadena = new MockFilterChain();
+
+			filtro.doFilter(peticion, respuesta, cadena);
+
+			assertSame(peticion, cadena.getRequest(), String.valueOf(cabecera));
+			assertEquals(200, respuesta.getStatus());
+			assertNull(peticion.getAttribute(SesionFiltro.ATRIBUTO_SESION));
+		}
+	}
+
+	private static MockHttpServletRequest peticion(String autorizacion) {
+		MockHttpServletRequest peticion = new MockHttpServletRequest("POST", "/api/tokens/validar");
+		if (autorizacion != null) {
+			peticion.addHeader(HttpHeaders.AUTHORIZATION, autorizacion);
+		}
+		return peticion;
+	}
+}
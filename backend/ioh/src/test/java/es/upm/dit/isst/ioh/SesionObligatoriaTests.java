@@ -0,0 +1,54 @@
+package es.upm.dit.isst.ioh;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import es.upm.dit.isst.ioh.model.Rol;
+import es.upm.dit.isst.ioh.service.SesionService;
+
+/**
+ * Con ioh.sesion.obligatoria abrir y validar rechazan las peticiones sin sesión
+ * en lugar de fiarse del usuarioId que envía el cliente
+ */
+@SpringBootTest(properties = "ioh.sesion.obligatoria=true")
+@AutoConfigureMockMvc
+class SesionObligatoriaTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private SesionService sesionService;
+
+	@Test
+	void sinSesionDevuelve401() throws Exception {
+		mockMvc.perform(post("/api/tokens/validar")
+				.param("codigo", "NO-EXISTE")
+				.param("cerraduraId", "1")
+				.param("usuarioId", "7"))
+				.andExpect(status().isUnauthorized())
+				.andExpect(jsonPath("$.error").value("Se requiere una sesión"));
+		mockMvc.perform(post("/api/cerraduras/{id}/abrir", 1)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"usuarioId\": 7}"))
+				.andExpect(status().isUnauthorized())
+				.andExpect(jsonPath("$.error").value("Se requiere una sesión"));
+
+		// Con sesión sigue adelante
+		String token = sesionService.emitir(7L, Rol.HUESPED).token();
+		mockMvc.perform(post("/api/tokens/validar")
+				.header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+				.param("codigo", "NO-EXISTE")
+				.param("cerraduraId", "1"))
+				.andExpect(status().isNotFound());
+	}
+}
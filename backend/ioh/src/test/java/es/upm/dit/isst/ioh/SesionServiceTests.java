@@ -0,0 +1,76 @@
+package es.upm.dit.isst.ioh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Base64;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import es.upm.dit.isst.ioh.model.Rol;
+import es.upm.dit.isst.ioh.service.SesionService;
+import es.upm.dit.isst.ioh.service.SesionService.Sesion;
+
+/**
+ * Emisión y verificación de los tokens de sesión de {@link SesionService}
+ */
+class SesionServiceTests {
+
+	private static final String SECRETO = Base64.getEncoder().encodeToString(new byte[32]);
+
+	private final SesionService sesionService = new SesionService(SECRETO, 60);
+
+	@Test
+	void tokenEmitidoSeVerifica() {
+		Sesion emitida = sesionService.emitir(7L, Rol.PROPIETARIO);
+
+		Optional<Sesion> verificada = sesionService.verificar(emitida.token());
+
+		assertTrue(verificada.isPresent());
+		assertEquals(7L, verificada.get().usuarioId());
+		assertEquals(Rol.PROPIETARIO, verificada.get().rol());
+		assertEquals(emitida.expira(), verificada.get().expira());
+		// Otro servicio con la misma clave acepta el token, como tras un reinicio
+		assertTrue(new SesionService(SECRETO, 60).verificar(emitida.token()).isPresent());
+	}
+
+	@Test
+	void tokenManipuladoSeRechaza() {
+		String token = sesionService.emitir(7L, Rol.HUESPED).token();
+		String[] campos = token.split("\\.");
+
+		String otroUsuario = "8." + campos[1] + "." + campos[2] + "." + campos[3];
+		String otroRol = campos[0] + ".PROPIETARIO." + campos[2] + "." + campos[3];
+		String otraCaducidad = campos[0] + "." + campos[1] + "." + (Long.parseLong(campos[2]) + 3600) + "." + campos[3];
+		String otraFirma = campos[0] + "." + campos[1] + "." + campos[2] + "."
+				+ (campos[3].charAt(0) == 'A' ? 'B' : 'A') + campos[3].substring(1);
+
+		assertFalse(sesionService.verificar(otroUsuario).isPresent());
+		assertFalse(sesionService.verificar(otroRol).isPresent());
+		assertFalse(sesionService.verificar(otraCaducidad).isPresent());
+		assertFalse(sesionService.verificar(otraFirma).isPresent());
+		assertFalse(sesionService.verificar(campos[0] + "." + campos[1] + "." + campos[2] + ".%%%").isPresent());
+		// Firmado con otra clave
+		assertFalse(new SesionService(null, 60).verificar(token).isPresent());
+	}
+
+	@Test
+	void tokenCaducadoSeRechaza() {
+		SesionService sinDuracion = new SesionService(SECRETO, 0);
+
+		String token = sinDuracion.emitir(7L, Rol.HUESPED).token();
+
+		assertTrue(sinDuracion.pareceToken(token));
+		assertFalse(sinDuracion.verificar(token).isPresent());
+	}
+
+	@Test
+	void soloLosTokensConTresPuntosParecenDeSesion() {
+		assertTrue(sesionService.pareceToken("1.HUESPED.2.firma"));
+		assertFalse(sesionService.pareceToken(null));
+		assertFalse(sesionService.pareceToken("eyJhbGciOiJIUzI1NiJ9.e30.firma"));
+		assertFalse(sesionService.pareceToken("abc"));
+	}
+}
@@ -0,0 +1,176 @@
+package es.upm.dit.isst.ioh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import es.upm.dit.isst.ioh.model.Cerradura;
+import es.upm.dit.isst.ioh.model.Propiedad;
+import es.upm.dit.isst.ioh.model.Propietario;
+import es.upm.dit.isst.ioh.model.Rol;
+import es.upm.dit.isst.ioh.model.Token;
+import es.upm.dit.isst.ioh.repository.CerraduraRepository;
+import es.upm.dit.isst.ioh.repository.PropiedadRepository;
+import es.upm.dit.isst.ioh.repository.PropietarioRepository;
+import es.upm.dit.isst.ioh.repository.TokenRepository;
+import es.upm.dit.isst.ioh.service.SesionService;
+import es.upm.dit.isst.ioh.service.TokenService;
+
+/**
+ * Alta de tokens y validación con sesión: el usuario de la petición debe ser el
+ * de la sesión, y solo se cuentan los fallos de usuarios con sesión
+ */
+// Sin límite de tasa, que cortaría las ráfagas de fallos antes que el detector
+@SpringBootTest(properties = "ioh.limite.habilitado=false")
+@AutoConfigureMockMvc
+class TokenControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private SesionService sesionService;
+
+	@Autowired
+	private TokenService tokenService;
+
+	@Autowired
+	private TokenRepository tokenRepository;
+
+	@Autowired
+	private CerraduraRepository cerraduraRepository;
+
+	@Autowired
+	private PropiedadRepository propiedadRepository;
+
+	@Autowired
+	private PropietarioRepository propietarioRepository;
+
+	@Test
+	void repetirElAltaNoReiniciaLosUsos() throws Exception {
+		Cerradura cerradura = cerraduraRepository.save(new Cerradura("Alta", true, null));
+
+		mockMvc.perform(alta(null, "ALTA-REPETIDA", 5, cerradura.getId()))
+				.andExpect(status().isOk());
+		tokenService.canjearToken("ALTA-REPETIDA", cerradura.getId());
+		Token token = tokenRepository.findByCodigo("ALTA-REPETIDA").get();
+		assertEquals(1, token.getUsosActuales());
+
+		// Con el id de un token existente sería una actualización encubierta
+		mockMvc.perform(alta(token.getId(), "ALTA-REPETIDA", 50, cerradura.getId()))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(alta(token.getId(), "OTRO-CODIGO", 50, cerradura.getId()))
+				.andExpect(status().isBadRequest());
+		// Sin id, el mismo código choca con el índice único
+		mockMvc.perform(alta(null, "ALTA-REPETIDA", 50, cerradura.getId()))
+				.andExpect(status().is(462));
+
+		token = tokenRepository.findByCodigo("ALTA-REPETIDA").get();
+		assertEquals(1, token.getUsosActuales());
+		assertEquals(5, token.getUsosMaximos());
+	}
+
+	@Test
+	void tokensFueraDeLaApiYCaducadosLleganAlCanje() throws Exception {
+		Propietario propietario = propietarioRepository.save(new Propietario("Ana", "ana@filtro.com", "601", "x"));
+		Propiedad propiedad = propiedadRepository.save(new Propiedad("Calle Luna 2", propietario, "Piso", null));
+		Cerradura cerradura = cerraduraRepository.save(new Cerradura("Filtro", false, propiedad));
+		String sesion = sesionService.emitir(propietario.getId(), Rol.PROPIETARIO).token();
+
+		// Alta por el repositorio exportado, sin pasar por /api/tokens
+		mockMvc.perform(post("/tokens").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"codigo\": \"FILTRO-REST\", \"usosMaximos\": 0, \"cerradura\": \"/cerraduras/%d\"}"
+						.formatted(cerradura.getId())))
+				.andExpect(status().isCreated());
+		mockMvc.perform(validar(sesion, "FILTRO-REST", cerradura.getId()))
+				.andExpect(status().isOk());
+
+		// Un token caducado se rechaza como tal, no como inexistente
+		tokenRepository.save(new Token("FILTRO-CADUCADO", LocalDateTime.now().minusMinutes(1), 0, cerradura));
+		mockMvc.perform(validar(sesion, "FILTRO-CADUCADO", cerradura.getId()))
+				.andExpect(status().isForbidden())
+				.andExpect(jsonPath("$.error").value("Token expirado o sin usos disponibles"));
+	}
+
+	@Test
+	void usuarioDistintoDeLaSesionDevuelve403() throws Exception {
+		String token = sesionService.emitir(7L, Rol.HUESPED).token();
+
+		mockMvc.perform(post("/api/tokens/validar")
+				.header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+				.param("codigo", "NO-EXISTE")
+				.param("cerraduraId", "1")
+				.param("usuarioId", "8"))
+				.andExpect(status().isForbidden())
+				.andExpect(jsonPath("$.error").value("El usuario no coincide con la sesión"));
+
+		// Con el mismo usuario, o sin indicarlo, sigue adelante con el de la sesión
+		mockMvc.perform(post("/api/tokens/validar")
+				.header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+				.param("codigo", "NO-EXISTE")
+				.param("cerraduraId", "1")
+				.param("usuarioId", "7"))
+				.andExpect(status().isNotFound());
+		mockMvc.perform(post("/api/tokens/validar")
+				.header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+				.param("codigo", "NO-EXISTE")
+				.param("cerraduraId", "1"))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	void losFallosSinSesionNoBloqueanAlUsuarioIndicado() throws Exception {
+		// Más fallos que el umbral por usuario, enviando el ID de otro sin sesión
+		for (int i = 0; i < 11; i++) {
+			mockMvc.perform(post("/api/tokens/validar")
+					.param("codigo", "NO-EXISTE")
+					.param("cerraduraId", "1")
+					.param("usuarioId", "9"))
+					.andExpect(status().isNotFound());
+		}
+
+		String token = sesionService.emitir(9L, Rol.HUESPED).token();
+		mockMvc.perform(post("/api/tokens/validar")
+				.header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+				.param("codigo", "NO-EXISTE")
+				.param("cerraduraId", "1"))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	void sesionManipuladaDevuelve401() throws Exception {
+		String token = sesionService.emitir(7L, Rol.HUESPED).token();
+
+		mockMvc.perform(post("/api/tokens/validar")
+				.header(HttpHeaders.AUTHORIZATION, "Bearer " + token.replace("7.HUESPED", "8.HUESPED"))
+				.param("codigo", "NO-EXISTE")
+				.param("cerraduraId", "1"))
+				.andExpect(status().isUnauthorized());
+	}
+
+	private static RequestBuilder validar(String sesion, String codigo, Long cerraduraId) {
+		return post("/api/tokens/validar")
+				.header(HttpHeaders.AUTHORIZATION, "Bearer " + sesion)
+				.param("codigo", codigo)
+				.param("cerraduraId", String.valueOf(cerraduraId));
+	}
+
+	private static RequestBuilder alta(Long id, String codigo, int usosMaximos, Long cerraduraId) {
+		String cuerpo = "{%s\"codigo\": \"%s\", \"fechaExpiracion\": \"%s\", \"usosMaximos\": %d, \"cerradura\": {\"id\": %d}}"
+				.formatted(id != null ? "\"id\": " + id + ", " : "", codigo, LocalDateTime.now().plusHours(1),
+						usosMaximos, cerraduraId);
+		return post("/api/tokens").contentType(MediaType.APPLICATION_JSON).content(cuerpo);
+	}
+}
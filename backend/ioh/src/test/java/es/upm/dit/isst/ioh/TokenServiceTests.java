@@ -0,0 +1,114 @@
+package es.upm.dit.isst.ioh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import es.upm.dit.isst.ioh.model.Cerradura;
+import es.upm.dit.isst.ioh.model.Token;
+import es.upm.dit.isst.ioh.repository.CerraduraRepository;
+import es.upm.dit.isst.ioh.repository.TokenRepository;
+import es.upm.dit.isst.ioh.service.TokenService;
+
+/**
+ * Canje concurrente de tokens. La comparación de rendimiento con el camino
+ * anterior solo se ejecuta con el perfil benchmark:
+ * {@code mvn test -Pbenchmark -Dtest=TokenServiceTests}
+ */
+@SpringBootTest
+class TokenServiceTests {
+
+	private static final Logger log = LoggerFactory.getLogger(TokenServiceTests.class);
+
+	private static final int CANJES = 2000;
+	private static final int HILOS = 32;
+	private static final int USOS_MAXIMOS = 500;
+
+	@Autowired
+	private TokenService tokenService;
+
+	@Autowired
+	private TokenRepository tokenRepository;
+
+	@Autowired
+	private CerraduraRepository cerraduraRepository;
+
+	@Test
+	void canjesConcurrentesNoSuperanUsosMaximos() throws Exception {
+		Cerradura cerradura = cerraduraRepository.save(new Cerradura("Concurrencia", true, null));
+		AtomicInteger exitos = new AtomicInteger();
+
+		canjear("CONCURRENTE", cerradura, CANJES / 4, USOS_MAXIMOS / 4, t -> {
+			if (tokenService.canjearToken(t.getCodigo(), cerradura.getId()).isExito()) {
+				exitos.incrementAndGet();
+			}
+		});
+
+		assertEquals(USOS_MAXIMOS / 4, exitos.get());
+		assertEquals(USOS_MAXIMOS / 4, tokenRepository.findByCodigo("CONCURRENTE").get().getUsosActuales());
+		assertFalse(cerraduraRepository.findById(cerradura.getId()).get().isBloqueada());
+	}
+
+	@Test
+	@Tag("benchmark")
+	void rendimientoCanjeAtomico() throws Exception {
+		Cerradura cerradura = cerraduraRepository.save(new Cerradura("Stress", true, null));
+
+		// Camino anterior (leer, comprobar, guardar), solo como referencia
+		Consumer<Token> legado = t -> {
+			Token token = tokenRepository.findByCodigo(t.getCodigo()).get();
+			if (token.esValido(LocalDateTime.now())) {
+				token.registrarUso();
+				tokenRepository.save(token);
+				Cerradura c = cerraduraRepository.findById(token.getCerradura().getId()).get();
+				c.setBloqueada(false);
+				cerraduraRepository.save(c);
+			}
+		};
+		Consumer<Token> atomico = t -> tokenService.canjearToken(t.getCodigo(), cerradura.getId());
+
+		// Calentamiento de ambos caminos antes de medir
+		canjear("WARMUP-LEGADO", cerradura, CANJES, USOS_MAXIMOS, legado);
+		canjear("WARMUP-ATOMICO", cerradura, CANJES, USOS_MAXIMOS, atomico);
+
+		long legadoNanos = canjear("STRESS-LEGADO", cerradura, CANJES, USOS_MAXIMOS, legado);
+		long atomicoNanos = canjear("STRESS-ATOMICO", cerradura, CANJES, USOS_MAXIMOS, atomico);
+
+		assertEquals(USOS_MAXIMOS, tokenRepository.findByCodigo("STRESS-ATOMICO").get().getUsosActuales());
+
+		log.info("{} canjes con {} hilos: atómico {} canjes/s, legado {} canjes/s",
+				CANJES, HILOS, CANJES * 1_000_000_000L / atomicoNanos, CANJES * 1_000_000_000L / legadoNanos);
+	}
+
+	private long canjear(String codigo, Cerradura cerradura, int canjes, int usosMaximos, Consumer<Token> canje)
+			throws InterruptedException {
+		Token token = tokenRepository.save(new Token(codigo, LocalDateTime.now().plusHours(1), usosMaximos, cerradura));
+		ExecutorService executor = Executors.newFixedThreadPool(HILOS);
+		long inicio = System.nanoTime();
+		for (int i = 0; i < canjes; i++) {
+			executor.submit(() -> {
+				try {
+					canje.accept(token);
+				} catch (RuntimeException e) {
+					// Conflictos del camino legado: cuentan como canje no concedido
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(2, TimeUnit.MINUTES);
+		return System.nanoTime() - inicio;
+	}
+}
@@ -0,0 +1,93 @@
+package es.upm.dit.isst.ioh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import es.upm.dit.isst.ioh.service.VentanasDeslizantes;
+
+/**
+ * Cuentas, deslizamiento y bloqueos de {@link VentanasDeslizantes}, con una
+ * ventana de un segundo (tramos de 100 ms)
+ */
+class VentanasDeslizantesTests {
+
+	private static final long T0 = 1_000_000L;
+
+	private final VentanasDeslizantes<String> ventanas = new VentanasDeslizantes<>(4, 1000, 1000);
+
+	@Test
+	void cuentaLosEventosDeCadaClave() {
+		for (int i = 1; i <= 5; i++) {
+			assertEquals(i, ventanas.sumar("a", T0 + i));
+		}
+		assertEquals(1, ventanas.sumar("b", T0));
+		assertEquals(6, ventanas.sumar("a", T0 + 999));
+		assertEquals(2, ventanas.tamano());
+	}
+
+	@Test
+	void laVentanaSeDesplazaTramoATramo() {
+		ventanas.sumar("a", T0);
+		ventanas.sumar("a", T0 + 50);
+		ventanas.sumar("a", T0 + 500);
+
+		// Último tramo de la ventana: todavía cuentan los del primero
+		assertEquals(4, ventanas.sumar("a", T0 + 999));
+		// Un tramo después salen los dos eventos del primero
+		assertEquals(3, ventanas.sumar("a", T0 + 1000));
+		// Medio segundo después sale el de la mitad y entra el nuevo
+		assertEquals(3, ventanas.sumar("a", T0 + 1500));
+		// Tras una ventana completa sin eventos se empieza de cero
+		assertEquals(1, ventanas.sumar("a", T0 + 5000));
+	}
+
+	@Test
+	void bloqueoHastaElInstanteIndicado() {
+		assertFalse(ventanas.bloquear("a", T0 + 60_000, T0), "Una clave sin eventos no se bloquea");
+
+		ventanas.sumar("a", T0);
+		assertTrue(ventanas.bloquear("a", T0 + 60_000, T0));
+		assertFalse(ventanas.bloquear("a", T0 + 120_000, T0 + 1), "Ya estaba bloqueada");
+		assertEquals(T0 + 60_000, ventanas.bloqueadoHasta("a", T0 + 59_999));
+		assertEquals(0, ventanas.bloqueadoHasta("a", T0 + 60_000));
+		assertEquals(0, ventanas.bloqueadoHasta("b", T0));
+
+		assertTrue(ventanas.bloquear("a", T0 + 120_000, T0 + 60_000), "Se puede volver a bloquear al caducar");
+	}
+
+	@Test
+	void purgarConservaLasClavesActivasYBloqueadas() {
+		ventanas.sumar("antigua", T0);
+		ventanas.sumar("bloqueada", T0);
+		ventanas.bloquear("bloqueada", T0 + 60_000, T0);
+		ventanas.sumar("reciente", T0 + 900);
+
+		ventanas.purgar(T0 + 1000);
+		assertEquals(2, ventanas.tamano());
+		assertEquals(2, ventanas.sumar("reciente", T0 + 1000));
+
+		ventanas.purgar(T0 + 60_000);
+		assertEquals(0, ventanas.tamano());
+	}
+
+	@Test
+	void sinHuecoNoSeVigilaLaClaveHastaQueCaducaOtra() {
+		VentanasDeslizantes<String> unaClave = new VentanasDeslizantes<>(1, 1000, 1);
+
+		assertEquals(1, unaClave.sumar("a", T0));
+		assertEquals(-1, unaClave.sumar("b", T0 + 999));
+		// Al caducar la ventana de "a" su hueco se reutiliza
+		assertEquals(1, unaClave.sumar("b", T0 + 1000));
+		assertEquals(1, unaClave.tamano());
+	}
+
+	@Test
+	void parametrosNoValidos() {
+		assertThrows(IllegalArgumentException.class, () -> new VentanasDeslizantes<String>(0, 1000, 10));
+		assertThrows(IllegalArgumentException.class, () -> new VentanasDeslizantes<String>(4, 9, 10));
+	}
+}
@@ -207,6 +207,7 @@ const AbrirPuerta = () => {
 
     const handleCerrarSesion = () => {
         localStorage.removeItem('usuario');
+        localStorage.removeItem('token');
         navigate('/login');
     };
 
@@ -274,7 +275,7 @@ const AbrirPuerta = () => {
                 setEstado(response.status === 403 ? 'sin_acceso' : 'error');
         
                 const data = await response.json(); // Parse JSON once
-                registrarIntentoAcceso(false, motivo);
+                // El backend ya registra el intento al procesar /abrir
                 throw new Error(data.error || motivo);
             }
 
@@ -283,7 +284,6 @@ const AbrirPuerta = () => {
             .then(data => {
                 setEstado('exito');
                 setMetodoAcceso('normal');
-                registrarIntentoAcceso(true, 'Acceso permitido');
             })
             .catch(error => {
                 console.error('Error al abrir puerta:', error);
@@ -320,133 +320,20 @@ const AbrirPuerta = () => {
         setEstado('conectando');
         setError('');
 
-        // Estrategia de validación del token
+        // El servidor comprueba el token y descuenta el uso de forma atómica
         const validarToken = async () => {
-            try {
-                console.log(`Intentando validar token con usuario ${usuario.id}`);
-                const response = await fetch(`http://localhost:8080/api/tokens/validar?codigo=${token}&cerraduraId=${cerradura}&usuarioId=${usuario.id}`, {
-                    method: 'POST',
-                });
-        
-                // Parse the response JSON once
-                const errorData = response.ok ? null : await response.json();
-        
-                if (response.ok) {
-                    return response; // Return the response if successful
-                }
-        
-                console.log('response:', response);
-        
-                if (response.status === 403) {
-                    console.log('Error de validación estándar:', errorData.error);
-        
-                    if (errorData.error === 'No tienes acceso a esta cerradura') {
-                        console.log('Intentando validación alternativa basada solo en token...');
-        
-                        // Fetch all tokens to validate manually
-                        const tokensResponse = await fetch('http://localhost:8080/api/tokens');
-                        if (!tokensResponse.ok) {
-                            throw new Error('No se pudo verificar el token');
-                        }
-                        
-                        const tokens = await tokensResponse.json();
-                        const tokenObj = tokens.find((t: any) => t.codigo === token);
-                        console.log('token:', tokenObj);
-        
-                        if (!tokenObj) {
-                            throw new Error('Token no encontrado');
-                        }
-        
-                        if (tokenObj.cerradura.id !== cerradura) {
-                            throw new Error('Token no válido para esta cerradura');
-                        }
-        
-                        if (tokenObj.usosMaximos > 0 && tokenObj.usosActuales >= tokenObj.usosMaximos) {
-                            throw new Error('Token sin usos disponibles');
-                        }
-        
-                        if (new Date(tokenObj.fechaExpiracion) < new Date()) {
-                            throw new Error('Token expirado');
-                        }
-        
-                        // Attempt to open the lock with the token's owner ID
-                        const propietarioId = tokenObj.cerradura.propiedad.propietario.id;
-        
-                        const abrirResponse = await fetch(`http://localhost:8080/api/cerraduras/${cerradura}/abrir`, {
-                            method: 'POST',
-                            headers: {
-                                'Content-Type': 'application/json',
-                            },
-                            body: JSON.stringify({ usuarioId: propietarioId }),
-                        });
-        
-                        if (!abrirResponse.ok) {
-                            throw new Error('Error al abrir la puerta con el token');
-                        }
-        
-                        // Update the token's usage count
-                        const updatedToken = {
-                            ...tokenObj,
-                            usosActuales: tokenObj.usosActuales + 1,
-                        };
-        
-                        try {
-                            await fetch('http://localhost:8080/api/tokens', {
-                                method: 'POST',
-                                headers: {
-                                    'Content-Type': 'application/json',
-                                },
-                                body: JSON.stringify(updatedToken),
-                            });
-                        } catch {
-                            console.warn('No se pudo actualizar el uso del token, pero la puerta ya se abrió');
-                        }
-        
-                        // Return a simulated response
-                        return new Response(JSON.stringify({ mensaje: 'Puerta abierta correctamente' }), {
-                            status: 200,
-                            headers: { 'Content-Type': 'application/json' },
-                        });
-                    }
-                }
-        
-                // If no specific handling for the error, throw it
+            const response = await fetch(`http://localhost:8080/api/tokens/validar?codigo=${encodeURIComponent(token)}&cerraduraId=${cerradura}&usuarioId=${usuario.id}`, {
+                method: 'POST',
+            });
+            if (!response.ok) {
+                const errorData = await response.json().catch(() => ({}));
                 throw new Error(errorData.error || 'Error desconocido al validar token');
-            } catch (error) {
-                if (error instanceof Error) {
-                    const tokensResponse = await fetch('http://localhost:8080/api/tokens');
-                    if (!tokensResponse.ok) {
-                        throw new Error('No se pudo verificar el token');
-                    }
-                    
-                    const tokens = await tokensResponse.json();
-                    const tokenObj = tokens.find((t: any) => t.codigo === token);
-                    console.log('token:', tokenObj);
-    
-                    if (!tokenObj) {
-                        throw new Error('Token no encontrado');
-                    }
-    
-                    if (tokenObj.cerradura.id !== cerradura) {
-                        throw new Error('Token no válido para esta cerradura');
-                    }
-    
-                    if (tokenObj.usosMaximos > 0 && tokenObj.usosActuales >= tokenObj.usosMaximos) {
-                        throw new Error('Token sin usos disponibles');
-                    }
-    
-                    if (new Date(tokenObj.fechaExpiracion) < new Date()) {
-                        throw new Error('Token expirado');
-                    }
-                } else {
-                    throw new Error('Salió mal'); // Handle unexpected errors
-                }
             }
+            return response;
         };
 
-        // Ejecutamos la estrategia de validación
         validarToken()
-            .then(response => response?.json())
+            .then(response => response.json())
             .then(() => {
                 setEstado('exito');
                 setMetodoAcceso('token');
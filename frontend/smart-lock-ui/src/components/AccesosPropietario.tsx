@@ -44,55 +44,64 @@ const AccesosPropietario = () => {
                 }
 
                 console.log('Obteniendo accesos para el propietario con ID:', usuario.id);
-                const url = `http://localhost:8080/api/propietarios/${usuario.id}/accesos`;
-                console.log('URL de la solicitud:', url);
+                // El listado va por páginas: se piden hasta que no llega la cabecera con el cursor
+                let data: any[] = [];
+                let cursor: string | null = null;
+                do {
+                    const url = `http://localhost:8080/api/propietarios/${usuario.id}/accesos?limite=1000`
+                        + (cursor ? `&despuesDe=${cursor}` : '');
+                    console.log('URL de la solicitud:', url);
+
+                    const response = await fetch(url, {
+                        headers: {
+                            'Authorization': `Bearer ${localStorage.getItem('token')}`,
+                            'Content-Type': 'application/json'
+                        }
+                    });
 
-                const response = await fetch(url, {
-                    headers: {
-                        'Authorization': `Bearer ${localStorage.getItem('token')}`,
-                        'Content-Type': 'application/json'
+                    console.log('Estado de la respuesta:', response.status);
+
+                    if (!response.ok) {
+                        if (response.status === 404) {
+                            // Si el propietario no existe en el sistema o no hay datos
+                            console.warn('Usuario no encontrado o sin datos (404)');
+                            setAccesos([]);
+                            setCargando(false);
+                            return;
+                        } else if (response.status === 500) {
+                            // Error interno del servidor
+                            console.error('Error interno del servidor (500)');
+                            throw new Error('Hay un problema en el servidor. Por favor, inténtalo más tarde.');
+                        } else {
+                            // Cualquier otro error
+                            console.error(`Error inesperado (${response.status})`);
+                            throw new Error(`No se pudieron obtener los accesos (${response.status}). Por favor, inténtalo de nuevo.`);
+                        }
                     }
-                });
-
-                console.log('Estado de la respuesta:', response.status);
-
-                if (!response.ok) {
-                    if (response.status === 404) {
-                        // Si el propietario no existe en el sistema o no hay datos
-                        console.warn('Usuario no encontrado o sin datos (404)');
-                        setAccesos([]);
-                        setCargando(false);
-                        return;
-                    } else if (response.status === 500) {
-                        // Error interno del servidor
-                        console.error('Error interno del servidor (500)');
-                        throw new Error('Hay un problema en el servidor. Por favor, inténtalo más tarde.');
-                    } else {
-                        // Cualquier otro error
-                        console.error(`Error inesperado (${response.status})`);
-                        throw new Error(`No se pudieron obtener los accesos (${response.status}). Por favor, inténtalo de nuevo.`);
+
+                    // Intentar obtener el contenido como texto primero para depuración
+                    const responseText = await response.text();
+                    console.log('Respuesta cruda del servidor:', responseText);
+
+                    // Intentar analizar el texto como JSON
+                    let pagina;
+                    try {
+                        pagina = responseText ? JSON.parse(responseText) : [];
+                        console.log('Datos JSON parseados:', pagina);
+                    } catch (e) {
+                        console.error('Error al analizar JSON:', e);
+                        throw new Error('El servidor devolvió una respuesta inválida. Por favor, inténtalo más tarde.');
                     }
-                }
 
-                // Intentar obtener el contenido como texto primero para depuración
-                const responseText = await response.text();
-                console.log('Respuesta cruda del servidor:', responseText);
-
-                // Intentar analizar el texto como JSON
-                let data;
-                try {
-                    data = responseText ? JSON.parse(responseText) : [];
-                    console.log('Datos JSON parseados:', data);
-                } catch (e) {
-                    console.error('Error al analizar JSON:', e);
-                    throw new Error('El servidor devolvió una respuesta inválida. Por favor, inténtalo más tarde.');
-                }
+                    // Si no es array, convertirlo a array vacío para evitar errores
+                    if (!Array.isArray(pagina)) {
+                        console.warn('La respuesta no es un array:', pagina);
+                        pagina = [];
+                    }
 
-                // Si no es array, convertirlo a array vacío para evitar errores
-                if (!Array.isArray(data)) {
-                    console.warn('La respuesta no es un array:', data);
-                    data = [];
-                }
+                    data = data.concat(pagina);
+                    cursor = response.headers.get('X-Siguiente-Cursor');
+                } while (cursor);
 
                 // Procesar cada acceso para obtener información adicional
                 const procesarAccesos = async () => {
@@ -113,13 +122,18 @@ const AccesosPropietario = () => {
 
                         // Extraer información básica del acceso
                         if (item.id) {
-                            cerraduraId = item.cerradura?.id || null;
-                            huespedId = item.huesped?.id || null;
-                            huespedNombre = item.huesped?.nombre || 'Huésped desconocido';
-                            huespedEmail = item.huesped?.email || '';
+                            cerraduraId = item.cerraduraId || item.cerradura?.id || null;
+                            huespedId = item.huespedId || item.huesped?.id || null;
+                            huespedNombre = item.huespedNombre || item.huesped?.nombre || 'Huésped desconocido';
+                            huespedEmail = item.huespedEmail || item.huesped?.email || '';
 
                             // Obtener información de la cerradura y propiedad
-                            if (item.cerradura) {
+                            if (item.cerraduraId) {
+                                // Formato plano: el backend ya envía los datos de cerradura y propiedad
+                                nombreCerradura = item.cerraduraModelo || 'Cerradura sin nombre';
+                                propiedadNombre = item.propiedadNombre || 'Propiedad sin nombre';
+                                propiedadDireccion = item.propiedadDireccion || 'Sin dirección';
+                            } else if (item.cerradura) {
                                 nombreCerradura = item.cerradura.nombre || 'Cerradura sin nombre';
                                 if (item.cerradura.propiedad) {
                                     propiedadNombre = item.cerradura.propiedad.nombre || 'Propiedad sin nombre';
@@ -192,7 +206,10 @@ const AccesosPropietario = () => {
                             }
 
                             // Obtener información del horario
-                            if (item.horario) {
+                            if (item.inicio && item.fin) {
+                                fechaInicio = item.inicio;
+                                fechaFin = item.fin;
+                            } else if (item.horario) {
                                 fechaInicio = item.horario.inicio || new Date().toISOString();
                                 fechaFin = item.horario.fin || new Date().toISOString();
                             }
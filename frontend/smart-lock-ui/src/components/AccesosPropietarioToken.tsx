@@ -43,55 +43,64 @@ const AccesosPropietarioTokens = () => {
                 }
 
                 console.log('Obteniendo tokens para el propietario con ID:', usuario.id);
-                const url = `http://localhost:8080/api/propietarios/${usuario.id}/tokens`;
-                console.log('URL de la solicitud:', url);
+                // El listado va por páginas: se piden hasta que no llega la cabecera con el cursor
+                let data: any[] = [];
+                let cursor: string | null = null;
+                do {
+                    const url = `http://localhost:8080/api/propietarios/${usuario.id}/tokens?limite=1000`
+                        + (cursor ? `&despuesDe=${cursor}` : '');
+                    console.log('URL de la solicitud:', url);
+
+                    const response = await fetch(url, {
+                        headers: {
+                            'Authorization': `Bearer ${localStorage.getItem('token')}`,
+                            'Content-Type': 'application/json'
+                        }
+                    });
 
-                const response = await fetch(url, {
-                    headers: {
-                        'Authorization': `Bearer ${localStorage.getItem('token')}`,
-                        'Content-Type': 'application/json'
+                    console.log('Estado de la respuesta:', response.status);
+
+                    if (!response.ok) {
+                        if (response.status === 404) {
+                            // Si el propietario no existe en el sistema o no hay datos
+                            console.warn('Usuario no encontrado o sin datos (404)');
+                            setTokens([]);
+                            setCargando(false);
+                            return;
+                        } else if (response.status === 500) {
+                            // Error interno del servidor
+                            console.error('Error interno del servidor (500)');
+                            throw new Error('Hay un problema en el servidor. Por favor, inténtalo más tarde.');
+                        } else {
+                            // Cualquier otro error
+                            console.error(`Error inesperado (${response.status})`);
+                            throw new Error(`No se pudieron obtener los tokens (${response.status}). Por favor, inténtalo de nuevo.`);
+                        }
                     }
-                });
-
-                console.log('Estado de la respuesta:', response.status);
-
-                if (!response.ok) {
-                    if (response.status === 404) {
-                        // Si el propietario no existe en el sistema o no hay datos
-                        console.warn('Usuario no encontrado o sin datos (404)');
-                        setTokens([]);
-                        setCargando(false);
-                        return;
-                    } else if (response.status === 500) {
-                        // Error interno del servidor
-                        console.error('Error interno del servidor (500)');
-                        throw new Error('Hay un problema en el servidor. Por favor, inténtalo más tarde.');
-                    } else {
-                        // Cualquier otro error
-                        console.error(`Error inesperado (${response.status})`);
-                        throw new Error(`No se pudieron obtener los tokens (${response.status}). Por favor, inténtalo de nuevo.`);
+
+                    // Intentar obtener el contenido como texto primero para depuración
+                    const responseText = await response.text();
+                    console.log('Respuesta cruda del servidor:', responseText);
+
+                    // Intentar analizar el texto como JSON
+                    let pagina;
+                    try {
+                        pagina = responseText ? JSON.parse(responseText) : [];
+                        console.log('Datos JSON parseados:', pagina);
+                    } catch (e) {
+                        console.error('Error al analizar JSON:', e);
+                        throw new Error('El servidor devolvió una respuesta inválida. Por favor, inténtalo más tarde.');
                     }
-                }
 
-                // Intentar obtener el contenido como texto primero para depuración
-                const responseText = await response.text();
-                console.log('Respuesta cruda del servidor:', responseText);
-
-                // Intentar analizar el texto como JSON
-                let data;
-                try {
-                    data = responseText ? JSON.parse(responseText) : [];
-                    console.log('Datos JSON parseados:', data);
-                } catch (e) {
-                    console.error('Error al analizar JSON:', e);
-                    throw new Error('El servidor devolvió una respuesta inválida. Por favor, inténtalo más tarde.');
-                }
+                    // Si no es array, convertirlo a array vacío para evitar errores
+                    if (!Array.isArray(pagina)) {
+                        console.warn('La respuesta no es un array:', pagina);
+                        pagina = [];
+                    }
 
-                // Si no es array, convertirlo a array vacío para evitar errores
-                if (!Array.isArray(data)) {
-                    console.warn('La respuesta no es un array:', data);
-                    data = [];
-                }
+                    data = data.concat(pagina);
+                    cursor = response.headers.get('X-Siguiente-Cursor');
+                } while (cursor);
 
                 // Procesar cada token para obtener información adicional
                 const procesarTokens = async () => {
@@ -111,13 +120,18 @@ const AccesosPropietarioTokens = () => {
 
                         // Extraer información básica del token
                         if (item.id) {
-                            cerraduraId = item.cerradura?.id || null;
+                            cerraduraId = item.cerraduraId || item.cerradura?.id || null;
                             usosActuales = item.usosActuales || 0;
                             usosMaximos = item.usosMaximos || 0;
                             codigo = item.codigo || 'Código no disponible';
 
                             // Obtener información de la cerradura y propiedad
-                            if (item.cerradura) {
+                            if (item.cerraduraId) {
+                                // Formato plano: el backend ya envía los datos de cerradura y propiedad
+                                nombreCerradura = item.cerraduraModelo || 'Cerradura sin nombre';
+                                propiedadNombre = item.propiedadNombre || 'Propiedad sin nombre';
+                                propiedadDireccion = item.propiedadDireccion || 'Sin dirección';
+                            } else if (item.cerradura) {
                                 nombreCerradura = item.cerradura.nombre || 'Cerradura sin nombre';
                                 if (item.cerradura.propiedad) {
                                     propiedadNombre = item.cerradura.propiedad.nombre || 'Propiedad sin nombre';
@@ -49,8 +49,9 @@ const Login = () => {
         tipo: data.tipo.toUpperCase()
       };
 
-      // Guardar información del usuario
+      // Guardar información del usuario y el token de sesión
       localStorage.setItem('usuario', JSON.stringify(userData));
+      localStorage.setItem('token', data.token);
 
       console.log('Usuario autenticado:', userData);
 
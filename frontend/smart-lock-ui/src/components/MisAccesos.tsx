@@ -123,6 +123,28 @@ const MisAccesos = () => {
                     }
                 };
 
+                // Obtener la información de todas las cerraduras en una sola petición
+                const infoCerraduras = new Map<number, any>();
+                const idsCerraduras = Array.from(new Set(
+                    data.map((item: any) => item.cerradura?.id).filter((id: any) => typeof id === 'number')
+                ));
+                if (idsCerraduras.length > 0) {
+                    try {
+                        const infoResponse = await fetch(`http://localhost:8080/api/cerraduras/info?ids=${idsCerraduras.join(',')}`, {
+                            headers: {
+                                'Authorization': `Bearer ${localStorage.getItem('token')}`,
+                                'Content-Type': 'application/json'
+                            }
+                        });
+                        if (infoResponse.ok) {
+                            const infos = await infoResponse.json();
+                            infos.forEach((info: any) => infoCerraduras.set(info.cerraduraId, info));
+                        }
+                    } catch (error) {
+                        console.error('Error al obtener información de cerraduras:', error);
+                    }
+                }
+
                 // Procesar cada acceso de forma asíncrona para obtener datos adicionales si es necesario
                 const procesarAccesos = async () => {
                     const accesosPromesas = data.map(async (item: any) => {
@@ -150,78 +172,11 @@ const MisAccesos = () => {
                         const propiedad = cerradura.propiedad || item.propiedad || {};
                         propiedadId = propiedad.id || null;
 
-                        // PASO ÚNICO: Obtener el nombre de la propiedad directamente desde la API
-                        let nombrePropiedad = "Propiedad no identificada";
-
-                        // Verifica primero si ya tienes el nombre en los datos locales
-                        if (propiedad && propiedad.nombre) {
-                            nombrePropiedad = propiedad.nombre;
-                            console.log('Nombre de propiedad obtenido localmente:', nombrePropiedad);
-                        } else if (cerraduraId) {
-                            try {
-                                console.log('Consultando nombre de propiedad para cerradura:', cerraduraId);
-                                const response = await fetch(`http://localhost:8080/api/cerraduras/${cerraduraId}/propiedad/nombre`, {
-                                    headers: {
-                                        'Authorization': `Bearer ${localStorage.getItem('token')}`,
-                                        'Content-Type': 'application/json'
-                                    }
-                                });
-
-                                if (!response.ok) {
-                                    throw new Error(`HTTP error! status: ${response.status}`);
-                                }
-
-                                nombrePropiedad = await response.text();
-                                console.log('Nombre de propiedad obtenido del servidor:', nombrePropiedad);
-                            } catch (error) {
-                                console.error('Error al obtener nombre de propiedad:', error);
-                                nombrePropiedad = "Error al obtener propiedad";
-                            }
-                        }
-
-                        // PASO 4: Obtener el nombre y dirección de la propiedad con manejo seguro
-                        // Obtener dirección de la propiedad
-                        propiedadDireccion = "Dirección no disponible";
-
-                        if (cerraduraId) {
-                            try {
-                                const direccionResponse = await fetch(`http://localhost:8080/api/cerraduras/${cerraduraId}/propiedad/direccion`, {
-                                    headers: {
-                                        'Authorization': `Bearer ${localStorage.getItem('token')}`,
-                                        'Content-Type': 'application/json'
-                                    }
-                                });
-
-                                if (direccionResponse.ok) {
-                                    propiedadDireccion = await direccionResponse.text();
-                                    console.log(`Dirección obtenida: ${propiedadDireccion}`);
-                                }
-                            } catch (error) {
-                                console.error('Error al obtener dirección:', error);
-                            }
-                        }
-
-                        // PASO 5: Obtener información del propietario con manejo seguro
-                        // Obtener nombre del propietario
-                        propietarioNombre = "Propietario desconocido";
-
-                        if (cerraduraId) {
-                            try {
-                                const propietarioResponse = await fetch(`http://localhost:8080/api/cerraduras/${cerraduraId}/propietario/nombre`, {
-                                    headers: {
-                                        'Authorization': `Bearer ${localStorage.getItem('token')}`,
-                                        'Content-Type': 'application/json'
-                                    }
-                                });
-
-                                if (propietarioResponse.ok) {
-                                    propietarioNombre = await propietarioResponse.text();
-                                    console.log(`Nombre del propietario obtenido: ${propietarioNombre}`);
-                                }
-                            } catch (error) {
-                                console.error('Error al obtener nombre del propietario:', error);
-                            }
-                        }
+                        // PASO 3: Tomar nombre, dirección y propietario de la información por lotes
+                        const info = cerraduraId ? infoCerraduras.get(cerraduraId) : undefined;
+                        const nombrePropiedad = propiedad.nombre || info?.propiedadNombre || "Propiedad no identificada";
+                        propiedadDireccion = info?.propiedadDireccion || "Dirección no disponible";
+                        propietarioNombre = info?.propietarioNombre || "Propietario desconocido";
 
                         // PASO 6: Extraer información del horario con manejo seguro
                         const horario = item.horario || {};
@@ -127,6 +127,7 @@ const PropietarioDashboard = () => {
 
     const handleCerrarSesion = () => {
         localStorage.removeItem('usuario');
+        localStorage.removeItem('token');
         navigate('/login');
     };
 
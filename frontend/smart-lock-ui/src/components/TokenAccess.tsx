@@ -17,22 +17,18 @@ const TokenAccess = () => {
     try {
       console.log(`Buscando cerradura asociada al token ${codigo}`);
 
-      // Obtenemos todos los tokens para encontrar el que coincide con el código
-      const tokensResponse = await fetch(`${API_BASE_URL}/api/tokens`);
+      // Buscamos directamente el token con el código proporcionado
+      const tokenResponse = await fetch(`${API_BASE_URL}/api/tokens/codigo/${encodeURIComponent(codigo)}`);
 
-      if (!tokensResponse.ok) {
-        throw new Error(`Error al obtener tokens (${tokensResponse.status})`);
-      }
-
-      const tokens = await tokensResponse.json();
-      console.log("Tokens disponibles:", tokens);
-
-      // Buscamos el token con el código proporcionado
-      const tokenObj = tokens.find((t: any) => t.codigo === codigo);
-
-      if (!tokenObj) {
+      if (tokenResponse.status === 404) {
         throw new Error('Token no encontrado');
       }
+      if (!tokenResponse.ok) {
+        throw new Error(`Error al obtener el token (${tokenResponse.status})`);
+      }
+
+      const tokenObj = await tokenResponse.json();
+      console.log("Token encontrado:", tokenObj);
 
       // Verificamos que el token tenga una cerradura asociada
       if (!tokenObj.cerradura || !tokenObj.cerradura.id) {
@@ -56,18 +52,11 @@ const TokenAccess = () => {
       // Intentamos obtener el ID del propietario para abrir la puerta
       let usuarioIdParaAbrir;
 
-      // Intentamos obtener el propietario del token si está disponible en la estructura anidada
-      if (tokenObj.cerradura.propiedad && tokenObj.cerradura.propiedad.propietario && tokenObj.cerradura.propiedad.propietario.id) {
-        usuarioIdParaAbrir = tokenObj.cerradura.propiedad.propietario.id;
-      } else {
-        // Si no está disponible en la estructura, intentamos obtener la cerradura y de ahí la propiedad y el propietario
-        const cerraduraResponse = await fetch(`${API_BASE_URL}/api/cerraduras/${cerraduraId}`);
-        if (cerraduraResponse.ok) {
-          const cerraduraData = await cerraduraResponse.json();
-          if (cerraduraData.propiedad && cerraduraData.propiedad.propietario) {
-            usuarioIdParaAbrir = cerraduraData.propiedad.propietario.id;
-          }
-        }
+      // La búsqueda por código no incluye la propiedad: el propietario sale de la información de la cerradura
+      const infoResponse = await fetch(`${API_BASE_URL}/api/cerraduras/${cerraduraId}/info`);
+      if (infoResponse.ok) {
+        const info = await infoResponse.json();
+        usuarioIdParaAbrir = info.propietarioId;
       }
 
       // Si todavía no tenemos un ID de usuario, usamos el ID 1 como respaldo
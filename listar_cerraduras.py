@@ -0,0 +1,45 @@
+import requests
+import sys
+
+BASE_URL = "http://localhost:8080/api"
+
+# Cerraduras por página (el servidor admite hasta 1000)
+LIMITE = 500
+
+def listar_cerraduras(campos=None):
+    """Recorre el listado de cerraduras página a página siguiendo el cursor"""
+    params = {"limite": LIMITE}
+    if campos:
+        params["campos"] = campos
+
+    while True:
+        response = requests.get(f"{BASE_URL}/cerraduras", params=params)
+        if response.status_code != 200:
+            print(f"❌ Error al listar cerraduras: {response.text}")
+            return
+
+        for cerradura in response.json():
+            yield cerradura
+
+        # Sin cabecera no hay más páginas
+        siguiente = response.headers.get("X-Siguiente-Cursor")
+        if not siguiente:
+            return
+        params["despuesDe"] = siguiente
+
+def main():
+    # Campos opcionales, p. ej.: python listar_cerraduras.py id,bloqueada,propiedad.id
+    campos = sys.argv[1] if len(sys.argv) > 1 else None
+
+    total = 0
+    bloqueadas = 0
+    for cerradura in listar_cerraduras(campos):
+        print(cerradura)
+        total += 1
+        if cerradura.get("bloqueada"):
+            bloqueadas += 1
+
+    print(f"\n✅ {total} cerraduras ({bloqueadas} bloqueadas)")
+
+if __name__ == "__main__":
+    main()